@@ -0,0 +1,353 @@
+import java.util.HashMap;
+
+/**
+ * Action class
+ *
+ * <p>Immutable action interpreted from the output of a security tool, to be executed on another
+ * tool. The kind of action and the tools are enums and the parameters are typed fields, so actions
+ * are dispatched with a switch rather than by comparing strings, and a misspelt action name is
+ * rejected when the action is built instead of being silently ignored when it is executed.
+ *
+ * <p>toMap() and fromMap() convert from and to the HashMap form with string keys ("action",
+ * "toolTo", "message", ...) that actions used to be passed around as.
+ */
+public class Action {
+
+  // Process id of an action without process
+  public static final long NO_PID = -1;
+
+  private static final Action FAILED =
+      new Action(null, null, null, null, null, null, NO_PID, null, null, null, null, null, null);
+
+  /**
+   * Kind of action. Every kind has the name used in the HashMap form of actions, and the function
+   * name the ontology knows it by, either of which identifies it.
+   */
+  public enum ActionType {
+    LOG_MANAGEMENT("Log Management", "LogManagement"),
+    REPORTING("Reporting", "Reporting"),
+    DELETE_FILE("file_del", "DeleteFile"),
+    KILL_PROCESS("os_kill_process", "KillProcess"),
+    ISOLATE_NODE("isolate_node", "IsolateNode");
+
+    private final String name;
+    private final String function;
+
+    ActionType(String name, String function) {
+      this.name = name;
+      this.function = function;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getFunction() {
+      return function;
+    }
+
+    /**
+     * Looks up a kind of action by its name or ontology function name
+     *
+     * @param name name of the action
+     * @return ActionType, or null if there is none of that name
+     */
+    public static ActionType fromName(String name) {
+      for (ActionType type : values()) {
+        if (type.name.equals(name) || type.function.equals(name)) {
+          return type;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Security tool an action comes from or is executed on
+   */
+  public enum Tool {
+    SPLUNK("splunk"),
+    LIMACHARLIE("limacharlie");
+
+    private final String name;
+
+    Tool(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Looks up a tool by its name
+     *
+     * @param name name of the tool, such as "splunk"
+     * @return Tool, or null if there is none of that name
+     */
+    public static Tool fromName(String name) {
+      for (Tool tool : values()) {
+        if (tool.name.equals(name)) {
+          return tool;
+        }
+      }
+      return null;
+    }
+  }
+
+  private final ActionType type;
+  private final Tool toolTo;
+  private final Tool toolFrom;
+  // File the action is about: detection output to upload, or file to delete on a sensor
+  private final String filePath;
+  // Format of filePath when uploaded, such as "json"
+  private final String format;
+  private final String reportName;
+  private final long pid;
+  // Sensor the action is executed on
+  private final String sid;
+  private final String hostname;
+  private final String iid;
+  private final String extIp;
+  private final String oid;
+  private final String tags;
+
+  private Action(
+      ActionType type,
+      Tool toolTo,
+      Tool toolFrom,
+      String filePath,
+      String format,
+      String reportName,
+      long pid,
+      String sid,
+      String hostname,
+      String iid,
+      String extIp,
+      String oid,
+      String tags) {
+    this.type = type;
+    this.toolTo = toolTo;
+    this.toolFrom = toolFrom;
+    this.filePath = filePath;
+    this.format = format;
+    this.reportName = reportName;
+    this.pid = pid;
+    this.sid = sid;
+    this.hostname = hostname;
+    this.iid = iid;
+    this.extIp = extIp;
+    this.oid = oid;
+    this.tags = tags;
+  }
+
+  /**
+   * Returns the action standing for output that could not be interpreted
+   *
+   * @return Action with fail message
+   */
+  public static Action failed() {
+    return FAILED;
+  }
+
+  /**
+   * Creates an action uploading LimaCharlie log data to Splunk
+   *
+   * @param filePath path to the log data
+   * @return Action of type LOG_MANAGEMENT
+   */
+  public static Action logManagement(String filePath) {
+    return new Action(
+        ActionType.LOG_MANAGEMENT, Tool.SPLUNK, Tool.LIMACHARLIE, filePath, "json", null, NO_PID,
+        null, null, null, null, null, null);
+  }
+
+  /**
+   * Creates an action uploading LimaCharlie DR data to Splunk and running a report on it
+   *
+   * @param filePath path to the DR data
+   * @param reportName name of the Splunk report to run
+   * @return Action of type REPORTING
+   */
+  public static Action reporting(String filePath, String reportName) {
+    return new Action(
+        ActionType.REPORTING, Tool.SPLUNK, Tool.LIMACHARLIE, filePath, "json", reportName, NO_PID,
+        null, null, null, null, null, null);
+  }
+
+  /**
+   * Creates an action executed on a LimaCharlie sensor in response to a detection, either found
+   * by a Splunk report or read from LimaCharlie DR data directly
+   *
+   * @param toolFrom tool the detection comes from
+   * @param type kind of response
+   * @param filePath file on the sensor, or null
+   * @param pid process on the sensor, or NO_PID
+   * @param sid id of the sensor
+   * @param hostname hostname of the sensor
+   * @param iid installer id of the sensor
+   * @param extIp external ip of the sensor
+   * @param oid organisation id of the sensor
+   * @param tags tags of the sensor
+   * @return Action to LimaCharlie
+   */
+  public static Action response(
+      Tool toolFrom,
+      ActionType type,
+      String filePath,
+      long pid,
+      String sid,
+      String hostname,
+      String iid,
+      String extIp,
+      String oid,
+      String tags) {
+    return new Action(
+        type, Tool.LIMACHARLIE, toolFrom, filePath, null, null, pid, sid, hostname, iid, extIp, oid,
+        tags);
+  }
+
+  /**
+   * Converts an action from its HashMap form
+   *
+   * @param map action with string keys as returned by toMap()
+   * @return Action, failed() if the map has a fail message
+   * @throws IllegalArgumentException if the action, a tool or the process id is not known
+   */
+  public static Action fromMap(HashMap<String, String> map) {
+    if (!"success".equals(map.get("message"))) {
+      return FAILED;
+    }
+    ActionType type = ActionType.fromName(map.get("action"));
+    Tool toolTo = Tool.fromName(map.get("toolTo"));
+    Tool toolFrom = Tool.fromName(map.get("toolFrom"));
+    if (type == null || toolTo == null || toolFrom == null) {
+      throw new IllegalArgumentException("Unknown action " + map);
+    }
+    long pid = NO_PID;
+    if (map.get("process_id") != null) {
+      try {
+        pid = Long.parseLong(map.get("process_id"));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid process_id in action " + map);
+      }
+    }
+    return new Action(
+        type,
+        toolTo,
+        toolFrom,
+        map.get("filePath"),
+        map.get("type"),
+        map.get("reportName"),
+        pid,
+        map.get("sid"),
+        map.get("hostname"),
+        map.get("iid"),
+        map.get("ext_ip"),
+        map.get("oid"),
+        map.get("tags{}"));
+  }
+
+  /**
+   * Converts the action to its HashMap form
+   *
+   * @return HashMap<String, String> with the keys of the fields that are set, {"message": "fail"}
+   *     for a failed action
+   */
+  public HashMap<String, String> toMap() {
+    HashMap<String, String> map = new HashMap<>();
+    if (isFailed()) {
+      map.put("message", "fail");
+      return map;
+    }
+    map.put("action", type.getName());
+    map.put("toolTo", toolTo.getName());
+    map.put("toolFrom", toolFrom.getName());
+    map.put("message", "success");
+    putIfSet(map, "filePath", filePath);
+    putIfSet(map, "type", format);
+    putIfSet(map, "reportName", reportName);
+    if (pid != NO_PID) {
+      map.put("process_id", Long.toString(pid));
+    }
+    putIfSet(map, "sid", sid);
+    putIfSet(map, "hostname", hostname);
+    putIfSet(map, "iid", iid);
+    putIfSet(map, "ext_ip", extIp);
+    putIfSet(map, "oid", oid);
+    putIfSet(map, "tags{}", tags);
+    return map;
+  }
+
+  /**
+   * Checks if this action stands for output that could not be interpreted
+   *
+   * @return true if failed
+   */
+  public boolean isFailed() {
+    return type == null;
+  }
+
+  public ActionType getType() {
+    return type;
+  }
+
+  public Tool getToolTo() {
+    return toolTo;
+  }
+
+  public Tool getToolFrom() {
+    return toolFrom;
+  }
+
+  public String getFilePath() {
+    return filePath;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  public String getReportName() {
+    return reportName;
+  }
+
+  public long getPid() {
+    return pid;
+  }
+
+  public String getSid() {
+    return sid;
+  }
+
+  public String getHostname() {
+    return hostname;
+  }
+
+  public String getIid() {
+    return iid;
+  }
+
+  public String getExtIp() {
+    return extIp;
+  }
+
+  public String getOid() {
+    return oid;
+  }
+
+  public String getTags() {
+    return tags;
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+
+  private static void putIfSet(HashMap<String, String> map, String key, String value) {
+    if (value != null) {
+      map.put(key, value);
+    }
+  }
+}
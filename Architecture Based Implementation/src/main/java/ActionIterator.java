@@ -0,0 +1,131 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ActionIterator class
+ *
+ * <p>Actions interpreted from a file, interpreted lazily: nothing is read before the first call to
+ * hasNext() or next(), and every call reads only as far as the next action. A consumer executing
+ * the actions as it takes them therefore starts with the first action while the rest of the file
+ * is unread, holds one action in memory at a time, and slows down the reading of the file to its
+ * own pace. Closing the iterator before the end stops the interpretation and releases the file.
+ *
+ * <p>An IOException while reading is thrown from hasNext() and next() as an UncheckedIOException,
+ * as Iterator methods cannot throw checked exceptions. The iterator closes itself once it has
+ * handed out its last action. Not thread safe.
+ */
+public abstract class ActionIterator implements Iterator<Action>, Closeable {
+
+  // Action read ahead by hasNext(), null if none
+  private Action next;
+  private boolean done;
+  private boolean closed;
+
+  /**
+   * Interprets the file up to its next action
+   *
+   * @return Action, or null at the end of the file
+   * @throws IOException if the file cannot be read
+   */
+  protected abstract Action computeNext() throws IOException;
+
+  /**
+   * Releases the file being interpreted. Called once, at the end of the file or when closed.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  protected void release() throws IOException {}
+
+  /**
+   * Creates an iterator over actions already interpreted
+   *
+   * @param actions actions to hand out, in order
+   * @return ActionIterator over actions
+   */
+  public static ActionIterator of(List<Action> actions) {
+    final Iterator<Action> iterator = actions.iterator();
+    return new ActionIterator() {
+      @Override
+      protected Action computeNext() {
+        return iterator.hasNext() ? iterator.next() : null;
+      }
+    };
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null && !done) {
+      try {
+        next = computeNext();
+        if (next == null) {
+          done = true;
+          close();
+        }
+      } catch (IOException e) {
+        done = true;
+        closeQuietly();
+        throw new UncheckedIOException(e);
+      }
+    }
+    return next != null;
+  }
+
+  @Override
+  public Action next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Action action = next;
+    next = null;
+    return action;
+  }
+
+  /**
+   * Takes all remaining actions and closes the iterator
+   *
+   * @return ArrayList of the remaining actions, in order
+   * @throws IOException if the file cannot be read
+   */
+  public ArrayList<Action> toList() throws IOException {
+    ArrayList<Action> actions = new ArrayList<>();
+    try {
+      while (hasNext()) {
+        actions.add(next());
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      close();
+    }
+    return actions;
+  }
+
+  /**
+   * Stops interpreting the file and releases it. Later calls to hasNext() return false.
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    done = true;
+    next = null;
+    release();
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,357 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * CheckpointStore class
+ *
+ * <p>Durable record of how far every file in a watched directory has been processed, so that a
+ * restarted collector handles only the backlog: files that arrived or grew while the orchestrator
+ * was down, and files whose actions were interrupted. For every file it keeps a fingerprint, the
+ * byte offset processed up to, the status and the number of response actions already executed.
+ *
+ * <p>Checkpoints are kept in memory and appended to a journal file as one JSON object per line.
+ * Every record is written to the operating system immediately, so it survives a crash of the
+ * orchestrator; fsync is batched and forced after syncBatchSize records or syncInterval
+ * milliseconds, whichever comes first. The journal is compacted to one line per file when opened
+ * and whenever it grows well beyond the number of files.
+ *
+ * <p>The journal must not be placed inside the watched directory, where writing it would produce
+ * file events. See defaultPath(String).
+ */
+public class CheckpointStore {
+
+  /**
+   * Processing status of a file
+   */
+  public enum Status {
+    // Being processed, actionsDone of its response actions have been executed
+    PENDING,
+    // Processed up to offset and all response actions executed
+    DONE
+  }
+
+  /**
+   * Immutable checkpoint of a single file
+   */
+  public static class Checkpoint {
+    private final String file;
+    private final String fingerprint;
+    private final long offset;
+    private final Status status;
+    private final int actionsDone;
+    // Journal line removing the file, never returned by get()
+    private final boolean removed;
+
+    private Checkpoint(
+        String file,
+        String fingerprint,
+        long offset,
+        Status status,
+        int actionsDone,
+        boolean removed) {
+      this.file = file;
+      this.fingerprint = fingerprint;
+      this.offset = offset;
+      this.status = status;
+      this.actionsDone = actionsDone;
+      this.removed = removed;
+    }
+
+    public String getFile() {
+      return file;
+    }
+
+    public String getFingerprint() {
+      return fingerprint;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public int getActionsDone() {
+      return actionsDone;
+    }
+  }
+
+  // Number of bytes at the start of a file included in its fingerprint
+  private static final int FINGERPRINT_HEAD_SIZE = 4096;
+  // Journal is compacted once it has this many lines and four times as many lines as files
+  private static final int COMPACT_MIN_LINES = 1000;
+
+  private final Path journalPath;
+  private final int syncBatchSize;
+  private final long syncInterval;
+  private final Gson gson = new Gson();
+  private final HashMap<String, Checkpoint> checkpoints = new HashMap<>();
+  private FileChannel journal;
+  private int journalLines;
+  private int unsynced;
+  private long lastSync;
+
+  /**
+   * Constructor for CheckpointStore, forcing the journal to disk every 64 records or every second.
+   *
+   * @param journalPath path to journal file, created if it does not exist
+   * @throws IOException if the journal cannot be read or written
+   */
+  public CheckpointStore(String journalPath) throws IOException {
+    this(journalPath, 64, 1000);
+  }
+
+  /**
+   * Constructor for CheckpointStore. Loads and compacts an existing journal.
+   *
+   * @param journalPath path to journal file, created if it does not exist
+   * @param syncBatchSize records written before the journal is forced to disk
+   * @param syncInterval milliseconds after which the journal is forced to disk on the next record
+   * @throws IOException if the journal cannot be read or written
+   */
+  public CheckpointStore(String journalPath, int syncBatchSize, long syncInterval)
+      throws IOException {
+    this.journalPath = Paths.get(journalPath);
+    this.syncBatchSize = syncBatchSize;
+    this.syncInterval = syncInterval;
+    load();
+    compact();
+  }
+
+  /**
+   * Returns the default journal path for a watched directory: a file next to the directory named
+   * after it, for example "/data/lc.checkpoints" for "/data/lc"
+   *
+   * @param dir watched directory
+   * @return String path to journal file outside dir
+   */
+  public static String defaultPath(String dir) {
+    Path path = Paths.get(dir).toAbsolutePath().normalize();
+    return path.resolveSibling(path.getFileName() + ".checkpoints").toString();
+  }
+
+  /**
+   * Computes the fingerprint of a file: its file key (inode) and a checksum of its first bytes, up
+   * to 4096 or limit, whichever is smaller. Taken with the offset processed up to as limit, the
+   * fingerprint stays the same while a file is appended to, and changes when the file is replaced
+   * or rewritten.
+   *
+   * @param file file to fingerprint
+   * @param limit number of bytes of the file that may be included
+   * @return String fingerprint
+   * @throws IOException if the file cannot be read
+   */
+  public static String fingerprint(File file, long limit) throws IOException {
+    BasicFileAttributes attributes =
+        Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    byte[] head = new byte[(int) Math.min(FINGERPRINT_HEAD_SIZE, Math.max(0, limit))];
+    int length = 0;
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      int n;
+      while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+        length += n;
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(head, 0, length);
+    return attributes.fileKey() + ":" + length + ":" + Long.toHexString(crc.getValue());
+  }
+
+  /**
+   * Returns the checkpoint of a file
+   *
+   * @param file name of the file in the watched directory
+   * @return Checkpoint of the file, null if none was recorded
+   */
+  public synchronized Checkpoint get(String file) {
+    return checkpoints.get(file);
+  }
+
+  /**
+   * Records the processing state of a file
+   *
+   * @param file name of the file in the watched directory
+   * @param fingerprint fingerprint of the file with offset as limit, see fingerprint(File, long)
+   * @param offset byte offset the file has been processed up to
+   * @param status processing status
+   * @param actionsDone number of response actions already executed
+   * @throws IOException if the journal cannot be written
+   */
+  public synchronized void record(
+      String file, String fingerprint, long offset, Status status, int actionsDone)
+      throws IOException {
+    Checkpoint checkpoint = new Checkpoint(file, fingerprint, offset, status, actionsDone, false);
+    checkpoints.put(file, checkpoint);
+    append(checkpoint);
+  }
+
+  /**
+   * Forgets a file, for example after it was deleted
+   *
+   * @param file name of the file in the watched directory
+   * @throws IOException if the journal cannot be written
+   */
+  public synchronized void remove(String file) throws IOException {
+    if (checkpoints.remove(file) != null) {
+      append(new Checkpoint(file, null, 0, null, 0, true));
+    }
+  }
+
+  /**
+   * Forgets all files except the given ones, used to drop files deleted while the orchestrator was
+   * down
+   *
+   * @param files names of the files still present in the watched directory
+   * @throws IOException if the journal cannot be written
+   */
+  public synchronized void retain(Collection<String> files) throws IOException {
+    HashSet<String> keep = new HashSet<>(files);
+    for (String file : new HashSet<>(checkpoints.keySet())) {
+      if (!keep.contains(file)) {
+        remove(file);
+      }
+    }
+  }
+
+  /**
+   * Number of files with a checkpoint
+   *
+   * @return int number of files
+   */
+  public synchronized int size() {
+    return checkpoints.size();
+  }
+
+  /**
+   * Forces all written records to disk
+   *
+   * @throws IOException if the journal cannot be forced
+   */
+  public synchronized void flush() throws IOException {
+    if (unsynced > 0) {
+      journal.force(false);
+      unsynced = 0;
+    }
+    lastSync = System.currentTimeMillis();
+  }
+
+  /**
+   * Forces all written records to disk and closes the journal
+   *
+   * @throws IOException if the journal cannot be forced or closed
+   */
+  public synchronized void close() throws IOException {
+    flush();
+    journal.close();
+  }
+
+  /**
+   * Replays the journal into memory. A line torn by a crash while it was written is skipped.
+   */
+  private void load() throws IOException {
+    if (!Files.exists(journalPath)) {
+      return;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Checkpoint checkpoint;
+        try {
+          checkpoint = gson.fromJson(line, Checkpoint.class);
+        } catch (JsonSyntaxException e) {
+          System.err.println("Skipping damaged checkpoint in " + journalPath + ": " + line);
+          continue;
+        }
+        if (checkpoint == null || checkpoint.file == null) {
+          continue;
+        }
+        if (checkpoint.removed) {
+          checkpoints.remove(checkpoint.file);
+        } else {
+          checkpoints.put(checkpoint.file, checkpoint);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rewrites the journal with one line per file and reopens it for appending. The compacted
+   * journal is written next to the old one and moved over it, so a crash leaves either journal
+   * intact.
+   */
+  private void compact() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+    Path parent = journalPath.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path compacted = journalPath.resolveSibling(journalPath.getFileName() + ".compact");
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+      builder.append(gson.toJson(entry.getValue())).append('\n');
+    }
+    try (FileChannel out =
+        FileChannel.open(
+            compacted,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(true);
+    }
+    Files.move(compacted, journalPath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    journal =
+        FileChannel.open(
+            journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    journalLines = checkpoints.size();
+    unsynced = 0;
+    lastSync = System.currentTimeMillis();
+  }
+
+  /**
+   * Appends a record to the journal, forcing it to disk when the batch is full or the interval has
+   * passed
+   */
+  private void append(Checkpoint checkpoint) throws IOException {
+    ByteBuffer buffer =
+        ByteBuffer.wrap((gson.toJson(checkpoint) + "\n").getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      journal.write(buffer);
+    }
+    journalLines++;
+    unsynced++;
+    if (unsynced >= syncBatchSize || System.currentTimeMillis() - lastSync >= syncInterval) {
+      flush();
+    }
+    if (journalLines >= COMPACT_MIN_LINES && journalLines > 4 * checkpoints.size()) {
+      compact();
+    }
+  }
+}
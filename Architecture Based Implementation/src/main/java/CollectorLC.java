@@ -1,49 +1,57 @@
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
-
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.NotDirectoryException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * LimaCharlie Collector class. Implements Runnable and is intended to be used as a thread that
- * watches a directory specified in its constructor. Creates OutputHandler for each file
- * modification detected. Thread can be stopped by either calling CollectorLC.stopRunning()
- * (shuts down after timeout period of 1000 milliseconds) or by creating/modifying/deleting a file
- * called "SDN" in the path specified in the constructor.
+ * LimaCharlie Collector class. Watches a directory specified in its constructor on a
+ * DirectoryCollector of its own, which creates OutputHandler for each file modification detected
+ * and submits it to a HandlerPool. Collector can be stopped by either calling
+ * CollectorLC.stopRunning() (shuts down at once) or by creating/modifying/deleting a file
+ * called "SDN" in the path specified in the constructor. With a CheckpointStore, files that
+ * arrived, grew or were left unfinished while the orchestrator was down are handled on start. To
+ * watch several directories on one thread, add them as sources to a shared DirectoryCollector
+ * instead.
  */
-public class CollectorLC implements Runnable {
+public class CollectorLC {
   private String dir;
-  private Path path;
-  private ArrayList<OutputHandler> handlers;
-  private final AtomicBoolean running = new AtomicBoolean(false);
-  private Thread thread;
-  private StaticInterpreter staticInterpreter;
-  // Cache and start of last cache reset
-  private HashSet<String> fileNamesCache = new HashSet<>();
-  private long cacheStartTime;
-  private final int cacheResetInterval = 60000;
+  private boolean tailing;
+  private DirectoryCollector collector;
+  // Pipeline of the watched directory, null if it could not be registered
+  private DirectoryCollector.Source source;
+  // Events on a file within 60 seconds of the first one are duplicates
+  private final DedupCache dedupCache = new DedupCache(60000, 10000);
 
   /**
-   * Constructor for CollectorLC.
+   * Constructor for CollectorLC. OutputHandlers are run on the shared default HandlerPool.
    *
    * @param dir path of directory to watch. Expects path to point to a valid directory
    * @throws NotDirectoryException if passed path does not exist or is not a directory
    */
   public CollectorLC(String dir, StaticInterpreter staticInterpreter)
       throws NotDirectoryException {
+    this(dir, staticInterpreter, HandlerPool.getDefault(), false, null);
+  }
+
+  /**
+   * Constructor for CollectorLC.
+   *
+   * @param dir path of directory to watch. Expects path to point to a valid directory
+   * @param handlerPool pool that OutputHandlers are submitted to
+   * @param tailing if true, files are treated as append-only logs and every modification only
+   *     handles the complete lines appended since the previous one. Truncated and rotated files
+   *     are handled again from the start.
+   * @param checkpointStore store recording how far each file has been handled, or null to keep no
+   *     state across restarts. Must not be located in dir.
+   * @throws NotDirectoryException if passed path does not exist or is not a directory
+   */
+  public CollectorLC(
+      String dir,
+      StaticInterpreter staticInterpreter,
+      HandlerPool handlerPool,
+      boolean tailing,
+      CheckpointStore checkpointStore)
+      throws NotDirectoryException {
 
     System.out.println("CollectorLC ... watching directory [" + dir + "]");
 
@@ -53,102 +61,45 @@ public class CollectorLC implements Runnable {
       throw new NotDirectoryException(dir);
     }
 
-    this.staticInterpreter = staticInterpreter;
     this.dir = dir;
-    path = Paths.get(dir);
-    handlers = new ArrayList<>();
-    cacheStartTime = System.currentTimeMillis();
-    thread = new Thread(this);
-    thread.start();
+    this.tailing = tailing;
+    try {
+      collector = new DirectoryCollector(staticInterpreter, handlerPool);
+      source =
+          collector.addSource(
+              dir, "limacharlie", null, false, tailing, checkpointStore, dedupCache);
+    } catch (NotDirectoryException e) {
+      throw e;
+    } catch (IOException e) {
+      e.printStackTrace();
+      if (collector != null) {
+        collector.stopRunning();
+      }
+    }
   }
 
   /**
    * Invalidate cache of file names used toFILES_SEARCH_FIELDS eliminate duplicates
    */
   public void resetCache() {
-    cacheStartTime = System.currentTimeMillis();
-    fileNamesCache.clear();
+    dedupCache.clear();
   }
 
   /**
-   * Watches directory passed in constructor. When a file modification is detected, creates and
-   * stores OutputHandler thread in ArrayList handlers, passing the path to the file to the
-   * OutputHandler. Watches directory indefinitely until either CollectorLC.stopRunning()
-   * is called (where it will exit after a maximum of 1000 milliseconds), Thread.interrupt() is
-   * called, or shutdown signal is given in the form of a file being created/modified/deleted with
-   * the name "SDN" (Shut Down Now) in the specified path. For example, if specified path is
-   * "/home/user/Documents" and the file "SDN" (absolute path of "/home/user/Documents/SDN") is
-   * created, modified or deleted, the CollectorLC thread will return.
+   * Returns the cache used to eliminate duplicate file events, for its hit, miss and eviction
+   * counters
+   *
+   * @return DedupCache of this collector
    */
-  @Override
-  public void run() {
-    running.set(true);
-    try {
-      WatchService watcher = FileSystems.getDefault().newWatchService();
-      WatchKey key = path.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
-
-      // Set time of last cache clear
-      cacheStartTime = System.currentTimeMillis();
-      while (running.get()) {
-        // Poll the watcher for events every second
-        key = watcher.poll(1000, TimeUnit.MILLISECONDS);
-
-        // Invalidate timeCache every $cacheResetInterval
-        if ((System.currentTimeMillis() - cacheStartTime) > cacheResetInterval) {
-          cacheStartTime = System.currentTimeMillis();
-          fileNamesCache.clear();
-        }
-
-        if (key != null) {
-          for (WatchEvent<?> event : key.pollEvents()) {
-
-            WatchEvent.Kind<?> kind = event.kind();
-            WatchEvent<Path> ev = (WatchEvent<Path>) event;
-            String fileName = ev.context().toString();
-            File currentFile = new File(dir + "/" + fileName);
-
-            // if EventType == OVERFLOW, then jump
-            if (kind == OVERFLOW) {
-              continue;
-            }
-
-            // Shutdown thread if SDN file created
-            if (fileName.equals("SDN")) {
-              File sdnFile = new File(dir + "/" + fileName);
-              // Cleanup shutdown signal
-              if (sdnFile.exists()) {
-                sdnFile.delete();
-              }
-              running.set(false);
-              continue;
-            }
-
-            if (kind == ENTRY_MODIFY && currentFile.exists()) {
-              // If file event has been cached in the last second, skip it
-              if (fileNamesCache.contains(fileName)) {
-                continue;
-              }
-              // Add current file to cache with time of event
-              fileNamesCache.add(fileName);
-
-              OutputHandler handler =
-                  new OutputHandler(dir + "/" + fileName, "limacharlie", this.staticInterpreter);
-              handlers.add(handler);
-            }
-          }
-          if (!key.reset()) {
-            running.set(false);
-          }
-        }
-      }
-    } catch (IOException | InterruptedException e) {
-      e.printStackTrace();
-    }
+  public DedupCache getDedupCache() {
+    return dedupCache;
   }
 
   /** Is used to kill a thread safely */
   public void stopRunning() {
-    running.set(false);
+    if (collector != null) {
+      collector.stopRunning();
+    }
   }
 
   /**
@@ -160,21 +111,61 @@ public class CollectorLC implements Runnable {
     return dir;
   }
 
+  /**
+   * Checks if this CollectorLC only handles lines appended since the last modification
+   *
+   * @return true if in tailing mode
+   */
+  public boolean isTailing() {
+    return tailing;
+  }
+
+  /**
+   * Returns the scanner used to recover from WatchService overflows, for its overflow and rescan
+   * counters
+   *
+   * @return DirectoryScanner of this collector
+   */
+  public DirectoryScanner getDirectoryScanner() {
+    return source == null ? null : source.getDirectoryScanner();
+  }
+
   /**
    * Get thread for this CollectorLC
    *
    * @return Thread for this CollectorLC
    */
   public Thread getThread() {
-    return thread;
+    return collector == null ? null : collector.getThread();
   }
 
   /**
-   * Gets copy of current OutputHandler lists
+   * Gets copy of the OutputHandlers in flight. Finished handlers are not kept, see
+   * getHandlerRegistry() for their statistics.
    *
-   * @return ArrayList<OutputHandler> of OutputHandler threads.
+   * @return ArrayList<OutputHandler> of OutputHandlers submitted to the HandlerPool and not yet
+   *     finished or dropped
    */
   public ArrayList<OutputHandler> getHandlers() {
-    return new ArrayList<>(handlers);
+    return source == null ? new ArrayList<OutputHandler>() : source.getHandlers();
+  }
+
+  /**
+   * Number of OutputHandlers ever created by this CollectorLC, finished or not
+   *
+   * @return long handler count
+   */
+  public long getHandlerCount() {
+    return source == null ? 0 : source.getHandlerCount();
+  }
+
+  /**
+   * Returns the registry tracking the handlers in flight, for its completion count, failure
+   * count and duration percentiles
+   *
+   * @return HandlerRegistry of this collector
+   */
+  public HandlerRegistry getHandlerRegistry() {
+    return source == null ? null : source.getHandlerRegistry();
   }
 }
@@ -1,44 +1,51 @@
-import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
-import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
-import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
-
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.NotDirectoryException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.WatchEvent;
-import java.nio.file.WatchKey;
-import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * CollectorSplunk class. Implements Runnable and is intended to be used as a thread that watches a
- * directory specified in its constructor. Creates OutputHandler for each file modification
- * detected. Thread can be stopped by either calling CollectorSplunk.stopRunning() (shuts down after
- * timeout period of 1000 milliseconds) or by creating/modifying/deleting a file called "SDN" in the
- * path specified in the constructor.
+ * CollectorSplunk class. Watches a directory specified in its constructor on a DirectoryCollector
+ * of its own, which creates OutputHandler for each file modification detected and submits it to a
+ * HandlerPool. Collector can be stopped by either calling CollectorSplunk.stopRunning() (shuts
+ * down at once) or by creating/modifying/deleting a file called "SDN" in the path specified in the
+ * constructor. With a CheckpointStore, files that arrived or were left unfinished while the
+ * orchestrator was down are handled on start.
  */
-public class CollectorSplunk implements Runnable {
+public class CollectorSplunk {
 
   private String dir;
-  private ArrayList<OutputHandler> handlers;
-  private final AtomicBoolean running = new AtomicBoolean(false);
-  private Thread thread;
-  private StaticInterpreter staticInterpreter;
+  private DirectoryCollector collector;
+  // Pipeline of the watched directory, null if it could not be registered
+  private DirectoryCollector.Source source;
+  // Events on a file within a second of the first one are duplicates
+  private final DedupCache dedupCache = new DedupCache(1000, 10000);
+
   /**
-   * Constructor for CollectorSplunk.
+   * Constructor for CollectorSplunk. OutputHandlers are run on the shared default HandlerPool.
    *
    * @param path path of directory to watch. Expects path to point to a valid directory
    * @throws NotDirectoryException if passed path does not exist or is not a directory
    */
   public CollectorSplunk(String path, StaticInterpreter staticInterpreter)
       throws NotDirectoryException {
+    this(path, staticInterpreter, HandlerPool.getDefault(), null);
+  }
+
+  /**
+   * Constructor for CollectorSplunk.
+   *
+   * @param path path of directory to watch. Expects path to point to a valid directory
+   * @param handlerPool pool that OutputHandlers are submitted to
+   * @param checkpointStore store recording which files have been handled, or null to keep no
+   *     state across restarts. Must not be located in path.
+   * @throws NotDirectoryException if passed path does not exist or is not a directory
+   */
+  public CollectorSplunk(
+      String path,
+      StaticInterpreter staticInterpreter,
+      HandlerPool handlerPool,
+      CheckpointStore checkpointStore)
+      throws NotDirectoryException {
 
     System.out.println("CollectorSplunk ... watching directory [" + path + "]");
 
@@ -48,11 +55,18 @@ public class CollectorSplunk implements Runnable {
       throw new NotDirectoryException(path);
     }
 
-    this.staticInterpreter = staticInterpreter;
     dir = path;
-    handlers = new ArrayList<OutputHandler>();
-    thread = new Thread(this);
-    thread.start();
+    try {
+      collector = new DirectoryCollector(staticInterpreter, handlerPool);
+      source = collector.addSource(path, "splunk", null, false, false, checkpointStore, dedupCache);
+    } catch (NotDirectoryException e) {
+      throw e;
+    } catch (IOException e) {
+      e.printStackTrace();
+      if (collector != null) {
+        collector.stopRunning();
+      }
+    }
   }
 
   /**
@@ -65,104 +79,77 @@ public class CollectorSplunk implements Runnable {
   }
 
   /**
-   * Gets copy of current OutputHandler list
+   * Gets copy of the OutputHandlers in flight. Finished handlers are not kept, see
+   * getHandlerRegistry() for their statistics.
    *
-   * @return ArrayList<OutputHandler> of OutputHandler threads.
+   * @return ArrayList<OutputHandler> of OutputHandlers submitted to the HandlerPool and not yet
+   *     finished or dropped
    */
   public ArrayList<OutputHandler> getHandlers() {
-    return new ArrayList<OutputHandler>(handlers);
+    return source == null ? new ArrayList<OutputHandler>() : source.getHandlers();
   }
 
   /**
-   * Get thread for this CollectorSplunk
+   * Number of OutputHandlers ever created by this CollectorSplunk, finished or not
    *
-   * @return Thread for this CollectorSplunk
+   * @return long handler count
    */
-  public Thread getThread() {
-    return thread;
+  public long getHandlerCount() {
+    return source == null ? 0 : source.getHandlerCount();
   }
 
   /**
-   * Safely stops execution of thread using AtomicBoolean running. Exits after timeout of 1000
-   * milliseconds. To interrupt without event, Thread.interrupt() needs to be called.
+   * Returns the registry tracking the handlers in flight, for its completion count, failure
+   * count and duration percentiles
+   *
+   * @return HandlerRegistry of this collector
    */
-  public void stopRunning() {
-    running.set(false);
+  public HandlerRegistry getHandlerRegistry() {
+    return source == null ? null : source.getHandlerRegistry();
   }
 
   /**
-   * Watches directory passed in constructor. When a file modification is detected, creates and
-   * stores OutputHandler thread in ArrayList handlers, passing the path to the file to the
-   * OutputHandler. Watches directory indefinitely until either CollectorSplunk.stopRunning() is
-   * called (where it will exit after a maximum of 1000 milliseconds), Thread.interrupt() is called,
-   * or shutdown signal is given in the form of a file being created/modified/deleted with the name
-   * "SDN" (Shut Down Now) in the specified path. For example, if specified path is
-   * "/home/user/Documents" and the file "SDN" (absolute path of "/home/user/Documents/SDN") is
-   * created, modified or deleted, the CollectorSplunk thread will return.
+   * Invalidate cache of file names used to eliminate duplicates
    */
-  @Override
-  public void run() {
-    running.set(true);
-    WatchService watcher;
-    try {
-      watcher = FileSystems.getDefault().newWatchService();
-
-      Path watched = Paths.get(dir);
-      watched.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
-      WatchKey key;
-
-      HashSet<String> fileNames = new HashSet<>();
-      long startTime = System.currentTimeMillis();
-
-      // Watch directory until stopRunning() is called
-      while (running.get()) {
-        // Poll the watcher for events every second
-        key = watcher.poll(1000, TimeUnit.MILLISECONDS);
-
-        // Invalidate timeCache
-        if ((System.currentTimeMillis() - startTime) > 1000) {
-          startTime = System.currentTimeMillis();
-          fileNames.clear();
-        }
-
-        if (key != null) {
-          for (WatchEvent<?> event : key.pollEvents()) {
-            WatchEvent.Kind<?> kind = event.kind();
-            WatchEvent<Path> ev = (WatchEvent<Path>) event;
-            String filename = ev.context().toString();
-
-            if (kind == OVERFLOW) {
-              continue;
-            }
-
-            File curFile = new File(dir + "/" + filename.toString());
-
-            // Create and store OutputHandler when modification detected
-            if (kind == ENTRY_MODIFY && curFile.exists() || kind == ENTRY_CREATE && curFile.exists()) {
-
-              // If file event has been cached in the last second, skip it
-              if (fileNames.contains(filename)) {
-                continue;
-              }
-              // Add current file to cache with time of event
-              fileNames.add(filename);
-              System.out.println("CollectorSplunk: Creating OutputHandler");
-
-              OutputHandler handler =
-                  new OutputHandler(dir + "/" + filename, "splunk", this.staticInterpreter);
-              handlers.add(handler);
-            }
-          }
-
-          // Ensure key has reset
-          boolean valid = key.reset();
-          if (!valid) {
-            break;
-          }
-        }
-      }
-    } catch (IOException | InterruptedException e) {
-      e.printStackTrace();
+  public void resetCache() {
+    dedupCache.clear();
+  }
+
+  /**
+   * Returns the cache used to eliminate duplicate file events, for its hit, miss and eviction
+   * counters
+   *
+   * @return DedupCache of this collector
+   */
+  public DedupCache getDedupCache() {
+    return dedupCache;
+  }
+
+  /**
+   * Returns the scanner used to recover from WatchService overflows, for its overflow and rescan
+   * counters
+   *
+   * @return DirectoryScanner of this collector
+   */
+  public DirectoryScanner getDirectoryScanner() {
+    return source == null ? null : source.getDirectoryScanner();
+  }
+
+  /**
+   * Get thread for this CollectorSplunk
+   *
+   * @return Thread for this CollectorSplunk
+   */
+  public Thread getThread() {
+    return collector == null ? null : collector.getThread();
+  }
+
+  /**
+   * Safely stops execution of thread. Exits at once, without waiting for another event.
+   */
+  public void stopRunning() {
+    if (collector != null) {
+      collector.stopRunning();
     }
   }
 }
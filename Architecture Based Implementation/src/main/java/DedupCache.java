@@ -0,0 +1,235 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * DedupCache class
+ *
+ * <p>Suppresses duplicate file events. Every key remembered expires ttl milliseconds after it was
+ * first seen, independently of other keys, instead of the whole cache being cleared at fixed
+ * intervals. The cache holds at most maxSize keys; beyond that the oldest keys are evicted early.
+ *
+ * <p>Keys are either the file name, so that any event on a file within ttl of the first one is a
+ * duplicate, or a content key made of name, size, modification time and a checksum of the first
+ * 4096 bytes, so that only events that saw exactly the same file are duplicates.
+ *
+ * <p>The cache is lock-free. As all keys live equally long, expiry order is insertion order, so a
+ * FIFO queue next to the key map finds expired and oldest keys in constant time per key.
+ */
+public class DedupCache {
+
+  // Number of bytes at the start of a file included in its content key
+  private static final int HEAD_SIZE = 4096;
+
+  private final long ttl;
+  private final int maxSize;
+  private final boolean contentKeys;
+  // Expiry time of every remembered key
+  private final ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+  // Remembered keys in insertion, and therefore expiry, order
+  private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expirations = new AtomicLong();
+
+  /**
+   * Key and the expiry time it was inserted with
+   */
+  private static class Entry {
+    private final String key;
+    private final long expiry;
+
+    Entry(String key, long expiry) {
+      this.key = key;
+      this.expiry = expiry;
+    }
+  }
+
+  /**
+   * Constructor for DedupCache keyed on file names
+   *
+   * @param ttl milliseconds a key is remembered after it was first seen
+   * @param maxSize maximum number of keys remembered
+   * @throws IllegalArgumentException if ttl or maxSize is not positive
+   */
+  public DedupCache(long ttl, int maxSize) throws IllegalArgumentException {
+    this(ttl, maxSize, false);
+  }
+
+  /**
+   * Constructor for DedupCache
+   *
+   * @param ttl milliseconds a key is remembered after it was first seen
+   * @param maxSize maximum number of keys remembered
+   * @param contentKeys if true, files are keyed on name, size, modification time and head checksum
+   *     instead of name only
+   * @throws IllegalArgumentException if ttl or maxSize is not positive
+   */
+  public DedupCache(long ttl, int maxSize, boolean contentKeys) throws IllegalArgumentException {
+    if (ttl <= 0 || maxSize <= 0) {
+      throw new IllegalArgumentException("Invalid dedup cache: ttl=" + ttl + ", max=" + maxSize);
+    }
+    this.ttl = ttl;
+    this.maxSize = maxSize;
+    this.contentKeys = contentKeys;
+  }
+
+  /**
+   * Checks if an event on a file is a duplicate of one seen within ttl, remembering the file if it
+   * is not
+   *
+   * @param file file the event is about
+   * @return true if the event is a duplicate and should be skipped
+   */
+  public boolean isDuplicate(File file) {
+    return isDuplicate(keyFor(file));
+  }
+
+  /**
+   * Checks if a key was seen within ttl, remembering it if it was not
+   *
+   * @param key key of the event
+   * @return true if the key was seen within ttl and the event should be skipped
+   */
+  public boolean isDuplicate(String key) {
+    long now = System.currentTimeMillis();
+    expire(now);
+
+    Long expiry = expiries.get(key);
+    if (expiry != null && expiry > now) {
+      hits.incrementAndGet();
+      return true;
+    }
+
+    long newExpiry = now + ttl;
+    boolean inserted =
+        expiry == null
+            ? expiries.putIfAbsent(key, newExpiry) == null
+            : expiries.replace(key, expiry, newExpiry);
+    if (!inserted) {
+      // Another thread remembered the key first
+      hits.incrementAndGet();
+      return true;
+    }
+    order.add(new Entry(key, newExpiry));
+    misses.incrementAndGet();
+    evictOverflow();
+    return false;
+  }
+
+  /**
+   * Returns the key a file is remembered under
+   *
+   * @param file file to key
+   * @return String file name, or content key if enabled and the file can be read
+   */
+  public String keyFor(File file) {
+    if (!contentKeys) {
+      return file.getName();
+    }
+    byte[] head = new byte[HEAD_SIZE];
+    int length = 0;
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      int n;
+      while (length < head.length && (n = in.read(head, length, head.length - length)) > 0) {
+        length += n;
+      }
+    } catch (IOException e) {
+      // File disappeared or is unreadable, fall back to its name
+      return file.getName();
+    }
+    CRC32 crc = new CRC32();
+    crc.update(head, 0, length);
+    return file.getName()
+        + ":" + file.length()
+        + ":" + file.lastModified()
+        + ":" + Long.toHexString(crc.getValue());
+  }
+
+  /**
+   * Forgets all keys. Counters are kept.
+   */
+  public void clear() {
+    expiries.clear();
+    order.clear();
+  }
+
+  /**
+   * Number of keys currently remembered, including expired keys not yet removed
+   *
+   * @return int number of keys
+   */
+  public int size() {
+    return expiries.size();
+  }
+
+  /**
+   * Number of events found to be duplicates
+   *
+   * @return long hit count
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Number of events found not to be duplicates
+   *
+   * @return long miss count
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Number of keys forgotten before their ttl expired because the cache was full
+   *
+   * @return long eviction count
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Number of keys forgotten because their ttl expired
+   *
+   * @return long expiration count
+   */
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  /**
+   * Removes keys whose ttl has expired from the head of the queue
+   */
+  private void expire(long now) {
+    Entry head;
+    while ((head = order.peek()) != null && head.expiry <= now) {
+      // Removing by identity, so a thread that lost the race for the head skips it
+      if (order.remove(head) && expiries.remove(head.key, head.expiry)) {
+        expirations.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Removes the oldest keys while more than maxSize keys are remembered
+   */
+  private void evictOverflow() {
+    while (expiries.size() > maxSize) {
+      Entry head = order.poll();
+      if (head == null) {
+        return;
+      }
+      if (expiries.remove(head.key, head.expiry)) {
+        evictions.incrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,749 @@
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * DirectoryCollector class
+ *
+ * <p>Collector engine that watches any number of sources on a single WatchService and a single
+ * thread. A source is a directory, optionally with all its subdirectories, whose output files
+ * come from one tool. Every source has its own pipeline: a file name pattern, a dedup cache, an
+ * optional FileTailer and CheckpointStore, and a HandlerRegistry tracking the handlers created
+ * for it while in flight. Handlers are submitted to the HandlerPool under the tool name of the
+ * source.
+ *
+ * <p>The thread blocks on the WatchService until an event arrives instead of polling it, so an
+ * idle engine does not wake up. While the HandlerPool is paused by backpressure no events are
+ * taken; they wait in the WatchService, and should it overflow the rescan finds their files.
+ * Handlers spilled to disk by the pool are recreated from their output file path. Handlers are
+ * submitted once the lock of their source is released, so a pool running overflow on the engine
+ * thread does not hold up the other threads of that source. An event that cannot be handled is
+ * reported and skipped, the thread goes on with the next one. stopRunning() closes the
+ * WatchService, which stops the thread at once. Creating, modifying or deleting a file called
+ * "SDN" in the directory of a source removes that source; the engine stops once its last source
+ * is removed.
+ */
+public class DirectoryCollector implements Runnable {
+
+  private final StaticInterpreter staticInterpreter;
+  private final HandlerPool handlerPool;
+  private final WatchService watcher;
+  // Source and directory of every registered WatchKey. Guarded by itself, so events are never
+  // taken for a key before it is known.
+  private final HashMap<WatchKey, Watched> keys = new HashMap<>();
+  private final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean running = new AtomicBoolean(true);
+  private final Thread thread;
+  // Filter shared by the handlers of all sources, null to respond to every detection
+  private volatile DetectionFilter detectionFilter;
+  // Factories added to the HandlerPool to recreate spilled handlers, by stage
+  private final HashMap<String, Function<String, Runnable>> spillFactories = new HashMap<>();
+
+  /**
+   * Directory of a source registered with the WatchService
+   */
+  private static class Watched {
+    private final Source source;
+    private final Path dir;
+
+    Watched(Source source, Path dir) {
+      this.source = source;
+      this.dir = dir;
+    }
+  }
+
+  /**
+   * Source class
+   *
+   * <p>Pipeline of one watched directory. All state of a source is guarded by the source itself,
+   * so its backlog can be handled on the thread adding it while events for other sources are
+   * handled by the engine.
+   */
+  public static class Source {
+    private final String dir;
+    private final Path path;
+    private final String toolFrom;
+    private final PathMatcher matcher;
+    private final boolean recursive;
+    // Remembers how far each file has been handled, null unless in tailing mode
+    private final FileTailer fileTailer;
+    // Records how far each file has been handled across restarts, null if not checkpointing
+    private final CheckpointStore checkpointStore;
+    private final DedupCache dedupCache;
+    // Finds the files whose events were lost on overflow, one per watched directory
+    private final HashMap<Path, DirectoryScanner> directoryScanners = new HashMap<>();
+    private final ArrayList<WatchKey> watchKeys = new ArrayList<>();
+    private final HandlerRegistry handlerRegistry = new HandlerRegistry();
+    // Shared by the handlers of the source, with the detection filter of the collector
+    private volatile HandlerContext handlerContext;
+    // Number of handlers ever dispatched
+    private final AtomicLong handlerCount = new AtomicLong();
+    // Handlers created under the lock of the source, submitted once it is released
+    private final ArrayList<OutputHandler> ready = new ArrayList<>();
+    // Paths of the files being written under a temporary name, by their final name
+    private final HashSet<String> renaming = new HashSet<>();
+
+    private Source(
+        String dir,
+        String toolFrom,
+        String pattern,
+        boolean recursive,
+        boolean tailing,
+        CheckpointStore checkpointStore,
+        DedupCache dedupCache) {
+      this.dir = dir;
+      path = Paths.get(dir);
+      this.toolFrom = toolFrom;
+      matcher = pattern == null ? null : FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+      this.recursive = recursive;
+      fileTailer = tailing ? new FileTailer() : null;
+      this.checkpointStore = checkpointStore;
+      this.dedupCache = dedupCache;
+      handlerContext = new HandlerContext(fileTailer, checkpointStore, handlerRegistry, null);
+    }
+
+    /**
+     * Returns watched directory string as passed when the source was added
+     *
+     * @return String of watched directory
+     */
+    public String getDir() {
+      return dir;
+    }
+
+    /**
+     * Returns the tool output files of this source come from
+     *
+     * @return String tool name, also the HandlerPool stage of its handlers
+     */
+    public String getToolFrom() {
+      return toolFrom;
+    }
+
+    /**
+     * Checks if subdirectories of the directory are watched as well
+     *
+     * @return true if recursive
+     */
+    public boolean isRecursive() {
+      return recursive;
+    }
+
+    /**
+     * Checks if this source only handles lines appended since the last modification
+     *
+     * @return true if in tailing mode
+     */
+    public boolean isTailing() {
+      return fileTailer != null;
+    }
+
+    /**
+     * Returns the cache used to eliminate duplicate file events of this source
+     *
+     * @return DedupCache of this source
+     */
+    public DedupCache getDedupCache() {
+      return dedupCache;
+    }
+
+    /**
+     * Returns the scanner used to recover from WatchService overflows in the top directory of this
+     * source
+     *
+     * @return DirectoryScanner of the source directory
+     */
+    public synchronized DirectoryScanner getDirectoryScanner() {
+      return directoryScanners.get(path);
+    }
+
+    /**
+     * Gets copy of the OutputHandlers in flight
+     *
+     * @return ArrayList<OutputHandler> of OutputHandlers submitted to the HandlerPool and not yet
+     *     finished or dropped
+     */
+    public ArrayList<OutputHandler> getHandlers() {
+      return handlerRegistry.getInFlight();
+    }
+
+    /**
+     * Number of OutputHandlers ever dispatched for this source, finished or not
+     *
+     * @return long handler count
+     */
+    public long getHandlerCount() {
+      return handlerCount.get();
+    }
+
+    /**
+     * Returns the registry tracking the handlers of this source, for its completion statistics
+     *
+     * @return HandlerRegistry of this source
+     */
+    public HandlerRegistry getHandlerRegistry() {
+      return handlerRegistry;
+    }
+
+    /**
+     * Checks if a file name matches the pattern of this source
+     */
+    private boolean matches(String fileName) {
+      return matcher == null || matcher.matches(Paths.get(fileName));
+    }
+  }
+
+  /**
+   * Constructor for DirectoryCollector. Starts the engine thread, which waits for sources to be
+   * added.
+   *
+   * @param staticInterpreter interpreter passed to every OutputHandler
+   * @param handlerPool pool that OutputHandlers are submitted to
+   * @throws IOException if the WatchService cannot be created
+   */
+  public DirectoryCollector(StaticInterpreter staticInterpreter, HandlerPool handlerPool)
+      throws IOException {
+    this.staticInterpreter = staticInterpreter;
+    this.handlerPool = handlerPool;
+    watcher = FileSystems.getDefault().newWatchService();
+    thread = new Thread(this);
+    thread.start();
+  }
+
+  /**
+   * Watches a directory for output files of a tool. Every file is handled, events on a file
+   * within a second of the first one are duplicates.
+   *
+   * @param dir path of directory to watch. Expects path to point to a valid directory
+   * @param toolFrom tool the output files come from
+   * @return Source added
+   * @throws NotDirectoryException if passed path does not exist or is not a directory
+   * @throws IOException if the directory cannot be registered
+   */
+  public Source addSource(String dir, String toolFrom) throws IOException {
+    return addSource(dir, toolFrom, null, false, false, null, new DedupCache(1000, 10000));
+  }
+
+  /**
+   * Watches a directory for output files of a tool. When checkpointing, files that arrived, grew
+   * or were left unfinished while the orchestrator was down are handled before this returns.
+   *
+   * @param dir path of directory to watch. Expects path to point to a valid directory
+   * @param toolFrom tool the output files come from
+   * @param pattern glob matched against file names, for example "*.json", or null to handle every
+   *     file
+   * @param recursive if true, subdirectories are watched as well, including ones created later
+   * @param tailing if true, files are treated as append-only logs and every modification only
+   *     handles the complete lines appended since the previous one
+   * @param checkpointStore store recording how far each file has been handled, or null to keep no
+   *     state across restarts. Must not be located in dir. Files are checkpointed by name, so
+   *     names must be unique across the subdirectories of a recursive source.
+   * @param dedupCache cache used to eliminate duplicate file events. Not used when tailing.
+   * @return Source added
+   * @throws NotDirectoryException if passed path does not exist or is not a directory
+   * @throws IOException if the directory cannot be registered or the backlog handled
+   */
+  public Source addSource(
+      String dir,
+      String toolFrom,
+      String pattern,
+      boolean recursive,
+      boolean tailing,
+      CheckpointStore checkpointStore,
+      DedupCache dedupCache)
+      throws IOException {
+    // Check passed directory exists and is a directory
+    File directoryToWatch = new File(dir);
+    if (!directoryToWatch.exists() || !directoryToWatch.isDirectory()) {
+      throw new NotDirectoryException(dir);
+    }
+
+    Source source =
+        new Source(dir, toolFrom, pattern, recursive, tailing, checkpointStore, dedupCache);
+    synchronized (spillFactories) {
+      if (!spillFactories.containsKey(toolFrom)) {
+        Function<String, Runnable> factory = outPath -> restore(toolFrom, outPath);
+        spillFactories.put(toolFrom, factory);
+        handlerPool.addSpillFactory(toolFrom, factory);
+      }
+    }
+    synchronized (source) {
+      sources.add(source);
+      // Read once listed, so a filter set meanwhile is not missed
+      source.handlerContext = source.handlerContext.withDetectionFilter(detectionFilter);
+      // Registered first, so files arriving while the backlog is listed are not missed
+      register(source, source.path);
+      if (checkpointStore != null) {
+        processBacklog(source);
+      }
+      // Files present now are handled by the backlog or not at all, an overflow rescan only
+      // reports changes from here on
+      for (DirectoryScanner scanner : source.directoryScanners.values()) {
+        scanner.snapshot();
+      }
+    }
+    submitReady(source);
+    return source;
+  }
+
+  /**
+   * Takes events from the WatchService and hands them to the pipeline of their source until
+   * stopRunning() is called, Thread.interrupt() is called, or the last source is removed by a
+   * shutdown signal or because its directory disappeared.
+   */
+  @Override
+  public void run() {
+    try {
+      while (running.get()) {
+        // Stop taking events while the handlers are behind
+        if (!handlerPool.awaitCapacity(1000, TimeUnit.MILLISECONDS)) {
+          continue;
+        }
+
+        WatchKey key;
+        try {
+          // Blocks until an event arrives or stopRunning() closes the watcher
+          key = watcher.take();
+        } catch (ClosedWatchServiceException e) {
+          break;
+        }
+
+        Watched watched;
+        synchronized (keys) {
+          watched = keys.get(key);
+        }
+        if (watched == null) {
+          // Key of a removed source
+          key.pollEvents();
+          continue;
+        }
+
+        Source source = watched.source;
+        synchronized (source) {
+          for (WatchEvent<?> event : key.pollEvents()) {
+            try {
+              handleEvent(source, watched.dir, event);
+            } catch (IOException | RuntimeException e) {
+              // A directory removed meanwhile, a failing checkpoint store: skip this event only
+              System.err.println(
+                  "Failed to handle " + event.kind() + " event in " + watched.dir + ": " + e);
+            }
+          }
+          if (!key.reset()) {
+            // Watched directory is gone
+            unregister(source, watched.dir, key);
+          }
+        }
+        submitReady(source);
+      }
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    } finally {
+      closeWatcher();
+      synchronized (spillFactories) {
+        for (String stage : spillFactories.keySet()) {
+          handlerPool.removeSpillFactory(stage, spillFactories.get(stage));
+        }
+      }
+    }
+  }
+
+  /**
+   * Handles a single event of a directory of a source
+   */
+  private void handleEvent(Source source, Path dir, WatchEvent<?> event) throws IOException {
+    WatchEvent.Kind<?> kind = event.kind();
+
+    // Events were dropped, find the files they were about by rescanning the directory
+    if (kind == OVERFLOW) {
+      source.directoryScanners.get(dir).recordOverflow();
+      // Subdirectories created meanwhile were lost as well
+      register(source, dir);
+      rescanTree(source, dir);
+      return;
+    }
+
+    WatchEvent<Path> ev = (WatchEvent<Path>) event;
+    String fileName = ev.context().toString();
+    File currentFile = new File(dir + "/" + fileName);
+
+    // Remove source if SDN file created
+    if (fileName.equals("SDN") && dir.equals(source.path)) {
+      // Cleanup shutdown signal
+      if (currentFile.exists()) {
+        currentFile.delete();
+      }
+      removeSource(source);
+      return;
+    }
+
+    // Files still written under a temporary name and ".done" markers are not outputs. The final
+    // name of a temporary file is remembered, so its creation tells that the writer renamed it.
+    if (FileReadiness.isTemporary(fileName)) {
+      String finalPath = dir + "/" + FileReadiness.withoutTemporarySuffix(fileName);
+      if (kind != ENTRY_DELETE) {
+        source.renaming.add(finalPath);
+      } else if (!new File(finalPath).exists()) {
+        // Deleted rather than renamed
+        source.renaming.remove(finalPath);
+      }
+      return;
+    }
+    if (FileReadiness.isMarker(fileName)) {
+      return;
+    }
+    boolean renamed = kind == ENTRY_CREATE && source.renaming.remove(dir + "/" + fileName);
+
+    // A new subdirectory is watched, and files created in it before that are handled now
+    if (kind == ENTRY_CREATE && source.recursive && currentFile.isDirectory()) {
+      Path subdir = dir.resolve(fileName);
+      register(source, subdir);
+      rescanTree(source, subdir);
+      return;
+    }
+
+    // A deleted file that is created again must be followed from its start
+    if (kind == ENTRY_DELETE) {
+      source.directoryScanners.get(dir).forget(fileName);
+      if (source.fileTailer != null) {
+        source.fileTailer.forget(dir + "/" + fileName);
+      }
+      if (source.checkpointStore != null) {
+        source.checkpointStore.remove(fileName);
+      }
+      source.renaming.remove(dir + "/" + fileName);
+      FileReadiness.getDefault().forget(dir + "/" + fileName);
+      return;
+    }
+
+    if (!source.matches(fileName)) {
+      return;
+    }
+
+    // A file renamed into the directory when complete only produces ENTRY_CREATE
+    if ((kind == ENTRY_MODIFY || kind == ENTRY_CREATE && currentFile.length() > 0)
+        && currentFile.isFile()) {
+      // Skip events on a file seen within the dedup window. When tailing every modification
+      // carries new lines, and a repeated event finds nothing new to handle.
+      if (source.fileTailer == null && isDuplicate(source, dir, currentFile)) {
+        return;
+      }
+      // A file renamed into place is complete, its handler does not wait for it to settle
+      if (renamed && source.fileTailer == null) {
+        FileReadiness.getDefault().markRenamed(dir + "/" + fileName);
+      }
+      dispatch(source, dir, fileName);
+    }
+  }
+
+  /**
+   * Handles a file found new or changed by a rescan as if a modification event had been received
+   * for it. Files already handled with the same content are skipped by the dedup cache, or by the
+   * checkpoint store when checkpointing.
+   */
+  private void handleRescanned(Source source, Path dir, String fileName) {
+    File file = new File(dir + "/" + fileName);
+    if (fileName.equals("SDN") && dir.equals(source.path)) {
+      file.delete();
+      removeSource(source);
+      return;
+    }
+    if (FileReadiness.isTemporary(fileName)
+        || FileReadiness.isMarker(fileName)
+        || !source.matches(fileName)
+        || file.length() == 0) {
+      return;
+    }
+    if (source.fileTailer == null && isDuplicate(source, dir, file)) {
+      return;
+    }
+    dispatch(source, dir, fileName);
+  }
+
+  /**
+   * Checks the dedup cache of a source for an event on a file. Files in subdirectories are keyed
+   * with their directory relative to the source, so equally named files in different
+   * subdirectories are not duplicates of each other.
+   */
+  private boolean isDuplicate(Source source, Path dir, File file) {
+    String key = source.dedupCache.keyFor(file);
+    if (!dir.equals(source.path)) {
+      key = source.path.relativize(dir) + "/" + key;
+    }
+    return source.dedupCache.isDuplicate(key);
+  }
+
+  /**
+   * Rescans a watched directory of a source and all watched directories below it, handling every
+   * file that is new or changed since it was last seen
+   */
+  private void rescanTree(Source source, Path dir) throws IOException {
+    for (Path watched : new ArrayList<>(source.directoryScanners.keySet())) {
+      if (watched.startsWith(dir)) {
+        for (String changed : source.directoryScanners.get(watched).rescan()) {
+          handleRescanned(source, watched, changed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates an OutputHandler for a file and registers it, to be submitted by submitReady() once
+   * the lock of its source is released
+   */
+  private void dispatch(Source source, Path dir, String fileName) {
+    source.handlerCount.incrementAndGet();
+    source.ready.add(newHandler(source, dir + "/" + fileName));
+    source.directoryScanners.get(dir).update(fileName);
+  }
+
+  /**
+   * Submits the handlers dispatched for a source to the HandlerPool under its tool name. Called
+   * without holding the lock of the source, as the pool may run a handler on this thread. A
+   * handler the pool refuses is reported and left to the checkpoint store or the next event.
+   */
+  private void submitReady(Source source) {
+    ArrayList<OutputHandler> handlers;
+    synchronized (source) {
+      if (source.ready.isEmpty()) {
+        return;
+      }
+      handlers = new ArrayList<>(source.ready);
+      source.ready.clear();
+    }
+    for (OutputHandler handler : handlers) {
+      try {
+        handlerPool.submit(source.toolFrom, handler);
+      } catch (RejectedExecutionException e) {
+        System.err.println("Handler pool refused a file of " + source.dir + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Creates an OutputHandler for a file of a source and registers it as in flight
+   */
+  private OutputHandler newHandler(Source source, String outPath) {
+    OutputHandler handler =
+        new OutputHandler(outPath, source.toolFrom, staticInterpreter, source.handlerContext);
+    source.handlerRegistry.register(handler, source.toolFrom);
+    return handler;
+  }
+
+  /**
+   * Recreates a handler spilled to disk by the HandlerPool from the path of its output file
+   *
+   * @param toolFrom tool the output file comes from
+   * @param outPath path to output file, as recorded by OutputHandler.toSpillRecord()
+   * @return OutputHandler for the file, or null if no source of this engine watches it
+   */
+  private Runnable restore(String toolFrom, String outPath) {
+    Path file = Paths.get(outPath);
+    for (Source source : sources) {
+      if (source.toolFrom.equals(toolFrom) && file.startsWith(source.path)) {
+        return newHandler(source, outPath);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Lists the directories of a source and dispatches every file not handled completely according
+   * to the checkpoint store: new files, files replaced or grown since their checkpoint and files
+   * whose handling was interrupted. In tailing mode files are followed on from their checkpoint
+   * offset. Checkpoints of files no longer present are dropped.
+   */
+  private void processBacklog(Source source) throws IOException {
+    ArrayList<String> present = new ArrayList<>();
+    for (Path dir : new ArrayList<>(source.directoryScanners.keySet())) {
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path entry : entries) {
+          String fileName = entry.getFileName().toString();
+          File file = entry.toFile();
+          if (!file.isFile()
+              || fileName.equals("SDN")
+              || FileReadiness.isTemporary(fileName)
+              || FileReadiness.isMarker(fileName)
+              || !source.matches(fileName)) {
+            continue;
+          }
+          present.add(fileName);
+
+          long size = file.length();
+          CheckpointStore.Checkpoint checkpoint = source.checkpointStore.get(fileName);
+          if (checkpoint != null
+              && checkpoint.getFingerprint()
+                  .equals(CheckpointStore.fingerprint(file, checkpoint.getOffset()))) {
+            if (source.fileTailer != null) {
+              // Same file as at the checkpoint, follow it from there
+              source.fileTailer.seed(dir + "/" + fileName, checkpoint.getOffset());
+            }
+            if (checkpoint.getStatus() == CheckpointStore.Status.DONE
+                && size == checkpoint.getOffset()) {
+              continue;
+            }
+          }
+          if (size > 0) {
+            dispatch(source, dir, fileName);
+          }
+        }
+      }
+    }
+    source.checkpointStore.retain(present);
+  }
+
+  /**
+   * Registers a directory of a source with the WatchService, with all its subdirectories if the
+   * source is recursive
+   */
+  private void register(final Source source, Path dir) throws IOException {
+    if (!source.recursive) {
+      registerDirectory(source, dir);
+      return;
+    }
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attributes)
+              throws IOException {
+            registerDirectory(source, subdir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /**
+   * Registers a single directory of a source with the WatchService, unless already registered
+   */
+  private void registerDirectory(Source source, Path dir) throws IOException {
+    if (source.directoryScanners.containsKey(dir)) {
+      return;
+    }
+    synchronized (keys) {
+      WatchKey key = dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      keys.put(key, new Watched(source, dir));
+      source.watchKeys.add(key);
+    }
+    source.directoryScanners.put(dir, new DirectoryScanner(dir));
+  }
+
+  /**
+   * Forgets a directory that disappeared. Removes the source if it was its top directory.
+   */
+  private void unregister(Source source, Path dir, WatchKey key) {
+    if (dir.equals(source.path)) {
+      removeSource(source);
+      return;
+    }
+    synchronized (keys) {
+      keys.remove(key);
+    }
+    source.watchKeys.remove(key);
+    source.directoryScanners.remove(dir);
+  }
+
+  /**
+   * Stops watching a source. Stops the engine if it was the last one.
+   */
+  private void removeSource(Source source) {
+    synchronized (keys) {
+      for (WatchKey key : source.watchKeys) {
+        key.cancel();
+        keys.remove(key);
+      }
+    }
+    source.watchKeys.clear();
+    sources.remove(source);
+    if (sources.isEmpty()) {
+      running.set(false);
+    }
+  }
+
+  /**
+   * Closes the WatchService, ignoring failures as nothing is watched any more
+   */
+  private void closeWatcher() {
+    try {
+      watcher.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Safely stops the engine thread. Closes the WatchService, so the thread returns without waiting
+   * for another event.
+   */
+  public void stopRunning() {
+    running.set(false);
+    closeWatcher();
+  }
+
+  /**
+   * Sets the filter skipping responses to detections already responded to, for the handlers of
+   * every source created from now on
+   *
+   * @param detectionFilter filter shared by all sources, or null to respond to every detection
+   */
+  public void setDetectionFilter(DetectionFilter detectionFilter) {
+    this.detectionFilter = detectionFilter;
+    for (Source source : sources) {
+      source.handlerContext = source.handlerContext.withDetectionFilter(detectionFilter);
+    }
+  }
+
+  /**
+   * Gets the filter of detections already responded to
+   *
+   * @return DetectionFilter, or null if there is none
+   */
+  public DetectionFilter getDetectionFilter() {
+    return detectionFilter;
+  }
+
+  /**
+   * Gets copy of current source list
+   *
+   * @return ArrayList<Source> of sources watched
+   */
+  public ArrayList<Source> getSources() {
+    return new ArrayList<>(sources);
+  }
+
+  /**
+   * Get thread of this DirectoryCollector
+   *
+   * @return Thread of this DirectoryCollector
+   */
+  public Thread getThread() {
+    return thread;
+  }
+}
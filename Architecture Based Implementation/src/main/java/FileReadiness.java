@@ -0,0 +1,271 @@
+import static java.lang.Thread.sleep;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FileReadiness class
+ *
+ * <p>Decides when a file reported by a collector has finished being written, so it can be handed
+ * to the interpreter as soon as it is complete instead of after a fixed delay. A file is ready when
+ * any of the following holds:
+ *
+ * <ul>
+ *   <li>a marker file with the same name plus ".done" exists next to it (the marker is removed)
+ *   <li>its writer renamed it from a temporary name, as reported by the collector through
+ *       markRenamed()
+ *   <li>its size and modification time have not changed for quietPeriod milliseconds and its last
+ *       line ends with a newline
+ *   <li>its size and modification time have not changed for partialLineGrace milliseconds, for
+ *       writers that do not terminate the last line
+ * </ul>
+ *
+ * <p>Every line of a JSONL file ends with a newline, so a newline alone does not tell a complete
+ * file from a writer pausing between two records; the quiet period has to outlast such pauses. A
+ * file whose writer signals completion, by a marker or a rename, is ready at once.
+ *
+ * <p>Files still carrying a temporary suffix (".tmp", ".part", ".filepart") are never ready; writers
+ * following the atomic-rename convention rename them to their final name when done.
+ */
+public class FileReadiness {
+
+  // Suffix of marker files signalling that the file without the suffix is complete
+  public static final String DONE_SUFFIX = ".done";
+  // Milliseconds a newline terminated file must stay unchanged by default
+  public static final long DEFAULT_QUIET_PERIOD = 500;
+  // Suffixes of files that are still being written and will be renamed when complete
+  private static final String[] TEMPORARY_SUFFIXES = {".tmp", ".part", ".filepart"};
+
+  private static final FileReadiness DEFAULT = new FileReadiness();
+
+  // Paths of the files renamed into place since they were last awaited
+  private final Set<String> renamed = ConcurrentHashMap.newKeySet();
+  private final long initialDelay;
+  private final long maxDelay;
+  private final long quietPeriod;
+  private final long partialLineGrace;
+  private final long timeout;
+
+  /**
+   * Constructor for FileReadiness with defaults suited to LimaCharlie and Splunk output files:
+   * first re-check after 5 ms, backing off to at most 250 ms between checks, accepting a newline
+   * terminated file after 500 ms and an unterminated last line after 1 second of no change, and
+   * giving up waiting after 60 seconds.
+   */
+  public FileReadiness() {
+    this(5, 250, 1000, 60000);
+  }
+
+  /**
+   * Constructor for FileReadiness accepting a newline terminated file after 500 ms of no change,
+   * or after partialLineGrace if shorter
+   *
+   * @param initialDelay milliseconds to wait before the first stability check
+   * @param maxDelay maximum milliseconds between stability checks
+   * @param partialLineGrace milliseconds without change after which a file whose last line is not
+   *     terminated is accepted anyway
+   * @param timeout milliseconds after which a file that keeps changing is accepted anyway
+   */
+  public FileReadiness(long initialDelay, long maxDelay, long partialLineGrace, long timeout) {
+    this(
+        initialDelay,
+        maxDelay,
+        Math.min(DEFAULT_QUIET_PERIOD, partialLineGrace),
+        partialLineGrace,
+        timeout);
+  }
+
+  /**
+   * Constructor for FileReadiness
+   *
+   * @param initialDelay milliseconds to wait before the first stability check
+   * @param maxDelay maximum milliseconds between stability checks
+   * @param quietPeriod milliseconds without change after which a file whose last line is
+   *     terminated is accepted; longer than the pauses of the writers between two lines
+   * @param partialLineGrace milliseconds without change after which a file whose last line is not
+   *     terminated is accepted anyway
+   * @param timeout milliseconds after which a file that keeps changing is accepted anyway
+   */
+  public FileReadiness(
+      long initialDelay, long maxDelay, long quietPeriod, long partialLineGrace, long timeout) {
+    this.initialDelay = initialDelay;
+    this.maxDelay = maxDelay;
+    this.quietPeriod = quietPeriod;
+    this.partialLineGrace = partialLineGrace;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Returns the instance shared by the collectors and their handlers, with the default delays
+   *
+   * @return FileReadiness shared by all handlers
+   */
+  public static FileReadiness getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * Checks if a file name belongs to a file that is still being written under a temporary name
+   *
+   * @param fileName name of the file
+   * @return true if fileName ends with a temporary suffix
+   */
+  public static boolean isTemporary(String fileName) {
+    for (String suffix : TEMPORARY_SUFFIXES) {
+      if (fileName.endsWith(suffix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the name a file still being written under a temporary name will be renamed to
+   *
+   * @param fileName name of the file
+   * @return fileName without its temporary suffix, or null if it has none
+   */
+  public static String withoutTemporarySuffix(String fileName) {
+    for (String suffix : TEMPORARY_SUFFIXES) {
+      if (fileName.endsWith(suffix)) {
+        return fileName.substring(0, fileName.length() - suffix.length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records that a file was renamed into place by its writer, so the next wait for it returns at
+   * once
+   *
+   * @param filePath path to the file, as later passed to awaitReady()
+   */
+  public void markRenamed(String filePath) {
+    renamed.add(filePath);
+  }
+
+  /**
+   * Forgets a file marked as renamed that was deleted before being awaited
+   *
+   * @param filePath path to the file
+   */
+  public void forget(String filePath) {
+    renamed.remove(filePath);
+  }
+
+  /**
+   * Checks if a file name belongs to a ".done" marker rather than to an output file
+   *
+   * @param fileName name of the file
+   * @return true if fileName ends with the marker suffix
+   */
+  public static boolean isMarker(String fileName) {
+    return fileName.endsWith(DONE_SUFFIX);
+  }
+
+  /**
+   * Blocks until the file is ready to be read, checking with exponentially increasing delays
+   * between initialDelay and maxDelay. A file marked as renamed is ready without waiting. A file
+   * that is still changing when timeout expires is accepted anyway so that a continuously written
+   * file is not held back forever.
+   *
+   * @param filePath path to the file
+   * @return true if the file is ready, false if it does not exist, disappeared, carries a
+   *     temporary name, or was still empty when timeout expired
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitReady(String filePath) throws InterruptedException {
+    File file = new File(filePath);
+    if (isTemporary(file.getName())) {
+      return false;
+    }
+    if (renamed.remove(filePath) && file.exists()) {
+      return true;
+    }
+
+    long start = System.currentTimeMillis();
+    long delay = initialDelay;
+    long lastSize = file.length();
+    long lastModified = file.lastModified();
+    long stableSince = start;
+
+    while (true) {
+      if (consumeMarker(file)) {
+        return true;
+      }
+      if (!file.exists()) {
+        return false;
+      }
+
+      sleep(delay);
+
+      long size = file.length();
+      long modified = file.lastModified();
+      long now = System.currentTimeMillis();
+
+      if (size != lastSize || modified != lastModified) {
+        // Still being written, check again after a short delay
+        lastSize = size;
+        lastModified = modified;
+        stableSince = now;
+        delay = initialDelay;
+      } else {
+        if (size > 0) {
+          if (now - stableSince >= quietPeriod && endsWithNewline(file, size)) {
+            return true;
+          }
+          if (now - stableSince >= partialLineGrace) {
+            return true;
+          }
+        }
+        delay = Math.min(delay * 2, maxDelay);
+      }
+
+      if (now - start >= timeout) {
+        if (size == 0) {
+          return false;
+        }
+        System.err.println(
+            "File still changing after " + timeout + "ms, reading anyway: " + filePath);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes the ".done" marker of a file if it exists
+   *
+   * @param file output file
+   * @return true if a marker existed
+   */
+  private boolean consumeMarker(File file) {
+    File marker = new File(file.getPath() + DONE_SUFFIX);
+    if (!marker.exists()) {
+      return false;
+    }
+    if (!marker.delete()) {
+      System.err.println("Failed to delete marker file " + marker.getPath());
+    }
+    return true;
+  }
+
+  /**
+   * Checks that the last byte of the file is a line feed, meaning the last line was written
+   * completely
+   *
+   * @param file file to check
+   * @param size size of file in bytes
+   * @return true if the last byte is '\n'
+   */
+  private boolean endsWithNewline(File file, long size) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      raf.seek(size - 1);
+      return raf.read() == '\n';
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
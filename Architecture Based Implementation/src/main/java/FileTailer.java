@@ -0,0 +1,196 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FileTailer class
+ *
+ * <p>Follows append-only output files, such as a rolling LimaCharlie log, and hands out only the
+ * complete lines appended since the previous call. For every file it remembers the byte offset
+ * read up to and the file key (inode) of the file at that offset, so that:
+ *
+ * <ul>
+ *   <li>an append costs time proportional to the appended bytes, not to the size of the file
+ *   <li>lines that were already interpreted are not interpreted, and acted on, again
+ *   <li>a file that shrank (truncated) or whose file key changed (rotated, i.e. replaced by a new
+ *       file under the same name) is read again from the start
+ * </ul>
+ *
+ * <p>A trailing line without a newline is still being written and is left for the next call.
+ */
+public class FileTailer {
+
+  // Size of the chunks read backwards when looking for the last newline
+  private static final int SCAN_CHUNK_SIZE = 8192;
+
+  private final ConcurrentHashMap<String, TailState> states = new ConcurrentHashMap<>();
+  // Lock of every file ever followed, kept when the file is forgotten so that a handler of the
+  // old file and one of a file recreated under the same name still take turns
+  private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+  /**
+   * Offset and file key of a followed file
+   */
+  private static class TailState {
+    private Object fileKey;
+    private long offset;
+  }
+
+  /**
+   * Copies the complete lines appended to a file since the last call into a new temporary segment
+   * file. The caller owns the segment and must delete it when done.
+   *
+   * @param filePath path to the followed file
+   * @return path to the segment file, or null if no complete line was appended since the last call
+   * @throws IOException if the followed file cannot be read or the segment cannot be written
+   */
+  public String readAppended(String filePath) throws IOException {
+    TailState state = getState(filePath);
+
+    // Handlers for the same file may run concurrently, only one may advance its offset at a time
+    synchronized (state) {
+      Path path = Paths.get(filePath);
+      Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+      try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+        long size = in.size();
+
+        if (state.fileKey != null && fileKey != null && !state.fileKey.equals(fileKey)) {
+          // Rotated: a different file now has this name, start from its beginning
+          state.offset = 0;
+        } else if (size < state.offset) {
+          // Truncated: the file was rewritten in place, start from its beginning
+          state.offset = 0;
+        }
+        state.fileKey = fileKey;
+
+        long end = lastLineEnd(in, state.offset, size);
+        if (end <= state.offset) {
+          return null;
+        }
+
+        File segment = File.createTempFile("tail-", "-" + path.getFileName().toString());
+        try (FileChannel out = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+          long position = state.offset;
+          while (position < end) {
+            position += in.transferTo(position, end - position, out);
+          }
+        } catch (IOException e) {
+          segment.delete();
+          throw e;
+        }
+
+        state.offset = end;
+        return segment.getPath();
+      }
+    }
+  }
+
+  /**
+   * Starts following a file from a known offset, for example one restored from a checkpoint after
+   * a restart. The file is assumed to be the one the offset was recorded for.
+   *
+   * @param filePath path to the followed file
+   * @param offset byte offset up to which the file has already been handled
+   * @throws IOException if the attributes of the file cannot be read
+   */
+  public void seed(String filePath, long offset) throws IOException {
+    TailState state = getState(filePath);
+    synchronized (state) {
+      state.fileKey = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class).fileKey();
+      state.offset = offset;
+    }
+  }
+
+  /**
+   * Returns the lock of a file. Holding it while handling a segment keeps segments of the same
+   * file from being handled concurrently or out of order, also across forget().
+   *
+   * @param filePath path to the followed file
+   * @return Object to synchronize on
+   */
+  public Object lockFor(String filePath) {
+    Object lock = locks.get(filePath);
+    if (lock == null) {
+      locks.putIfAbsent(filePath, new Object());
+      lock = locks.get(filePath);
+    }
+    return lock;
+  }
+
+  /**
+   * Stops following a file, for example after it was deleted. A file later created under the same
+   * name is read from its beginning. The lock of the file is kept.
+   *
+   * @param filePath path to the followed file
+   */
+  public void forget(String filePath) {
+    states.remove(filePath);
+  }
+
+  /**
+   * Returns the offset up to which a file has been handed out
+   *
+   * @param filePath path to the followed file
+   * @return long byte offset, 0 if the file is not followed
+   */
+  public long getOffset(String filePath) {
+    TailState state = states.get(filePath);
+    if (state == null) {
+      return 0;
+    }
+    synchronized (state) {
+      return state.offset;
+    }
+  }
+
+  private TailState getState(String filePath) {
+    TailState state = states.get(filePath);
+    if (state == null) {
+      states.putIfAbsent(filePath, new TailState());
+      state = states.get(filePath);
+    }
+    return state;
+  }
+
+  /**
+   * Finds the end of the last complete line between from and size by scanning backwards from the
+   * end of the file, so only the unterminated tail is read
+   *
+   * @param channel open channel of the followed file
+   * @param from offset already handed out
+   * @param size current size of the file
+   * @return offset just after the last '\n' at or after from, or from if there is none
+   */
+  private long lastLineEnd(FileChannel channel, long from, long size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SCAN_CHUNK_SIZE);
+    long chunkEnd = size;
+    while (chunkEnd > from) {
+      long chunkStart = Math.max(from, chunkEnd - SCAN_CHUNK_SIZE);
+      buffer.clear();
+      buffer.limit((int) (chunkEnd - chunkStart));
+      int read = 0;
+      while (buffer.hasRemaining()) {
+        int n = channel.read(buffer, chunkStart + read);
+        if (n < 0) {
+          break;
+        }
+        read += n;
+      }
+      for (int i = read - 1; i >= 0; i--) {
+        if (buffer.get(i) == '\n') {
+          return chunkStart + i + 1;
+        }
+      }
+      chunkEnd = chunkStart;
+    }
+    return from;
+  }
+}
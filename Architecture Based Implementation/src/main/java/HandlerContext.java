@@ -0,0 +1,89 @@
+/**
+ * HandlerContext class
+ *
+ * <p>What an OutputHandler shares with the other handlers of its source: the tailer remembering
+ * how far an append-only file has been handled, the store recording progress across restarts,
+ * the registry tracking the handlers in flight and the filter of detections already responded to.
+ * Each is null when the source does not use it. Built once per source by DirectoryCollector, and
+ * passed to every handler it creates.
+ *
+ * <p>Immutable; withDetectionFilter() returns a copy.
+ */
+public class HandlerContext {
+
+  // Context of a handler of its own, handling the whole file and recording nothing
+  public static final HandlerContext NONE = new HandlerContext(null, null, null, null);
+
+  private final FileTailer fileTailer;
+  private final CheckpointStore checkpointStore;
+  private final HandlerRegistry handlerRegistry;
+  private final DetectionFilter detectionFilter;
+
+  /**
+   * Constructor for HandlerContext
+   *
+   * @param fileTailer tailer remembering how far each file has been handled, or null to handle
+   *     whole files
+   * @param checkpointStore store of the collector that detected the files, or null to not record
+   *     progress
+   * @param handlerRegistry registry of the collector that detected the files, or null. Handlers
+   *     must be registered with it before being submitted.
+   * @param detectionFilter filter shared by all handlers, or null to respond to every detection
+   */
+  public HandlerContext(
+      FileTailer fileTailer,
+      CheckpointStore checkpointStore,
+      HandlerRegistry handlerRegistry,
+      DetectionFilter detectionFilter) {
+    this.fileTailer = fileTailer;
+    this.checkpointStore = checkpointStore;
+    this.handlerRegistry = handlerRegistry;
+    this.detectionFilter = detectionFilter;
+  }
+
+  /**
+   * Returns a copy of this context with another detection filter
+   *
+   * @param detectionFilter filter shared by all handlers, or null to respond to every detection
+   * @return HandlerContext differing only by its filter
+   */
+  public HandlerContext withDetectionFilter(DetectionFilter detectionFilter) {
+    return new HandlerContext(fileTailer, checkpointStore, handlerRegistry, detectionFilter);
+  }
+
+  /**
+   * Returns the tailer of an append-only source
+   *
+   * @return FileTailer, or null if whole files are handled
+   */
+  public FileTailer getFileTailer() {
+    return fileTailer;
+  }
+
+  /**
+   * Returns the store recording progress on the files
+   *
+   * @return CheckpointStore, or null if progress is not recorded
+   */
+  public CheckpointStore getCheckpointStore() {
+    return checkpointStore;
+  }
+
+  /**
+   * Returns the registry tracking the handlers in flight
+   *
+   * @return HandlerRegistry, or null if handlers are not tracked
+   */
+  public HandlerRegistry getHandlerRegistry() {
+    return handlerRegistry;
+  }
+
+  /**
+   * Returns the filter of detections already responded to
+   *
+   * @return DetectionFilter, or null to respond to every detection
+   */
+  public DetectionFilter getDetectionFilter() {
+    return detectionFilter;
+  }
+}
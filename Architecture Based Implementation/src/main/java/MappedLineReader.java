@@ -0,0 +1,232 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedLineReader class
+ *
+ * <p>Splits a file into lines without decoding it or copying it onto the heap. The file is mapped
+ * into memory with FileChannel.map and newline boundaries are located in the raw bytes; each line
+ * is handed out as a slice of the mapping, so a line costs no more than a small buffer view and a
+ * blank line costs nothing. Files larger than a single mapping (2 GB) are read through a window
+ * that is remapped as reading moves along the file.
+ *
+ * <p>A line slice is only valid until the next call to nextLine() or close(). Not thread safe.
+ */
+public class MappedLineReader implements Closeable {
+
+  // Default size of the part of the file mapped at a time
+  private static final long DEFAULT_WINDOW_SIZE = 64L * 1024 * 1024;
+
+  private final FileChannel channel;
+  // File offset where reading ends
+  private final long size;
+  private final long windowSize;
+  private MappedByteBuffer window;
+  // File offset of the first byte of window
+  private long windowStart;
+  // File offset of the start of the next line, and of the line last returned
+  private long position;
+  private long lineStart;
+  private long lineNumber;
+
+  /**
+   * Constructor for MappedLineReader
+   *
+   * @param path file to read
+   * @throws IOException if the file cannot be opened
+   */
+  public MappedLineReader(Path path) throws IOException {
+    this(path, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Constructor for MappedLineReader mapping at most windowSize bytes at a time. A window is
+   * grown, up to 2 GB, when a single line does not fit in it.
+   *
+   * @param path file to read
+   * @param windowSize bytes mapped at a time, between 1 and Integer.MAX_VALUE
+   * @throws IOException if the file cannot be opened
+   */
+  public MappedLineReader(Path path, long windowSize) throws IOException {
+    this(path, 0, Long.MAX_VALUE, windowSize);
+  }
+
+  /**
+   * Constructor for MappedLineReader reading only the lines between two offsets, for example one
+   * of several chunks of a file read in parallel. Both offsets must be at the start of a line.
+   *
+   * @param path file to read
+   * @param from file offset of the first line to read
+   * @param to file offset after the last line to read, the size of the file at most is read
+   * @param windowSize bytes mapped at a time, between 1 and Integer.MAX_VALUE
+   * @throws IOException if the file cannot be opened
+   */
+  public MappedLineReader(Path path, long from, long to, long windowSize) throws IOException {
+    if (windowSize < 1 || windowSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("windowSize must be between 1 and " + Integer.MAX_VALUE);
+    }
+    if (from < 0 || to < from) {
+      throw new IllegalArgumentException("Invalid range " + from + " to " + to);
+    }
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = Math.min(to, channel.size());
+    this.windowSize = windowSize;
+    this.position = from;
+  }
+
+  /**
+   * Returns the next line that is not blank, without its '\n' or "\r\n" terminator. Lines made of
+   * spaces, tabs and carriage returns only are skipped.
+   *
+   * @return ByteBuffer read-only slice of the mapped file holding the line, valid until the next
+   *     call, or null at the end of the file
+   * @throws IOException if a line is longer than 2 GB or the file cannot be mapped
+   */
+  public ByteBuffer nextLine() throws IOException {
+    while (position < size) {
+      if (window == null || position >= windowStart + window.limit()) {
+        map(position, windowSize);
+      }
+
+      lineStart = position;
+      int start = (int) (position - windowStart);
+      int end = indexOfNewline(start);
+      while (end < 0 && windowStart + window.limit() < size) {
+        // Line continues past the window, map again from its start with room for all of it
+        if (start == 0 && window.limit() == Integer.MAX_VALUE) {
+          throw new IOException("Line " + (lineNumber + 1) + " is longer than 2 GB");
+        }
+        long grown = start == 0 ? Math.min(2L * window.limit(), Integer.MAX_VALUE) : windowSize;
+        map(position, grown);
+        start = 0;
+        end = indexOfNewline(start);
+      }
+
+      // Last line of the file may be unterminated
+      int lineEnd = end < 0 ? window.limit() : end;
+      position = windowStart + (end < 0 ? lineEnd : end + 1);
+      lineNumber++;
+
+      int contentEnd = lineEnd;
+      if (contentEnd > start && window.get(contentEnd - 1) == '\r') {
+        contentEnd--;
+      }
+      if (isBlank(start, contentEnd)) {
+        continue;
+      }
+
+      ByteBuffer line = window.asReadOnlyBuffer();
+      line.limit(contentEnd);
+      line.position(start);
+      return line.slice();
+    }
+    return null;
+  }
+
+  /**
+   * File offset of the line last returned
+   *
+   * @return long byte offset of the start of the line
+   */
+  public long getLineStart() {
+    return lineStart;
+  }
+
+  /**
+   * Number of lines read so far, including blank lines that were skipped
+   *
+   * @return long line number of the line last returned
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Returns a reader decoding a line slice as UTF-8, for example to hand it to a JSON tokenizer
+   * without first building a String of it
+   *
+   * @param line slice returned by nextLine()
+   * @return Reader over the characters of the line
+   */
+  public static Reader newReader(ByteBuffer line) {
+    return new InputStreamReader(new ByteBufferInputStream(line), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Unmaps the file, as far as the JVM allows, and closes it
+   *
+   * @throws IOException if the file cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  private void map(long from, long length) throws IOException {
+    window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(length, size - from));
+    windowStart = from;
+  }
+
+  private int indexOfNewline(int from) {
+    for (int i = from; i < window.limit(); i++) {
+      if (window.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean isBlank(int from, int to) {
+    for (int i = from; i < to; i++) {
+      byte b = window.get(i);
+      if (b != ' ' && b != '\t' && b != '\r') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * InputStream over the remaining bytes of a ByteBuffer
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
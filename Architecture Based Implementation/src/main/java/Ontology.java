@@ -5,7 +5,21 @@ import java.util.HashMap;
 
 public class Ontology {
 
-    // input:
+    // input: action interpreted by 'StaticInterpreter'
+    // returns: False if invocation failed, true if no errors
+    boolean invoke(Action action) throws IOException {
+
+        String errorString = "ERROR";
+        // the ontology knows actions by their function name, failed actions have none
+        String function   = action.isFailed() ? errorString : action.getType().getFunction();
+        String process_id = action.getPid() == Action.NO_PID ? errorString : Long.toString(action.getPid());
+        String sid        = action.getSid() == null ? errorString : action.getSid();
+
+        System.out.println("action=" + action);
+        return invoke(function, process_id, sid, errorString, errorString, errorString);
+    }
+
+    // input: action built by hand, such as by 'Classifier'
     // returns: False if invocation failed, true if no errors
     boolean invoke(HashMap<String, String> action) throws IOException {
 
@@ -58,6 +72,11 @@ public class Ontology {
 //        System.out.println(filePath);
 
         System.out.println("action=" + action);
+        return invoke(function, process_id, sid, algorithm, features, label);
+    }
+
+    private boolean invoke(String function, String process_id, String sid,
+                           String algorithm, String features, String label) throws IOException {
         System.out.println("process_id=" + process_id);
         System.out.println("sid=" + sid);
         System.out.println("algorithm=" + algorithm);
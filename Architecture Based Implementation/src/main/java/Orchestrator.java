@@ -1,24 +1,87 @@
 import java.io.IOException;
-import java.nio.file.NotDirectoryException;
 
 /**
  * Driver class for Orchestrator.
  */
 public class Orchestrator {
 
+  private static final String USAGE =
+      "Usage: Orchestrator LC_PATH SPLUNK_PATH [--tail] [--backpressure=block|shed|spill]"
+          + " [--direct-response] [--routing-rules=PATH]";
+
   /**
    * Driver method for Orchestrator
-   * @param args Expects args[0] to be LC output path and args[1] to be Splunk output path
+   * @param args Expects args[0] to be LC output path and args[1] to be Splunk output path.
+   *             An optional "--tail" handles only the lines appended to LC output files
+   *             An optional "--backpressure=block|shed|spill" decides what happens to output files
+   *             detected while all handlers are busy and their queue is full
+   *             An optional "--direct-response" responds to LC DR detections directly, mirroring
+   *             the DR data to Splunk afterwards, instead of through Splunk reports
+   *             An optional "--routing-rules=PATH" reads the rules deciding what is done with
+   *             Splunk output files from PATH, reloaded when it changes
+   *             Progress is checkpointed next to both directories, a restart only handles the backlog
    */
     public static void main(String[] args) {
+      if (args.length < 2) {
+        System.err.println(USAGE);
+        return;
+      }
+
+      boolean directResponse = false;
+      String routingRules = "src/main/resources/SplunkRoutingRules.json";
+      for (int i = 2; i < args.length; i++) {
+        if (args[i].equals("--direct-response")) {
+          directResponse = true;
+        } else if (args[i].startsWith("--routing-rules=")) {
+          routingRules = args[i].substring("--routing-rules=".length());
+        }
+      }
 
-      StaticInterpreter staticInterpreter = new StaticInterpreter();
+      StaticInterpreter staticInterpreter = new StaticInterpreter(directResponse, routingRules);
+      // Bounded pool shared by both collectors for running OutputHandlers
+      HandlerPool handlerPool = HandlerPool.getDefault();
+      boolean tailLimaCharlie = false;
+      for (int i = 2; i < args.length; i++) {
+        if (args[i].equals("--tail")) {
+          tailLimaCharlie = true;
+        } else if (args[i].startsWith("--backpressure=")) {
+          HandlerPool.RejectionPolicy backpressure =
+              parseBackpressure(args[i].substring("--backpressure=".length()));
+          if (backpressure == null) {
+            System.err.println(USAGE);
+            return;
+          }
+          int cores = Runtime.getRuntime().availableProcessors();
+          handlerPool = new HandlerPool("handler", cores, cores * 4, 1000, backpressure);
+          // LimaCharlie output only becomes Splunk log management and reporting, which may be shed,
+          // unless it is responded to directly
+          // Splunk output becomes remediation on LimaCharlie, which never is
+          if (!directResponse) {
+            handlerPool.setLowPriority("limacharlie");
+          }
+        }
+      }
 
+      // Both output directories are watched on a single thread
+      DirectoryCollector collector = null;
       try {
-        new CollectorLC    (args[0], staticInterpreter);
-        new CollectorSplunk(args[1], staticInterpreter);
-      } catch (NotDirectoryException e) {
+        CheckpointStore lcCheckpoints     = new CheckpointStore(CheckpointStore.defaultPath(args[0]));
+        CheckpointStore splunkCheckpoints = new CheckpointStore(CheckpointStore.defaultPath(args[1]));
+
+        collector = new DirectoryCollector(staticInterpreter, handlerPool);
+        // Detections already responded to in the last 10 minutes are not responded to again
+        collector.setDetectionFilter(new DetectionFilter());
+        System.out.println("Orchestrator ... watching directory [" + args[0] + "]");
+        collector.addSource(args[0], "limacharlie", null, false, tailLimaCharlie, lcCheckpoints,
+            new DedupCache(60000, 10000));
+        System.out.println("Orchestrator ... watching directory [" + args[1] + "]");
+        collector.addSource(args[1], "splunk", null, false, false, splunkCheckpoints,
+            new DedupCache(1000, 10000));
+      } catch (IOException e) {
         e.printStackTrace();
+        if (collector != null) {
+          collector.stopRunning();
+        }
       }
 
       Classifier classifier = new Classifier();
@@ -29,4 +92,24 @@ public class Orchestrator {
       }
 
     }
+
+  /**
+   * Parses the value of "--backpressure=". Only the policies slowing down or offloading the
+   * collector are accepted, the others drop output files or fail the collector.
+   *
+   * @param value value given after "--backpressure=", in any case
+   * @return BLOCK, SHED or SPILL, or null if the value is not one of them
+   */
+  static HandlerPool.RejectionPolicy parseBackpressure(String value) {
+    switch (value.toLowerCase()) {
+      case "block":
+        return HandlerPool.RejectionPolicy.BLOCK;
+      case "shed":
+        return HandlerPool.RejectionPolicy.SHED;
+      case "spill":
+        return HandlerPool.RejectionPolicy.SPILL;
+      default:
+        return null;
+    }
+  }
 }
@@ -1,48 +1,318 @@
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 
-public class OutputHandler implements Runnable {
+public class OutputHandler implements Runnable, HandlerPool.Spillable, HandlerPool.Tracked {
+
+  // Shared by all handlers, decides when the output file has been completely written
+  private static final FileReadiness FILE_READINESS = FileReadiness.getDefault();
 
   private String outPath;
   private String toolFrom;
   private StaticInterpreter staticInterpreter;
+  // Set when outPath is an append-only file of which only new lines are handled
+  private FileTailer fileTailer;
+  // Set when progress on outPath is recorded, with the fingerprint and offset recorded
+  private CheckpointStore checkpointStore;
+  private String fingerprint;
+  private long checkpointOffset;
+  // Registry of the collector tracking this handler while in flight, or null
+  private HandlerRegistry handlerRegistry;
+  // Filter of detections already responded to, or null to respond to every one
+  private DetectionFilter detectionFilter;
+  // Set when reading the output or an action failed
+  private volatile boolean failed;
 
   /**
-   * Constructor for OutputHandler
+   * Constructor for OutputHandler. The handler does not start itself; it is submitted to a
+   * HandlerPool by the collector that detected the file.
    *
    * @param outPath path to output file to read and handle
    */
   OutputHandler(String outPath, String toolFrom, StaticInterpreter staticInterpreter) {
+    this(outPath, toolFrom, staticInterpreter, HandlerContext.NONE);
+  }
+
+  /**
+   * Constructor for OutputHandler sharing the state of the source of the file. In tailing mode
+   * only the complete lines appended to outPath since the previous handler of the same file are
+   * interpreted and acted on.
+   *
+   * @param outPath path to output file to read and handle
+   * @param context tailer, checkpoint store, registry and detection filter of the source of the
+   *     file, each null if not used. The handler must be registered with the registry before
+   *     being submitted.
+   */
+  OutputHandler(
+      String outPath,
+      String toolFrom,
+      StaticInterpreter staticInterpreter,
+      HandlerContext context) {
 
     System.out.println("OutputHandler(outPath=" + outPath + ", toolFrom=" + toolFrom + ")");
 
     this.toolFrom = toolFrom;
     this.outPath = outPath;
     this.staticInterpreter = staticInterpreter;
-    Thread thread = new Thread(this);
-    thread.start();
+    this.fileTailer = context.getFileTailer();
+    this.checkpointStore = context.getCheckpointStore();
+    this.handlerRegistry = context.getHandlerRegistry();
+    this.detectionFilter = context.getDetectionFilter();
+  }
+
+  /**
+   * Returns the path of the output file, from which the collector recreates a spilled handler
+   */
+  @Override
+  public String toSpillRecord() {
+    return outPath;
+  }
+
+  /**
+   * Reports to the registry that this handler has finished
+   *
+   * @param durationNanos time the handler ran
+   * @param failed true if run() threw
+   */
+  @Override
+  public void finished(long durationNanos, boolean failed) {
+    if (handlerRegistry != null) {
+      handlerRegistry.completed(this, durationNanos, failed || this.failed);
+    }
+  }
+
+  /**
+   * Reports to the registry that this handler will not run
+   */
+  @Override
+  public void discarded() {
+    if (handlerRegistry != null) {
+      handlerRegistry.discarded(this);
+    }
+  }
+
+  /**
+   * Checks if reading the output file or one of its actions failed
+   *
+   * @return true if failed
+   */
+  public boolean hasFailed() {
+    return failed;
   }
 
   /**
-   * Creates a thread for each arraylist of action
+   * Interprets the output file on a HandlerPool worker thread
    * uses 'toolTo' and 'toolFrom' to execute the appropriate methods for each action in arraylist
+   * In tailing mode only the lines appended since the previous handler are interpreted
+   * With a CheckpointStore, progress is recorded after every action, a file already handled
+   * completely is skipped and an interrupted file resumes after its last invoked action
    */
   @Override
   public void run() {
 
-    // Get list of actions from output
+    if (fileTailer != null) {
+      // Segments of the same file are handled one at a time and in order
+      synchronized (fileTailer.lockFor(this.outPath)) {
+        runTailing();
+      }
+      return;
+    }
+
+    // wait for stream to finish writing to the file
     try {
-      ArrayList<HashMap<String, String>> actions = staticInterpreter.interpret(this.outPath, this.toolFrom);
+      if (!FILE_READINESS.awaitReady(this.outPath)) {
+        return;
+      }
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      failed = true;
+      return;
+    }
+
+    int resumeFrom = 0;
+    if (checkpointStore != null) {
+      File outFile = new File(this.outPath);
+      try {
+        checkpointOffset = outFile.length();
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+      } catch (IOException e) {
+        e.printStackTrace();
+        failed = true;
+        return;
+      }
+      CheckpointStore.Checkpoint checkpoint = checkpointStore.get(outFile.getName());
+      if (checkpoint != null
+          && checkpoint.getOffset() == checkpointOffset
+          && checkpoint.getFingerprint().equals(fingerprint)) {
+        if (checkpoint.getStatus() == CheckpointStore.Status.DONE) {
+          // Already handled, for example before a restart
+          return;
+        }
+        resumeFrom = checkpoint.getActionsDone();
+      }
+    }
 
-      for (HashMap<String, String> curAction : actions) {
+    handle(this.outPath, resumeFrom);
+    saveDone();
+  }
 
-        // Execute action based on information returned from interpreter
-        Ontology ontology = new Ontology();
-        ontology.invoke(curAction);
+  /**
+   * Handles the lines appended to outPath since the previous handler
+   * Must hold the lock of outPath in fileTailer
+   */
+  private void runTailing() {
+
+    // Complete lines are handed out as soon as they are written, no need to wait for the file
+    String segmentPath;
+    try {
+      segmentPath = fileTailer.readAppended(this.outPath);
+    } catch (IOException e) {
+      e.printStackTrace();
+      failed = true;
+      return;
+    }
+    if (segmentPath == null) {
+      return;
+    }
+
+    File segment = new File(segmentPath);
+    try {
+      File outFile = new File(this.outPath);
+      long end = fileTailer.getOffset(this.outPath);
+      if (checkpointStore != null) {
+        // Until the segment is done, a restart handles it again from its start
+        checkpointOffset = end - segment.length();
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+        saveCheckpoint(CheckpointStore.Status.PENDING, 0);
+      }
+      handle(segmentPath, 0);
+      if (failed) {
+        // The checkpoint stays at the start of the segment, and the next handler of the file
+        // reads the segment again
+        fileTailer.seed(this.outPath, end - segment.length());
+        return;
       }
+      if (checkpointStore != null && outFile.exists()) {
+        checkpointOffset = end;
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+      }
+      saveDone();
     } catch (IOException e) {
       e.printStackTrace();
+      failed = true;
+    } finally {
+      if (segment.exists() && !segment.delete()) {
+        System.err.println("Failed to delete tail segment " + segmentPath);
+      }
+    }
+  }
+
+  /**
+   * Interprets a file and invokes the ontology for every action as soon as it is interpreted, so
+   * for Splunk output the first response does not wait for the whole file to be read
+   *
+   * @param filePath path to the output file, or to the segment of it to handle
+   * @param resumeFrom index of the first action to invoke, earlier ones were invoked before
+   */
+  private void handle(String filePath, final int resumeFrom) {
+    final Ontology ontology = new Ontology();
+
+    // Get actions from output
+    try {
+      staticInterpreter.interpret(
+          filePath,
+          this.toolFrom,
+          new StaticInterpreter.ActionListener() {
+            private int index;
+
+            @Override
+            public boolean onAction(Action action) {
+              // Stop if the file could not be interpreted, it is handled again by a later handler
+              if (index == 0 && action.isFailed()) {
+                failed = true;
+                return false;
+              }
+              // Execute action based on information returned from interpreter
+              if (index >= resumeFrom) {
+                // A detection already responded to is not responded to again
+                if (!isDuplicate(action)) {
+                  try {
+                    ontology.invoke(action);
+                  } catch (IOException e) {
+                    e.printStackTrace();
+                    failed = true;
+                    return false;
+                  }
+                  responded(action);
+                }
+                saveCheckpoint(CheckpointStore.Status.PENDING, index + 1);
+              }
+              index++;
+              return true;
+            }
+          });
+    } catch (IOException e) {
+      e.printStackTrace();
+      failed = true;
+    }
+  }
+
+  /**
+   * Checks if an action responds to a detection already responded to
+   */
+  private boolean isDuplicate(Action action) {
+    return detectionFilter != null
+        && action.getToolTo() == Action.Tool.LIMACHARLIE
+        && detectionFilter.contains(DetectionFilter.key(action));
+  }
+
+  /**
+   * Remembers the detection of an action once the ontology invoked it, so a failed response is
+   * retried
+   */
+  private void responded(Action action) {
+    if (detectionFilter != null && action.getToolTo() == Action.Tool.LIMACHARLIE) {
+      detectionFilter.record(DetectionFilter.key(action));
+    }
+  }
+
+  /**
+   * Records progress on outPath, if checkpointing
+   *
+   * @param status processing status
+   * @param actionsDone number of actions invoked
+   */
+  private void saveCheckpoint(CheckpointStore.Status status, int actionsDone) {
+    if (checkpointStore == null) {
+      return;
+    }
+    try {
+      checkpointStore.record(
+          new File(this.outPath).getName(), fingerprint, checkpointOffset, status, actionsDone);
+    } catch (IOException e) {
+      e.printStackTrace();
+      failed = true;
+    }
+  }
+
+  /**
+   * Records outPath as handled, or forgets it if it was deleted meanwhile, if checkpointing.
+   * Does nothing if handling failed, so the checkpoint stays PENDING after the last action done
+   * and the file is handled again after a restart
+   */
+  private void saveDone() {
+    if (checkpointStore == null || failed) {
+      return;
+    }
+    File outFile = new File(this.outPath);
+    if (outFile.exists()) {
+      saveCheckpoint(CheckpointStore.Status.DONE, 0);
+    } else {
+      try {
+        checkpointStore.remove(outFile.getName());
+      } catch (IOException e) {
+        e.printStackTrace();
+        failed = true;
+      }
     }
   }
 }
@@ -0,0 +1,290 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DetectionFilter class
+ *
+ * <p>Suppresses responses to detections that were already responded to within a time window, for
+ * example when LimaCharlie emits a detection again or a Splunk alert fires again for the same
+ * process. A detection is identified by its response: the action, the sensor and the process or
+ * file acted on, see key(Action).
+ *
+ * <p>Recent detections are remembered exactly in a small LRU map. Behind it, every detection of
+ * the window is remembered in a Bloom filter of fixed size, split into time slices: a detection is
+ * added to the current slice, looked up in all of them, and the oldest slice is cleared when a new
+ * one starts. Memory therefore stays constant however many detections arrive, and a detection is
+ * forgotten between window * (slices - 1) / slices and window after it was last seen. The Bloom
+ * filter may take a new detection for a duplicate with a probability of at most the configured
+ * false positive rate, as long as no more than the expected number of detections arrive per
+ * window.
+ *
+ * <p>Thread safe.
+ */
+public class DetectionFilter {
+
+  private static final long DEFAULT_WINDOW = 10 * 60 * 1000;
+  private static final int DEFAULT_LRU_CAPACITY = 10000;
+  private static final int DEFAULT_EXPECTED_PER_WINDOW = 100000;
+  private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.0001;
+  private static final int DEFAULT_SLICES = 4;
+
+  private final long window;
+  private final long sliceLength;
+  // Exactly remembered detections, with the time they were last seen
+  private final LinkedHashMap<String, Long> recent;
+  // Bits of every slice, slices[current] being added to
+  private final long[][] slices;
+  private final int bitsPerSlice;
+  private final int hashes;
+  private int current;
+  // Start of the current slice, -1 before the first detection
+  private long sliceStart = -1;
+
+  private long passed;
+  private long suppressedExact;
+  private long suppressedFiltered;
+
+  /**
+   * Constructor for DetectionFilter remembering detections for 10 minutes, sized for 100000
+   * detections in that time with a false positive rate of 0.01%
+   */
+  public DetectionFilter() {
+    this(
+        DEFAULT_WINDOW,
+        DEFAULT_LRU_CAPACITY,
+        DEFAULT_EXPECTED_PER_WINDOW,
+        DEFAULT_FALSE_POSITIVE_RATE,
+        DEFAULT_SLICES);
+  }
+
+  /**
+   * Constructor for DetectionFilter
+   *
+   * @param window milliseconds a detection is remembered for
+   * @param lruCapacity number of recent detections remembered exactly
+   * @param expectedPerWindow number of distinct detections expected per window
+   * @param falsePositiveRate highest probability of suppressing a new detection, between 0 and 1
+   * @param slices number of time slices the window is split into, at least 2
+   */
+  public DetectionFilter(
+      long window,
+      final int lruCapacity,
+      int expectedPerWindow,
+      double falsePositiveRate,
+      int slices) {
+    if (window < slices || lruCapacity < 1 || expectedPerWindow < 1 || slices < 2) {
+      throw new IllegalArgumentException("Invalid detection filter size");
+    }
+    if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+    }
+    this.window = window;
+    this.sliceLength = window / slices;
+    this.recent =
+        new LinkedHashMap<String, Long>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > lruCapacity;
+          }
+        };
+
+    // A key is looked up in every slice, so each slice gets a share of the false positive rate.
+    // Detections may all arrive within one slice, so every slice is sized for a whole window.
+    double sliceRate = falsePositiveRate / slices;
+    double ln2 = Math.log(2);
+    long bits = (long) Math.ceil(-expectedPerWindow * Math.log(sliceRate) / (ln2 * ln2));
+    this.bitsPerSlice = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+    this.hashes =
+        Math.max(1, (int) Math.round((double) bitsPerSlice / expectedPerWindow * ln2));
+    this.slices = new long[slices][(bitsPerSlice + 63) / 64];
+  }
+
+  /**
+   * Makes the key identifying the detection an action responds to
+   *
+   * @param action response to a detection
+   * @return String action, sensor and process id or file path
+   */
+  public static String key(Action action) {
+    String target =
+        action.getPid() != Action.NO_PID ? Long.toString(action.getPid()) : action.getFilePath();
+    return action.getType().getName() + "\n" + action.getSid() + "\n" + target;
+  }
+
+  /**
+   * Checks if a detection is seen for the first time within the window, and remembers it
+   *
+   * @param key detection, see key(Action)
+   * @return true if it is new and must be responded to, false if it is a duplicate
+   */
+  public boolean firstSeen(String key) {
+    return firstSeen(key, System.currentTimeMillis());
+  }
+
+  /**
+   * Checks if a detection is seen for the first time within the window, and remembers it
+   *
+   * @param key detection, see key(Action)
+   * @param now current time in milliseconds
+   * @return true if it is new and must be responded to, false if it is a duplicate
+   */
+  public synchronized boolean firstSeen(String key, long now) {
+    if (contains(key, now)) {
+      return false;
+    }
+    record(key, now);
+    return true;
+  }
+
+  /**
+   * Checks if a detection was responded to within the window, without remembering it. A response
+   * that may fail is checked with contains() and remembered with record() once it succeeded, so
+   * the detection is responded to again after a failure.
+   *
+   * @param key detection, see key(Action)
+   * @return true if it is a duplicate and must not be responded to
+   */
+  public boolean contains(String key) {
+    return contains(key, System.currentTimeMillis());
+  }
+
+  /**
+   * Checks if a detection was responded to within the window, without remembering it
+   *
+   * @param key detection, see key(Action)
+   * @param now current time in milliseconds
+   * @return true if it is a duplicate and must not be responded to
+   */
+  public synchronized boolean contains(String key, long now) {
+    rotate(now);
+
+    Long seen = recent.get(key);
+    if (seen != null && now - seen < window) {
+      suppressedExact++;
+      return true;
+    }
+
+    long hash = hash(key);
+    if (seen == null && contains((int) hash, (int) (hash >>> 32))) {
+      suppressedFiltered++;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remembers a detection as responded to
+   *
+   * @param key detection, see key(Action)
+   */
+  public void record(String key) {
+    record(key, System.currentTimeMillis());
+  }
+
+  /**
+   * Remembers a detection as responded to
+   *
+   * @param key detection, see key(Action)
+   * @param now current time in milliseconds
+   */
+  public synchronized void record(String key, long now) {
+    rotate(now);
+
+    long hash = hash(key);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    long[] bits = slices[current];
+    for (int i = 0; i < hashes; i++) {
+      int bit = index(h1, h2, i);
+      bits[bit >>> 6] |= 1L << bit;
+    }
+    recent.put(key, now);
+    passed++;
+  }
+
+  /**
+   * Counts of detections checked
+   *
+   * @return HashMap<String, Long> metric values by name: "passed", "suppressed.exact" for
+   *     duplicates found in the LRU map, "suppressed.filtered" for duplicates found in the Bloom
+   *     filter, and "filter.bytes", the memory used by the Bloom filter
+   */
+  public synchronized HashMap<String, Long> getMetrics() {
+    HashMap<String, Long> metrics = new HashMap<>();
+    metrics.put("passed", passed);
+    metrics.put("suppressed.exact", suppressedExact);
+    metrics.put("suppressed.filtered", suppressedFiltered);
+    metrics.put("filter.bytes", (long) slices.length * slices[0].length * 8);
+    return metrics;
+  }
+
+  /**
+   * Number of duplicate detections suppressed
+   *
+   * @return long count
+   */
+  public synchronized long getSuppressedCount() {
+    return suppressedExact + suppressedFiltered;
+  }
+
+  /**
+   * Starts new slices for the time elapsed since the current one started, clearing the slices
+   * they replace
+   */
+  private void rotate(long now) {
+    if (sliceStart < 0) {
+      sliceStart = now;
+      return;
+    }
+    long elapsed = (now - sliceStart) / sliceLength;
+    if (elapsed <= 0) {
+      return;
+    }
+    for (long i = 0; i < Math.min(elapsed, slices.length); i++) {
+      current = (current + 1) % slices.length;
+      Arrays.fill(slices[current], 0);
+    }
+    sliceStart += elapsed * sliceLength;
+  }
+
+  private boolean contains(int h1, int h2) {
+    for (long[] bits : slices) {
+      boolean all = true;
+      for (int i = 0; i < hashes && all; i++) {
+        int bit = index(h1, h2, i);
+        all = (bits[bit >>> 6] & (1L << bit)) != 0;
+      }
+      if (all) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Bit of the i-th hash, by double hashing
+   */
+  private int index(int h1, int h2, int i) {
+    int combined = h1 + i * h2;
+    return (combined & Integer.MAX_VALUE) % bitsPerSlice;
+  }
+
+  /**
+   * 64 bit FNV-1a hash of the characters of a key, with a final mix so both halves are usable
+   */
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
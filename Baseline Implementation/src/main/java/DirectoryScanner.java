@@ -0,0 +1,219 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DirectoryScanner class
+ *
+ * <p>Recovers file events lost when a WatchService reports OVERFLOW. Keeps the size, modification
+ * time and file key last seen for every regular file in a directory, and on rescan lists the
+ * directory and returns only the files that are new or changed since. Each entry costs a single
+ * attribute read compared against the cached attributes, no file is opened, so a rescan of a
+ * directory with many unchanged files stays cheap.
+ *
+ * <p>Counts overflow events and rescans and keeps their durations, so watched directories can be
+ * tuned. Intended to be used from the single collector thread that owns the WatchService; the
+ * counters may be read from any thread.
+ */
+public class DirectoryScanner {
+
+  private final Path dir;
+  // Attributes of every file as last seen
+  private final HashMap<String, FileState> seen = new HashMap<>();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private final AtomicLong rescanCount = new AtomicLong();
+  private final AtomicLong rescannedFiles = new AtomicLong();
+  private final AtomicLong lastRescanMillis = new AtomicLong();
+  private final AtomicLong maxRescanMillis = new AtomicLong();
+  private final AtomicLong totalRescanMillis = new AtomicLong();
+
+  /**
+   * Attributes of a file that change when it is written or replaced
+   */
+  private static class FileState {
+    private final long size;
+    private final long modified;
+    private final Object fileKey;
+
+    FileState(BasicFileAttributes attributes) {
+      size = attributes.size();
+      modified = attributes.lastModifiedTime().toMillis();
+      fileKey = attributes.fileKey();
+    }
+
+    boolean sameAs(FileState other) {
+      return size == other.size
+          && modified == other.modified
+          && (fileKey == null ? other.fileKey == null : fileKey.equals(other.fileKey));
+    }
+  }
+
+  /**
+   * Constructor for DirectoryScanner
+   *
+   * @param dir directory to scan
+   */
+  public DirectoryScanner(Path dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Lists the directory, remembering the attributes of every regular file without reporting any,
+   * so that a later rescan only reports what changed after this point
+   *
+   * @throws IOException if the directory cannot be listed
+   */
+  public void snapshot() throws IOException {
+    scan();
+  }
+
+  /**
+   * Lists the directory and returns the regular files that are new or whose size, modification
+   * time or file key changed since they were last seen. Files no longer present are forgotten.
+   * Counted as a rescan.
+   *
+   * @return ArrayList<String> names of new and changed files
+   * @throws IOException if the directory cannot be listed
+   */
+  public ArrayList<String> rescan() throws IOException {
+    long start = System.currentTimeMillis();
+    ArrayList<String> changed = scan();
+    long duration = System.currentTimeMillis() - start;
+
+    rescanCount.incrementAndGet();
+    rescannedFiles.addAndGet(changed.size());
+    lastRescanMillis.set(duration);
+    totalRescanMillis.addAndGet(duration);
+    long max;
+    while (duration > (max = maxRescanMillis.get())) {
+      if (maxRescanMillis.compareAndSet(max, duration)) {
+        break;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Remembers the current attributes of a file reported by a regular event, so a later rescan
+   * does not report it again. Forgets the file if it no longer exists.
+   *
+   * @param fileName name of the file in the directory
+   */
+  public void update(String fileName) {
+    try {
+      BasicFileAttributes attributes =
+          Files.readAttributes(dir.resolve(fileName), BasicFileAttributes.class);
+      seen.put(fileName, new FileState(attributes));
+    } catch (IOException e) {
+      seen.remove(fileName);
+    }
+  }
+
+  /**
+   * Forgets a file, for example after it was deleted
+   *
+   * @param fileName name of the file in the directory
+   */
+  public void forget(String fileName) {
+    seen.remove(fileName);
+  }
+
+  /**
+   * Counts an OVERFLOW event reported by the WatchService
+   */
+  public void recordOverflow() {
+    overflowCount.incrementAndGet();
+  }
+
+  /**
+   * Number of OVERFLOW events
+   *
+   * @return long overflow count
+   */
+  public long getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  /**
+   * Number of rescans
+   *
+   * @return long rescan count
+   */
+  public long getRescanCount() {
+    return rescanCount.get();
+  }
+
+  /**
+   * Number of new or changed files found by all rescans together
+   *
+   * @return long file count
+   */
+  public long getRescannedFiles() {
+    return rescannedFiles.get();
+  }
+
+  /**
+   * Duration of the last rescan
+   *
+   * @return long milliseconds
+   */
+  public long getLastRescanMillis() {
+    return lastRescanMillis.get();
+  }
+
+  /**
+   * Duration of the longest rescan
+   *
+   * @return long milliseconds
+   */
+  public long getMaxRescanMillis() {
+    return maxRescanMillis.get();
+  }
+
+  /**
+   * Duration of all rescans together
+   *
+   * @return long milliseconds
+   */
+  public long getTotalRescanMillis() {
+    return totalRescanMillis.get();
+  }
+
+  /**
+   * Lists the directory, updates the remembered attributes and returns new and changed files
+   */
+  private ArrayList<String> scan() throws IOException {
+    ArrayList<String> changed = new ArrayList<>();
+    HashSet<String> present = new HashSet<>();
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+      for (Path entry : entries) {
+        BasicFileAttributes attributes;
+        try {
+          attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+          // Deleted between listing and reading its attributes
+          continue;
+        }
+        if (!attributes.isRegularFile()) {
+          continue;
+        }
+        String fileName = entry.getFileName().toString();
+        present.add(fileName);
+
+        FileState state = new FileState(attributes);
+        FileState previous = seen.put(fileName, state);
+        if (previous == null || !previous.sameAs(state)) {
+          changed.add(fileName);
+        }
+      }
+    }
+    seen.keySet().retainAll(present);
+    return changed;
+  }
+}
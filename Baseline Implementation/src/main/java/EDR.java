@@ -1,12 +1,31 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * EDR Interface
  *
  * Describes the methods that EDR tools should implement if they are to be used apart of Orchestrator
+ *
+ * The batch methods send the command of every item by default; tools able to send many commands
+ * at once override them. The asynchronous methods run the blocking method on a thread shared by
+ * all tools by default, failing the future at its deadline and interrupting the thread when the
+ * future fails or is cancelled; tools able to send commands in the background override them.
  */
 public interface EDR {
 
@@ -87,4 +106,205 @@ public interface EDR {
    * @throws IOException if file for certain tools cannot be found
    */
   List<String> getProcesses(String identifier) throws IOException;
+
+  /**
+   * Kills processes on many nodes
+   *
+   * @param pids process ids of the processes to be killed, by identifier of their node
+   * @return by identifier of node, true for every process whose kill command was sent
+   *     successfully, else false, in the order of pids
+   */
+  default Map<String, List<Boolean>> killProcesses(Map<String, List<String>> pids) {
+    Map<String, List<Boolean>> results = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> node : pids.entrySet()) {
+      List<Boolean> nodeResults = new ArrayList<>();
+      for (String pid : node.getValue()) {
+        try {
+          nodeResults.add(killProcess(node.getKey(), pid));
+        } catch (IOException e) {
+          e.printStackTrace();
+          nodeResults.add(false);
+        }
+      }
+      results.put(node.getKey(), nodeResults);
+    }
+    return results;
+  }
+
+  /**
+   * Deletes files from many nodes
+   *
+   * @param fileNames names of the files to be deleted, by identifier of their node
+   * @return by identifier of node, true for every file whose delete command was sent
+   *     successfully, else false, in the order of fileNames
+   */
+  default Map<String, List<Boolean>> deleteFiles(Map<String, List<String>> fileNames) {
+    Map<String, List<Boolean>> results = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> node : fileNames.entrySet()) {
+      List<Boolean> nodeResults = new ArrayList<>();
+      for (String fileName : node.getValue()) {
+        try {
+          nodeResults.add(deleteFile(node.getKey(), fileName));
+        } catch (IOException e) {
+          e.printStackTrace();
+          nodeResults.add(false);
+        }
+      }
+      results.put(node.getKey(), nodeResults);
+    }
+    return results;
+  }
+
+  /**
+   * Isolates many nodes from the network
+   *
+   * @param identifiers identifiers of the nodes to be isolated from the network
+   * @return by identifier of node, true if its command was sent successfully, else false
+   */
+  default Map<String, Boolean> isolateNodes(Collection<String> identifiers) {
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (String identifier : identifiers) {
+      try {
+        results.put(identifier, isolateNode(identifier));
+      } catch (IOException e) {
+        e.printStackTrace();
+        results.put(identifier, false);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Kills a process on a node without waiting for it
+   *
+   * @param identifier identifier of node that a process kill command will be sent to
+   * @param pid the process id of the process to be killed
+   * @param timeout milliseconds the command may take, after which it fails with a
+   *     TimeoutException
+   * @return future of true if command sent successfully, else false
+   */
+  default CompletableFuture<Boolean> killProcessAsync(String identifier, String pid, long timeout) {
+    return Deadlines.run(() -> killProcess(identifier, pid), timeout);
+  }
+
+  /**
+   * Deletes a file from node without waiting for it
+   *
+   * @param identifier used to identify the node to delete the file from
+   * @param fileName name of file to be deleted
+   * @param timeout milliseconds the command may take, after which it fails with a
+   *     TimeoutException
+   * @return future of true if command successfully sent, else false
+   */
+  default CompletableFuture<Boolean> deleteFileAsync(
+      String identifier, String fileName, long timeout) {
+    return Deadlines.run(() -> deleteFile(identifier, fileName), timeout);
+  }
+
+  /**
+   * Isolates a node from the network without waiting for it
+   *
+   * @param identifier identifier of the node to be isolated from the network
+   * @param timeout milliseconds the command may take, after which it fails with a
+   *     TimeoutException
+   * @return future of true if command sent successfully, else false
+   */
+  default CompletableFuture<Boolean> isolateNodeAsync(String identifier, long timeout) {
+    return Deadlines.run(() -> isolateNode(identifier), timeout);
+  }
+
+  /**
+   * Allows a node to rejoin the network without waiting for it
+   *
+   * @param identifier identifier of the node to be reconnected to the network
+   * @param timeout milliseconds the command may take, after which it fails with a
+   *     TimeoutException
+   * @return future of true if command sent successfully, else false
+   */
+  default CompletableFuture<Boolean> rejoinNodeAsync(String identifier, long timeout) {
+    return Deadlines.run(() -> rejoinNode(identifier), timeout);
+  }
+
+  /**
+   * Gets the list of processes running on a node without waiting for it
+   *
+   * @param identifier identifier of node to get the list of processes from
+   * @param timeout milliseconds the command may take, after which it fails with a
+   *     TimeoutException
+   * @return future of the list of processes running on the given node
+   */
+  default CompletableFuture<List<String>> getProcessesAsync(String identifier, long timeout) {
+    return Deadlines.run(() -> getProcesses(identifier), timeout);
+  }
+
+  /**
+   * Runs the blocking commands of the default asynchronous methods, each on a daemon thread of
+   * its own, and fails them at their deadline
+   */
+  final class Deadlines {
+    private static final ExecutorService COMMANDS =
+        Executors.newCachedThreadPool(daemonThreads("edr-command"));
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    private Deadlines() {}
+
+    /**
+     * Runs a blocking command without waiting for it
+     *
+     * @param command blocking command
+     * @param timeout milliseconds the command may take
+     * @return future of the result of the command, failed with a TimeoutException once timeout
+     *     has passed. The command is interrupted when the future fails or is cancelled.
+     */
+    static <T> CompletableFuture<T> run(Callable<T> command, long timeout) {
+      CompletableFuture<T> result = new CompletableFuture<>();
+      Future<?> running =
+          COMMANDS.submit(
+              () -> {
+                try {
+                  result.complete(command.call());
+                } catch (Exception e) {
+                  result.completeExceptionally(e);
+                }
+              });
+      ScheduledFuture<?> deadline =
+          TIMER.schedule(
+              () ->
+                  result.completeExceptionally(
+                      new TimeoutException("EDR command timed out after " + timeout + " ms")),
+              timeout,
+              TimeUnit.MILLISECONDS);
+      result.whenComplete(
+          (value, e) -> {
+            deadline.cancel(false);
+            if (e != null) {
+              running.cancel(true);
+            }
+          });
+      return result;
+    }
+
+    /**
+     * Creates the timer failing the commands at their deadline, on a single daemon thread
+     */
+    private static ScheduledThreadPoolExecutor newTimer() {
+      ScheduledThreadPoolExecutor timer =
+          new ScheduledThreadPoolExecutor(1, daemonThreads("edr-deadline"));
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
+    }
+
+    /**
+     * Creates the factory of the daemon threads of the commands and the timer
+     *
+     * @param name name of the threads
+     */
+    private static ThreadFactory daemonThreads(String name) {
+      return runnable -> {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      };
+    }
+  }
 }
@@ -0,0 +1,231 @@
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EDRRegistry class
+ *
+ * <p>EDR clients shared by all handler threads, one per tenant. A tenant is an organisation with a
+ * credentials file of its own, named by its organisation id so that an action is sent with the
+ * credentials of the organisation of its sensor. While a single tenant is registered, it is also
+ * used for actions of any other organisation, as they come from a deployment with one
+ * organisation. Once there are several, an action of an organisation without credentials gets no
+ * client and fails, instead of running with the API key of another organisation. A client is
+ * built and validated once, when its tenant is registered, instead of for every action.
+ *
+ * <p>The credentials files are watched on a thread of their own. When the content of one changes,
+ * a new client is built from it and replaces the old one, which is closed once the commands
+ * running on it have finished. A file that is missing or invalid after a change, for example while
+ * it is being written, leaves the old client in place.
+ *
+ * <p>Thread safe.
+ */
+public class EDRRegistry implements Closeable {
+
+  /**
+   * Builds the client of a credentials file
+   */
+  public interface ClientFactory {
+
+    /**
+     * Builds and validates a client
+     *
+     * @param credentialsPath path to the credentials file
+     * @return EDR client
+     * @throws IOException if the credentials are missing or invalid
+     */
+    EDR create(String credentialsPath) throws IOException;
+  }
+
+  private static EDRRegistry defaultRegistry;
+
+  private final ClientFactory factory;
+  private final WatchService watcher;
+  private final Thread thread;
+  private final ConcurrentHashMap<String, EDR> clients = new ConcurrentHashMap<>();
+  // Tenant and content of every credentials file, by absolute path. Guarded by this.
+  private final HashMap<Path, String> tenants = new HashMap<>();
+  private final HashMap<Path, byte[]> contents = new HashMap<>();
+  private final HashSet<Path> watchedDirs = new HashSet<>();
+
+  /**
+   * Constructor for EDRRegistry. Starts the thread watching the credentials files.
+   *
+   * @param factory builds the clients of the tenants
+   * @throws IOException if the file system cannot be watched
+   */
+  public EDRRegistry(ClientFactory factory) throws IOException {
+    this.factory = factory;
+    this.watcher = FileSystems.getDefault().newWatchService();
+    this.thread = new Thread(this::watch, "edr-credentials");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the registry shared by all handlers. Created on first use with a LimaCharlie client
+   * for the credentials in LimaCharlie.DEFAULT_CREDENTIALS_PATH as its first tenant.
+   *
+   * @return shared EDRRegistry
+   * @throws IOException if the default credentials or python script are missing or invalid, in
+   *     which case the next call tries again
+   */
+  public static synchronized EDRRegistry getDefault() throws IOException {
+    if (defaultRegistry == null) {
+      EDRRegistry registry =
+          new EDRRegistry(path -> new LimaCharlie(path, LimaCharlie.DEFAULT_SCRIPT_PATH));
+      try {
+        String oid = LimaCharlie.getCredentials(LimaCharlie.DEFAULT_CREDENTIALS_PATH).get("OID");
+        registry.register(oid, LimaCharlie.DEFAULT_CREDENTIALS_PATH);
+      } catch (IOException e) {
+        registry.close();
+        throw e;
+      }
+      defaultRegistry = registry;
+    }
+    return defaultRegistry;
+  }
+
+  /**
+   * Builds the client of a tenant and watches its credentials file. Replaces the client of a
+   * tenant registered before.
+   *
+   * @param tenant name of the tenant, its organisation id
+   * @param credentialsPath path to the credentials file of the tenant
+   * @return EDR client of the tenant
+   * @throws IOException if the credentials are missing or invalid
+   */
+  public synchronized EDR register(String tenant, String credentialsPath) throws IOException {
+    Path file = Paths.get(credentialsPath).toAbsolutePath().normalize();
+    byte[] content = Files.readAllBytes(file);
+    EDR client = factory.create(file.toString());
+
+    Path dir = file.getParent();
+    if (!watchedDirs.contains(dir)) {
+      dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+      watchedDirs.add(dir);
+    }
+    tenants.put(file, tenant);
+    contents.put(file, content);
+    closeClient(clients.put(tenant, client));
+    return client;
+  }
+
+  /**
+   * Returns the client of a tenant
+   *
+   * @param tenant organisation id of the tenant, or null
+   * @return EDR client of the tenant, of the only tenant if it is not registered and a single one
+   *     is, or null
+   */
+  public EDR get(String tenant) {
+    EDR client = tenant == null ? null : clients.get(tenant);
+    if (client == null && clients.size() == 1) {
+      // Tenants are never removed, so the only one stays registered
+      for (EDR only : clients.values()) {
+        client = only;
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Rebuilds the client of a credentials file if its content changed
+   *
+   * @param credentialsPath path to a registered credentials file
+   * @return true if the client was replaced, false if the file is not registered, did not change
+   *     or is missing or invalid
+   */
+  public synchronized boolean reload(String credentialsPath) {
+    Path file = Paths.get(credentialsPath).toAbsolutePath().normalize();
+    String tenant = tenants.get(file);
+    if (tenant == null || !Files.isRegularFile(file)) {
+      return false;
+    }
+    try {
+      byte[] content = Files.readAllBytes(file);
+      if (Arrays.equals(content, contents.get(file))) {
+        return false;
+      }
+      EDR client = factory.create(file.toString());
+      contents.put(file, content);
+      closeClient(clients.put(tenant, client));
+      return true;
+    } catch (IOException e) {
+      System.err.println("Keeping the credentials of " + tenant + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Stops watching the credentials files and closes all clients
+   */
+  @Override
+  public void close() {
+    try {
+      watcher.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    for (EDR client : clients.values()) {
+      closeClient(client);
+    }
+  }
+
+  /**
+   * Reloads the credentials files changed, until the registry is closed
+   */
+  private void watch() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watcher.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path dir = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == OVERFLOW) {
+          // Changes were lost, check every file
+          ArrayList<Path> files;
+          synchronized (this) {
+            files = new ArrayList<>(tenants.keySet());
+          }
+          for (Path file : files) {
+            reload(file.toString());
+          }
+        } else {
+          reload(dir.resolve((Path) event.context()).toString());
+        }
+      }
+      key.reset();
+    }
+  }
+
+  private static void closeClient(EDR client) {
+    if (client instanceof Closeable) {
+      try {
+        ((Closeable) client).close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+}
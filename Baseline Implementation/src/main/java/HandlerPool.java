@@ -0,0 +1,927 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * HandlerPool class
+ *
+ * <p>Shared, bounded worker pool that collectors submit OutputHandler tasks to. Replaces starting a
+ * new Thread for every detected file, so a burst of file events is capped at maxSize running
+ * handlers plus queueCapacity waiting ones. Every task is submitted under a stage name (the tool
+ * the file came from) and the pool keeps queue-depth and active-thread gauges per stage.
+ *
+ * <p>The pool applies backpressure to its submitters. Once the backlog (queued plus spilled tasks)
+ * reaches the high watermark the pool is paused, and awaitCapacity() blocks collectors until the
+ * backlog has drained to the low watermark, so they stop taking file events instead of piling up
+ * handlers. What happens to a task submitted while threads and queue are exhausted is decided by
+ * the RejectionPolicy: besides the executor policies, the collector can be blocked, tasks of low
+ * priority stages shed, or tasks spilled to disk and resubmitted once the queue has drained.
+ * Queue depth, time submitters spent blocked, and drops and spills per stage are kept and
+ * exported by getMetrics().
+ */
+public class HandlerPool {
+
+  /**
+   * What to do with a task when all threads are busy and the queue is full
+   */
+  public enum RejectionPolicy {
+    // Run the task on the submitting (collector) thread, slowing the collector down
+    CALLER_RUNS,
+    // Drop the task and count it as rejected
+    DISCARD,
+    // Drop the oldest queued task to make room for the new one
+    DISCARD_OLDEST,
+    // Throw RejectedExecutionException to the submitter
+    ABORT,
+    // Block the submitting (collector) thread until a queued task has been picked up
+    BLOCK,
+    // Drop tasks of low priority stages and count them per stage, block for other stages
+    SHED,
+    // Write Spillable tasks of stages with a spill factory to disk and resubmit them once the
+    // queue has drained to the low watermark, block for other tasks
+    SPILL
+  }
+
+  /**
+   * Task that can be written to disk as a single line and recreated from it by the spill factory
+   * of its stage
+   */
+  public interface Spillable {
+
+    /**
+     * Returns the line to write to disk for this task
+     *
+     * @return String record without line breaks
+     */
+    String toSpillRecord();
+  }
+
+  /**
+   * Task that is told what became of it after it was submitted
+   */
+  public interface Tracked {
+
+    /**
+     * Called on the thread that ran the task once it has finished
+     *
+     * @param durationNanos time the task ran
+     * @param failed true if the task threw
+     */
+    void finished(long durationNanos, boolean failed);
+
+    /**
+     * Called when the task was dropped, refused or spilled to disk and will not run
+     */
+    void discarded();
+  }
+
+  private static final int DEFAULT_CORE_SIZE = Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_MAX_SIZE = DEFAULT_CORE_SIZE * 4;
+  private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private static HandlerPool defaultPool;
+
+  private final String name;
+  private final ThreadPoolExecutor executor;
+  private final int highWatermark;
+  private final int lowWatermark;
+  private final File spillDir;
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final ConcurrentHashMap<String, StageGauge> stages = new ConcurrentHashMap<>();
+  // Stages whose tasks are dropped under the SHED policy
+  private final Set<String> lowPriorityStages = ConcurrentHashMap.newKeySet();
+  // Recreate spilled tasks of a stage from their records
+  private final ConcurrentHashMap<String, CopyOnWriteArrayList<Function<String, Runnable>>>
+      spillFactories = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, SpillFile> spillFiles = new ConcurrentHashMap<>();
+  // Number of tasks spilled to disk and not yet resubmitted, over all stages
+  private final AtomicLong spilledCount = new AtomicLong();
+  // Time submitters spent blocked waiting for queue space
+  private final AtomicLong waitCount = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  // Set while the backlog is above the low watermark after reaching the high watermark
+  private final Object pauseLock = new Object();
+  private volatile boolean paused;
+  private long pausedSince;
+  private final AtomicLong pauseCount = new AtomicLong();
+  private final AtomicLong totalPausedMillis = new AtomicLong();
+
+  /**
+   * Queue-depth and active-thread counters of a single stage
+   */
+  private static class StageGauge {
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+  }
+
+  /**
+   * Wraps a submitted task so the gauges of its stage follow it from queue to completion
+   */
+  private class StageTask implements Runnable {
+    private final String stage;
+    private final Runnable task;
+    private final StageGauge gauge;
+    // Resubmitted from a spill file by a worker, which must never block on the queue
+    private final boolean refilled;
+
+    StageTask(String stage, Runnable task, StageGauge gauge, boolean refilled) {
+      this.stage = stage;
+      this.task = task;
+      this.gauge = gauge;
+      this.refilled = refilled;
+    }
+
+    @Override
+    public void run() {
+      gauge.queued.decrementAndGet();
+      gauge.active.incrementAndGet();
+      onDequeued();
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        task.run();
+        failed = false;
+      } finally {
+        gauge.active.decrementAndGet();
+        gauge.completed.incrementAndGet();
+        if (task instanceof Tracked) {
+          ((Tracked) task).finished(System.nanoTime() - start, failed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tasks of a stage spilled to disk, one record per line, read back in the order written. Every
+   * pool creates its own spill file, deleted when the JVM exits, so pools and processes sharing a
+   * spill directory do not read each other's tasks. Tasks spilled before a restart are not
+   * resubmitted.
+   */
+  private static class SpillFile {
+    private final RandomAccessFile file;
+    private long readOffset;
+    private long pending;
+
+    SpillFile(File dir, String prefix) throws IOException {
+      File path = File.createTempFile(prefix, ".spill", dir);
+      path.deleteOnExit();
+      file = new RandomAccessFile(path, "rw");
+    }
+
+    synchronized void append(String record) throws IOException {
+      file.seek(file.length());
+      file.write((record + "\n").getBytes(StandardCharsets.UTF_8));
+      pending++;
+    }
+
+    synchronized String next() throws IOException {
+      if (pending == 0) {
+        return null;
+      }
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      file.seek(readOffset);
+      int n;
+      boolean complete = false;
+      while (!complete && (n = file.read(buffer)) > 0) {
+        int length = n;
+        for (int i = 0; i < n; i++) {
+          if (buffer[i] == '\n') {
+            length = i;
+            complete = true;
+            break;
+          }
+        }
+        line.write(buffer, 0, length);
+        readOffset += complete ? length + 1 : length;
+      }
+      pending--;
+      if (pending == 0) {
+        // Everything was read back, start over instead of growing the file
+        file.setLength(0);
+        readOffset = 0;
+      }
+      return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Constructor for HandlerPool. The pool is paused when the queue is full, until it has drained
+   * to half its capacity. Tasks are spilled to the temporary directory.
+   *
+   * @param name name of the pool, used as prefix for worker thread names
+   * @param coreSize number of worker threads kept while there is work
+   * @param maxSize maximum number of worker threads, used once the queue is full
+   * @param queueCapacity maximum number of tasks waiting for a worker
+   * @param policy what to do with a task once threads and queue are exhausted
+   * @throws IllegalArgumentException if any size is not positive or maxSize is less than coreSize
+   */
+  public HandlerPool(
+      String name, int coreSize, int maxSize, int queueCapacity, RejectionPolicy policy)
+      throws IllegalArgumentException {
+    this(name, coreSize, maxSize, queueCapacity, policy, queueCapacity, queueCapacity / 2);
+  }
+
+  /**
+   * Constructor for HandlerPool. Tasks are spilled to the temporary directory.
+   *
+   * @param name name of the pool, used as prefix for worker thread names
+   * @param coreSize number of worker threads kept while there is work
+   * @param maxSize maximum number of worker threads, used once the queue is full
+   * @param queueCapacity maximum number of tasks waiting for a worker
+   * @param policy what to do with a task once threads and queue are exhausted
+   * @param highWatermark backlog at which the pool is paused
+   * @param lowWatermark backlog at which a paused pool resumes
+   * @throws IllegalArgumentException if any size is not positive, maxSize is less than coreSize or
+   *     the watermarks are not ordered
+   */
+  public HandlerPool(
+      String name,
+      int coreSize,
+      int maxSize,
+      int queueCapacity,
+      RejectionPolicy policy,
+      int highWatermark,
+      int lowWatermark)
+      throws IllegalArgumentException {
+    this(
+        name,
+        coreSize,
+        maxSize,
+        queueCapacity,
+        policy,
+        highWatermark,
+        lowWatermark,
+        new File(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * Constructor for HandlerPool
+   *
+   * @param name name of the pool, used as prefix for worker thread names
+   * @param coreSize number of worker threads kept while there is work
+   * @param maxSize maximum number of worker threads, used once the queue is full
+   * @param queueCapacity maximum number of tasks waiting for a worker
+   * @param policy what to do with a task once threads and queue are exhausted
+   * @param highWatermark backlog at which the pool is paused
+   * @param lowWatermark backlog at which a paused pool resumes
+   * @param spillDir directory spilled tasks are written to under the SPILL policy, in a file per
+   *     stage named "name-stage-" followed by a unique number and ".spill"
+   * @throws IllegalArgumentException if any size is not positive, maxSize is less than coreSize or
+   *     the watermarks are not ordered
+   */
+  public HandlerPool(
+      String name,
+      int coreSize,
+      int maxSize,
+      int queueCapacity,
+      RejectionPolicy policy,
+      int highWatermark,
+      int lowWatermark,
+      File spillDir)
+      throws IllegalArgumentException {
+    if (coreSize <= 0 || maxSize < coreSize || queueCapacity <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid pool sizes: core=" + coreSize + ", max=" + maxSize + ", queue=" + queueCapacity);
+    }
+    if (highWatermark <= 0 || lowWatermark < 0 || lowWatermark >= highWatermark) {
+      throw new IllegalArgumentException(
+          "Invalid watermarks: high=" + highWatermark + ", low=" + lowWatermark);
+    }
+    this.name = name;
+    this.highWatermark = highWatermark;
+    this.lowWatermark = lowWatermark;
+    this.spillDir = spillDir;
+    executor =
+        new ThreadPoolExecutor(
+            coreSize,
+            maxSize,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity),
+            new NamedThreadFactory(name),
+            toHandler(policy));
+    // Let idle core threads exit so an idle orchestrator holds no handler threads
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns the pool shared by collectors that were not given a pool of their own. Created on
+   * first use with one core thread per processor, four times that as maximum and a queue of 1000
+   * tasks, running overflow on the submitting collector thread.
+   *
+   * @return shared HandlerPool
+   */
+  public static synchronized HandlerPool getDefault() {
+    if (defaultPool == null) {
+      defaultPool =
+          new HandlerPool(
+              "handler",
+              DEFAULT_CORE_SIZE,
+              DEFAULT_MAX_SIZE,
+              DEFAULT_QUEUE_CAPACITY,
+              RejectionPolicy.CALLER_RUNS);
+    }
+    return defaultPool;
+  }
+
+  /**
+   * Submits a task to the pool under the given stage
+   *
+   * @param stage name of the stage the task belongs to, for example the tool the file came from
+   * @param task task to run
+   * @throws RejectedExecutionException if the pool is saturated and the policy is ABORT, or the
+   *     pool has been shut down
+   */
+  public void submit(String stage, Runnable task) throws RejectedExecutionException {
+    submit(stage, task, false);
+  }
+
+  /**
+   * Submits a task to the pool under the given stage
+   *
+   * @param refilled true if resubmitted from a spill file by a worker, so the task is spilled
+   *     again or dropped instead of blocking when the pool is saturated
+   */
+  private void submit(String stage, Runnable task, boolean refilled)
+      throws RejectedExecutionException {
+    StageGauge gauge = getGauge(stage);
+    gauge.queued.incrementAndGet();
+    try {
+      executor.execute(new StageTask(stage, task, gauge, refilled));
+    } catch (RejectedExecutionException e) {
+      gauge.queued.decrementAndGet();
+      if (task instanceof Tracked) {
+        ((Tracked) task).discarded();
+      }
+      throw e;
+    }
+    if (getBacklog() >= highWatermark) {
+      pause();
+    }
+  }
+
+  /**
+   * Marks a stage as low priority, so its tasks are dropped instead of blocking the submitter
+   * under the SHED policy
+   *
+   * @param stage name of the stage
+   */
+  public void setLowPriority(String stage) {
+    lowPriorityStages.add(stage);
+  }
+
+  /**
+   * Adds a factory recreating spilled tasks of a stage from their records. Under the SPILL policy,
+   * only Spillable tasks of stages with a factory are spilled. Factories of a stage are asked in
+   * the order added until one returns a task.
+   *
+   * @param stage name of the stage
+   * @param factory function returning the task for a record, or null if it does not know it
+   */
+  public void addSpillFactory(String stage, Function<String, Runnable> factory) {
+    CopyOnWriteArrayList<Function<String, Runnable>> factories = spillFactories.get(stage);
+    if (factories == null) {
+      spillFactories.putIfAbsent(stage, new CopyOnWriteArrayList<>());
+      factories = spillFactories.get(stage);
+    }
+    factories.add(factory);
+  }
+
+  /**
+   * Removes a factory added with addSpillFactory(). Spilled tasks no factory knows are dropped
+   * when resubmitted.
+   *
+   * @param stage name of the stage
+   * @param factory factory to remove
+   */
+  public void removeSpillFactory(String stage, Function<String, Runnable> factory) {
+    CopyOnWriteArrayList<Function<String, Runnable>> factories = spillFactories.get(stage);
+    if (factories != null) {
+      factories.remove(factory);
+    }
+  }
+
+  /**
+   * Blocks while the pool is paused, until the backlog has drained to the low watermark or the
+   * timeout expires. Collectors call this before taking the next file event.
+   *
+   * @param timeout maximum time to wait
+   * @param unit unit of timeout
+   * @return true if the pool accepts work, false if it is still paused
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitCapacity(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+    synchronized (pauseLock) {
+      while (paused) {
+        if (getBacklog() <= lowWatermark) {
+          resume();
+          break;
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        pauseLock.wait(remaining);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Stops accepting new tasks. Tasks already queued still run.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Blocks until all tasks have finished after a shutdown, or the timeout expires
+   *
+   * @param timeout maximum time to wait
+   * @param unit unit of timeout
+   * @return true if the pool terminated, false if the timeout expired first
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Returns the name of the pool
+   *
+   * @return String name of the pool
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Number of tasks waiting for a worker over all stages
+   *
+   * @return int queue depth
+   */
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Number of tasks of a stage waiting for a worker
+   *
+   * @param stage name of the stage
+   * @return int queue depth of the stage, 0 if nothing was ever submitted to it
+   */
+  public int getQueueDepth(String stage) {
+    StageGauge gauge = stages.get(stage);
+    return gauge == null ? 0 : gauge.queued.get();
+  }
+
+  /**
+   * Number of threads currently running a task over all stages
+   *
+   * @return int active thread count
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Number of threads currently running a task of a stage
+   *
+   * @param stage name of the stage
+   * @return int active thread count of the stage, 0 if nothing was ever submitted to it
+   */
+  public int getActiveCount(String stage) {
+    StageGauge gauge = stages.get(stage);
+    return gauge == null ? 0 : gauge.active.get();
+  }
+
+  /**
+   * Number of tasks of a stage that have finished running
+   *
+   * @param stage name of the stage
+   * @return long completed task count of the stage
+   */
+  public long getCompletedCount(String stage) {
+    StageGauge gauge = stages.get(stage);
+    return gauge == null ? 0 : gauge.completed.get();
+  }
+
+  /**
+   * Current number of threads in the pool, busy or idle
+   *
+   * @return int pool size
+   */
+  public int getPoolSize() {
+    return executor.getPoolSize();
+  }
+
+  /**
+   * Number of tasks dropped or refused because the pool was saturated
+   *
+   * @return long rejected task count
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * Number of tasks of a stage dropped because the pool was saturated
+   *
+   * @param stage name of the stage
+   * @return long dropped task count of the stage, including spilled tasks no factory knew
+   */
+  public long getDroppedCount(String stage) {
+    StageGauge gauge = stages.get(stage);
+    return gauge == null ? 0 : gauge.dropped.get();
+  }
+
+  /**
+   * Number of tasks of a stage spilled to disk and not yet resubmitted
+   *
+   * @param stage name of the stage
+   * @return long spilled task count of the stage
+   */
+  public long getSpilledCount(String stage) {
+    StageGauge gauge = stages.get(stage);
+    return gauge == null ? 0 : gauge.spilled.get();
+  }
+
+  /**
+   * Number of tasks waiting for a worker, queued or spilled to disk
+   *
+   * @return long backlog over all stages
+   */
+  public long getBacklog() {
+    return executor.getQueue().size() + spilledCount.get();
+  }
+
+  /**
+   * Checks if the pool is paused because its backlog reached the high watermark
+   *
+   * @return true if paused
+   */
+  public boolean isPaused() {
+    return paused;
+  }
+
+  /**
+   * Number of times the pool was paused
+   *
+   * @return long pause count
+   */
+  public long getPauseCount() {
+    return pauseCount.get();
+  }
+
+  /**
+   * Number of times a submitter was blocked waiting for queue space
+   *
+   * @return long wait count
+   */
+  public long getWaitCount() {
+    return waitCount.get();
+  }
+
+  /**
+   * Time submitters spent blocked waiting for queue space, all waits together
+   *
+   * @return long milliseconds
+   */
+  public long getTotalWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+  }
+
+  /**
+   * Longest time a submitter spent blocked waiting for queue space
+   *
+   * @return long milliseconds
+   */
+  public long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+  }
+
+  /**
+   * Returns the backpressure gauges and counters of the pool, for export to monitoring. Keys are
+   * "queue.depth", "backlog", "paused", "pause.count", "paused.millis", "rejected", "wait.count",
+   * "wait.total.millis", "wait.max.millis", and per stage "stage.queued", "stage.active",
+   * "stage.completed", "stage.dropped" and "stage.spilled" prefixed with the stage name.
+   *
+   * @return HashMap<String, Long> metric values by name
+   */
+  public HashMap<String, Long> getMetrics() {
+    HashMap<String, Long> metrics = new HashMap<>();
+    metrics.put("queue.depth", (long) getQueueDepth());
+    metrics.put("backlog", getBacklog());
+    metrics.put("paused", paused ? 1L : 0L);
+    metrics.put("pause.count", pauseCount.get());
+    metrics.put("paused.millis", totalPausedMillis.get());
+    metrics.put("rejected", rejectedCount.get());
+    metrics.put("wait.count", waitCount.get());
+    metrics.put("wait.total.millis", getTotalWaitMillis());
+    metrics.put("wait.max.millis", getMaxWaitMillis());
+    for (Map.Entry<String, StageGauge> entry : stages.entrySet()) {
+      String prefix = entry.getKey() + ".";
+      StageGauge gauge = entry.getValue();
+      metrics.put(prefix + "queued", (long) gauge.queued.get());
+      metrics.put(prefix + "active", (long) gauge.active.get());
+      metrics.put(prefix + "completed", gauge.completed.get());
+      metrics.put(prefix + "dropped", gauge.dropped.get());
+      metrics.put(prefix + "spilled", gauge.spilled.get());
+    }
+    return metrics;
+  }
+
+  private StageGauge getGauge(String stage) {
+    StageGauge gauge = stages.get(stage);
+    if (gauge == null) {
+      stages.putIfAbsent(stage, new StageGauge());
+      gauge = stages.get(stage);
+    }
+    return gauge;
+  }
+
+  /**
+   * Maps a RejectionPolicy onto the executor's handler, counting every rejection
+   */
+  private RejectedExecutionHandler toHandler(RejectionPolicy policy) {
+    final RejectedExecutionHandler delegate;
+    switch (policy) {
+      case CALLER_RUNS:
+        delegate = new ThreadPoolExecutor.CallerRunsPolicy();
+        break;
+      case DISCARD:
+        delegate = new ThreadPoolExecutor.DiscardPolicy();
+        break;
+      case DISCARD_OLDEST:
+        // Discarded below, only what is actually taken from the queue is released
+        delegate = null;
+        break;
+      default:
+        delegate = new ThreadPoolExecutor.AbortPolicy();
+        break;
+    }
+    return (task, pool) -> {
+      StageTask stageTask = (StageTask) task;
+      // Once shut down, the backpressure policies refuse tasks like ABORT
+      if (!pool.isShutdown()) {
+        switch (policy) {
+          case BLOCK:
+            block(stageTask, pool);
+            return;
+          case SHED:
+            if (lowPriorityStages.contains(stageTask.stage)) {
+              rejectedCount.incrementAndGet();
+              drop(stageTask);
+            } else {
+              block(stageTask, pool);
+            }
+            return;
+          case SPILL:
+            if (spill(stageTask)) {
+              return;
+            }
+            if (stageTask.refilled) {
+              // A worker refilling the queue must not wait for the queue to drain
+              rejectedCount.incrementAndGet();
+              drop(stageTask);
+            } else {
+              block(stageTask, pool);
+            }
+            return;
+          default:
+            break;
+        }
+      }
+      rejectedCount.incrementAndGet();
+      if (pool.isShutdown() && !(delegate instanceof ThreadPoolExecutor.AbortPolicy)) {
+        // Executor policies silently drop the task once shut down
+        drop(stageTask);
+        return;
+      }
+      if (policy == RejectionPolicy.DISCARD_OLDEST) {
+        // The oldest task never runs, so release its place in its stage gauge. A task taken by a
+        // worker in the meantime is not the one removed here, and runs.
+        Runnable oldest = pool.getQueue().poll();
+        if (oldest instanceof StageTask) {
+          drop((StageTask) oldest);
+        }
+        pool.execute(task);
+        return;
+      } else if (policy == RejectionPolicy.DISCARD) {
+        drop(stageTask);
+      }
+      delegate.rejectedExecution(task, pool);
+    };
+  }
+
+  /**
+   * Releases the place of a task that will not run in its stage gauge and counts it as dropped
+   */
+  private void drop(StageTask task) {
+    task.gauge.queued.decrementAndGet();
+    task.gauge.dropped.incrementAndGet();
+    if (task.task instanceof Tracked) {
+      ((Tracked) task.task).discarded();
+    }
+  }
+
+  /**
+   * Blocks the submitting thread until the task fits in the queue, recording the time waited.
+   * The queue is filled around the executor, so a task queued once the pool is shut down is taken
+   * back and refused, and a worker is started if every worker has timed out.
+   */
+  private void block(StageTask task, ThreadPoolExecutor pool) {
+    long start = System.nanoTime();
+    try {
+      pool.getQueue().put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      rejectedCount.incrementAndGet();
+      throw new RejectedExecutionException("Interrupted while waiting for " + name, e);
+    }
+    if (pool.isShutdown()) {
+      if (pool.getQueue().remove(task)) {
+        rejectedCount.incrementAndGet();
+        throw new RejectedExecutionException(name + " was shut down while waiting");
+      }
+    } else {
+      pool.prestartCoreThread();
+    }
+    long waited = System.nanoTime() - start;
+    waitCount.incrementAndGet();
+    totalWaitNanos.addAndGet(waited);
+    long max;
+    while (waited > (max = maxWaitNanos.get())) {
+      if (maxWaitNanos.compareAndSet(max, waited)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Writes a task to the spill file of its stage
+   *
+   * @return false if the task cannot be spilled and should block or be dropped instead
+   */
+  private boolean spill(StageTask task) {
+    CopyOnWriteArrayList<Function<String, Runnable>> factories = spillFactories.get(task.stage);
+    if (!(task.task instanceof Spillable) || factories == null || factories.isEmpty()) {
+      return false;
+    }
+    try {
+      SpillFile spillFile = spillFiles.get(task.stage);
+      if (spillFile == null) {
+        synchronized (spillFiles) {
+          spillFile = spillFiles.get(task.stage);
+          if (spillFile == null) {
+            spillFile = new SpillFile(spillDir, name + "-" + task.stage + "-");
+            spillFiles.put(task.stage, spillFile);
+          }
+        }
+      }
+      spillFile.append(((Spillable) task.task).toSpillRecord());
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
+    task.gauge.queued.decrementAndGet();
+    task.gauge.spilled.incrementAndGet();
+    spilledCount.incrementAndGet();
+    // The task is recreated from its record, this instance never runs
+    if (task.task instanceof Tracked) {
+      ((Tracked) task.task).discarded();
+    }
+    return true;
+  }
+
+  /**
+   * Called by a worker when it took a task from the queue. Resubmits spilled tasks once the queue
+   * has drained to the low watermark, and resumes the pool once the backlog has.
+   */
+  private void onDequeued() {
+    if (spilledCount.get() > 0 && executor.getQueue().size() <= lowWatermark) {
+      refill();
+    }
+    if (paused && getBacklog() <= lowWatermark) {
+      synchronized (pauseLock) {
+        if (paused) {
+          resume();
+        }
+      }
+    }
+  }
+
+  /**
+   * Resubmits spilled tasks, oldest first, while the queue has room
+   */
+  private void refill() {
+    for (Map.Entry<String, SpillFile> entry : spillFiles.entrySet()) {
+      String stage = entry.getKey();
+      StageGauge gauge = getGauge(stage);
+      SpillFile spillFile = entry.getValue();
+      synchronized (spillFile) {
+        while (spillFile.pending > 0 && executor.getQueue().remainingCapacity() > 0) {
+          String record;
+          try {
+            record = spillFile.next();
+          } catch (IOException e) {
+            e.printStackTrace();
+            return;
+          }
+          gauge.spilled.decrementAndGet();
+          spilledCount.decrementAndGet();
+          Runnable task = restore(stage, record);
+          if (task == null) {
+            gauge.dropped.incrementAndGet();
+            continue;
+          }
+          try {
+            // Spilled again, or dropped, if other submitters filled the queue meanwhile
+            submit(stage, task, true);
+          } catch (RejectedExecutionException e) {
+            // Pool was shut down
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Recreates a spilled task with the first factory of its stage that knows the record
+   */
+  private Runnable restore(String stage, String record) {
+    CopyOnWriteArrayList<Function<String, Runnable>> factories = spillFactories.get(stage);
+    if (factories != null) {
+      for (Function<String, Runnable> factory : factories) {
+        Runnable task = factory.apply(record);
+        if (task != null) {
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Pauses the pool, if not paused already
+   */
+  private void pause() {
+    synchronized (pauseLock) {
+      if (!paused) {
+        paused = true;
+        pausedSince = System.currentTimeMillis();
+        pauseCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Resumes the pool and wakes up waiting collectors. Must hold pauseLock.
+   */
+  private void resume() {
+    paused = false;
+    totalPausedMillis.addAndGet(System.currentTimeMillis() - pausedSince);
+    pauseLock.notifyAll();
+  }
+
+  /**
+   * Names worker threads "<pool name>-<n>" so handler threads are recognisable in thread dumps
+   */
+  private static class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      return new Thread(r, prefix + "-" + count.incrementAndGet());
+    }
+  }
+}
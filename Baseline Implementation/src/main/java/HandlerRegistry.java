@@ -0,0 +1,200 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HandlerRegistry class
+ *
+ * <p>Keeps track of the OutputHandlers of a collector that are in flight, from being submitted to
+ * the HandlerPool until they finish or are dropped. Finished handlers are forgotten, so memory
+ * and the cost of getInFlight() follow the work in flight, not the work ever done.
+ *
+ * <p>Instead of references to finished handlers, rolling statistics are kept per tool the output
+ * came from: how many handlers completed, failed or were dropped, and the durations of the most
+ * recent handlers, from which percentiles such as p50 and p99 are read.
+ */
+public class HandlerRegistry {
+
+  // Number of most recent durations per tool percentiles are computed from
+  private static final int WINDOW_SIZE = 1024;
+
+  // Tool of every handler in flight
+  private final ConcurrentHashMap<OutputHandler, String> inFlight = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ToolStats> tools = new ConcurrentHashMap<>();
+
+  /**
+   * Completion statistics of the handlers of a single tool
+   */
+  private static class ToolStats {
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    // Ring buffer of the most recent durations in nanoseconds, guarded by itself
+    private final long[] durations = new long[WINDOW_SIZE];
+    private int next;
+    private int size;
+
+    void record(long durationNanos) {
+      synchronized (durations) {
+        durations[next] = durationNanos;
+        next = (next + 1) % durations.length;
+        if (size < durations.length) {
+          size++;
+        }
+      }
+    }
+
+    long percentile(double percentile) {
+      long[] sorted;
+      synchronized (durations) {
+        if (size == 0) {
+          return 0;
+        }
+        sorted = Arrays.copyOf(durations, size);
+      }
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+  }
+
+  /**
+   * Records a handler as in flight. Called before it is submitted to the HandlerPool.
+   *
+   * @param handler handler about to be submitted
+   * @param toolFrom tool the output handled comes from
+   */
+  public void register(OutputHandler handler, String toolFrom) {
+    inFlight.put(handler, toolFrom);
+  }
+
+  /**
+   * Records that a handler has finished and forgets it
+   *
+   * @param handler handler that finished
+   * @param durationNanos time it ran
+   * @param failed true if it did not handle its output successfully
+   */
+  public void completed(OutputHandler handler, long durationNanos, boolean failed) {
+    String toolFrom = inFlight.remove(handler);
+    if (toolFrom == null) {
+      return;
+    }
+    ToolStats stats = getStats(toolFrom);
+    stats.completed.incrementAndGet();
+    if (failed) {
+      stats.failed.incrementAndGet();
+    }
+    stats.record(durationNanos);
+  }
+
+  /**
+   * Records that a handler was dropped, refused or spilled by the HandlerPool and forgets it
+   *
+   * @param handler handler that will not run
+   */
+  public void discarded(OutputHandler handler) {
+    String toolFrom = inFlight.remove(handler);
+    if (toolFrom != null) {
+      getStats(toolFrom).discarded.incrementAndGet();
+    }
+  }
+
+  /**
+   * Gets copy of the handlers currently in flight
+   *
+   * @return ArrayList<OutputHandler> of handlers submitted and not yet finished or dropped
+   */
+  public ArrayList<OutputHandler> getInFlight() {
+    return new ArrayList<>(inFlight.keySet());
+  }
+
+  /**
+   * Number of handlers currently in flight
+   *
+   * @return int in-flight count
+   */
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Number of handlers of a tool that have finished, including failed ones
+   *
+   * @param toolFrom tool the output came from
+   * @return long completed count
+   */
+  public long getCompletedCount(String toolFrom) {
+    ToolStats stats = tools.get(toolFrom);
+    return stats == null ? 0 : stats.completed.get();
+  }
+
+  /**
+   * Number of handlers of a tool that have finished without handling their output successfully
+   *
+   * @param toolFrom tool the output came from
+   * @return long failure count
+   */
+  public long getFailureCount(String toolFrom) {
+    ToolStats stats = tools.get(toolFrom);
+    return stats == null ? 0 : stats.failed.get();
+  }
+
+  /**
+   * Number of handlers of a tool dropped, refused or spilled by the HandlerPool
+   *
+   * @param toolFrom tool the output came from
+   * @return long discarded count
+   */
+  public long getDiscardedCount(String toolFrom) {
+    ToolStats stats = tools.get(toolFrom);
+    return stats == null ? 0 : stats.discarded.get();
+  }
+
+  /**
+   * Duration of the handlers of a tool at a percentile, over the most recent 1024 handlers
+   *
+   * @param toolFrom tool the output came from
+   * @param percentile percentile between 0 and 100, for example 50 or 99
+   * @return long milliseconds, 0 if no handler of the tool has finished
+   */
+  public long getDurationMillis(String toolFrom, double percentile) {
+    ToolStats stats = tools.get(toolFrom);
+    return stats == null ? 0 : TimeUnit.NANOSECONDS.toMillis(stats.percentile(percentile));
+  }
+
+  /**
+   * Returns the registry statistics, for export to monitoring. Keys are "inflight", and per tool
+   * "tool.completed", "tool.failed", "tool.discarded", "tool.p50.millis" and "tool.p99.millis"
+   * prefixed with the tool name.
+   *
+   * @return HashMap<String, Long> metric values by name
+   */
+  public HashMap<String, Long> getMetrics() {
+    HashMap<String, Long> metrics = new HashMap<>();
+    metrics.put("inflight", (long) inFlight.size());
+    for (Map.Entry<String, ToolStats> entry : tools.entrySet()) {
+      String prefix = entry.getKey() + ".";
+      ToolStats stats = entry.getValue();
+      metrics.put(prefix + "completed", stats.completed.get());
+      metrics.put(prefix + "failed", stats.failed.get());
+      metrics.put(prefix + "discarded", stats.discarded.get());
+      metrics.put(prefix + "p50.millis", TimeUnit.NANOSECONDS.toMillis(stats.percentile(50)));
+      metrics.put(prefix + "p99.millis", TimeUnit.NANOSECONDS.toMillis(stats.percentile(99)));
+    }
+    return metrics;
+  }
+
+  private ToolStats getStats(String toolFrom) {
+    ToolStats stats = tools.get(toolFrom);
+    if (stats == null) {
+      tools.putIfAbsent(toolFrom, new ToolStats());
+      stats = tools.get(toolFrom);
+    }
+    return stats;
+  }
+}
@@ -1,6 +1,6 @@
 import com.google.gson.stream.JsonReader;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 
@@ -11,23 +11,40 @@ import com.google.gson.JsonSyntaxException;
 
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * LimaCharlie Class implements the EDR Interface
  * The class is used to send commands to LimaCharlie using its Python API.
- * This is achieved by executing the python scripts available.
+ * This is achieved by sending them to the python script running in worker mode, see
+ * LimaCharlieBridge, so Python is started and logged in once rather than for every command.
+ *
+ * <p>The credentials and the script are checked once, when the object is created, and never
+ * change afterwards. A LimaCharlie object is thread safe and meant to be shared by all handlers,
+ * see EDRRegistry; it holds the workers of its bridge until closed.
  */
-public class LimaCharlie implements EDR {
+public class LimaCharlie implements EDR, Closeable {
 
-  private String scriptPath;
+  // Default locations, relative to the directory the orchestrator is running from
+  public static final String DEFAULT_CREDENTIALS_PATH =
+      Paths.get("src", "main", "resources", "LimaCharlieCredentials.json").toString();
+  public static final String DEFAULT_SCRIPT_PATH =
+      Paths.get("src", "main", "python", "LimaCharlieConstructor.py").toString();
+
+  private final String scriptPath;
   private final String API_KEY;
   private final String OID;
+  private final LimaCharlieBridge bridge;
 
   /**
    * Creates a LimaCharlie object. Reads the credential file to get the
@@ -35,42 +52,31 @@ public class LimaCharlie implements EDR {
    * @throws IOException if credentials or python script doesn't exist, throws exception
    */
   public LimaCharlie() throws IOException {
-    String os = System.getProperty("os.name");
-    String credentialsPath;
-    if (os.contains("Windows")) {
-      credentialsPath = "src\\main\\resources\\LimaCharlieCredentials.json";
-      scriptPath = "src\\main\\python\\LimaCharlieConstructor.py";
-    } else {
-      credentialsPath = "src/main/resources/LimaCharlieCredentials.json";
-      scriptPath = "src/main/python/LimaCharlieConstructor.py";
-    }
+    this(DEFAULT_CREDENTIALS_PATH, DEFAULT_SCRIPT_PATH);
+  }
 
-    // check if given path represents a file
-    File credentialsFile = new File(credentialsPath);
-    if (!credentialsFile.exists() || !credentialsFile.isFile()) {
-      throw new FileNotFoundException(credentialsPath);
-    }
+  /**
+   * Creates a LimaCharlie object from a credentials file and the python script.
+   *
+   * @param credentialsPath path to a JSON file with the API_KEY and OID
+   * @param scriptPath path to LimaCharlieConstructor.py
+   * @throws IOException if credentials or python script doesn't exist, or the credentials are
+   *     not valid
+   */
+  public LimaCharlie(String credentialsPath, String scriptPath) throws IOException {
+    this(scriptPath, getCredentials(credentialsPath));
+  }
 
+  private LimaCharlie(String scriptPath, HashMap<String, String> credentials)
+      throws IOException {
     File pythonFile = new File(scriptPath);
     if (!pythonFile.exists() || !pythonFile.isFile()) {
       throw new FileNotFoundException(scriptPath);
     }
-
-    HashMap<String, String> credentials;
-    try {
-      credentials = getCredentials(credentialsPath);
-    } catch (IOException e) {
-      throw new IOException("Unable to read the credentials file.");
-    }
-
-    // Get API_KEY and OID
-    if (credentials.size() == 2) {
-      OID = credentials.get("OID");
-      API_KEY = credentials.get("API_KEY");
-    } else {
-      OID = "";
-      API_KEY = "";
-    }
+    this.scriptPath = scriptPath;
+    OID = credentials.get("OID");
+    API_KEY = credentials.get("API_KEY");
+    bridge = new LimaCharlieBridge(scriptPath, OID, API_KEY);
   }
 
   /**
@@ -78,23 +84,30 @@ public class LimaCharlie implements EDR {
    * The credential file should contain the API_KEY and OID
    * @param filePath String of path to the credentials file
    * @return HashMap<String,String> which has the API_KEY and OID as keys
+   * @throws IOException if the file does not exist, cannot be read or lacks the API_KEY or OID
    */
-  private HashMap<String, String> getCredentials(String filePath)
-      throws IOException, JsonSyntaxException {
-    Gson gson = new Gson();
-    HashMap<String, String> ret = new HashMap<>();
-    JsonReader reader = new JsonReader(new FileReader(filePath));
-    JsonElement elem;
+  public static HashMap<String, String> getCredentials(String filePath) throws IOException {
+    // check if given path represents a file
+    File credentialsFile = new File(filePath);
+    if (!credentialsFile.exists() || !credentialsFile.isFile()) {
+      throw new FileNotFoundException(filePath);
+    }
 
-    try {
-      elem = gson.fromJson(reader, JsonElement.class);
-    } catch (JsonSyntaxException e) {
-      throw new JsonSyntaxException(e);
+    HashMap<String, String> ret = new HashMap<>();
+    try (JsonReader reader = new JsonReader(new FileReader(credentialsFile))) {
+      JsonElement elem = new Gson().fromJson(reader, JsonElement.class);
+      JsonObject json = elem.getAsJsonObject();
+      for (String s : json.keySet()) {
+        ret.put(s, json.get(s).getAsString());
+      }
+    } catch (JsonSyntaxException | IllegalStateException | NullPointerException e) {
+      throw new IOException("Unable to read the credentials file " + filePath, e);
     }
 
-    JsonObject json = elem.getAsJsonObject();
-    for (String s : json.keySet()) {
-      ret.put(s, json.get(s).getAsString());
+    for (String key : new String[] {"OID", "API_KEY"}) {
+      if (ret.get(key) == null || ret.get(key).isEmpty()) {
+        throw new IOException("Credentials file " + filePath + " has no " + key);
+      }
     }
     return ret;
   }
@@ -123,27 +136,13 @@ public class LimaCharlie implements EDR {
    *
    * @param sensorId SID of the sensor to which command needs to be send
    * @param path path of the file on endpoint which needs to be deleted
-   * @throws IOException if python script does not exist, throws exception
+   * @return true if the sensor was told to delete the file, false if it is offline
+   * @throws IOException if the command could not be sent
    */
   public boolean deleteFile(String sensorId, String path) throws IOException {
-    // check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c file_del",
-            "-args file_path=" + path);
-    executeScript(args);
-
-    return true;
+    HashMap<String, String> args = new HashMap<>();
+    args.put("file_path", path);
+    return executeScript(sensorId, "file_del", args).contains("Successfully deleted");
   }
 
   /**
@@ -153,53 +152,36 @@ public class LimaCharlie implements EDR {
    *
    * @param sensorId sensorId SID of the sensor to which command needs to be send
    * @param pid process ID on the endpoint which needs to be killed by the sensor
-   * @throws IOException if python script does not exist, throw exception
+   * @return true if the sensor was told to kill the process, false if it is offline
+   * @throws IOException if the command could not be sent
    */
   public boolean killProcess(String sensorId, String pid) throws IOException {
-    // check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c os_kill_process",
-            "-args pid=" + pid);
-    executeScript(args);
-
-    return true;
+    HashMap<String, String> args = new HashMap<>();
+    args.put("pid", pid);
+    return executeScript(sensorId, "os_kill_process", args).contains("Successfully killed");
   }
 
   /**
-   * Method to execute a script Uses java RunTime to execute the Python script represented by
-   * 'scriptPath'
+   * Method to execute a command Sends the command to the Python script represented by
+   * 'scriptPath', running in worker mode
    *
-   * @param args contains OID, API_KEY, SID, COMMAND_TYPE, COMMAND_ARGS
-   * @return returns an ArrayList of Strings containing the outputs (STD.OUT) from the script
+   * @param sensorId SID of the sensor to which command needs to be send
+   * @param command COMMAND_TYPE, such as "file_del"
+   * @param args COMMAND_ARGS, such as "file_path"
+   * @return returns an ArrayList of Strings containing the outputs (STD.OUT) from the script,
+   *     empty if the sensor is offline
+   * @throws IOException if no worker could be started, or the worker failed or timed out
    */
-  private ArrayList<String> executeScript(String args) {
-    Process p = null;
+  private ArrayList<String> executeScript(
+      String sensorId, String command, HashMap<String, String> args) throws IOException {
     ArrayList<String> outputs = new ArrayList<>();
-    try {
-      p = Runtime.getRuntime().exec("python " + scriptPath + " " + args);
-      BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-      String ret;
-      while ((ret = in.readLine()) != null) {
-        // if the sensor is offline return immediately
-        if (ret.contains("sensor is offline")) {
-          System.err.println("sensor is offline");
-          return outputs;
-        }
-        outputs.add(ret);
+    for (String ret : bridge.execute(sensorId, command, args)) {
+      // if the sensor is offline return immediately
+      if (ret.contains("sensor is offline")) {
+        System.err.println("sensor is offline");
+        return outputs;
       }
-    } catch (IOException e) {
-      e.printStackTrace();
+      outputs.add(ret);
     }
 
     return outputs;
@@ -213,25 +195,9 @@ public class LimaCharlie implements EDR {
    *
    * @param sensorId identifier of node to get the list of processes from
    * @return the list of processes running on the given node
-   * @throws FileNotFoundException if python script does not exist, throw exception
    */
-  public List<String> getProcesses(String sensorId) throws FileNotFoundException {
-    // Check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c os_processes");
-
-    return executeScript(args);
+  public List<String> getProcesses(String sensorId) throws IOException {
+    return executeScript(sensorId, "os_processes", new HashMap<String, String>());
   }
 
   /**
@@ -243,27 +209,13 @@ public class LimaCharlie implements EDR {
    * @param sensorId used to identify the node to get file information from
    * @param fileName name of file to get the file information from
    * @return string that has information about file, else return "fail"
-   * @throws IOException if scriptPath does not exist
    */
   public String getFileInfo(String sensorId, String fileName) throws IOException {
-    // Check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c file_info",
-            "-args file_path=" + fileName);
+    HashMap<String, String> args = new HashMap<>();
+    args.put("file_path", fileName);
 
     // File information will be the first line printed and information is only request for one file
-    return executeScript(args).get(0);
+    return executeScript(sensorId, "file_info", args).get(0);
   }
 
   /**
@@ -274,29 +226,15 @@ public class LimaCharlie implements EDR {
    * @param filePath path of the file on endpoint which needs to be deleted
    * @param outputFilePath Must be an absolute path to directory where fetched file is saved
    * @return return the File if found, else return null
-   * @throws IOException if python script does not exist, throws exception
+   * @throws IOException if the fetched file is not found
    */
   public File getFile(String sensorId, String filePath, String outputFilePath)
       throws IOException {
 
-    // Check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c file_get",
-            "-args file_path=" + filePath,
-            " output_file_path=" + outputFilePath);
-
-    executeScript(args);
+    HashMap<String, String> args = new HashMap<>();
+    args.put("file_path", filePath);
+    args.put("output_file_path", outputFilePath);
+    executeScript(sensorId, "file_get", args);
 
     // check if the retreived file exists, otherwise throw exception
     Path s = Paths.get(filePath);
@@ -316,25 +254,10 @@ public class LimaCharlie implements EDR {
    *
    * @param sensorId identifier of the node to be isolated from the network
    * @return true if command sent successfully, else return false
-   * @throws IOException if python script does not exist, throws exception
    */
   public boolean isolateNode(String sensorId) throws IOException {
-    // Check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
-    }
-
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c segregate_network");
-
-    ArrayList<String> ret = executeScript(args);
+    ArrayList<String> ret =
+        executeScript(sensorId, "segregate_network", new HashMap<String, String>());
     return ret.contains("True");
   }
 
@@ -345,26 +268,218 @@ public class LimaCharlie implements EDR {
    *
    * @param sensorId sensorId of the node to be reconnected to the network
    * @return true if command sent successfully, else return false
-   * @throws IOException if python script does not exist, throws exception
    */
   public boolean rejoinNode(String sensorId) throws IOException{
-    // Check if given path represents a file
-    File scriptFile = new File(scriptPath);
-    if (!scriptFile.exists() || !scriptFile.isFile()) {
-      throw new FileNotFoundException(scriptPath);
+    ArrayList<String> ret =
+        executeScript(sensorId, "rejoin_network", new HashMap<String, String>());
+    return ret.contains("True");
+  }
+
+  /**
+   * Kills processes on many sensors. The commands are sent to one worker in one request, the
+   * commands of a sensor one after the other.
+   *
+   * @param pids process ids of the processes to be killed, by SID of their sensor
+   * @return by SID, true for every process the sensor was told to kill, else false, in the order
+   *     of pids
+   */
+  @Override
+  public Map<String, List<Boolean>> killProcesses(Map<String, List<String>> pids) {
+    return executeAll("os_kill_process", "pid", pids, "Successfully killed");
+  }
+
+  /**
+   * Deletes files on many sensors. The commands are sent to one worker in one request, the
+   * commands of a sensor one after the other.
+   *
+   * @param fileNames paths of the files to be deleted, by SID of their sensor
+   * @return by SID, true for every file the sensor was told to delete, else false, in the order
+   *     of fileNames
+   */
+  @Override
+  public Map<String, List<Boolean>> deleteFiles(Map<String, List<String>> fileNames) {
+    return executeAll("file_del", "file_path", fileNames, "Successfully deleted");
+  }
+
+  /**
+   * Isolates many sensors from the network. The commands are sent to one worker in one request.
+   *
+   * @param identifiers SIDs of the sensors to be isolated from the network
+   * @return by SID, true if the sensor confirmed its isolation, else false
+   */
+  @Override
+  public Map<String, Boolean> isolateNodes(Collection<String> identifiers) {
+    Map<String, List<String>> sensors = new LinkedHashMap<>();
+    for (String identifier : identifiers) {
+      sensors.put(identifier, Collections.singletonList((String) null));
+    }
+    Map<String, Boolean> results = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Boolean>> sensor :
+        executeAll("segregate_network", null, sensors, "True").entrySet()) {
+      results.put(sensor.getKey(), sensor.getValue().get(0));
     }
+    return results;
+  }
 
-    // joins the given strings and separates them with the give delimiter
-    String args =
-        String.join(
-            " ",
-            "-o " + this.getOID(),
-            "-a " + this.getAPI_KEY(),
-            "-s " + sensorId,
-            "-c rejoin_network");
+  /**
+   * Sends a command for every item of every sensor to a worker in one request
+   *
+   * @param command COMMAND_TYPE, such as "file_del"
+   * @param argName name of the argument the item is passed as, or null for commands without
+   * @param items items of the commands, by SID of their sensor
+   * @param success line the script prints when a command succeeds
+   * @return by SID, true for every item whose command printed success, in the order of items
+   */
+  private Map<String, List<Boolean>> executeAll(
+      String command, String argName, Map<String, List<String>> items, String success) {
+    ArrayList<LimaCharlieBridge.Task> tasks = new ArrayList<>();
+    for (Map.Entry<String, List<String>> sensor : items.entrySet()) {
+      for (String item : sensor.getValue()) {
+        HashMap<String, String> args = new HashMap<>();
+        if (argName != null) {
+          args.put(argName, item);
+        }
+        tasks.add(new LimaCharlieBridge.Task(sensor.getKey(), command, args));
+      }
+    }
 
-    ArrayList<String> ret = executeScript(args);
-    return ret.contains("True");
+    List<ArrayList<String>> outputs = null;
+    try {
+      outputs = bridge.executeAll(tasks);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    Map<String, List<Boolean>> results = new LinkedHashMap<>();
+    int task = 0;
+    for (Map.Entry<String, List<String>> sensor : items.entrySet()) {
+      List<Boolean> sensorResults = new ArrayList<>();
+      for (int i = 0; i < sensor.getValue().size(); i++) {
+        ArrayList<String> output = outputs == null ? null : outputs.get(task++);
+        sensorResults.add(output != null && output.contains(success));
+      }
+      results.put(sensor.getKey(), sensorResults);
+    }
+    return results;
+  }
+
+  /**
+   * Kills a process on a worker of the bridge, see LimaCharlieBridge.submit()
+   *
+   * @param sensorId SID of the sensor to which command needs to be send
+   * @param pid process ID on the endpoint which needs to be killed by the sensor
+   * @param timeout milliseconds the command may take
+   * @return future of true if the sensor was told to kill the process, false if it is offline.
+   *     Cancelling it stops the command.
+   */
+  @Override
+  public CompletableFuture<Boolean> killProcessAsync(String sensorId, String pid, long timeout) {
+    HashMap<String, String> args = new HashMap<>();
+    args.put("pid", pid);
+    return submit(
+        sensorId, "os_kill_process", args, timeout, out -> out.contains("Successfully killed"));
+  }
+
+  /**
+   * Deletes a file on a worker of the bridge, see LimaCharlieBridge.submit()
+   *
+   * @param sensorId SID of the sensor to which command needs to be send
+   * @param path path of the file on endpoint which needs to be deleted
+   * @param timeout milliseconds the command may take
+   * @return future of true if the sensor was told to delete the file, false if it is offline.
+   *     Cancelling it stops the command.
+   */
+  @Override
+  public CompletableFuture<Boolean> deleteFileAsync(String sensorId, String path, long timeout) {
+    HashMap<String, String> args = new HashMap<>();
+    args.put("file_path", path);
+    return submit(sensorId, "file_del", args, timeout, out -> out.contains("Successfully deleted"));
+  }
+
+  /**
+   * Isolates a sensor from the network on a worker of the bridge, see LimaCharlieBridge.submit()
+   *
+   * @param sensorId identifier of the node to be isolated from the network
+   * @param timeout milliseconds the command may take
+   * @return future of true if the sensor confirmed its isolation, else false. Cancelling it stops
+   *     the command.
+   */
+  @Override
+  public CompletableFuture<Boolean> isolateNodeAsync(String sensorId, long timeout) {
+    return submit(
+        sensorId, "segregate_network", new HashMap<>(), timeout, out -> out.contains("True"));
+  }
+
+  /**
+   * Lets a sensor rejoin the network on a worker of the bridge, see LimaCharlieBridge.submit()
+   *
+   * @param sensorId sensorId of the node to be reconnected to the network
+   * @param timeout milliseconds the command may take
+   * @return future of true if the sensor confirmed it rejoined, else false. Cancelling it stops
+   *     the command.
+   */
+  @Override
+  public CompletableFuture<Boolean> rejoinNodeAsync(String sensorId, long timeout) {
+    return submit(
+        sensorId, "rejoin_network", new HashMap<>(), timeout, out -> out.contains("True"));
+  }
+
+  /**
+   * Gets the processes of a sensor on a worker of the bridge, see LimaCharlieBridge.submit()
+   *
+   * @param sensorId identifier of node to get the list of processes from
+   * @param timeout milliseconds the command may take
+   * @return future of the processes as JSON, empty if the sensor is offline. Cancelling it stops
+   *     the command.
+   */
+  @Override
+  public CompletableFuture<List<String>> getProcessesAsync(String sensorId, long timeout) {
+    return submit(
+        sensorId,
+        "os_processes",
+        new HashMap<>(),
+        timeout,
+        out -> out.contains("sensor is offline") ? new ArrayList<String>() : out);
+  }
+
+  /**
+   * Submits a command to the bridge, and derives its result from the lines it printed
+   *
+   * @return future of the result, cancelling which cancels the command
+   */
+  private <T> CompletableFuture<T> submit(
+      String sensorId,
+      String command,
+      HashMap<String, String> args,
+      long timeout,
+      Function<ArrayList<String>, T> result) {
+    CompletableFuture<ArrayList<String>> output = bridge.submit(sensorId, command, args, timeout);
+    CompletableFuture<T> future = output.thenApply(result);
+    future.whenComplete(
+        (value, e) -> {
+          if (future.isCancelled()) {
+            output.cancel(true);
+          }
+        });
+    return future;
+  }
+
+  /**
+   * Finds the sensors of a host. Looked up in the sensor index of a worker, which lists the
+   * sensors of the organisation once every few minutes rather than for every command.
+   *
+   * @param hostnameOrIp hostname, in any case, or internal or external IP address of the host
+   * @return SIDs of the sensors of the host, empty if there is none or the lookup failed
+   */
+  public List<String> findSensors(String hostnameOrIp) {
+    HashMap<String, String> args = new HashMap<>();
+    args.put("name", hostnameOrIp);
+    try {
+      return bridge.execute(null, "find_sensors", args);
+    } catch (IOException e) {
+      e.printStackTrace();
+      return new ArrayList<>();
+    }
   }
 
   /**
@@ -372,10 +487,17 @@ public class LimaCharlie implements EDR {
    * CURRENTLY NOT FUNCTIONING
    * @param rule rule is represented as a String
    * @return true if command sent successfully, else returns false
-   * @throws IOException if python script cannot be found.
    */
   public boolean newDetectionRule(String rule) throws IOException {
     return false;
   }
 
+  /**
+   * Stops the python workers of this instance, once the commands running on them have finished
+   */
+  @Override
+  public void close() {
+    bridge.close();
+  }
+
 }
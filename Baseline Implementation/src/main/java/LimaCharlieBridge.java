@@ -0,0 +1,662 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LimaCharlieBridge class
+ *
+ * <p>Pool of long-running LimaCharlieConstructor.py processes in worker mode, over which the
+ * commands to LimaCharlie are multiplexed. A worker starts Python, imports the LimaCharlie package
+ * and logs in once, then takes one JSON request per line on stdin and answers with one JSON
+ * response per line on stdout, so a command only pays for the tasking itself. Every request
+ * carries an id that its response must echo.
+ *
+ * <p>A worker handles one command at a time; up to the pool size commands run at once, further
+ * callers wait for a worker. Workers are started when first needed. A worker that exits, answers
+ * out of turn or does not answer within the timeout is killed, and replaced by a new one for the
+ * next command. A worker left idle for a while is pinged before it is used again, and
+ * healthCheck() pings all idle workers.
+ *
+ * <p>Commands are sent either from the calling thread, execute(), or from a thread of the bridge,
+ * submit(), which returns at once with a CompletableFuture that can be cancelled.
+ *
+ * <p>Thread safe.
+ */
+public class LimaCharlieBridge implements Closeable {
+
+  /**
+   * Command to a sensor, one of the commands of executeAll()
+   */
+  public static class Task {
+    private final String sensorId;
+    private final String command;
+    private final Map<String, String> args;
+
+    /**
+     * Constructor for Task
+     *
+     * @param sensorId SID of the sensor to which command needs to be send
+     * @param command command type, such as "file_del"
+     * @param args arguments of the command, such as "file_path"
+     */
+    public Task(String sensorId, String command, Map<String, String> args) {
+      this.sensorId = sensorId;
+      this.command = command;
+      this.args = args;
+    }
+  }
+
+  private static final int DEFAULT_WORKERS = 4;
+  // Commands wait up to 30 seconds for the worker to answer. The worker itself waits up to 10
+  // seconds for each response of the sensor, and may look the sensor up first.
+  private static final long DEFAULT_TIMEOUT = 30000;
+  // Workers idle for longer are pinged before being used again
+  private static final long HEALTH_CHECK_INTERVAL = 60000;
+  private static final long PING_TIMEOUT = 5000;
+  // Put on the responses of a worker when its stdout is closed
+  private static final JsonObject EXITED = new JsonObject();
+
+  private final List<String> command;
+  private final Map<String, String> environment;
+  private final long timeout;
+  private final Semaphore permits;
+  // Workers not running a command, the least recently used first
+  private final LinkedBlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+  private final Set<Worker> workers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+  private final AtomicLong nextId = new AtomicLong();
+  private final AtomicLong started = new AtomicLong();
+  // Threads running the commands submitted, and the thread failing them at their deadline
+  private final ThreadPoolExecutor dispatcher;
+  private final ScheduledThreadPoolExecutor deadlines;
+  private volatile boolean closed;
+
+  /**
+   * Constructor for LimaCharlieBridge with 4 workers run by "python", waiting up to 30 seconds
+   * for a command
+   *
+   * @param scriptPath path to LimaCharlieConstructor.py
+   * @param oid organisation id to log in with
+   * @param apiKey API key to log in with
+   */
+  public LimaCharlieBridge(String scriptPath, String oid, String apiKey) {
+    this(
+        "python",
+        scriptPath,
+        oid,
+        apiKey,
+        DEFAULT_WORKERS,
+        DEFAULT_TIMEOUT,
+        new HashMap<String, String>());
+  }
+
+  /**
+   * Constructor for LimaCharlieBridge
+   *
+   * @param python Python interpreter running the workers
+   * @param scriptPath path to LimaCharlieConstructor.py
+   * @param oid organisation id to log in with
+   * @param apiKey API key to log in with
+   * @param size highest number of workers
+   * @param timeout milliseconds to wait for a worker to start or answer a command
+   * @param environment variables added to the environment of the workers, such as PYTHONPATH
+   */
+  public LimaCharlieBridge(
+      String python,
+      String scriptPath,
+      String oid,
+      String apiKey,
+      int size,
+      long timeout,
+      Map<String, String> environment) {
+    if (size < 1 || timeout < 1) {
+      throw new IllegalArgumentException("Invalid LimaCharlie bridge size");
+    }
+    this.command = Arrays.asList(python, scriptPath, "--worker", "-o", oid, "-a", apiKey);
+    this.environment = new HashMap<>(environment);
+    this.timeout = timeout;
+    this.permits = new Semaphore(size, true);
+    this.dispatcher =
+        new ThreadPoolExecutor(
+            size,
+            size,
+            60,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            daemonThreads("limacharlie-dispatch"));
+    dispatcher.allowCoreThreadTimeOut(true);
+    this.deadlines = new ScheduledThreadPoolExecutor(1, daemonThreads("limacharlie-deadline"));
+    deadlines.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Sends a command to a sensor on a worker
+   *
+   * @param sensorId SID of the sensor to which command needs to be send
+   * @param command command type, such as "file_del"
+   * @param args arguments of the command, such as "file_path"
+   * @return ArrayList of the lines the command printed, such as "sensor is offline"
+   * @throws IOException if no worker could be started, or the worker failed or timed out
+   */
+  public ArrayList<String> execute(String sensorId, String command, Map<String, String> args)
+      throws IOException {
+    JsonObject request = request(sensorId, command, args);
+    Worker worker = checkout();
+    boolean healthy = false;
+    try {
+      JsonObject response = worker.call(request, timeout);
+      healthy = true;
+      return output(response);
+    } finally {
+      checkin(worker, healthy);
+    }
+  }
+
+  /**
+   * Sends a command to a sensor on a worker without waiting for it. The command is queued until
+   * a worker is free; at most as many commands run at once as there are workers, each on a thread
+   * of the bridge, so any number of commands can be in flight without tying up the caller.
+   *
+   * <p>The command fails with a TimeoutException once it has not finished within its timeout,
+   * counted from now and including the time queued. A command that fails so, or whose future is
+   * cancelled, while running on a worker kills the worker, which is replaced for the next command.
+   * Cancelling a future derived from the one returned does not cancel the command.
+   *
+   * @param sensorId SID of the sensor to which command needs to be send
+   * @param command command type, such as "file_del"
+   * @param args arguments of the command, such as "file_path"
+   * @param timeout milliseconds the command may take
+   * @return future of the lines the command printed, failing with an IOException if no worker
+   *     could be started or the worker failed
+   */
+  public CompletableFuture<ArrayList<String>> submit(
+      String sensorId, String command, Map<String, String> args, long timeout) {
+    Pending pending = new Pending(request(sensorId, command, args), timeout);
+    try {
+      ScheduledFuture<?> timer =
+          deadlines.schedule(pending::expire, timeout, TimeUnit.MILLISECONDS);
+      pending.whenComplete((output, e) -> timer.cancel(false));
+      dispatcher.execute(pending);
+    } catch (RejectedExecutionException e) {
+      pending.completeExceptionally(new IOException("LimaCharlie bridge is closed"));
+    }
+    return pending;
+  }
+
+  /**
+   * Sends many commands to a worker in one request, so they are tasked one after the other
+   * without a round trip each. The worker starts no command once the timeout has passed since it
+   * took the request, failing the commands left, and the request is given twice the timeout, so
+   * the wait does not grow with the number of commands.
+   *
+   * @param tasks commands to send, in order
+   * @return for every task, the lines its command printed, or null if the command failed
+   * @throws IOException if no worker could be started, or the worker failed or timed out
+   */
+  public List<ArrayList<String>> executeAll(List<Task> tasks) throws IOException {
+    List<ArrayList<String>> results = new ArrayList<>();
+    if (tasks.isEmpty()) {
+      return results;
+    }
+    JsonArray jsonTasks = new JsonArray();
+    for (Task task : tasks) {
+      jsonTasks.add(request(task.sensorId, task.command, task.args));
+    }
+    JsonObject request = new JsonObject();
+    request.addProperty("command", "batch");
+    request.add("tasks", jsonTasks);
+    request.addProperty("budget_ms", timeout);
+
+    Worker worker = checkout();
+    boolean healthy = false;
+    JsonObject response;
+    try {
+      // The last command started may take up to the timeout itself
+      response = worker.call(request, 2 * timeout);
+      healthy = true;
+    } finally {
+      checkin(worker, healthy);
+    }
+    output(response);
+    JsonElement responses = response.get("results");
+    if (responses == null
+        || !responses.isJsonArray()
+        || responses.getAsJsonArray().size() != tasks.size()) {
+      throw new IOException("LimaCharlie worker answered a batch without results: " + response);
+    }
+    for (JsonElement result : responses.getAsJsonArray()) {
+      try {
+        results.add(output(result.getAsJsonObject()));
+      } catch (IOException | IllegalStateException e) {
+        System.err.println(e.getMessage());
+        results.add(null);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Pings every idle worker, killing those that do not answer
+   *
+   * @return number of idle workers that answered
+   */
+  public int healthCheck() {
+    // Take the idle workers as a command would, so none is started in their place meanwhile
+    ArrayList<Worker> checked = new ArrayList<>();
+    while (permits.tryAcquire()) {
+      Worker worker = idle.poll();
+      if (worker == null) {
+        permits.release();
+        break;
+      }
+      checked.add(worker);
+    }
+
+    int healthy = 0;
+    for (Worker worker : checked) {
+      boolean answered = worker.ping();
+      if (answered) {
+        healthy++;
+      }
+      checkin(worker, answered);
+    }
+    return healthy;
+  }
+
+  /**
+   * Number of workers running
+   *
+   * @return int count
+   */
+  public int getWorkerCount() {
+    return workers.size();
+  }
+
+  /**
+   * Number of workers ever started, including those replacing failed workers
+   *
+   * @return long count
+   */
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  /**
+   * Stops the idle workers at once and the busy ones when their command has finished. Later
+   * commands are rejected.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    // Commands still queued fail as the bridge is closed, those running finish
+    dispatcher.shutdown();
+    deadlines.shutdown();
+    Worker worker;
+    while ((worker = idle.poll()) != null) {
+      worker.destroy();
+    }
+  }
+
+  /**
+   * Takes an idle worker, or starts one, waiting while all workers are busy
+   */
+  private Worker checkout() throws IOException {
+    if (closed) {
+      throw new IOException("LimaCharlie bridge is closed");
+    }
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for a LimaCharlie worker");
+    }
+
+    try {
+      Worker worker = idle.poll();
+      if (worker != null
+          && (!worker.isAlive()
+              || (System.currentTimeMillis() - worker.lastUsed > HEALTH_CHECK_INTERVAL
+                  && !worker.ping()))) {
+        worker.destroy();
+        worker = null;
+      }
+      if (worker == null) {
+        worker = new Worker();
+      }
+      return worker;
+    } catch (IOException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a worker to the pool, or kills it if it failed
+   */
+  private void checkin(Worker worker, boolean healthy) {
+    if (healthy && !closed) {
+      worker.lastUsed = System.currentTimeMillis();
+      idle.add(worker);
+      // Closed meanwhile, after the idle workers were stopped
+      if (closed && idle.remove(worker)) {
+        worker.destroy();
+      }
+    } else {
+      worker.destroy();
+    }
+    permits.release();
+  }
+
+  /**
+   * Threads that do not keep the application running
+   */
+  private static ThreadFactory daemonThreads(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Request to send a command to a sensor
+   */
+  private static JsonObject request(String sensorId, String command, Map<String, String> args) {
+    JsonObject request = new JsonObject();
+    request.addProperty("sid", sensorId);
+    request.addProperty("command", command);
+    JsonObject jsonArgs = new JsonObject();
+    for (Map.Entry<String, String> arg : args.entrySet()) {
+      jsonArgs.addProperty(arg.getKey(), arg.getValue());
+    }
+    request.add("args", jsonArgs);
+    return request;
+  }
+
+  /**
+   * Lines printed by a command, from its response
+   */
+  private static ArrayList<String> output(JsonObject response) throws IOException {
+    JsonElement ok = response.get("ok");
+    if (ok == null || !ok.isJsonPrimitive() || !ok.getAsBoolean()) {
+      throw new IOException("LimaCharlie command failed: " + response.get("error"));
+    }
+    ArrayList<String> lines = new ArrayList<>();
+    JsonElement output = response.get("output");
+    if (output != null && output.isJsonArray()) {
+      for (JsonElement line : output.getAsJsonArray()) {
+        lines.add(line.getAsString());
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Command submitted, run on a thread of the dispatcher
+   */
+  private class Pending extends CompletableFuture<ArrayList<String>> implements Runnable {
+    private final JsonObject request;
+    private final long timeout;
+    private final long deadline;
+    // Worker running the command, and set once it has been killed to stop the command.
+    // Guarded by this.
+    private Worker worker;
+    private boolean stopped;
+
+    Pending(JsonObject request, long timeout) {
+      this.request = request;
+      this.timeout = timeout;
+      this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    @Override
+    public void run() {
+      if (isDone()) {
+        return;
+      }
+      Worker worker;
+      try {
+        worker = checkout();
+      } catch (IOException e) {
+        completeExceptionally(e);
+        return;
+      }
+
+      boolean healthy = false;
+      try {
+        if (start(worker)) {
+          // Rounded up, so the worker does not time out before the deadline
+          long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1;
+          JsonObject response = worker.call(request, Math.max(1, remaining));
+          healthy = true;
+          complete(output(response));
+        } else {
+          healthy = true;
+        }
+      } catch (IOException e) {
+        // The worker timing out at the deadline fails the command as the deadline does
+        if (deadline - System.nanoTime() <= 0) {
+          expire();
+        } else {
+          completeExceptionally(e);
+        }
+      } finally {
+        checkin(worker, finish() && healthy);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        stop();
+      }
+      return cancelled;
+    }
+
+    /**
+     * Fails the command at its deadline
+     */
+    void expire() {
+      TimeoutException e =
+          new TimeoutException("LimaCharlie command did not finish within " + timeout + " ms");
+      if (completeExceptionally(e)) {
+        stop();
+      }
+    }
+
+    private synchronized boolean start(Worker worker) {
+      if (isDone()) {
+        return false;
+      }
+      this.worker = worker;
+      return true;
+    }
+
+    /**
+     * @return false if the worker was killed to stop the command
+     */
+    private synchronized boolean finish() {
+      worker = null;
+      return !stopped;
+    }
+
+    private synchronized void stop() {
+      if (worker != null) {
+        stopped = true;
+        worker.destroy();
+      }
+    }
+  }
+
+  /**
+   * Worker process, with a thread reading its responses
+   */
+  private class Worker {
+    private final Process process;
+    private final BufferedWriter requests;
+    private final LinkedBlockingQueue<JsonObject> responses = new LinkedBlockingQueue<>();
+    private volatile long lastUsed;
+
+    /**
+     * Starts a worker and waits until it has logged in
+     */
+    Worker() throws IOException {
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.environment().putAll(environment);
+      // Responses are JSON, keep Python from failing on non-ASCII requests
+      builder.environment().put("PYTHONIOENCODING", "utf-8");
+      builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+      process = builder.start();
+      started.incrementAndGet();
+      workers.add(this);
+      requests =
+          new BufferedWriter(
+              new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+
+      Thread reader = new Thread(this::readResponses, "limacharlie-worker");
+      reader.setDaemon(true);
+      reader.start();
+
+      // The worker announces itself with a response without id once logged in
+      try {
+        JsonObject ready = await(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+        if (ready == null || ready == EXITED || !ready.has("id") || !ready.get("id").isJsonNull()) {
+          throw new IOException("LimaCharlie worker did not start: " + ready);
+        }
+      } catch (IOException | RuntimeException e) {
+        destroy();
+        throw e;
+      }
+      lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Sends a request and waits for its response
+     *
+     * @throws IOException if the worker exited, answered another request or timed out. The
+     *     worker must then be destroyed, as its next response may be the one to this request.
+     */
+    JsonObject call(JsonObject request, long timeout) throws IOException {
+      long id = nextId.incrementAndGet();
+      request.addProperty("id", id);
+      requests.write(request.toString());
+      requests.newLine();
+      requests.flush();
+
+      JsonObject response = await(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+      if (response == null) {
+        throw new IOException("LimaCharlie worker did not answer within " + timeout + " ms");
+      } else if (response == EXITED) {
+        throw new IOException("LimaCharlie worker exited");
+      }
+      JsonElement responseId = response.get("id");
+      if (responseId == null || responseId.isJsonNull() || responseId.getAsLong() != id) {
+        throw new IOException("LimaCharlie worker answered out of turn: " + response);
+      }
+      return response;
+    }
+
+    /**
+     * Checks that the worker still answers
+     *
+     * @return true if it answered a ping
+     */
+    boolean ping() {
+      JsonObject request = new JsonObject();
+      request.addProperty("command", "ping");
+      try {
+        call(request, PING_TIMEOUT);
+        return true;
+      } catch (IOException e) {
+        System.err.println("LimaCharlie worker failed its health check: " + e.getMessage());
+        return false;
+      }
+    }
+
+    boolean isAlive() {
+      return process.isAlive();
+    }
+
+    void destroy() {
+      workers.remove(this);
+      process.destroyForcibly();
+    }
+
+    /**
+     * Takes the next response, waiting until a deadline
+     *
+     * @return JsonObject response, EXITED if the worker exited, or null at the deadline
+     */
+    private JsonObject await(long deadline) throws IOException {
+      try {
+        JsonObject response =
+            responses.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if (response == EXITED) {
+          // Later calls see the exit too
+          responses.add(EXITED);
+        }
+        return response;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for a LimaCharlie worker");
+      }
+    }
+
+    /**
+     * Reads the responses of the worker until it exits. Lines that are not JSON objects, such as
+     * the message of a worker that could not import LimaCharlie, are reported and skipped.
+     */
+    private void readResponses() {
+      JsonParser parser = new JsonParser();
+      try (BufferedReader reader =
+          new BufferedReader(
+              new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          try {
+            JsonElement response = parser.parse(line);
+            if (response.isJsonObject()) {
+              responses.add(response.getAsJsonObject());
+              continue;
+            }
+          } catch (JsonSyntaxException e) {
+            // Reported below
+          }
+          System.err.println("LimaCharlie worker: " + line);
+        }
+      } catch (IOException e) {
+        // The worker was destroyed
+      }
+      responses.add(EXITED);
+    }
+  }
+}
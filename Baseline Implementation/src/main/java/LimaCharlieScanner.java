@@ -0,0 +1,540 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LimaCharlieScanner class
+ *
+ * <p>Classifies LimaCharlie output as log or DR data and finds the event types of DR data, reading
+ * one JSON record per line through a MappedLineReader. Small files are read sequentially. Files of
+ * at least the parallel threshold are split into newline-aligned chunks that are scanned on a
+ * ForkJoinPool, each task with its own parser, and the chunk results are merged so that the
+ * outcome is the one a sequential read from the start of the file gives.
+ *
+ * <p>To make merging independent of which chunk finishes first, a chunk does not report flags but
+ * the file offsets of the first record that is not log data, that is not DR data, and that is a
+ * NEW_PROCESS or FILE_CREATE detection. Once a chunk has seen enough to decide the outcome up to
+ * some offset, later records of all chunks are skipped.
+ */
+public class LimaCharlieScanner {
+
+  // Files from this size on are scanned in parallel
+  private static final long DEFAULT_PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+  // Smallest chunk a file is split into
+  private static final long DEFAULT_MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+  // Chunks per worker, so that workers finishing early can take over remaining chunks
+  private static final int CHUNKS_PER_WORKER = 4;
+  // Size of the reads looking for the newline ending a chunk
+  private static final int ALIGN_BUFFER_SIZE = 8192;
+  // Size of the mapped window of every chunk reader
+  private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+  // Offset of a record that was not found
+  private static final long NONE = Long.MAX_VALUE;
+
+  private final String[] routingKeys;
+  private final long parallelThreshold;
+  private final long minChunkSize;
+  private final ForkJoinPool pool;
+
+  /**
+   * Classification of LimaCharlie output
+   */
+  public static class Result {
+    // Every record read is a log record, respectively a DR record. A file without records is
+    // log data.
+    private final boolean log;
+    private final boolean dr;
+    private final boolean newProcessFound;
+    private final boolean fileCreateFound;
+
+    private Result(boolean log, boolean dr, boolean newProcessFound, boolean fileCreateFound) {
+      this.log = log;
+      this.dr = dr;
+      this.newProcessFound = newProcessFound;
+      this.fileCreateFound = fileCreateFound;
+    }
+
+    public boolean isLog() {
+      return log;
+    }
+
+    public boolean isDR() {
+      return dr;
+    }
+
+    public boolean isNewProcessFound() {
+      return newProcessFound;
+    }
+
+    public boolean isFileCreateFound() {
+      return fileCreateFound;
+    }
+  }
+
+  /**
+   * File offsets of the first records of each kind found in a range of the file
+   */
+  private static class Firsts {
+    private long notLog = NONE;
+    private long notDR = NONE;
+    private long newProcess = NONE;
+    private long fileCreate = NONE;
+
+    void merge(Firsts other) {
+      notLog = Math.min(notLog, other.notLog);
+      notDR = Math.min(notDR, other.notDR);
+      newProcess = Math.min(newProcess, other.newProcess);
+      fileCreate = Math.min(fileCreate, other.fileCreate);
+    }
+
+    /**
+     * Offset of the record after which no record can change the outcome, or NONE
+     */
+    long decidedAt(boolean stopEarly) {
+      // Neither log nor DR data from here on
+      if (notLog != NONE && notDR != NONE) {
+        return Math.max(notLog, notDR);
+      }
+      // Only DR data, with both event types found
+      if (stopEarly && notLog != NONE && newProcess != NONE && fileCreate != NONE) {
+        return Math.max(notLog, Math.max(newProcess, fileCreate));
+      }
+      return NONE;
+    }
+
+    /**
+     * Outcome of reading the records in file order until they are neither log nor DR data, or with
+     * stopEarly until they can only be DR data and both event types were found
+     */
+    Result resolve(boolean stopEarly) {
+      boolean newProcessFound = newProcess < notDR;
+      boolean fileCreateFound = fileCreate < notDR;
+      boolean stoppedEarly = stopEarly && newProcessFound && fileCreateFound && notLog < notDR;
+      return new Result(
+          notLog == NONE, notDR == NONE || stoppedEarly, newProcessFound, fileCreateFound);
+    }
+  }
+
+  /**
+   * Constructor for LimaCharlieScanner, scanning large files on the common ForkJoinPool
+   *
+   * @param routingKeys keys the routing hash of every log record must have
+   */
+  public LimaCharlieScanner(String[] routingKeys) {
+    this(
+        routingKeys,
+        DEFAULT_PARALLEL_THRESHOLD,
+        DEFAULT_MIN_CHUNK_SIZE,
+        ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructor for LimaCharlieScanner
+   *
+   * @param routingKeys keys the routing hash of every log record must have
+   * @param parallelThreshold size in bytes from which a file is scanned in parallel
+   * @param minChunkSize smallest chunk in bytes a file scanned in parallel is split into
+   * @param pool pool the chunks are scanned on
+   */
+  public LimaCharlieScanner(
+      String[] routingKeys, long parallelThreshold, long minChunkSize, ForkJoinPool pool) {
+    if (minChunkSize < 1) {
+      throw new IllegalArgumentException("minChunkSize must be positive");
+    }
+    this.routingKeys = routingKeys.clone();
+    this.parallelThreshold = parallelThreshold;
+    this.minChunkSize = minChunkSize;
+    this.pool = pool;
+  }
+
+  /**
+   * Reads LimaCharlie output one JSON record, i.e. line, at a time, checking each record against
+   * the log and DR structure and noting the event types of DR records. Blank lines are skipped.
+   * Reading stops as soon as the file is neither log nor DR data, or with stopEarly once it can
+   * only be DR data and both NEW_PROCESS and FILE_CREATE were seen, so the rest of a large DR file
+   * is not read.
+   *
+   * @param filePath path to the LimaCharlie output
+   * @param stopEarly true to stop once both DR event types were seen
+   * @return Result classification of the file, neither log nor DR data if it cannot be read
+   */
+  public Result scan(String filePath, boolean stopEarly) {
+    Path path = Paths.get(filePath);
+    try {
+      long size;
+      long[] chunks;
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        size = channel.size();
+        chunks = isParallel(size) ? split(channel, size) : null;
+      }
+
+      Firsts firsts;
+      if (chunks == null || chunks.length <= 2) {
+        firsts = scanRange(path, 0, size, stopEarly, new AtomicLong(NONE));
+      } else {
+        firsts = pool.invoke(new ChunkTask(path, chunks, 0, chunks.length - 1, stopEarly));
+      }
+      return firsts.resolve(stopEarly);
+    } catch (IOException | RuntimeException e) {
+      return new Result(false, false, false, false);
+    }
+  }
+
+  /**
+   * Checks if a file of a size is scanned in parallel, which takes at least the parallel threshold
+   * and room for two chunks
+   *
+   * @param size size of the file in bytes
+   * @return true if scanned in parallel
+   */
+  public boolean isParallel(long size) {
+    return size >= parallelThreshold && size >= 2 * minChunkSize;
+  }
+
+  /**
+   * Receives the NEW_PROCESS and FILE_CREATE detections of DR data
+   */
+  public interface DetectionListener {
+
+    /**
+     * Called for every detection, in the order of the file
+     *
+     * @param eventType "NEW_PROCESS" or "FILE_CREATE"
+     * @param detect detect hash of the record, holding the routing and event hashes of the
+     *     detected event
+     */
+    void onDetection(String eventType, JsonObject detect);
+  }
+
+  /**
+   * Reads DR data one record at a time, handing every NEW_PROCESS and FILE_CREATE detection to a
+   * listener. Records that are not DR records, or have no detect hash, are skipped. The file is
+   * read sequentially, so detections are handed out in order.
+   *
+   * @param filePath path to the LimaCharlie DR data
+   * @param listener receives the detections
+   * @throws IOException if the file cannot be read
+   */
+  public void detections(String filePath, DetectionListener listener) throws IOException {
+    try (DetectionReader detections = openDetections(filePath)) {
+      while (detections.next()) {
+        listener.onDetection(detections.getEventType(), detections.getDetect());
+      }
+    }
+  }
+
+  /**
+   * Opens DR data for reading its NEW_PROCESS and FILE_CREATE detections one at a time, as the
+   * caller asks for them. Only the record of the current detection is held in memory.
+   *
+   * @param filePath path to the LimaCharlie DR data
+   * @return DetectionReader positioned before the first detection, to be closed by the caller
+   * @throws IOException if the file cannot be opened
+   */
+  public DetectionReader openDetections(String filePath) throws IOException {
+    return new DetectionReader(new MappedLineReader(Paths.get(filePath), WINDOW_SIZE));
+  }
+
+  /**
+   * Reader of the detections of DR data, see openDetections(String)
+   */
+  public class DetectionReader implements Closeable {
+    private final MappedLineReader lines;
+    private final JsonParser parser = new JsonParser();
+    private String eventType;
+    private JsonObject detect;
+
+    private DetectionReader(MappedLineReader lines) {
+      this.lines = lines;
+    }
+
+    /**
+     * Reads up to the next detection, skipping records that are not DR records or have no detect
+     * hash
+     *
+     * @return true if there is one, false at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+      ByteBuffer line;
+      while ((line = lines.nextLine()) != null) {
+        JsonObject json = parse(parser, line);
+        if (json == null || !isDRRecord(json)) {
+          continue;
+        }
+        String type = LimaCharlieScanner.this.getEventType(json);
+        JsonElement element = json.get("detect");
+        if (("NEW_PROCESS".equals(type) || "FILE_CREATE".equals(type))
+            && element.isJsonObject()) {
+          eventType = type;
+          detect = element.getAsJsonObject();
+          return true;
+        }
+      }
+      eventType = null;
+      detect = null;
+      return false;
+    }
+
+    /**
+     * Event type of the current detection
+     *
+     * @return "NEW_PROCESS" or "FILE_CREATE"
+     */
+    public String getEventType() {
+      return eventType;
+    }
+
+    /**
+     * Detect hash of the current detection, holding the routing and event hashes of the detected
+     * event
+     *
+     * @return JsonObject detect hash
+     */
+    public JsonObject getDetect() {
+      return detect;
+    }
+
+    @Override
+    public void close() throws IOException {
+      lines.close();
+    }
+  }
+
+  /**
+   * Splits a file into chunks starting at the start of a line
+   *
+   * @return long[] chunk boundaries, from 0 to size
+   */
+  private long[] split(FileChannel channel, long size) throws IOException {
+    int workers = Math.max(1, pool.getParallelism());
+    long chunkSize = Math.max(minChunkSize, size / ((long) workers * CHUNKS_PER_WORKER));
+
+    ArrayList<Long> boundaries = new ArrayList<>();
+    boundaries.add(0L);
+    ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+    long next = chunkSize;
+    while (next < size) {
+      long boundary = nextLineStart(channel, buffer, next, size);
+      if (boundary >= size) {
+        break;
+      }
+      boundaries.add(boundary);
+      next = boundary + chunkSize;
+    }
+    boundaries.add(size);
+
+    long[] chunks = new long[boundaries.size()];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = boundaries.get(i);
+    }
+    return chunks;
+  }
+
+  /**
+   * Finds the offset just after the first '\n' at or after from, or size if there is none
+   */
+  private long nextLineStart(FileChannel channel, ByteBuffer buffer, long from, long size)
+      throws IOException {
+    long position = from;
+    while (position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  /**
+   * Scans the lines between two offsets, skipping records after stopAt and lowering stopAt once
+   * the records read decide the outcome
+   */
+  private Firsts scanRange(Path path, long from, long to, boolean stopEarly, AtomicLong stopAt)
+      throws IOException {
+    Firsts firsts = new Firsts();
+    // Parser state of this task only
+    JsonParser parser = new JsonParser();
+    try (MappedLineReader lines = new MappedLineReader(path, from, to, WINDOW_SIZE)) {
+      ByteBuffer line;
+      while ((line = lines.nextLine()) != null) {
+        long offset = lines.getLineStart();
+        if (offset > stopAt.get()) {
+          break;
+        }
+
+        JsonObject json = parse(parser, line);
+        boolean log = json != null && isLogRecord(json);
+        boolean dr = json != null && isDRRecord(json);
+        if (!log && firsts.notLog == NONE) {
+          firsts.notLog = offset;
+        }
+        if (!dr && firsts.notDR == NONE) {
+          firsts.notDR = offset;
+        }
+        if (dr) {
+          String eventType = getEventType(json);
+          // If the event is for NEW_PROCESS, flag it as found
+          if ("NEW_PROCESS".equals(eventType) && firsts.newProcess == NONE) {
+            firsts.newProcess = offset;
+          }
+          // If the event is for FILE_CREATE, flag it as found
+          else if ("FILE_CREATE".equals(eventType) && firsts.fileCreate == NONE) {
+            firsts.fileCreate = offset;
+          }
+        }
+
+        long decided = firsts.decidedAt(stopEarly);
+        if (decided != NONE) {
+          long current;
+          while (decided < (current = stopAt.get())) {
+            if (stopAt.compareAndSet(current, decided)) {
+              break;
+            }
+          }
+          break;
+        }
+      }
+    }
+    return firsts;
+  }
+
+  /**
+   * Parses a line as a single JSON object
+   *
+   * @return JsonObject of the line, or null if it is not a single JSON object
+   */
+  private JsonObject parse(JsonParser parser, ByteBuffer line) {
+    try {
+      JsonReader reader = new JsonReader(MappedLineReader.newReader(line));
+      reader.setLenient(true);
+      // Google JSON will throw exception if it cannot parse the line
+      JsonElement elem = parser.parse(reader);
+      if (!elem.isJsonObject() || reader.peek() != JsonToken.END_DOCUMENT) {
+        return null;
+      }
+      return elem.getAsJsonObject();
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks a record has the routing hash with all keys expected for LimaCharlie log data, and an
+   * event hash
+   */
+  private boolean isLogRecord(JsonObject json) {
+    // No routing hash, therefore return false since all logs contain a routing hash
+    JsonElement routing = json.get("routing");
+    if (routing == null || !routing.isJsonObject()) {
+      return false;
+    }
+
+    // Checking to make sure the routing hash contains all expected keys for a LimaCharlie log
+    JsonObject routingJson = routing.getAsJsonObject();
+    for (String key : routingKeys) {
+      if (routingJson.get(key) == null) {
+        return false;
+      }
+    }
+
+    // Must have an event hash
+    // Event hash is different per event, therefore will not check internal structure
+    // Top-level event hash is exclusive to LimaCharlieLog Data
+    return json.get("event") != null;
+  }
+
+  /**
+   * Checks a record has the hashes of LimaCharlie DR data
+   */
+  private boolean isDRRecord(JsonObject json) {
+    return json.get("source") != null
+        && json.get("detect") != null
+        && json.get("routing") != null
+        && json.get("detect_id") != null
+        && json.get("cat") != null;
+  }
+
+  /**
+   * Gets the event type from the routing hash of a record, or null if it has none
+   */
+  private String getEventType(JsonObject json) {
+    JsonElement routing = json.get("routing");
+    if (routing == null || !routing.isJsonObject()) {
+      return null;
+    }
+    JsonElement eventType = routing.getAsJsonObject().get("event_type");
+    if (eventType == null || !eventType.isJsonPrimitive()) {
+      return null;
+    }
+    return eventType.getAsString();
+  }
+
+  /**
+   * Scans the chunks between two boundary indexes, splitting in halves down to single chunks
+   */
+  private class ChunkTask extends RecursiveTask<Firsts> {
+    private final Path path;
+    private final long[] chunks;
+    private final int from;
+    private final int to;
+    private final boolean stopEarly;
+    private final AtomicLong stopAt;
+
+    ChunkTask(Path path, long[] chunks, int from, int to, boolean stopEarly) {
+      this(path, chunks, from, to, stopEarly, new AtomicLong(NONE));
+    }
+
+    private ChunkTask(
+        Path path, long[] chunks, int from, int to, boolean stopEarly, AtomicLong stopAt) {
+      this.path = path;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+      this.stopEarly = stopEarly;
+      this.stopAt = stopAt;
+    }
+
+    @Override
+    protected Firsts compute() {
+      if (to - from == 1) {
+        if (chunks[from] > stopAt.get()) {
+          return new Firsts();
+        }
+        try {
+          return scanRange(path, chunks[from], chunks[to], stopEarly, stopAt);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      int middle = (from + to) >>> 1;
+      ChunkTask left = new ChunkTask(path, chunks, from, middle, stopEarly, stopAt);
+      ChunkTask right = new ChunkTask(path, chunks, middle, to, stopEarly, stopAt);
+      right.fork();
+      Firsts firsts = left.compute();
+      firsts.merge(right.join());
+      return firsts;
+    }
+  }
+}
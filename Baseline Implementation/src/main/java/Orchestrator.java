@@ -1,4 +1,4 @@
-import java.nio.file.NotDirectoryException;
+import java.io.IOException;
 
 /**
  * Driver class for Orchestrator. Enables interoperability between security tools for example: SIEM tool, Splunk
@@ -6,26 +6,126 @@ import java.nio.file.NotDirectoryException;
  */
 public class Orchestrator {
 
+  private static final String USAGE =
+      "Usage: Orchestrator LC_PATH SPLUNK_PATH [--tail] [--backpressure=block|shed|spill]"
+          + " [--direct-response] [--routing-rules=PATH]";
+
   /**
    * Driver method for Orchestrator
    *
-   * @param args Expects args[0] to be LC output path and args[1] to be Splunk output path
+   * @param args Expects args[0] to be LC output path and args[1] to be Splunk output path.
+   *     Optional further arguments: "--tail" treats LC output files as append-only logs, handling
+   *     only the lines appended since the previous modification. "--backpressure=block",
+   *     "--backpressure=shed" or "--backpressure=spill" selects what happens to output files
+   *     detected while all handlers are busy and their queue is full, instead of handling them on
+   *     the collector thread. "--direct-response" responds to LimaCharlie DR detections directly
+   *     on the sensor, mirroring the DR data to Splunk afterwards, instead of through Splunk
+   *     reports. "--routing-rules=PATH" reads the rules deciding what is done with Splunk output
+   *     files from PATH instead of "src/main/resources/SplunkRoutingRules.json", reloading them
+   *     when the file changes. Progress of both collectors is checkpointed next to their
+   *     directories, so a restart only handles the backlog. Prints a usage message and exits if
+   *     the paths are missing or the backpressure policy is not one of these.
    */
   public static void main(String[] args) {
+    if (args.length < 2) {
+      System.err.println(USAGE);
+      return;
+    }
     String lcPath = args[0];
     String splunkPath = args[1];
+    boolean tailLimaCharlie = false;
+    boolean directResponse = false;
+    String routingRules = "src/main/resources/SplunkRoutingRules.json";
+    HandlerPool.RejectionPolicy backpressure = null;
+    for (int i = 2; i < args.length; i++) {
+      if (args[i].equals("--tail")) {
+        tailLimaCharlie = true;
+      } else if (args[i].equals("--direct-response")) {
+        directResponse = true;
+      } else if (args[i].startsWith("--routing-rules=")) {
+        routingRules = args[i].substring("--routing-rules=".length());
+      } else if (args[i].startsWith("--backpressure=")) {
+        backpressure = parseBackpressure(args[i].substring("--backpressure=".length()));
+        if (backpressure == null) {
+          System.err.println(USAGE);
+          return;
+        }
+      }
+    }
 
-    StaticInterpreter staticInterpreter = new StaticInterpreter();
+    StaticInterpreter staticInterpreter = new StaticInterpreter(directResponse, routingRules);
+    // Check the LimaCharlie credentials once at startup, the client is shared by all handlers
+    try {
+      EDRRegistry.getDefault();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    // Bounded pool shared by both collectors for running OutputHandlers
+    HandlerPool handlerPool = HandlerPool.getDefault();
+    if (backpressure != null) {
+      int cores = Runtime.getRuntime().availableProcessors();
+      handlerPool = new HandlerPool("handler", cores, cores * 4, 1000, backpressure);
+      // LimaCharlie output only becomes Splunk log management and reporting, which may be shed,
+      // unless it is responded to directly. Splunk output becomes remediation on LimaCharlie,
+      // which never is.
+      if (!directResponse) {
+        handlerPool.setLowPriority("limacharlie");
+      }
+    }
 
-    // Setup collectors
-    LimaCharlieCollector limaCharlieCollector;
-    SplunkCollector splunkCollector;
+    // Setup collector, watching both output directories on a single thread
+    DirectoryCollector collector = null;
 
     try {
-      limaCharlieCollector = new LimaCharlieCollector(lcPath, staticInterpreter);
-      splunkCollector = new SplunkCollector(splunkPath, staticInterpreter);
-    } catch (NotDirectoryException e) {
+      CheckpointStore lcCheckpoints = new CheckpointStore(CheckpointStore.defaultPath(lcPath));
+      CheckpointStore splunkCheckpoints =
+          new CheckpointStore(CheckpointStore.defaultPath(splunkPath));
+
+      collector = new DirectoryCollector(staticInterpreter, handlerPool);
+      // Detections already responded to in the last 10 minutes are not responded to again,
+      // however often LimaCharlie or Splunk report them
+      collector.setDetectionFilter(new DetectionFilter());
+      collector.addSource(
+          lcPath,
+          "limacharlie",
+          null,
+          false,
+          tailLimaCharlie,
+          lcCheckpoints,
+          new DedupCache(60000, 10000));
+      collector.addSource(
+          splunkPath,
+          "splunk",
+          null,
+          false,
+          false,
+          splunkCheckpoints,
+          new DedupCache(1000, 10000));
+    } catch (IOException e) {
       e.printStackTrace();
+      if (collector != null) {
+        collector.stopRunning();
+      }
+    }
+  }
+
+  /**
+   * Parses the value of "--backpressure=". Only the policies slowing down or offloading the
+   * collector are accepted, the others drop output files or fail the collector.
+   *
+   * @param value value given after "--backpressure=", in any case
+   * @return BLOCK, SHED or SPILL, or null if the value is not one of them
+   */
+  static HandlerPool.RejectionPolicy parseBackpressure(String value) {
+    switch (value.toLowerCase()) {
+      case "block":
+        return HandlerPool.RejectionPolicy.BLOCK;
+      case "shed":
+        return HandlerPool.RejectionPolicy.SHED;
+      case "spill":
+        return HandlerPool.RejectionPolicy.SPILL;
+      default:
+        return null;
     }
   }
 }
@@ -2,68 +2,200 @@ import static java.lang.Thread.sleep;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-public class OutputHandler implements Runnable {
+public class OutputHandler implements Runnable, HandlerPool.Spillable, HandlerPool.Tracked {
+
+  // Shared by all handlers, decides when the output file has been completely written
+  private static final FileReadiness FILE_READINESS = FileReadiness.getDefault();
+  // Shared by all handlers, wakes a handler whose response batch has lingered long enough although
+  // no further row was read. Only hands the batch to BATCH_SENDERS, it never waits on an EDR.
+  private static final ScheduledThreadPoolExecutor LINGER_TIMER =
+      new ScheduledThreadPoolExecutor(1, daemonThreads("response-linger"));
+  // Sends the lingering batches, a thread per batch in flight, so a slow organisation or a hung
+  // worker only delays the batches waiting on it
+  private static final ExecutorService BATCH_SENDERS =
+      Executors.newCachedThreadPool(daemonThreads("response-batch"));
+  // Milliseconds a single LimaCharlie response may take before it fails
+  private static final long RESPONSE_TIMEOUT = 30000;
 
   private String outPath;
   private String toolFrom;
-  private Thread thread;
   private StaticInterpreter staticInterpreter;
+  // Set when outPath is an append-only file of which only new lines are handled
+  private FileTailer fileTailer;
+  // Set when progress on outPath is recorded, with the fingerprint and offset recorded
+  private CheckpointStore checkpointStore;
+  private String fingerprint;
+  private long checkpointOffset;
+  // Registry of the collector tracking this handler while in flight, or null
+  private HandlerRegistry handlerRegistry;
+  // Filter of detections already responded to, or null to respond to every one
+  private DetectionFilter detectionFilter;
+  // LimaCharlie actions of a Splunk output not sent yet, and the number of actions done once
+  // they are, or -1 if none is pending. Guarded by responseBatch, as BATCH_SENDERS send it too.
+  private final ResponseBatch responseBatch = new ResponseBatch();
+  private int batchEnd = -1;
+  // Set while the linger timer is scheduled for this handler, guarded by responseBatch
+  private boolean lingerScheduled;
+  // Detections of the actions in responseBatch, remembered by detectionFilter once sent
+  private final ArrayList<String> batchedKeys = new ArrayList<>();
+  // Set when reading the output or an action failed
+  private volatile boolean failed;
 
   /**
-   * Constructor for OutputHandler
+   * Constructor for OutputHandler. The handler does not start itself; it is submitted to a
+   * HandlerPool by the collector that detected the file.
    *
    * @param outPath path to output file to read and handle
    */
   public OutputHandler(String outPath, String toolFrom, StaticInterpreter staticInterpreter) {
+    this(outPath, toolFrom, staticInterpreter, HandlerContext.NONE);
+  }
+
+  /**
+   * Constructor for OutputHandler sharing the state of the source of the file. In tailing mode
+   * only the complete lines appended to outPath since the previous handler of the same file are
+   * interpreted and acted on.
+   *
+   * @param outPath path to output file to read and handle
+   * @param context tailer, checkpoint store, registry and detection filter of the source of the
+   *     file, each null if not used. The handler must be registered with the registry before
+   *     being submitted.
+   */
+  public OutputHandler(
+      String outPath,
+      String toolFrom,
+      StaticInterpreter staticInterpreter,
+      HandlerContext context) {
     this.toolFrom = toolFrom;
     this.outPath = outPath;
     this.staticInterpreter = staticInterpreter;
-    thread = new Thread(this);
-    thread.start();
+    this.fileTailer = context.getFileTailer();
+    this.checkpointStore = context.getCheckpointStore();
+    this.handlerRegistry = context.getHandlerRegistry();
+    this.detectionFilter = context.getDetectionFilter();
+  }
+
+  /**
+   * Returns the path of the output file, from which the collector recreates a spilled handler
+   *
+   * @return String path to output file
+   */
+  @Override
+  public String toSpillRecord() {
+    return outPath;
+  }
+
+  /**
+   * Reports to the registry that this handler has finished
+   *
+   * @param durationNanos time the handler ran
+   * @param failed true if run() threw
+   */
+  @Override
+  public void finished(long durationNanos, boolean failed) {
+    if (handlerRegistry != null) {
+      handlerRegistry.completed(this, durationNanos, failed || this.failed);
+    }
+  }
+
+  /**
+   * Reports to the registry that this handler will not run
+   */
+  @Override
+  public void discarded() {
+    if (handlerRegistry != null) {
+      handlerRegistry.discarded(this);
+    }
+  }
+
+  /**
+   * Checks if reading the output file or one of its actions failed
+   *
+   * @return true if failed
+   */
+  public boolean hasFailed() {
+    return failed;
   }
 
   /**
    *  LimaCharlie action handler
    *
-   * @param action A dictionary which contains information about an action to be taken on a sensor
+   * @param action information about an action to be taken on a sensor
+   * @return true if the command was sent, false if it failed
    */
-  private void toLimaCharlie(HashMap<String, String> action) {
-    // Create LimaCharlie Input Constructor
-    LimaCharlie lcInput;
+  private boolean toLimaCharlie(Action action) {
+    // Client shared by all handlers, with the credentials of the organisation of the sensor
+    EDR lcInput;
+    CompletableFuture<Boolean> command = null;
+    boolean sent = false;
     try {
-      lcInput = new LimaCharlie();
-      String sid = action.get("sid");
+      lcInput = EDRRegistry.getDefault().get(action.getOid());
+      String sid = action.getSid();
 
-      // Get action to perform, extract info from fileInfo and execute
-      if (action.get("action").equals("file_del")) {
-        String filePath = action.get("filePath");
-        lcInput.deleteFile(sid, filePath);
+      // An organisation without credentials of its own is not acted on with those of another
+      if (lcInput == null) {
+        System.err.println("No LimaCharlie credentials for organisation " + action.getOid());
+        failed = true;
+        return false;
+      }
 
-      } else if (action.get("action").equals("os_kill_process")) {
-        String pid = action.get("process_id");
-        lcInput.killProcess(sid, pid);
+      // Get action to perform and execute, failing it if the sensor does not answer in time
+      switch (action.getType()) {
+        case DELETE_FILE:
+          command = lcInput.deleteFileAsync(sid, action.getFilePath(), RESPONSE_TIMEOUT);
+          break;
+        case KILL_PROCESS:
+          command =
+              lcInput.killProcessAsync(sid, Long.toString(action.getPid()), RESPONSE_TIMEOUT);
+          break;
+        default:
+          System.err.println("Unsupported LimaCharlie action " + action);
+      }
+      if (command != null) {
+        sent = command.get();
       }
     } catch (IOException e) {
       e.printStackTrace();
+    } catch (ExecutionException e) {
+      e.getCause().printStackTrace();
+    } catch (InterruptedException e) {
+      // The command is stopped, and the handler is left to finish
+      command.cancel(true);
+      Thread.currentThread().interrupt();
     }
+    if (!sent) {
+      System.err.println("Failed to send LimaCharlie action " + action);
+      failed = true;
+    }
+    return sent;
   }
 
   /**
    * Splunk reporting action handler
    *
-   * @param action A Dictionary which contains information about the Splunk reporting action
+   * @param action information about the Splunk reporting action
    * @param actionIndex Index of current action from list of actions, required for log management
-   * @param actionsLength size of total actions, required for deleting the file after last action
+   * @param actionsLength size of total actions, required for deleting the file after last action,
+   *     -1 while the file is still being interpreted
    */
-   private void splunkReporting(HashMap<String, String> action, int actionIndex, int actionsLength) {
-     // Extract common arguments from fileInfo
-     String filePath = action.get("filePath");
-     String type = action.get("type");
-     String toolFrom = action.get("toolFrom");
-     String reportName = action.get("reportName");
+   private void splunkReporting(Action action, int actionIndex, int actionsLength) {
+     // Extract common arguments from action
+     String filePath = action.getFilePath();
+     String type = action.getFormat();
+     String toolFrom = action.getToolFrom().getName();
+     String reportName = action.getReportName();
 
      // Connect to Splunk
      SplunkInputConstructor splunkInput;
@@ -71,6 +203,7 @@ public class OutputHandler implements Runnable {
        splunkInput = new SplunkInputConstructor(true);
      } catch (RuntimeException e) {
        e.printStackTrace();
+       failed = true;
        return;
      }
 
@@ -85,7 +218,7 @@ public class OutputHandler implements Runnable {
        splunkInput.runReport(reportName, true);
 
        // Delete detection output file after last action
-       if (actionIndex >= (actionsLength - 1)) {
+       if (actionsLength >= 0 && actionIndex >= (actionsLength - 1)) {
          File logFile = new File(filePath);
          if (logFile.exists()) {
            if (!logFile.delete()) {
@@ -95,19 +228,20 @@ public class OutputHandler implements Runnable {
        }
      } catch (IOException | InterruptedException e) {
        e.printStackTrace();
+       failed = true;
      }
    }
 
   /**
    * Splunk log management action handler
    *
-   * @param action A Dictionary contains information about the Splunk log management action
+   * @param action information about the Splunk log management action
    */
-   private void splunkLogManagement(HashMap<String, String> action) {
-     // Extract common arguments from fileInfo
-     String filePath = action.get("filePath");
-     String type = action.get("type");
-     String toolFrom = action.get("toolFrom");
+   private void splunkLogManagement(Action action) {
+     // Extract common arguments from action
+     String filePath = action.getFilePath();
+     String type = action.getFormat();
+     String toolFrom = action.getToolFrom().getName();
 
      // Connect to Splunk
      SplunkInputConstructor splunkInput;
@@ -115,6 +249,7 @@ public class OutputHandler implements Runnable {
        splunkInput = new SplunkInputConstructor(true);
      } catch (RuntimeException e) {
        e.printStackTrace();
+       failed = true;
        return;
      }
 
@@ -123,67 +258,357 @@ public class OutputHandler implements Runnable {
        splunkInput.logManagement(filePath, type, toolFrom, true);
      } catch (IOException e) {
        e.printStackTrace();
+       failed = true;
        return;
      }
    }
 
   /**
-   * Creates a thread for each arraylist of action, uses the toolTo and toolFrom to execute the
-   * appropriate methods for each actions in the arraylist.
+   * Interprets the output file and, for each action in the returned arraylist, uses the toolTo
+   * and toolFrom to execute the appropriate methods. Runs on a HandlerPool worker thread. In
+   * tailing mode only the lines appended since the previous handler are interpreted. With a
+   * CheckpointStore, progress is recorded after every action, a file already handled completely is
+   * skipped and a file whose handling was interrupted resumes after its last executed action.
    */
   @Override
   public void run() {
+    if (fileTailer != null) {
+      // Segments of the same file are handled one at a time and in order
+      synchronized (fileTailer.lockFor(this.outPath)) {
+        runTailing();
+      }
+      return;
+    }
+
     // wait for stream to finish writing to the file
     try {
-      sleep(2000);
+      if (!FILE_READINESS.awaitReady(this.outPath)) {
+        return;
+      }
     } catch (InterruptedException e) {
       e.printStackTrace();
+      failed = true;
+      return;
     }
 
-    // Get list of actions from output
-    ArrayList<HashMap<String, String>> actions = new ArrayList<>();
+    int resumeFrom = 0;
+    if (checkpointStore != null) {
+      File outFile = new File(this.outPath);
+      try {
+        checkpointOffset = outFile.length();
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+      } catch (IOException e) {
+        e.printStackTrace();
+        failed = true;
+        return;
+      }
+      CheckpointStore.Checkpoint checkpoint = checkpointStore.get(outFile.getName());
+      if (checkpoint != null
+          && checkpoint.getOffset() == checkpointOffset
+          && checkpoint.getFingerprint().equals(fingerprint)) {
+        if (checkpoint.getStatus() == CheckpointStore.Status.DONE) {
+          // Already handled, for example before a restart
+          return;
+        }
+        resumeFrom = checkpoint.getActionsDone();
+      }
+    }
+
+    handle(this.outPath, resumeFrom);
+    saveDone();
+  }
+
+  /**
+   * Handles the lines appended to outPath since the previous handler. Must hold the lock of
+   * outPath in fileTailer.
+   */
+  private void runTailing() {
+    // Complete lines are handed out as soon as they are written, no need to wait for the file
+    String segmentPath;
     try {
-      actions = staticInterpreter.interpret(this.outPath, this.toolFrom);
+      segmentPath = fileTailer.readAppended(this.outPath);
     } catch (IOException e) {
       e.printStackTrace();
+      failed = true;
+      return;
     }
+    if (segmentPath == null) {
+      return;
+    }
+
+    File segment = new File(segmentPath);
+    try {
+      File outFile = new File(this.outPath);
+      long end = fileTailer.getOffset(this.outPath);
+      if (checkpointStore != null) {
+        // Until the segment is done, a restart handles it again from its start
+        checkpointOffset = end - segment.length();
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+        saveCheckpoint(CheckpointStore.Status.PENDING, 0);
+      }
+      handle(segmentPath, 0);
+      if (failed) {
+        // The checkpoint stays at the start of the segment, and the next handler of the file
+        // reads the segment again
+        fileTailer.seed(this.outPath, end - segment.length());
+        return;
+      }
+      if (checkpointStore != null && outFile.exists()) {
+        checkpointOffset = end;
+        fingerprint = CheckpointStore.fingerprint(outFile, checkpointOffset);
+      }
+      saveDone();
+    } catch (IOException e) {
+      e.printStackTrace();
+      failed = true;
+    } finally {
+      // Segment may already have been deleted by a Splunk action
+      if (segment.exists() && !segment.delete()) {
+        System.err.println("Failed to delete tail segment " + segmentPath);
+      }
+    }
+  }
 
-    // Ensure actions has content to avoid out of bounds exceptions
-    if (actions.size() <= 0) {
+  /**
+   * Interprets a file and executes every action as soon as it is interpreted, so the first
+   * response does not wait for the whole file to be read
+   *
+   * @param filePath path to the output file, or to the segment of it to handle
+   * @param resumeFrom index of the first action to execute, earlier ones were executed before
+   */
+  private void handle(String filePath, int resumeFrom) {
+    // Number of actions interpreted so far
+    int count = 0;
+    try (ActionIterator actions = staticInterpreter.iterate(filePath, this.toolFrom)) {
+      while (actions.hasNext()) {
+        Action action = actions.next();
+        int index = count++;
+        // Return if interpret failed
+        if (index == 0 && action.isFailed()) {
+          failed = true;
+          return;
+        }
+        if (index >= resumeFrom) {
+          // A report deletes the file after the last action, which is only known by reading ahead
+          int actionsLength =
+              action.getType() == Action.ActionType.REPORTING && !actions.hasNext() ? count : -1;
+          execute(action, index, actionsLength);
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      e.printStackTrace();
+      failed = true;
       return;
+    } finally {
+      // The actions interpreted before a failure are still responded to
+      sendBatch();
     }
 
-    // Return if interpret failed
-    if (actions.get(0).get("message").equals("fail")) {
+    // if output is from Splunk, delete after acting on it, so that an interrupted handler can be
+    // resumed from its checkpoint
+    if (count > 0 && !failed && this.toolFrom.equals("splunk")) {
+      deleteOutput(filePath);
+    }
+  }
+
+  /**
+   * Executes an action returned from the interpreter and records it as done
+   *
+   * @param action action to execute, skipped if it failed
+   * @param index index of the action in the file
+   * @param actionsLength number of actions in the file, -1 while it is still being interpreted
+   */
+  private void execute(Action action, int index, int actionsLength) {
+    if (action.isFailed()) {
       return;
     }
 
-    // if output is from Splunk, delete after parsing
-    if (actions.get(0).get("toolFrom").equals("splunk")) {
-      // delete out file
-      File splunkOutFile = new File(this.outPath);
-      if (splunkOutFile.exists()) {
-        if (!splunkOutFile.delete()) {
-          System.err.println("Failed to delete Splunk Output file " + this.outPath);
+    // Rows of a Splunk output are sent to LimaCharlie in batches, recorded as done once sent
+    if (this.toolFrom.equals("splunk") && ResponseBatch.accepts(action)) {
+      synchronized (responseBatch) {
+        if (detectionFilter == null || !detectionFilter.contains(DetectionFilter.key(action))) {
+          responseBatch.add(action);
+          batchedKeys.add(DetectionFilter.key(action));
+          scheduleLinger();
+        }
+        batchEnd = index + 1;
+        if (responseBatch.isEmpty() || responseBatch.isDue()) {
+          sendBatch();
         }
       }
+      return;
     }
+    // Actions are executed in order, the batch goes first
+    sendBatch();
 
-    for (int i = 0; i < actions.size(); i++) {
-      HashMap<String, String> curAction = actions.get(i);
-      if (curAction.get("message").equals("fail")) {
-        continue;
-      }
+    // Execute action based on information returned from interpreter
+    switch (action.getToolTo()) {
+      case SPLUNK:
+        if (action.getType() == Action.ActionType.LOG_MANAGEMENT) {
+          splunkLogManagement(action);
+        } else if (action.getType() == Action.ActionType.REPORTING) {
+          splunkReporting(action, index, actionsLength);
+        }
+        break;
+      case LIMACHARLIE:
+        // A detection already responded to is not responded to again. It is only remembered
+        // once responded to, so a failed response is retried.
+        String key = DetectionFilter.key(action);
+        if (detectionFilter == null || !detectionFilter.contains(key)) {
+          if (toLimaCharlie(action) && detectionFilter != null) {
+            detectionFilter.record(key);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    // After a failure the checkpoint stays before the action that failed
+    if (!failed) {
+      saveCheckpoint(CheckpointStore.Status.PENDING, index + 1);
+    }
+  }
 
-      // Execute action based on information returned from interpreter
-      if ( curAction.get("toolTo").equals("splunk") ) {
-        if (curAction.get("action").equals("Log Management")) {
-          splunkLogManagement(curAction);
-        } else if (curAction.get("action").equals("Reporting")) {
-          splunkReporting(curAction, i, actions.size());
+  /**
+   * Sends the pending LimaCharlie actions, if any, and records them as done
+   */
+  private void sendBatch() {
+    synchronized (responseBatch) {
+      if (batchEnd < 0) {
+        return;
+      }
+      if (!responseBatch.isEmpty()) {
+        // Null if nothing was sent
+        List<Action> notSent = null;
+        try {
+          notSent = responseBatch.sendDefault();
+        } catch (IOException e) {
+          e.printStackTrace();
+          failed = true;
+        }
+        if (notSent != null && !notSent.isEmpty()) {
+          failed = true;
         }
-      } else if (curAction.get("toolTo").equals("limacharlie")) {
-        toLimaCharlie(curAction);
+        // Only detections responded to are remembered, the others are retried
+        if (detectionFilter != null && notSent != null) {
+          HashSet<String> failedKeys = new HashSet<>();
+          for (Action action : notSent) {
+            failedKeys.add(DetectionFilter.key(action));
+          }
+          for (String key : batchedKeys) {
+            if (!failedKeys.contains(key)) {
+              detectionFilter.record(key);
+            }
+          }
+        }
+        batchedKeys.clear();
+      }
+      // After a failure the checkpoint stays before the batch. When the file is handled again,
+      // the actions of the batch that were sent are left out by the detection filter, so only
+      // the failed ones are retried.
+      if (!failed) {
+        saveCheckpoint(CheckpointStore.Status.PENDING, batchEnd);
+      }
+      batchEnd = -1;
+    }
+  }
+
+  /**
+   * Schedules the linger timer for the pending LimaCharlie actions, unless already scheduled.
+   * Must hold the lock of responseBatch.
+   */
+  private void scheduleLinger() {
+    if (lingerScheduled || responseBatch.isEmpty()) {
+      return;
+    }
+    lingerScheduled = true;
+    LINGER_TIMER.schedule(
+        () -> BATCH_SENDERS.execute(this::sendBatchIfDue),
+        responseBatch.getNanosUntilDue(),
+        TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Sends the pending LimaCharlie actions if they have lingered long enough, or waits again for
+   * the time left if not. Run on BATCH_SENDERS when the linger timer fires, so a batch is sent on
+   * time while the handler is busy reading the next row.
+   */
+  private void sendBatchIfDue() {
+    synchronized (responseBatch) {
+      lingerScheduled = false;
+      if (responseBatch.isDue()) {
+        sendBatch();
+      } else {
+        // The batch was sent and a new one started since the timer was scheduled
+        scheduleLinger();
+      }
+    }
+  }
+
+  /**
+   * Creates the factory of the daemon threads of the linger timer and the batch senders
+   *
+   * @param name name of the threads
+   */
+  private static ThreadFactory daemonThreads(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Deletes an output file that has been acted on
+   *
+   * @param filePath path to the output file
+   */
+  private void deleteOutput(String filePath) {
+    File outFile = new File(filePath);
+    if (outFile.exists()) {
+      if (!outFile.delete()) {
+        System.err.println("Failed to delete Splunk Output file " + filePath);
+      }
+    }
+  }
+
+  /**
+   * Records progress on outPath, if checkpointing
+   *
+   * @param status processing status
+   * @param actionsDone number of actions executed
+   */
+  private void saveCheckpoint(CheckpointStore.Status status, int actionsDone) {
+    if (checkpointStore == null) {
+      return;
+    }
+    try {
+      checkpointStore.record(
+          new File(this.outPath).getName(), fingerprint, checkpointOffset, status, actionsDone);
+    } catch (IOException e) {
+      e.printStackTrace();
+      failed = true;
+    }
+  }
+
+  /**
+   * Records outPath as handled, or forgets it if an action deleted it, if checkpointing.
+   * Does nothing if handling failed, so the checkpoint stays PENDING after the last action done
+   * and the file is handled again after a restart
+   */
+  private void saveDone() {
+    if (checkpointStore == null || failed) {
+      return;
+    }
+    File outFile = new File(this.outPath);
+    if (outFile.exists()) {
+      saveCheckpoint(CheckpointStore.Status.DONE, 0);
+    } else {
+      try {
+        checkpointStore.remove(outFile.getName());
+      } catch (IOException e) {
+        e.printStackTrace();
+        failed = true;
       }
     }
   }
@@ -0,0 +1,232 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * ProjectedCsvReader class
+ *
+ * <p>Reads a CSV file with a header row, returning only the fields of a fixed set of columns. The
+ * header is read once and compiled into a projection from column index to position in the
+ * returned row. Fields of other columns are scanned over without being copied, and the rest of a
+ * row after the last projected column is skipped, so a wide Splunk export with a long "_raw"
+ * column costs little more per row than its projected fields.
+ *
+ * <p>Fields are separated by commas and may be enclosed in double quotes, in which case they may
+ * contain commas, newlines and doubled quotes. Rows end with '\n' or "\r\n"; empty rows are
+ * skipped.
+ */
+public class ProjectedCsvReader implements Closeable {
+
+  private static final int BUFFER_SIZE = 8192;
+  // Column not projected
+  private static final int SKIP = -1;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  private boolean endOfInput;
+
+  private final String[] columns;
+  // Position in the returned row of every column of the file, or SKIP
+  private int[] projection;
+  // Index of the last projected column of the file
+  private int lastColumn;
+  // Whether each projected column is in the header
+  private boolean[] present;
+  private final StringBuilder field = new StringBuilder();
+  // Set when the field last read had neither quotes nor content
+  private boolean fieldEmpty;
+  private long rowNumber;
+
+  /**
+   * Constructor for ProjectedCsvReader. Reads the header row and compiles the projection.
+   *
+   * @param reader CSV input, closed with this reader
+   * @param columns names of the columns to return, in the order they are returned
+   * @throws IOException if the header cannot be read
+   */
+  public ProjectedCsvReader(Reader reader, String[] columns) throws IOException {
+    this.reader = reader;
+    this.columns = columns.clone();
+    compile(readHeader());
+  }
+
+  /**
+   * Reads the next row
+   *
+   * @return String[] fields of the projected columns in the order given, "" for a column missing
+   *     from the file or the row, or null at the end of the file
+   * @throws IOException if the input cannot be read
+   */
+  public String[] nextRow() throws IOException {
+    String[] row = new String[columns.length];
+    Arrays.fill(row, "");
+
+    int column = 0;
+    while (true) {
+      int target = column < projection.length ? projection[column] : SKIP;
+      int end = readField(target == SKIP ? null : field);
+      if (column == 0 && end != ',' && fieldEmpty) {
+        if (end < 0) {
+          return null;
+        }
+        // Empty line
+        continue;
+      }
+      if (target != SKIP) {
+        row[target] = field.toString();
+        field.setLength(0);
+      }
+
+      // Nothing more to return from this row
+      if (end == ',' && column >= lastColumn) {
+        end = skipRest();
+      }
+      if (end != ',') {
+        rowNumber++;
+        return row;
+      }
+      column++;
+    }
+  }
+
+  /**
+   * Number of rows read, not counting the header
+   *
+   * @return long row count
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  /**
+   * Checks if the file has a column
+   *
+   * @param column name of one of the projected columns
+   * @return true if the header contains it
+   */
+  public boolean hasColumn(String column) {
+    int index = Arrays.asList(columns).indexOf(column);
+    return index >= 0 && present[index];
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private ArrayList<String> readHeader() throws IOException {
+    ArrayList<String> header = new ArrayList<>();
+    while (true) {
+      int end = readField(field);
+      header.add(field.toString());
+      field.setLength(0);
+      if (end != ',') {
+        // Skip empty lines before the header
+        if (header.size() == 1 && fieldEmpty && end >= 0) {
+          header.clear();
+          continue;
+        }
+        return header;
+      }
+    }
+  }
+
+  private void compile(ArrayList<String> header) {
+    HashMap<String, Integer> wanted = new HashMap<>();
+    for (int i = 0; i < columns.length; i++) {
+      wanted.put(columns[i], i);
+    }
+    projection = new int[header.size()];
+    present = new boolean[columns.length];
+    lastColumn = -1;
+    for (int i = 0; i < header.size(); i++) {
+      Integer target = wanted.get(header.get(i));
+      projection[i] = target == null ? SKIP : target;
+      if (target != null) {
+        present[target] = true;
+        lastColumn = i;
+      }
+    }
+  }
+
+  /**
+   * Reads a field, appending its unquoted content to out unless out is null
+   *
+   * @return int ',' if another field follows, '\n' at the end of the row, -1 at the end of input
+   */
+  private int readField(StringBuilder out) throws IOException {
+    int c = read();
+    fieldEmpty = c < 0 || c == ',' || c == '\n' || c == '\r';
+    if (c == '"') {
+      while (true) {
+        c = read();
+        if (c < 0) {
+          return -1;
+        }
+        if (c == '"') {
+          c = read();
+          if (c != '"') {
+            // Closing quote, anything up to the separator belongs to the field as well
+            break;
+          }
+        }
+        if (out != null) {
+          out.append((char) c);
+        }
+      }
+    }
+    while (true) {
+      if (c < 0 || c == ',' || c == '\n') {
+        return c;
+      }
+      if (c == '\r') {
+        c = read();
+        if (c == '\n' || c < 0) {
+          return c < 0 ? -1 : '\n';
+        }
+        if (out != null) {
+          out.append('\r');
+        }
+        continue;
+      }
+      if (out != null) {
+        out.append((char) c);
+      }
+      c = read();
+    }
+  }
+
+  /**
+   * Skips the remaining fields of the row
+   *
+   * @return int '\n' at the end of the row, -1 at the end of input
+   */
+  private int skipRest() throws IOException {
+    int end;
+    do {
+      end = readField(null);
+    } while (end == ',');
+    return end;
+  }
+
+  private int read() throws IOException {
+    if (position == limit) {
+      if (endOfInput) {
+        return -1;
+      }
+      limit = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0) {
+        limit = 0;
+        endOfInput = true;
+        return -1;
+      }
+    }
+    return buffer[position++];
+  }
+}
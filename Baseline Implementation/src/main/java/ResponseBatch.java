@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ResponseBatch class
+ *
+ * <p>LimaCharlie actions of one output file held back to be sent together through the batch
+ * methods of EDR, so a Splunk output of thousands of rows takes a few requests instead of one
+ * per row. The batch is due once it holds maxSize actions, or once its first action has waited
+ * for lingerMillis. The handler checks this whenever it adds an action, and also sends the batch
+ * before any other action and at the end of the file. So that a batch is not held back by a slow
+ * row, a timer shared by all handlers wakes the handler once the linger has passed, and the batch
+ * is then sent from a thread of its own rather than from the timer, so no handler's batch waits on
+ * the clients another handler is sending to.
+ *
+ * <p>Actions are not sent in the order added: for every client all deletions are sent before all
+ * kills, and the actions of a sensor are sent together. Every Splunk output file is routed to a
+ * single action type, so the batch of a handler in practice holds one type; callers mixing types
+ * must not rely on their order. send() reports every action that failed, so a caller can retry
+ * just those.
+ *
+ * <p>Not thread safe, a batch belongs to one handler, which guards it as it is also sent from
+ * the thread woken by the timer.
+ */
+public class ResponseBatch {
+
+  public static final int DEFAULT_MAX_SIZE = 500;
+  public static final long DEFAULT_LINGER_MILLIS = 200;
+
+  private final int maxSize;
+  private final long lingerNanos;
+  private final ArrayList<Action> actions = new ArrayList<>();
+  private long firstAddedAt;
+
+  /**
+   * Constructor for ResponseBatch due at 500 actions or after 200 milliseconds
+   */
+  public ResponseBatch() {
+    this(DEFAULT_MAX_SIZE, DEFAULT_LINGER_MILLIS);
+  }
+
+  /**
+   * Constructor for ResponseBatch
+   *
+   * @param maxSize number of actions at which the batch is due
+   * @param lingerMillis milliseconds after its first action at which the batch is due
+   */
+  public ResponseBatch(int maxSize, long lingerMillis) {
+    if (maxSize < 1 || lingerMillis < 0) {
+      throw new IllegalArgumentException("Invalid response batch size");
+    }
+    this.maxSize = maxSize;
+    this.lingerNanos = lingerMillis * 1000000L;
+  }
+
+  /**
+   * Checks if an action can be batched, a LimaCharlie file deletion or process kill
+   *
+   * @param action action returned from the interpreter
+   * @return true if the action can be added
+   */
+  public static boolean accepts(Action action) {
+    return !action.isFailed()
+        && action.getToolTo() == Action.Tool.LIMACHARLIE
+        && (action.getType() == Action.ActionType.DELETE_FILE
+            || action.getType() == Action.ActionType.KILL_PROCESS);
+  }
+
+  /**
+   * Adds an action to the batch
+   *
+   * @param action action accepted by accepts()
+   */
+  public void add(Action action) {
+    if (!accepts(action)) {
+      throw new IllegalArgumentException("Action cannot be batched: " + action);
+    }
+    if (actions.isEmpty()) {
+      firstAddedAt = System.nanoTime();
+    }
+    actions.add(action);
+  }
+
+  /**
+   * Checks if the batch should be sent
+   *
+   * @return true if the batch is full, or its first action has waited long enough
+   */
+  public boolean isDue() {
+    return actions.size() >= maxSize
+        || (!actions.isEmpty() && System.nanoTime() - firstAddedAt >= lingerNanos);
+  }
+
+  /**
+   * Returns how long the batch has left to linger
+   *
+   * @return nanoseconds until the first action has waited long enough, 0 if already due or empty
+   */
+  public long getNanosUntilDue() {
+    if (actions.isEmpty() || actions.size() >= maxSize) {
+      return 0;
+    }
+    return Math.max(0, lingerNanos - (System.nanoTime() - firstAddedAt));
+  }
+
+  /**
+   * Checks if the batch holds no action
+   *
+   * @return true if empty
+   */
+  public boolean isEmpty() {
+    return actions.isEmpty();
+  }
+
+  /**
+   * Returns the number of actions in the batch
+   *
+   * @return number of actions
+   */
+  public int size() {
+    return actions.size();
+  }
+
+  /**
+   * Sends the actions of the batch and empties it. The actions are grouped by the client of the
+   * organisation of their sensor, then by type and by sensor, so each client is sent one batch of
+   * deletions and one of kills.
+   *
+   * @param registry clients of the organisations
+   * @return actions that could not be sent, in the order added
+   */
+  public List<Action> send(EDRRegistry registry) {
+    IdentityHashMap<EDR, Map<String, List<Action>>> deletions = new IdentityHashMap<>();
+    IdentityHashMap<EDR, Map<String, List<Action>>> kills = new IdentityHashMap<>();
+    IdentityHashMap<Action, Boolean> sent = new IdentityHashMap<>();
+    for (Action action : actions) {
+      EDR client = registry.get(action.getOid());
+      if (client == null) {
+        continue;
+      }
+      IdentityHashMap<EDR, Map<String, List<Action>>> byClient =
+          action.getType() == Action.ActionType.DELETE_FILE ? deletions : kills;
+      byClient
+          .computeIfAbsent(client, c -> new LinkedHashMap<>())
+          .computeIfAbsent(action.getSid(), sid -> new ArrayList<>())
+          .add(action);
+    }
+
+    for (Map.Entry<EDR, Map<String, List<Action>>> client : deletions.entrySet()) {
+      Map<String, List<String>> fileNames = new LinkedHashMap<>();
+      for (Map.Entry<String, List<Action>> sensor : client.getValue().entrySet()) {
+        List<String> sensorFiles = new ArrayList<>();
+        for (Action action : sensor.getValue()) {
+          sensorFiles.add(action.getFilePath());
+        }
+        fileNames.put(sensor.getKey(), sensorFiles);
+      }
+      record(client.getValue(), client.getKey().deleteFiles(fileNames), sent);
+    }
+    for (Map.Entry<EDR, Map<String, List<Action>>> client : kills.entrySet()) {
+      Map<String, List<String>> pids = new LinkedHashMap<>();
+      for (Map.Entry<String, List<Action>> sensor : client.getValue().entrySet()) {
+        List<String> sensorPids = new ArrayList<>();
+        for (Action action : sensor.getValue()) {
+          sensorPids.add(Long.toString(action.getPid()));
+        }
+        pids.put(sensor.getKey(), sensorPids);
+      }
+      record(client.getValue(), client.getKey().killProcesses(pids), sent);
+    }
+
+    List<Action> failed = new ArrayList<>();
+    for (Action action : actions) {
+      if (!sent.containsKey(action)) {
+        failed.add(action);
+      }
+    }
+    actions.clear();
+    return failed;
+  }
+
+  /**
+   * Sends the actions of the batch to the clients of the shared registry and empties it,
+   * reporting the actions that could not be sent on System.err
+   *
+   * @return actions that could not be sent, in the order added
+   * @throws IOException if the shared registry cannot be created
+   */
+  public List<Action> sendDefault() throws IOException {
+    EDRRegistry registry;
+    try {
+      registry = EDRRegistry.getDefault();
+    } catch (IOException e) {
+      actions.clear();
+      throw e;
+    }
+    List<Action> failed = send(registry);
+    for (Action action : failed) {
+      System.err.println("Failed to send LimaCharlie action " + action);
+    }
+    return failed;
+  }
+
+  /**
+   * Marks the actions whose command was sent, from the results of a batch method
+   */
+  private static void record(
+      Map<String, List<Action>> actions,
+      Map<String, List<Boolean>> results,
+      IdentityHashMap<Action, Boolean> sent) {
+    for (Map.Entry<String, List<Action>> sensor : actions.entrySet()) {
+      List<Boolean> sensorResults = results.get(sensor.getKey());
+      for (int i = 0; i < sensor.getValue().size(); i++) {
+        if (sensorResults != null
+            && i < sensorResults.size()
+            && Boolean.TRUE.equals(sensorResults.get(i))) {
+          sent.put(sensor.getValue().get(i), true);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,427 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * RoutingRules class
+ *
+ * <p>Decides which action is taken on every row of a tool output file, from the name of the file.
+ * Rules are read from a JSON file of the form
+ *
+ * <pre>
+ * {"rules": [
+ *   {"tool": "splunk", "file": "harmfulFiles.csv", "action": "DeleteFile",
+ *    "columns": {"filePath": "detect.event.FILE_PATH"}},
+ *   {"tool": "splunk", "glob": "harmfulProcesses*.csv", "action": "KillProcess",
+ *    "columns": {"process_id": "detect.event.PROCESS_ID"}}
+ * ]}
+ * </pre>
+ *
+ * <p>A rule matches a file by exact name ("file"), glob ("glob", where '*' and '?' match any
+ * characters and any single character) or regular expression ("regex"). "action" is the name or
+ * ontology function name of an Action.ActionType. "columns" binds the parameters of the action to
+ * CSV columns, all of which must be filled in on a row: "filePath" for DeleteFile, "process_id"
+ * otherwise, and optionally the sensor parameters "sid", "hostname", "iid", "ext_ip", "oid" and
+ * "tags{}", which default to the matching "detect.routing." columns. "tool" defaults to "splunk".
+ *
+ * <p>Rules are compiled into a dispatcher: exact names are looked up in a hash table, and all
+ * patterns are combined into a single precompiled regular expression, so a lookup is one hash
+ * lookup and at most one match, however many rules there are. Where several rules match, an
+ * exact name wins over patterns, and the first pattern listed wins over later ones. As they are
+ * combined, patterns cannot refer to their groups by number and cannot have named groups.
+ *
+ * <p>The file is checked for changes at most once per check interval, and reloaded when it
+ * changed. A reloaded dispatcher replaces the previous one atomically, so a lookup sees either
+ * all old rules or all new ones. A file that cannot be read or has invalid rules is reported and
+ * the previous rules are kept; without a file, the default rules apply.
+ */
+public class RoutingRules {
+
+  private static final long DEFAULT_CHECK_INTERVAL = 1000;
+
+  // Sensor parameters of every action, in the order of the parameters of Action.response()
+  private static final String[] SENSOR_PARAMETERS = {
+    "sid", "hostname", "iid", "ext_ip", "oid", "tags{}"
+  };
+
+  // Rules file, or null to only use the default rules
+  private final File file;
+  private final List<Rule> defaults;
+  private final long checkInterval;
+  private final AtomicLong nextCheck = new AtomicLong();
+  // Last modified time and size of the file when it was last loaded, -1 if it did not exist
+  private volatile long loadedModified = -1;
+  private volatile long loadedSize = -1;
+  private volatile Dispatcher dispatcher;
+
+  /**
+   * Action taken on every row of the files a rule matches, and the columns it reads
+   */
+  public static class Rule {
+    private final String tool;
+    // Exactly one of fileName and regex is set
+    private final String fileName;
+    private final String regex;
+    private final Action.ActionType type;
+    // Columns of the sensor parameters followed by the column of the file or process
+    private final String[] columns;
+
+    /**
+     * Constructor for Rule
+     *
+     * @param tool tool that produced the files, such as "splunk"
+     * @param fileName exact name of the files, or null
+     * @param regex regular expression matching the whole name of the files, or null
+     * @param type action taken on every row
+     * @param columns parameter names bound to columns, see the class description
+     * @throws IllegalArgumentException if the rule is incomplete or invalid
+     */
+    public Rule(
+        String tool,
+        String fileName,
+        String regex,
+        Action.ActionType type,
+        Map<String, String> columns) {
+      if (tool == null || type == null || (fileName == null) == (regex == null)) {
+        throw new IllegalArgumentException(
+            "Rule needs a tool, an action and either a file name or a pattern");
+      }
+      if (type == Action.ActionType.LOG_MANAGEMENT || type == Action.ActionType.REPORTING) {
+        throw new IllegalArgumentException(type.getFunction() + " is not a response to a row");
+      }
+      if (regex != null) {
+        try {
+          Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+          throw new IllegalArgumentException("Invalid pattern " + regex, e);
+        }
+        // Group names must be unique in the combined pattern, so a pattern combined with itself
+        // only compiles without named groups
+        try {
+          Pattern.compile("(?:" + regex + ")|(?:" + regex + ")");
+        } catch (PatternSyntaxException e) {
+          throw new IllegalArgumentException("Pattern has named groups " + regex, e);
+        }
+      }
+      String target = type == Action.ActionType.DELETE_FILE ? "filePath" : "process_id";
+      HashMap<String, String> bound = new HashMap<>(columns);
+      String[] ordered = new String[SENSOR_PARAMETERS.length + 1];
+      for (int i = 0; i < SENSOR_PARAMETERS.length; i++) {
+        String column = bound.remove(SENSOR_PARAMETERS[i]);
+        ordered[i] = column != null ? column : "detect.routing." + SENSOR_PARAMETERS[i];
+      }
+      ordered[SENSOR_PARAMETERS.length] = bound.remove(target);
+      if (ordered[SENSOR_PARAMETERS.length] == null) {
+        throw new IllegalArgumentException(type.getFunction() + " rule needs a " + target);
+      }
+      if (!bound.isEmpty()) {
+        throw new IllegalArgumentException(
+            "Unknown parameters " + bound.keySet() + " for " + type.getFunction());
+      }
+      this.tool = tool;
+      this.fileName = fileName;
+      this.regex = regex;
+      this.type = type;
+      this.columns = ordered;
+    }
+
+    /**
+     * Creates a rule for files of an exact name, reading the sensor from the default columns
+     *
+     * @param tool tool that produced the files
+     * @param fileName name of the files
+     * @param type action taken on every row
+     * @param targetColumn column of the file path for DELETE_FILE, else of the process id
+     * @return Rule
+     */
+    public static Rule forFile(
+        String tool, String fileName, Action.ActionType type, String targetColumn) {
+      HashMap<String, String> columns = new HashMap<>();
+      columns.put(type == Action.ActionType.DELETE_FILE ? "filePath" : "process_id", targetColumn);
+      return new Rule(tool, fileName, null, type, columns);
+    }
+
+    /**
+     * Reads a rule from its JSON form, see the class description
+     *
+     * @param json rule
+     * @return Rule
+     * @throws IllegalArgumentException if the rule is incomplete or invalid
+     */
+    public static Rule fromJson(JsonObject json) {
+      String tool = json.has("tool") ? json.get("tool").getAsString() : "splunk";
+      String fileName = json.has("file") ? json.get("file").getAsString() : null;
+      String regex = json.has("regex") ? json.get("regex").getAsString() : null;
+      if (json.has("glob")) {
+        if (regex != null) {
+          throw new IllegalArgumentException("Rule has both a glob and a regex: " + json);
+        }
+        regex = globToRegex(json.get("glob").getAsString());
+      }
+      String action = json.has("action") ? json.get("action").getAsString() : null;
+      Action.ActionType type = Action.ActionType.fromName(action);
+      if (type == null) {
+        throw new IllegalArgumentException("Unknown action " + action + " in rule " + json);
+      }
+      HashMap<String, String> columns = new HashMap<>();
+      if (json.has("columns")) {
+        for (Map.Entry<String, JsonElement> column :
+            json.getAsJsonObject("columns").entrySet()) {
+          columns.put(column.getKey(), column.getValue().getAsString());
+        }
+      }
+      return new Rule(tool, fileName, regex, type, columns);
+    }
+
+    public String getTool() {
+      return tool;
+    }
+
+    public Action.ActionType getType() {
+      return type;
+    }
+
+    /**
+     * Columns read from every row
+     *
+     * @return String[] columns of the sid, hostname, iid, ext_ip, oid and tags{} of the sensor,
+     *     followed by the column of the file path or process id
+     */
+    public String[] getColumns() {
+      return columns.clone();
+    }
+
+    @Override
+    public String toString() {
+      return tool
+          + " "
+          + (fileName != null ? fileName : "/" + regex + "/")
+          + " -> "
+          + type.getFunction()
+          + " "
+          + Arrays.toString(columns);
+    }
+  }
+
+  /**
+   * Rules compiled for lookup, never modified once built
+   */
+  private static class Dispatcher {
+    // Rules of exact file names, by tool and file name
+    private final HashMap<String, Rule> exact = new HashMap<>();
+    // All patterns as alternatives of one expression, matched against tool and file name
+    private final Pattern patterns;
+    // Rule of every alternative, with the number of its group in patterns
+    private final Rule[] patternRules;
+    private final int[] patternGroups;
+
+    Dispatcher(List<Rule> rules) {
+      ArrayList<Rule> patterned = new ArrayList<>();
+      StringBuilder combined = new StringBuilder();
+      for (Rule rule : rules) {
+        if (rule.fileName != null) {
+          exact.putIfAbsent(key(rule.tool, rule.fileName), rule);
+        } else {
+          if (combined.length() > 0) {
+            combined.append('|');
+          }
+          combined.append('(').append(Pattern.quote(rule.tool + "/"));
+          combined.append("(?:").append(rule.regex).append("))");
+          patterned.add(rule);
+        }
+      }
+      patternRules = patterned.toArray(new Rule[0]);
+      patternGroups = new int[patternRules.length];
+      int group = 1;
+      for (int i = 0; i < patternRules.length; i++) {
+        patternGroups[i] = group;
+        // Groups of a pattern come after its own group
+        group += 1 + Pattern.compile(patternRules[i].regex).matcher("").groupCount();
+      }
+      patterns = patternRules.length > 0 ? Pattern.compile(combined.toString()) : null;
+    }
+
+    Rule match(String tool, String fileName) {
+      String key = key(tool, fileName);
+      Rule rule = exact.get(key);
+      if (rule != null || patterns == null) {
+        return rule;
+      }
+      Matcher matcher = patterns.matcher(key);
+      if (!matcher.matches()) {
+        return null;
+      }
+      for (int i = 0; i < patternRules.length; i++) {
+        if (matcher.start(patternGroups[i]) >= 0) {
+          return patternRules[i];
+        }
+      }
+      return null;
+    }
+
+    private static String key(String tool, String fileName) {
+      return tool + "/" + fileName;
+    }
+  }
+
+  /**
+   * Constructor for RoutingRules that only uses default rules
+   *
+   * @param defaults rules, in order of priority
+   */
+  public RoutingRules(List<Rule> defaults) {
+    this(null, defaults, DEFAULT_CHECK_INTERVAL);
+  }
+
+  /**
+   * Constructor for RoutingRules reading rules from a file, checked for changes every second
+   *
+   * @param path path to the rules file
+   * @param defaults rules used while the file does not exist
+   */
+  public RoutingRules(String path, List<Rule> defaults) {
+    this(path, defaults, DEFAULT_CHECK_INTERVAL);
+  }
+
+  /**
+   * Constructor for RoutingRules reading rules from a file
+   *
+   * @param path path to the rules file, or null to only use the default rules
+   * @param defaults rules used while the file does not exist
+   * @param checkInterval milliseconds between checks of the file for changes, 0 to check on every
+   *     lookup
+   */
+  public RoutingRules(String path, List<Rule> defaults, long checkInterval) {
+    this.file = path != null ? new File(path) : null;
+    this.defaults = Collections.unmodifiableList(new ArrayList<>(defaults));
+    this.checkInterval = checkInterval;
+    this.dispatcher = new Dispatcher(this.defaults);
+    reload();
+  }
+
+  /**
+   * Finds the rule for a file, reloading the rules first if the rules file changed
+   *
+   * @param tool tool that produced the file
+   * @param fileName name of the file, without directory
+   * @return Rule, or null if no rule matches
+   */
+  public Rule match(String tool, String fileName) {
+    long now = System.currentTimeMillis();
+    long next = nextCheck.get();
+    // Only one caller checks the file per interval, the others use the current rules
+    if (file != null && now >= next && nextCheck.compareAndSet(next, now + checkInterval)) {
+      reloadIfModified();
+    }
+    return dispatcher.match(tool, fileName);
+  }
+
+  /**
+   * Reloads the rules file if it was modified since it was last loaded
+   *
+   * @return true if the rules changed
+   */
+  public synchronized boolean reloadIfModified() {
+    if (file == null) {
+      return false;
+    }
+    long modified = file.exists() ? file.lastModified() : -1;
+    long size = file.exists() ? file.length() : -1;
+    if (modified == loadedModified && size == loadedSize) {
+      return false;
+    }
+    return reload();
+  }
+
+  /**
+   * Reloads the rules file, or returns to the default rules if it does not exist. If the file
+   * cannot be read or has an invalid rule, the current rules are kept.
+   *
+   * @return true if the rules were replaced
+   */
+  public synchronized boolean reload() {
+    if (file == null) {
+      return false;
+    }
+    long modified = file.exists() ? file.lastModified() : -1;
+    long size = file.exists() ? file.length() : -1;
+    Dispatcher loaded;
+    try {
+      // Compiled before replacing the current rules, so a lookup never sees failing rules
+      loaded = new Dispatcher(modified >= 0 ? load(file) : defaults);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Keeping previous routing rules, cannot load " + file);
+      e.printStackTrace();
+      // Not retried until the file changes again
+      loadedModified = modified;
+      loadedSize = size;
+      return false;
+    }
+    dispatcher = loaded;
+    loadedModified = modified;
+    loadedSize = size;
+    return true;
+  }
+
+  /**
+   * Reads all rules of a rules file
+   *
+   * @param file rules file, see the class description
+   * @return List of rules in the order of the file
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if a rule is invalid
+   */
+  public static List<Rule> load(File file) throws IOException {
+    JsonElement json;
+    try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      json = new JsonParser().parse(reader);
+    }
+    if (!json.isJsonObject() || !json.getAsJsonObject().has("rules")) {
+      throw new IllegalArgumentException(file + " has no rules");
+    }
+    ArrayList<Rule> rules = new ArrayList<>();
+    for (JsonElement rule : json.getAsJsonObject().getAsJsonArray("rules")) {
+      rules.add(Rule.fromJson(rule.getAsJsonObject()));
+    }
+    return rules;
+  }
+
+  /**
+   * Converts a glob, in which '*' matches any characters and '?' any single character, to a
+   * regular expression
+   */
+  private static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    for (char c : glob.toCharArray()) {
+      if (c == '*' || c == '?') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        regex.append(c == '*' ? ".*" : ".");
+      } else {
+        literal.append(c);
+      }
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return regex.toString();
+  }
+}
@@ -1,22 +1,30 @@
-import de.siegmar.fastcsv.reader.CsvContainer;
-import de.siegmar.fastcsv.reader.CsvReader;
-import de.siegmar.fastcsv.reader.CsvRow;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import org.apache.commons.io.FileUtils;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * StaticInterpreter class
  *
  * <p>StaticInterpreter class Used to interpret output from Splunk and LimaCharlie and determine
  * which action to take based on the interpretation
+ *
+ * <p>A StaticInterpreter is shared by all collectors and their handlers. It holds no mutable
+ * state: its lookup tables are built once and never modified, routing rules are replaced as a
+ * whole when reloaded, and everything a call reads or builds is local to that call, so any number
+ * of threads may interpret files at the same time without locking.
  */
 public class StaticInterpreter {
 
@@ -42,37 +50,81 @@ public class StaticInterpreter {
     "event_time"
   };
 
-  // container for fields which needs to be fetched from FILE_CREATE data
-  // Keys are exactly as CSV headers, Values are normalized versions
-  private static final HashMap<String, String> FILES_SEARCH_FIELDS = new HashMap<>();
+  // Responses remembered per DR data file to leave out repeated detections, the least recently
+  // repeated ones are forgotten first. Detections repeated further apart are left to the
+  // DetectionFilter of the handler.
+  private static final int DIRECT_RESPONSE_MEMORY = 1000;
+
+  // Splunk output files acted on when no routing rules file is given
+  private static final List<RoutingRules.Rule> DEFAULT_ROUTING_RULES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              RoutingRules.Rule.forFile(
+                  "splunk",
+                  "harmfulFiles.csv",
+                  Action.ActionType.DELETE_FILE,
+                  "detect.event.FILE_PATH"),
+              RoutingRules.Rule.forFile(
+                  "splunk",
+                  "harmfulProcesses.csv",
+                  Action.ActionType.KILL_PROCESS,
+                  "detect.event.PROCESS_ID")));
+
+  // Classifies LimaCharlie output, large files in parallel. Keeps no state between scans.
+  private final LimaCharlieScanner limaCharlieScanner =
+      new LimaCharlieScanner(LC_ROUTING_HASH_KEYS);
+
+  // Set when DR detections are responded to directly instead of through Splunk reports
+  private final boolean directResponse;
+
+  // Decides the action taken on the rows of a Splunk output file, from its name
+  private final RoutingRules routingRules;
 
-  // container for fields which needs to be fetched from NEW_PROCESS data
-  // Keys are exactly as CSV headers, Values are normalized versions
-  private static final HashMap<String, String> PROCESS_SEARCH_FIELDS = new HashMap<>();
+  /**
+   * Receives the actions interpreted from a file one at a time, as soon as each is interpreted
+   */
+  public interface ActionListener {
+
+    /**
+     * Called for every action, in the order of the file
+     *
+     * @param action action as returned by interpretActions(), or Action.failed()
+     * @return true to go on interpreting the file, false to stop
+     */
+    boolean onAction(Action action);
+  }
 
   /**
-   * Contructor for StaticInterpreter
-   *
-   * <p>Populates the FILES_SEARCH_FIELDS & PROCESS_SEARCH_FIELDS hashmaps
+   * Constructor for StaticInterpreter responding to LimaCharlie DR data through Splunk reports
    */
   public StaticInterpreter() {
-    populateHashMaps(FILES_SEARCH_FIELDS, "harmfulFile");
-    populateHashMaps(PROCESS_SEARCH_FIELDS, "harmfulProcess");
+    this(false);
   }
 
-  private void populateHashMaps(HashMap<String, String> headers, String source) {
-    headers.put("detect.routing.hostname", "hostname");
-    headers.put("detect.routing.iid", "iid");
-    headers.put("detect.routing.ext_ip", "ext_ip");
-    headers.put("detect.routing.oid", "oid");
-    headers.put("detect.routing.sid", "sid");
-    headers.put("detect.routing.tags{}", "tags{}");
-
-    if (source == "harmfulFile") {
-      headers.put("detect.event.FILE_PATH", "filePath");
-    } else if (source == "harmfulProcess") {
-      headers.put("detect.event.PROCESS_ID", "process_id");
-    }
+  /**
+   * Constructor for StaticInterpreter
+   *
+   * @param directResponse true to respond to LimaCharlie DR data directly: every NEW_PROCESS and
+   *     FILE_CREATE detection becomes a KILL_PROCESS or DELETE_FILE action on its sensor, followed
+   *     by a LOG_MANAGEMENT action mirroring the DR data to Splunk for audit once they have been
+   *     executed. false to upload DR data to Splunk and run the harmfulProcesses and harmfulFiles
+   *     reports on it, whose output is responded to when the Splunk collector picks it up.
+   */
+  public StaticInterpreter(boolean directResponse) {
+    this(directResponse, null);
+  }
+
+  /**
+   * Constructor for StaticInterpreter routing Splunk output files by the rules of a file
+   *
+   * @param directResponse see StaticInterpreter(boolean)
+   * @param routingRulesPath path to the routing rules, see RoutingRules, which are reloaded when
+   *     the file changes. null, or a file that does not exist, uses the built-in rules for the
+   *     reports of this orchestrator.
+   */
+  public StaticInterpreter(boolean directResponse, String routingRulesPath) {
+    this.directResponse = directResponse;
+    this.routingRules = new RoutingRules(routingRulesPath, DEFAULT_ROUTING_RULES);
   }
 
   /**
@@ -85,16 +137,54 @@ public class StaticInterpreter {
    */
   public ArrayList<HashMap<String, String>> interpret(String filePath, String toolFrom)
       throws IOException {
+    return toMaps(interpretActions(filePath, toolFrom));
+  }
+
+  /**
+   * Interprets the file given to it and returns the actions to take
+   *
+   * @param filePath path to file to interpret
+   * @param toolFrom tool that produced file
+   * @return ArrayList of actions, or of Action.failed() if the file cannot be interpreted
+   */
+  public ArrayList<Action> interpretActions(String filePath, String toolFrom)
+      throws IOException {
+    return iterate(filePath, toolFrom).toList();
+  }
+
+  /**
+   * Interprets the file given to it lazily, one action at a time as the caller takes them.
+   * Splunk output is read row by row, and DR data detection by detection when responded to
+   * directly, so the first action is handed out before the rest of the file is read and memory
+   * does not grow with the file. Other LimaCharlie output is classified when the iterator is
+   * created, and gives at most two actions.
+   *
+   * @param filePath path to file to interpret
+   * @param toolFrom tool that produced file
+   * @return ActionIterator of the actions, see interpretActions(String, String), to be closed if
+   *     not taken to the end
+   * @throws IOException when Splunk output can not be found or opened
+   */
+  public ActionIterator iterate(String filePath, String toolFrom) throws IOException {
     if (toolFrom.equals("limacharlie")) {
-      return interpretLimaCharlieOutput(filePath);
+      return limaCharlieActions(filePath);
     } else if (toolFrom.equals("splunk")) {
-      return interpretSplunkOutput(filePath);
+      return splunkActions(filePath);
     }
-    ArrayList<HashMap<String, String>> ret = new ArrayList<>();
-    HashMap<String, String> temp = new HashMap<>();
-    temp.put("message", "fail");
-    ret.add(temp);
-    return ret;
+    return ActionIterator.of(Collections.singletonList(Action.failed()));
+  }
+
+  /**
+   * Interprets the file given to it, handing every action to a listener as soon as it is
+   * interpreted, see iterate(String, String)
+   *
+   * @param filePath path to file to interpret
+   * @param toolFrom tool that produced file
+   * @param listener receives the actions, see interpretActions(String, String)
+   */
+  public void interpret(String filePath, String toolFrom, ActionListener listener)
+      throws IOException {
+    forEach(iterate(filePath, toolFrom), listener);
   }
 
   /**
@@ -108,162 +198,308 @@ public class StaticInterpreter {
    */
   public ArrayList<HashMap<String, String>> interpretSplunkOutput(String filePath)
       throws IOException {
-    ArrayList<HashMap<String, String>> ret = new ArrayList<>();
+    return toMaps(splunkActions(filePath).toList());
+  }
+
+  /**
+   * Interpret Splunk Output row by row
+   *
+   * <p>Hands the action of every row to the listener as soon as the row is read, so actions can
+   * be executed while the rest of the file is still being read, and only one row is held in
+   * memory
+   *
+   * @param filePath Path to Splunk output file, expects a CSV file
+   * @param listener receives an action for every row, or Action.failed() for a row missing
+   *     necessary fields or with an invalid process id
+   * @throws IOException when file paths can not be found or isn't a file
+   */
+  public void interpretSplunkOutput(String filePath, ActionListener listener)
+      throws IOException {
+    forEach(splunkActions(filePath), listener);
+  }
 
+  /**
+   * Opens Splunk output for interpreting it row by row, see interpretSplunkOutput(String,
+   * ActionListener)
+   */
+  private ActionIterator splunkActions(String filePath) throws IOException {
     // Parse CSV file
     File file = new File(filePath);
     if (!file.exists() || !file.isFile()) {
       throw new IOException(filePath + " file does not exist");
     }
-    CsvReader csvReader = new CsvReader();
-    csvReader.setContainsHeader(true);
-    CsvContainer csv = csvReader.read(file, StandardCharsets.UTF_8);
-
-    // make a hashmap for each row in the CSV file
-    for (CsvRow row : csv.getRows()) {
-      HashMap<String, String> event = new HashMap<>();
-      event.put("toolTo", "limacharlie");
-      event.put("toolFrom", "splunk");
-      event.put("message", "success");
-      if (file.getName().equals("harmfulFiles.csv")) {
-        event.put("action", "file_del");
-
-        // from each row get event information,
-        for (String s : FILES_SEARCH_FIELDS.keySet()) {
-          // If any necessary fields are empty, return fail message
-          if (row.getField(s).equals("")) {
-            event.clear();
-            event.put("message", "fail");
-            break;
-          }
-          event.put(FILES_SEARCH_FIELDS.get(s), row.getField(s));
+
+    final RoutingRules.Rule rule = routingRules.match("splunk", file.getName());
+    if (rule == null) {
+      // Failed rather than empty, so the file is kept and handled again once a rule matches it
+      System.err.println("No routing rule for Splunk output " + file.getName());
+      return ActionIterator.of(Collections.singletonList(Action.failed()));
+    }
+
+    // Only the search columns are read from each row, other columns such as _raw are skipped
+    final ProjectedCsvReader csv =
+        new ProjectedCsvReader(
+            new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8),
+            rule.getColumns());
+    // make an action for each row in the CSV file, when it is asked for
+    return new ActionIterator() {
+      @Override
+      protected Action computeNext() throws IOException {
+        String[] row = csv.nextRow();
+        if (row == null) {
+          return null;
         }
-        ret.add(event);
-      } else if (file.getName().equals("harmfulProcesses.csv")) {
-        event.put("action", "os_kill_process");
-
-        // from each row get event information,
-        for (String s : PROCESS_SEARCH_FIELDS.keySet()) {
-          // If any necessary fields are empty, return fail message
-          if (row.getField(s).equals("")) {
-            event.clear();
-            event.put("message", "fail");
-            break;
-          }
-          event.put(PROCESS_SEARCH_FIELDS.get(s), row.getField(s));
+        return toAction(rule.getType(), row);
+      }
+
+      @Override
+      protected void release() throws IOException {
+        csv.close();
+      }
+    };
+  }
+
+  /**
+   * Makes the action of a row of Splunk output
+   *
+   * @param type kind of action
+   * @param row fields of the columns of the routing rule
+   * @return Action, or Action.failed() if any necessary fields are empty
+   */
+  private static Action toAction(Action.ActionType type, String[] row) {
+    for (String field : row) {
+      if (field.equals("")) {
+        return Action.failed();
+      }
+    }
+    String target = row[row.length - 1];
+    String filePath = null;
+    long pid = Action.NO_PID;
+    if (type == Action.ActionType.DELETE_FILE) {
+      filePath = target;
+    } else {
+      try {
+        pid = Long.parseLong(target);
+      } catch (NumberFormatException e) {
+        return Action.failed();
+      }
+    }
+    return Action.response(
+        Action.Tool.SPLUNK, type, filePath, pid, row[0], row[1], row[2], row[3], row[4], row[5]);
+  }
+
+  /**
+   * Makes the action responding to a LimaCharlie DR detection
+   *
+   * @param eventType "NEW_PROCESS" or "FILE_CREATE"
+   * @param detect detect hash of the detection
+   * @return Action, or Action.failed() if the sensor or the process or file is missing
+   */
+  private static Action toAction(String eventType, JsonObject detect) {
+    JsonObject routing = getObject(detect, "routing");
+    JsonObject event = getObject(detect, "event");
+    String sid = getString(routing, "sid");
+    if (sid == null) {
+      return Action.failed();
+    }
+
+    Action.ActionType type;
+    String filePath = null;
+    long pid = Action.NO_PID;
+    if (eventType.equals("NEW_PROCESS")) {
+      type = Action.ActionType.KILL_PROCESS;
+      try {
+        String processId = getString(event, "PROCESS_ID");
+        if (processId == null) {
+          return Action.failed();
         }
-        ret.add(event);
+        pid = Long.parseLong(processId);
+      } catch (NumberFormatException e) {
+        return Action.failed();
+      }
+    } else {
+      type = Action.ActionType.DELETE_FILE;
+      filePath = getString(event, "FILE_PATH");
+      if (filePath == null) {
+        return Action.failed();
       }
     }
 
-    // return array of hashmaps
-    return ret;
+    // Tags are a multivalue field, joined by newlines as Splunk exports them
+    String tags = null;
+    JsonElement tagsElement = routing.get("tags");
+    if (tagsElement != null && tagsElement.isJsonArray()) {
+      StringBuilder joined = new StringBuilder();
+      for (JsonElement tag : tagsElement.getAsJsonArray()) {
+        if (joined.length() > 0) {
+          joined.append('\n');
+        }
+        joined.append(tag.isJsonPrimitive() ? tag.getAsString() : tag.toString());
+      }
+      tags = joined.toString();
+    }
+
+    return Action.response(
+        Action.Tool.LIMACHARLIE,
+        type,
+        filePath,
+        pid,
+        sid,
+        getString(routing, "hostname"),
+        getString(routing, "iid"),
+        getString(routing, "ext_ip"),
+        getString(routing, "oid"),
+        tags);
+  }
+
+  private static JsonObject getObject(JsonObject json, String key) {
+    JsonElement element = json.get(key);
+    return element != null && element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+  }
+
+  private static String getString(JsonObject json, String key) {
+    JsonElement element = json.get(key);
+    return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
   }
 
   /**
    * LimaCharlie output interpreter
    *
-   * <p>Returns an arraylist of actions with relevant information
+   * <p>Returns an arraylist of actions with relevant information. The file is classified as log or
+   * DR data and its event types are extracted in a single streaming pass, see LimaCharlieScanner.
    *
    * @param filePath Expects LC output in JSON format
    * @return An arraylist of hashmaps, where each item in the arraylist is an action to be
    *     performed.
    */
   public ArrayList<HashMap<String, String>> interpretLimaCharlieOutput(String filePath) {
-    // Initialise to fixed values
-    ArrayList<HashMap<String, String>> ret = new ArrayList<>();
-    HashMap<String, String> curMap = new HashMap<>();
-
-    if (isLimaCharlieLog(filePath)) {
-      curMap.put("action", "Log Management");
-      curMap.put("toolTo", "splunk");
-      curMap.put("type", "json");
-      curMap.put("toolFrom", "limacharlie");
-      curMap.put("message", "success");
-      curMap.put("filePath", filePath);
-      ret.add(curMap);
-
-    } else if (isLimaCharlieDR(filePath)) {
-      boolean newProcessFound = false;
-      boolean fileCreateFound = false;
-
-      // Parse DR data and return list of events
-      ArrayList<JsonElement> events = parseLimaCharlieDR(filePath);
-      for (JsonElement obj : events) {
-        // DR Data can only contain FILE_CREATE and NEW_PROCESS detections
-        // If both have been found, stop parsing
-        if (fileCreateFound && newProcessFound) {
-          break;
-        }
-        JsonObject json = obj.getAsJsonObject();
-        JsonObject routingJson = json.get("routing").getAsJsonObject();
+    // LimaCharlie output never fails to be read, a file that cannot be read is not interpreted
+    ArrayList<Action> actions = new ArrayList<>();
+    ActionIterator iterator = limaCharlieActions(filePath);
+    while (iterator.hasNext()) {
+      actions.add(iterator.next());
+    }
+    return toMaps(actions);
+  }
 
-        // If the event is for NEW_PROCESS, flag it as found
-        if (routingJson.get("event_type").getAsString().equals("NEW_PROCESS")) {
-          newProcessFound = true;
-        }
-        // If the event is for FILE_CREATE, flag it as found
-        else if (routingJson.get("event_type").getAsString().equals("FILE_CREATE")) {
-          fileCreateFound = true;
-        }
-      }
+  private ActionIterator limaCharlieActions(String filePath) {
+    ArrayList<Action> ret = new ArrayList<>();
+
+    // DR Data can only contain FILE_CREATE and NEW_PROCESS detections
+    // If both have been found, stop parsing
+    LimaCharlieScanner.Result scan = limaCharlieScanner.scan(filePath, true);
 
-      if (newProcessFound) {
-        // add NEW_PROCESS fields to map
-        HashMap<String, String> processAction = new HashMap<>();
-        processAction.put("action", "Reporting");
-        processAction.put("toolTo", "splunk");
-        processAction.put("type", "json");
-        processAction.put("toolFrom", "limacharlie");
-        processAction.put("message", "success");
-        processAction.put("filePath", filePath);
-        processAction.put("reportName", "harmfulProcesses");
-
-        // Add action to returned list
-        ret.add(processAction);
+    if (scan.isLog()) {
+      ret.add(Action.logManagement(filePath));
+    } else if (scan.isDR() && directResponse) {
+      return directResponses(filePath);
+    } else if (scan.isDR()) {
+      if (scan.isNewProcessFound()) {
+        ret.add(Action.reporting(filePath, "harmfulProcesses"));
       }
-      if (fileCreateFound) {
-        // add FILE_CREATE fields to map
-        HashMap<String, String> fileAction = new HashMap<>();
-        fileAction.put("action", "Reporting");
-        fileAction.put("toolTo", "splunk");
-        fileAction.put("type", "json");
-        fileAction.put("toolFrom", "limacharlie");
-        fileAction.put("message", "success");
-        fileAction.put("filePath", filePath);
-        fileAction.put("reportName", "harmfulFiles");
-
-        ret.add(fileAction);
+      if (scan.isFileCreateFound()) {
+        ret.add(Action.reporting(filePath, "harmfulFiles"));
       }
     } else {
-      curMap.put("message", "fail");
-      ret.add(curMap);
+      ret.add(Action.failed());
     }
 
-    // Return list of action hashmaps
-    return ret;
+    // Return list of actions
+    return ActionIterator.of(ret);
   }
 
-  private ArrayList<JsonElement> parseLimaCharlieDR(String filePath) {
-    ArrayList<JsonElement> ret = new ArrayList<>();
-
-    File file = new File(filePath);
+  /**
+   * Interprets DR data detection by detection, giving an action for every NEW_PROCESS and
+   * FILE_CREATE detection, once per process or file of a sensor, followed by a LOG_MANAGEMENT
+   * action mirroring the DR data to Splunk for audit once the responses have been executed.
+   * Detections missing the sensor or the process or file are left out. The last 1000 responses
+   * handed out are remembered, to leave out repeated detections.
+   *
+   * @param filePath path to the DR data
+   * @return ActionIterator of the responses, never throwing: the DR data is mirrored to Splunk
+   *     even if it cannot be read to the end
+   */
+  private ActionIterator directResponses(final String filePath) {
+    LimaCharlieScanner.DetectionReader opened = null;
     try {
-      Gson json1 = new Gson();
-      // Each line must be a valid JSON object and have the routing hash
-      for (String line : FileUtils.readLines(file, "UTF-8")) {
-        JsonElement elem;
-        // Google JSON will throw exception if it cannot parse the line
-        try {
-          elem = json1.fromJson(line, JsonElement.class);
-          ret.add(elem);
-        } catch (JsonSyntaxException e) {
+      opened = limaCharlieScanner.openDetections(filePath);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    final LimaCharlieScanner.DetectionReader detections = opened;
+    final Set<HashMap<String, String>> seen =
+        Collections.newSetFromMap(
+            new LinkedHashMap<HashMap<String, String>, Boolean>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(
+                  Map.Entry<HashMap<String, String>, Boolean> eldest) {
+                return size() > DIRECT_RESPONSE_MEMORY;
+              }
+            });
+
+    return new ActionIterator() {
+      private boolean reading = detections != null;
+      private boolean mirrored;
+
+      @Override
+      protected Action computeNext() {
+        while (reading && nextDetection()) {
+          Action action = toAction(detections.getEventType(), detections.getDetect());
+          if (action.isFailed()) {
+            System.err.println(
+                "Incomplete " + detections.getEventType() + " detection in " + filePath);
+          } else if (seen.add(action.toMap())) {
+            return action;
+          }
+        }
+        if (mirrored) {
           return null;
         }
+        mirrored = true;
+        return Action.logManagement(filePath);
       }
-    } catch (IOException e) {
-      e.printStackTrace();
-      return null;
+
+      private boolean nextDetection() {
+        try {
+          reading = detections.next();
+        } catch (IOException e) {
+          e.printStackTrace();
+          reading = false;
+        }
+        return reading;
+      }
+
+      @Override
+      protected void release() throws IOException {
+        if (detections != null) {
+          detections.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * Hands the actions of an iterator to a listener until it asks to stop, and closes the iterator
+   */
+  private static void forEach(ActionIterator actions, ActionListener listener)
+      throws IOException {
+    try {
+      while (actions.hasNext()) {
+        if (!listener.onAction(actions.next())) {
+          return;
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      actions.close();
+    }
+  }
+
+  private static ArrayList<HashMap<String, String>> toMaps(ArrayList<Action> actions) {
+    ArrayList<HashMap<String, String>> ret = new ArrayList<>(actions.size());
+    for (Action action : actions) {
+      ret.add(action.toMap());
     }
     return ret;
   }
@@ -276,46 +512,7 @@ public class StaticInterpreter {
    * @return returns true if file is log data, else returns false
    */
   public Boolean isLimaCharlieLog(String filePath) {
-    File file = new File(filePath);
-    try {
-      Gson json1 = new Gson();
-      // Each line must be a valid JSON object and have the routing hash
-      for (String line : FileUtils.readLines(file, "UTF-8")) {
-        JsonElement elem;
-        // Google JSON will throw exception if it cannot parse the line
-        try {
-          elem = json1.fromJson(line, JsonElement.class);
-        } catch (JsonSyntaxException e) {
-          return false;
-        }
-
-        JsonObject json = elem.getAsJsonObject();
-        JsonObject routingJson = json.get("routing").getAsJsonObject();
-
-        // No routing hash, therefore return false since all logs contain a routing hash
-        if (routingJson == null) {
-          return false;
-        }
-
-        // Checking to make sure the routing hash contains all expected keys for a LimaCharlie log
-        for (String key : LC_ROUTING_HASH_KEYS) {
-          if (routingJson.get(key) == null) {
-            return false;
-          }
-        }
-
-        // Must have an event hash
-        // Event hash is different per event, therefore will not check internal structure
-        // Top-level event hash is exclusive to LimaCharlieLog Data
-        if (json.get("event") == null) {
-          return false;
-        }
-      }
-    } catch (IOException e) {
-      return false;
-    }
-
-    return true;
+    return limaCharlieScanner.scan(filePath, false).isLog();
   }
 
   /**
@@ -326,46 +523,6 @@ public class StaticInterpreter {
    * @return true if it is LimaCharlieDR Data else return false
    */
   public Boolean isLimaCharlieDR(String filePath) {
-    File file = new File(filePath);
-    try {
-      // Each line must have relevant hashes
-      for (String line : FileUtils.readLines(file, "UTF-8")) {
-        if (!line.isEmpty()) {
-
-          // sometimes carriage returns result in parse errors
-          line = line.replaceAll("\\n", "");
-          line = line.replaceAll("\\r", "");
-          Gson json1 = new Gson();
-          JsonElement elem;
-          // Google JSON will throw exception if it cannot parse the line
-          try {
-            elem = json1.fromJson(line, JsonElement.class);
-          } catch (JsonSyntaxException e) {
-            return false;
-          }
-          JsonObject json = elem.getAsJsonObject();
-
-          if (json.get("source") == null) {
-            return false;
-          }
-          if (json.get("detect") == null) {
-            return false;
-          }
-          if (json.get("routing") == null) {
-            return false;
-          }
-          if (json.get("detect_id") == null) {
-            return false;
-          }
-          if (json.get("cat") == null) {
-            return false;
-          }
-        }
-      }
-    } catch (IOException e) {
-      e.printStackTrace();
-      return false;
-    }
-    return true;
+    return limaCharlieScanner.scan(filePath, false).isDR();
   }
 }
@@ -1,3 +1,5 @@
+from __future__ import print_function
+
 import sys
 import json
 import uuid
@@ -5,11 +7,18 @@ import argparse
 import re
 import binascii
 import string
+import time
+
+# Output of a command is captured in worker mode, see run_worker()
+try:
+    from StringIO import StringIO
+except ImportError:
+    from io import StringIO
 
 # if LimaCharlie package is not installed, exit immediately
 try:
     import limacharlie
-except ImportError, e:
+except ImportError:
     sys.stdout.write("unable to import LimaCharlie package.")
     sys.exit(0)
 
@@ -36,11 +45,108 @@ def is_hex(s):
 # sensor.task('file_del "C:\\Users\\cybersecurity\\Documents\\tack.rtf"',
 # inv_id="splunk_inv_test")
 def get_sensor(manager, sensor_id):
-    sensors = manager.sensors()
-    for s in sensors:
-        if s.sid == sensor_id:
-            return s
-    return None
+    return get_index(manager).get(sensor_id)
+
+
+# Sensors of an organisation, indexed by sid, hostname and IP address
+# The sensors are listed once every SENSOR_TTL seconds instead of for every
+# command. A listing adds the sensors enrolled and drops the sensors removed
+# since the previous one; the online state of the others is kept.
+# The online state of a sensor is checked at most once every ONLINE_TTL
+# seconds, so a command to a sensor known to be offline fails without calling
+# the API.
+class SensorIndex(object):
+    SENSOR_TTL = 300
+    ONLINE_TTL = 30
+    # An unknown sid lists the sensors again, at most once every MISS_INTERVAL
+    # seconds, as the sensor may have been enrolled since the last listing
+    MISS_INTERVAL = 10
+
+    def __init__(self, manager, clock=time.time):
+        self.manager = manager
+        self.clock = clock
+        self.by_sid = {}
+        self.by_hostname = {}
+        self.by_ip = {}
+        # sid -> (online, time of the check)
+        self.online = {}
+        self.listed_at = None
+
+    # Lists the sensors if the last listing is older than SENSOR_TTL seconds,
+    # or if force is True
+    def refresh(self, force=False):
+        now = self.clock()
+        if (not force and self.listed_at is not None
+                and now - self.listed_at < self.SENSOR_TTL):
+            return
+        by_sid = {}
+        by_hostname = {}
+        by_ip = {}
+        for sensor in self.manager.sensors():
+            by_sid[sensor.sid] = sensor
+            hostname = sensor_detail(sensor, "hostname")
+            if hostname:
+                by_hostname.setdefault(hostname.lower(), []).append(sensor.sid)
+            for key in ("int_ip", "ext_ip"):
+                ip = sensor_detail(sensor, key)
+                if ip and sensor.sid not in by_ip.get(ip, []):
+                    by_ip.setdefault(ip, []).append(sensor.sid)
+        for sid in list(self.online):
+            if sid not in by_sid:
+                del self.online[sid]
+        self.by_sid = by_sid
+        self.by_hostname = by_hostname
+        self.by_ip = by_ip
+        self.listed_at = now
+
+    # Returns the sensor with a sid, or None if there is none
+    def get(self, sensor_id):
+        self.refresh()
+        sensor = self.by_sid.get(sensor_id)
+        if (sensor is None
+                and self.clock() - self.listed_at >= self.MISS_INTERVAL):
+            self.refresh(force=True)
+            sensor = self.by_sid.get(sensor_id)
+        return sensor
+
+    # Returns the sids of the sensors with a hostname or IP address
+    def find(self, name):
+        self.refresh()
+        sids = self.by_hostname.get(name.lower())
+        if sids is None:
+            sids = self.by_ip.get(name, [])
+        return list(sids)
+
+    # Returns True if the sensor is online, checking at most once every
+    # ONLINE_TTL seconds
+    def is_online(self, sensor):
+        now = self.clock()
+        state = self.online.get(sensor.sid)
+        if state is None or now - state[1] >= self.ONLINE_TTL:
+            state = (sensor.isOnline() is not False, now)
+            self.online[sensor.sid] = state
+        return state[0]
+
+
+# Returns a detail of a sensor given by the listing, or None
+# Versions of the LimaCharlie package that only fetch the details on demand
+# have methods instead; the sensor is then only indexed by sid
+def sensor_detail(sensor, key):
+    value = getattr(sensor, key, None)
+    if callable(value):
+        return None
+    return value
+
+
+# Index of the sensors of the manager this process is logged in with
+sensor_index = None
+
+
+def get_index(manager):
+    global sensor_index
+    if sensor_index is None or sensor_index.manager is not manager:
+        sensor_index = SensorIndex(manager)
+    return sensor_index
 
 
 # Takes in SID and filePath which needs to be deleted
@@ -50,9 +156,9 @@ def delete_file(manager, sensor_id, file_path):
         # file paths have to be encloses in " " for LC commands
         file_path = '"' + file_path + '"'
         sensor.task('file_del ' + file_path)
-        print "Successfully deleted"
+        print("Successfully deleted")
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -63,9 +169,9 @@ def kill_process(manager, sensor_id, pid):
     sensor = get_sensor(manager, sensor_id)
     if sensor is not None:
         sensor.task("os_kill_process -p " + pid)
-        print "Successfully killed"
+        print("Successfully killed")
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -79,13 +185,13 @@ def get_processes(manager, sensor_id):
         try:
             future = sensor.request('os_processes')
         except limacharlie.utils.LcApiException as exp:
-            print 'Failed to connect to host'
-            print exp
+            print('Failed to connect to host')
+            print(exp)
             sys.exit(0)
         else:
             responses = future.getNewResponses(timeout=10)
             if len(responses) == 0:
-                print "Never got response"
+                print("Never got response")
             else:
                 for res in responses:
                     res_json = json.loads(json.dumps(res))
@@ -99,9 +205,9 @@ def get_processes(manager, sensor_id):
                                    "PARENT_PROCESS_ID": p.get(
                                            "PARENT_PROCESS_ID"),
                                    "COMMAND_LINE": p.get("COMMAND_LINE")}
-                        print process
+                        print(process)
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -119,23 +225,23 @@ def get_file_info(manager, sensor_id, file_path):
         try:
             future = sensor.request('file_info ' + file_path)
         except limacharlie.utils.LcApiException as exp:
-            print 'Failed to connect to host'
-            print exp
+            print('Failed to connect to host')
+            print(exp)
             sys.exit(0)
         else:
             # Ask for response with 10s timeout
             responses = future.getNewResponses(timeout=10)
             if len(responses) == 0:
-                print "Never got response"
+                print("Never got response")
             else:
                 for res in responses:
                     # We only need to print the event hash since this contains
                     # all the file information, skipkeys=True will not print
                     # the event key and just the file information
                     res_json = json.loads(json.dumps(res))
-                    print json.dumps(res_json.get('event'), skipkeys=True)
+                    print(json.dumps(res_json.get('event'), skipkeys=True))
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -157,13 +263,13 @@ def get_file(manager, sensor_id, file_path, output_file_path):
         try:
             future = sensor.request('file_get ' + file_path)
         except limacharlie.utils.LcApiException as exp:
-            print 'Failed to connect to host'
-            print exp
+            print('Failed to connect to host')
+            print(exp)
             sys.exit(0)
         else:
             responses = future.getNewResponses(timeout=10)
             if len(responses) == 0:
-                print "Never got response"
+                print("Never got response")
             else:
                 for res in responses:
                     res_json = json.loads(json.dumps(res))
@@ -179,7 +285,7 @@ def get_file(manager, sensor_id, file_path, output_file_path):
                         with open(output_file, "w") as out:
                             out.write(result["FILE_CONTENT"])
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -193,25 +299,25 @@ def isolate_node(manager, sensor_id):
         try:
             future = sensor.request('segregate_network')
         except limacharlie.utils.LcApiException as exp:
-            print 'Failed to connect to host'
-            print exp
+            print('Failed to connect to host')
+            print(exp)
             sys.exit(0)
         else:
             responses = future.getNewResponses(timeout=10)
             if len(responses) == 0:
-                print "Never got response"
+                print("Never got response")
             else:
                 for res in responses:
                     res_json = json.loads(json.dumps(res))
                     result = json.loads(json.dumps(res_json.get('event'),
                                                    skipkeys=True))
                     # if u'ERROR is 0, successfully isolated
-                    if result.get("ERROR") is 0:
-                        print "True"
+                    if result.get("ERROR") == 0:
+                        print("True")
                     else:
-                        print "False"
+                        print("False")
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -224,25 +330,25 @@ def rejoin_node(manager, sensor_id):
         try:
             future = sensor.request('rejoin_network')
         except limacharlie.utils.LcApiException as exp:
-            print 'Failed to connect to host'
-            print exp
+            print('Failed to connect to host')
+            print(exp)
             sys.exit(0)
         else:
             responses = future.getNewResponses(timeout=10)
             if len(responses) == 0:
-                print "Never got response"
+                print("Never got response")
             else:
                 for res in responses:
                     res_json = json.loads(json.dumps(res))
                     result = json.loads(json.dumps(res_json.get('event'),
                                                    skipkeys=True))
                     # if u'ERROR is 0, successfully isolated
-                    if result.get("ERROR") is 0:
-                        print "True"
+                    if result.get("ERROR") == 0:
+                        print("True")
                     else:
-                        print "False"
+                        print("False")
     else:
-        print "Sensor ID does not exist."
+        print("Sensor ID does not exist.")
         sys.exit(0)
 
 
@@ -285,6 +391,167 @@ def get_parameters(args_list):
     return ret
 
 
+# Sends a command to a sensor, printing its output to stdout
+# Returns early, printing "sensor is offline", if the sensor is not online
+def run_command(manager, sensor_id, command_type, extra_args):
+    # check if sensor is online first, then continue
+    limacharlie_sensor = get_sensor(manager, sensor_id)
+    if (limacharlie_sensor is None
+            or not get_index(manager).is_online(limacharlie_sensor)):
+        sys.stdout.write("sensor is offline")
+        return
+
+    # Based on Command type, execute command
+    if COMMAND_REQUIRED_ARGS.get(command_type) is None:
+        print("unknown command " + str(command_type))
+        return
+    for required in COMMAND_REQUIRED_ARGS[command_type]:
+        if extra_args is None or required not in extra_args:
+            print(command_type + " command requires " +
+                  " and ".join(COMMAND_REQUIRED_ARGS[command_type]))
+            return
+
+    if command_type == "file_del":
+        delete_file(manager, sensor_id, extra_args["file_path"])
+    elif command_type == "os_kill_process":
+        kill_process(manager, sensor_id, extra_args["pid"])
+    elif command_type == "file_info":
+        get_file_info(manager, sensor_id, extra_args["file_path"])
+    elif command_type == "file_get":
+        get_file(manager, sensor_id, extra_args["file_path"],
+                 extra_args["output_file_path"])
+    elif command_type == "os_processes":
+        get_processes(manager, sensor_id)
+    elif command_type == "segregate_network":
+        isolate_node(manager, sensor_id)
+    elif command_type == "rejoin_network":
+        rejoin_node(manager, sensor_id)
+
+
+# Arguments every command requires
+COMMAND_REQUIRED_ARGS = {
+    "file_del": ["file_path"],
+    "os_kill_process": ["pid"],
+    "file_info": ["file_path"],
+    "file_get": ["file_path", "output_file_path"],
+    "os_processes": [],
+    "segregate_network": [],
+    "rejoin_network": [],
+}
+
+
+# Runs one request of worker mode, returning the response
+# The output the command prints is captured and returned as a list of lines,
+# as stdout carries the responses
+def handle_request(manager, request):
+    response = {"id": request.get("id")}
+    command_type = request.get("command")
+    if command_type == "ping":
+        response["ok"] = True
+        response["output"] = ["pong"]
+        return response
+    if command_type == "batch":
+        # Runs the requests in "tasks" one after the other, answering with the
+        # response of each in "results". No task is started once "budget_ms"
+        # milliseconds have passed, the tasks left fail.
+        response["results"] = []
+        deadline = None
+        if request.get("budget_ms") is not None:
+            deadline = time.time() + request.get("budget_ms") / 1000.0
+        for task in request.get("tasks") or []:
+            if deadline is not None and time.time() >= deadline:
+                response["results"].append({"id": None, "ok": False,
+                                            "error": "batch deadline passed",
+                                            "output": []})
+            elif isinstance(task, dict):
+                response["results"].append(handle_request(manager, task))
+            else:
+                response["results"].append({"id": None, "ok": False,
+                                            "error": "invalid task",
+                                            "output": []})
+        response["ok"] = True
+        response["output"] = []
+        return response
+    if command_type == "find_sensors":
+        # The sids of the sensors with the hostname or IP address "name"
+        try:
+            name = (request.get("args") or {}).get("name") or ""
+            response["output"] = get_index(manager).find(name)
+            response["ok"] = True
+        except Exception as exp:
+            response["ok"] = False
+            response["error"] = str(exp)
+            response["output"] = []
+        return response
+
+    captured = StringIO()
+    stdout = sys.stdout
+    sys.stdout = captured
+    try:
+        run_command(manager, request.get("sid"), command_type,
+                    request.get("args"))
+        response["ok"] = True
+    except SystemExit:
+        # Commands exit when the sensor does not exist, the worker goes on
+        response["ok"] = True
+    except Exception as exp:
+        response["ok"] = False
+        response["error"] = str(exp)
+    finally:
+        sys.stdout = stdout
+    response["output"] = captured.getvalue().splitlines()
+    return response
+
+
+# Worker mode: logs in once, then reads one JSON request per line from stdin
+# and writes one JSON response per line to stdout, until stdin is closed
+# Request: {"id": 1, "sid": "<SID>", "command": "file_del",
+#           "args": {"file_path": "<PATH>"}}, or {"id": 1, "command": "ping"}
+#          or {"id": 1, "command": "find_sensors", "args": {"name": "<HOST>"}}
+#          or {"id": 1, "command": "batch", "tasks": [<request>, ...],
+#          "budget_ms": 30000}, answered with
+#          {"id": 1, "ok": true, "output": [], "results": [<response>, ...]}
+# Response: {"id": 1, "ok": true, "output": ["Successfully deleted"]}
+def run_worker(oid, api_key):
+    manager = limacharlie.Manager(oid, api_key, is_interactive=True,
+                                  inv_id=str(uuid.uuid4()))
+    # Tells the caller the worker is logged in and takes requests
+    sys.stdout.write(json.dumps({"id": None, "ok": True,
+                                 "output": ["ready"]}) + "\n")
+    sys.stdout.flush()
+
+    while True:
+        line = sys.stdin.readline()
+        if not line:
+            break
+        if not line.strip():
+            continue
+        try:
+            request = json.loads(line)
+        except ValueError:
+            request = None
+        if isinstance(request, dict):
+            response = handle_request(manager, request)
+        else:
+            response = {"id": None, "ok": False,
+                        "error": "invalid request", "output": []}
+        sys.stdout.write(json.dumps(response) + "\n")
+        sys.stdout.flush()
+
+
+# parses the command line arguments of worker mode
+def parse_worker_args(args):
+    parser = argparse.ArgumentParser(
+        description="LimaCharlie Commands API worker",
+        usage="LimaCharlieCommands.py --worker -o <OID> -a <API_KEY>")
+    parser.add_argument('--worker', action='store_true')
+    parser.add_argument('-o', '--organization_id', type=str, metavar='',
+                        required=True, help='Organization ID')
+    parser.add_argument('-a', '--api_key', type=str, metavar='',
+                        required=True, help='API Key')
+    return vars(parser.parse_args(args))
+
+
 # Driver method
 # Assumes arguments are as follows:
 # argv[1] = OID (Organisation ID)
@@ -292,18 +559,26 @@ def get_parameters(args_list):
 # argv[3] = SENSOR_ID, id of sensor to send command to
 # argv[4] = COMMAND_TYPE, type of command to send
 # argv[5] = COMMAND_ARG, any argument needed for command
+# or, to keep running and take commands from stdin, see run_worker():
+# argv[1] = --worker, followed by the OID and API_KEY
 
 if __name__ == "__main__":
 
     required_args = None
     extra_args = None
 
+    if "--worker" in sys.argv:
+        worker_args = parse_worker_args(sys.argv[1:])
+        run_worker(worker_args["organization_id"], worker_args["api_key"])
+        sys.exit(0)
+
     # list all the commands this script can perform
     if "--show_commands" in sys.argv:
-        print "file_del \n"
-        print "file_info \n"
-        print "os_kill_process \n"
-        print "os_processes \n"
+        print("file_del \n")
+        print("file_info \n")
+        print("os_kill_process \n")
+        print("os_processes \n")
+        sys.exit(0)
     else:
         required_args = parse_args(sys.argv[1:])
 
@@ -321,38 +596,4 @@ if __name__ == "__main__":
     man = limacharlie.Manager(OID, API_KEY, is_interactive=True,
                               inv_id=str(uuid.uuid4()))
 
-    # check if sensor is online first, then continue
-    limacharlie_sensor = get_sensor(man, SENSOR_ID)
-    if limacharlie_sensor is None or limacharlie_sensor.isOnline() is False:
-        sys.stdout.write("sensor is offline")
-        sys.exit(0)
-
-    # Based on Command type, execute command
-    if COMMAND_TYPE == "file_del":
-        if extra_args is None or "file_path" not in extra_args:
-            print "file_del command requires a file path"
-            sys.exit(0)
-        delete_file(man, SENSOR_ID, extra_args["file_path"])
-    elif COMMAND_TYPE == "os_kill_process":
-        if extra_args is None or "pid" not in extra_args:
-            print "os_kill_process command requires a pid"
-            sys.exit(0)
-        kill_process(man, SENSOR_ID, extra_args["pid"])
-    elif COMMAND_TYPE == "file_info":
-        if extra_args is None or "file_path" not in extra_args:
-            print "file_info command requires a file path"
-            sys.exit(0)
-        get_file_info(man, SENSOR_ID, extra_args["file_path"])
-    elif COMMAND_TYPE == "file_get":
-        if extra_args is None or "file_path" not in extra_args \
-                or "output_file_path" not in extra_args:
-            print "file_info command requires a file_path and output_file_path"
-            sys.exit(0)
-        get_file(man, SENSOR_ID, extra_args["file_path"],
-                 extra_args["output_file_path"])
-    elif COMMAND_TYPE == "os_processes":
-        get_processes(man, SENSOR_ID)
-    elif COMMAND_TYPE == "segregate_network":
-        isolate_node(man, SENSOR_ID)
-    elif COMMAND_TYPE == "rejoin_network":
-        rejoin_node(man, SENSOR_ID)
+    run_command(man, SENSOR_ID, COMMAND_TYPE, extra_args)
@@ -0,0 +1,65 @@
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit test class for Action class
+ */
+public class ActionTest {
+
+  /**
+   * Tests that actions convert to the HashMap form the interpreter used to return, and back
+   */
+  @Test
+  public void testMapForm() {
+    Action action =
+        Action.response(
+            Action.Tool.SPLUNK,
+            Action.ActionType.KILL_PROCESS,
+            null,
+            1234,
+            "sid",
+            "host",
+            "iid",
+            "1.2.3.4",
+            "oid",
+            "tag");
+    HashMap<String, String> map = action.toMap();
+
+    Assert.assertEquals("os_kill_process", map.get("action"));
+    Assert.assertEquals("limacharlie", map.get("toolTo"));
+    Assert.assertEquals("splunk", map.get("toolFrom"));
+    Assert.assertEquals("success", map.get("message"));
+    Assert.assertEquals("1234", map.get("process_id"));
+    Assert.assertEquals("1.2.3.4", map.get("ext_ip"));
+    Assert.assertEquals("tag", map.get("tags{}"));
+    Assert.assertFalse(map.containsKey("filePath"));
+    Assert.assertEquals(map, Action.fromMap(map).toMap());
+
+    HashMap<String, String> fail = new HashMap<>();
+    fail.put("message", "fail");
+    Assert.assertEquals(fail, Action.failed().toMap());
+    Assert.assertTrue(Action.fromMap(fail).isFailed());
+  }
+
+  /**
+   * Tests that actions are known by either their name or their ontology function name
+   */
+  @Test
+  public void testActionNames() {
+    Assert.assertEquals(Action.ActionType.DELETE_FILE, Action.ActionType.fromName("file_del"));
+    Assert.assertEquals(Action.ActionType.DELETE_FILE, Action.ActionType.fromName("DeleteFile"));
+    Assert.assertNull(Action.ActionType.fromName("file_delete"));
+    Assert.assertEquals(Action.Tool.SPLUNK, Action.Tool.fromName("splunk"));
+  }
+
+  /**
+   * Tests that a misspelt action is rejected rather than ignored
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownAction() {
+    HashMap<String, String> map = Action.logManagement("out.json").toMap();
+    map.put("action", "Log Managment");
+    Action.fromMap(map);
+  }
+}
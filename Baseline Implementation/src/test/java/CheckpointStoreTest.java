@@ -0,0 +1,146 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for CheckpointStore class. Sets up testing directory called
+ * "checkpoint_test_dir" in the directory the application is running from, which is deleted at the
+ * end of every test.
+ */
+public class CheckpointStoreTest {
+
+  private File testDir;
+  private String journalPath;
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/checkpoint_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+    journalPath = testDir.getPath() + "/journal.checkpoints";
+  }
+
+  @After
+  public void cleanup() {
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private void write(File file, String text, boolean append) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file, append));
+    writer.append(text);
+    writer.close();
+  }
+
+  /**
+   * Tests that recorded checkpoints survive closing and reopening the store, and that only the
+   * latest checkpoint of a file is kept
+   */
+  @Test
+  public void testCheckpointsSurviveRestart() throws IOException {
+    CheckpointStore store = new CheckpointStore(journalPath);
+    store.record("a.json", "fp-a", 10, CheckpointStore.Status.PENDING, 1);
+    store.record("a.json", "fp-a", 20, CheckpointStore.Status.DONE, 0);
+    store.record("b.csv", "fp-b", 5, CheckpointStore.Status.PENDING, 2);
+    store.close();
+
+    CheckpointStore reopened = new CheckpointStore(journalPath);
+    Assert.assertEquals(2, reopened.size());
+
+    CheckpointStore.Checkpoint a = reopened.get("a.json");
+    Assert.assertEquals("fp-a", a.getFingerprint());
+    Assert.assertEquals(20, a.getOffset());
+    Assert.assertEquals(CheckpointStore.Status.DONE, a.getStatus());
+
+    CheckpointStore.Checkpoint b = reopened.get("b.csv");
+    Assert.assertEquals(CheckpointStore.Status.PENDING, b.getStatus());
+    Assert.assertEquals(2, b.getActionsDone());
+    reopened.close();
+  }
+
+  /**
+   * Tests that removed and not retained files are forgotten, also after reopening the store
+   */
+  @Test
+  public void testRemoveAndRetain() throws IOException {
+    CheckpointStore store = new CheckpointStore(journalPath);
+    store.record("a.json", "fp-a", 10, CheckpointStore.Status.DONE, 0);
+    store.record("b.json", "fp-b", 10, CheckpointStore.Status.DONE, 0);
+    store.record("c.json", "fp-c", 10, CheckpointStore.Status.DONE, 0);
+    store.remove("a.json");
+    store.retain(Collections.singletonList("b.json"));
+    store.close();
+
+    CheckpointStore reopened = new CheckpointStore(journalPath);
+    Assert.assertNull(reopened.get("a.json"));
+    Assert.assertNotNull(reopened.get("b.json"));
+    Assert.assertNull(reopened.get("c.json"));
+    reopened.close();
+  }
+
+  /**
+   * Tests that a line torn by a crash is skipped and the journal is compacted to one line per file
+   * when opened
+   */
+  @Test
+  public void testTornLineAndCompaction() throws IOException {
+    CheckpointStore store = new CheckpointStore(journalPath);
+    for (int i = 0; i < 10; i++) {
+      store.record("a.json", "fp-a", i, CheckpointStore.Status.PENDING, i);
+    }
+    store.close();
+    write(new File(journalPath), "{\"file\":\"b.json\",\"fingerp", true);
+
+    CheckpointStore reopened = new CheckpointStore(journalPath);
+    Assert.assertEquals(1, reopened.size());
+    Assert.assertEquals(9, reopened.get("a.json").getOffset());
+    reopened.close();
+
+    String[] lines =
+        new String(Files.readAllBytes(Paths.get(journalPath)), StandardCharsets.UTF_8).split("\n");
+    Assert.assertEquals(1, lines.length);
+  }
+
+  /**
+   * Tests that the fingerprint of a file stays the same when it is appended to, and changes when
+   * it is replaced by a different file
+   */
+  @Test
+  public void testFingerprint() throws IOException {
+    File file = new File(testDir, "detections.json");
+    write(file, "line 1\n", false);
+    String fingerprint = CheckpointStore.fingerprint(file, file.length());
+
+    write(file, "line 2\n", true);
+    Assert.assertEquals(fingerprint, CheckpointStore.fingerprint(file, 7));
+
+    Assert.assertTrue(file.delete());
+    write(file, "other\n", false);
+    Assert.assertNotEquals(fingerprint, CheckpointStore.fingerprint(file, 7));
+  }
+
+  /**
+   * Tests that the default journal path lies next to, not inside, the watched directory
+   */
+  @Test
+  public void testDefaultPathOutsideDirectory() {
+    String journal = CheckpointStore.defaultPath(testDir.getPath() + "/lc/");
+    Assert.assertEquals(testDir.getPath() + "/lc.checkpoints", journal);
+  }
+}
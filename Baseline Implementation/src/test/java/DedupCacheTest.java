@@ -0,0 +1,125 @@
+import static java.lang.Thread.sleep;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for DedupCache class. Sets up testing directory called "dedup_test_dir" in the
+ * directory the application is running from, which is deleted at the end of every test.
+ */
+public class DedupCacheTest {
+
+  private File testDir;
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/dedup_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+  }
+
+  @After
+  public void cleanup() {
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  /**
+   * Tests that the constructor rejects a cache that cannot hold or remember anything
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidArguments() {
+    new DedupCache(0, 10);
+  }
+
+  /**
+   * Tests that a key is a duplicate within its ttl and counted as hit, and not after its ttl
+   */
+  @Test
+  public void testEntriesExpireIndividually() throws InterruptedException {
+    DedupCache cache = new DedupCache(200, 100);
+
+    Assert.assertFalse(cache.isDuplicate("a"));
+    sleep(120);
+    Assert.assertFalse(cache.isDuplicate("b"));
+    Assert.assertTrue(cache.isDuplicate("a"));
+
+    // "a" expires while "b", seen later, is still remembered
+    sleep(120);
+    Assert.assertFalse(cache.isDuplicate("a"));
+    Assert.assertTrue(cache.isDuplicate("b"));
+
+    Assert.assertEquals(2, cache.getHits());
+    Assert.assertEquals(3, cache.getMisses());
+    Assert.assertEquals(1, cache.getExpirations());
+  }
+
+  /**
+   * Tests that the cache never holds more than its maximum size, evicting the oldest keys
+   */
+  @Test
+  public void testSizeBound() {
+    DedupCache cache = new DedupCache(60000, 3);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertFalse(cache.isDuplicate("file" + i));
+    }
+
+    Assert.assertEquals(3, cache.size());
+    Assert.assertEquals(7, cache.getEvictions());
+    Assert.assertFalse(cache.isDuplicate("file0"));
+    Assert.assertTrue(cache.isDuplicate("file9"));
+  }
+
+  /**
+   * Tests that clear() forgets all keys
+   */
+  @Test
+  public void testClear() {
+    DedupCache cache = new DedupCache(60000, 10);
+    Assert.assertFalse(cache.isDuplicate("a"));
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+    Assert.assertFalse(cache.isDuplicate("a"));
+  }
+
+  /**
+   * Tests that name keys treat any event on a file as a duplicate, while content keys only treat
+   * events that saw the same content as duplicates
+   */
+  @Test
+  public void testNameAndContentKeys() throws IOException {
+    File file = new File(testDir, "harmfulFiles.csv");
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.append("header\n");
+    writer.close();
+
+    DedupCache names = new DedupCache(60000, 10);
+    DedupCache contents = new DedupCache(60000, 10, true);
+    Assert.assertEquals("harmfulFiles.csv", names.keyFor(file));
+
+    Assert.assertFalse(names.isDuplicate(file));
+    Assert.assertFalse(contents.isDuplicate(file));
+    Assert.assertTrue(contents.isDuplicate(file));
+
+    writer = new BufferedWriter(new FileWriter(file, true));
+    writer.append("row\n");
+    writer.close();
+
+    Assert.assertTrue(names.isDuplicate(file));
+    Assert.assertFalse(contents.isDuplicate(file));
+  }
+}
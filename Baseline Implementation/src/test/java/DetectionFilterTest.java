@@ -0,0 +1,103 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit test class for DetectionFilter class
+ */
+public class DetectionFilterTest {
+
+  private static final long WINDOW = 60000;
+
+  /**
+   * Tests that a detection is suppressed within the window and responded to again after it
+   */
+  @Test
+  public void testDuplicatesWithinWindow() {
+    DetectionFilter filter = new DetectionFilter(WINDOW, 100, 1000, 0.001, 4);
+    Action action =
+        Action.response(
+            Action.Tool.LIMACHARLIE,
+            Action.ActionType.KILL_PROCESS,
+            null,
+            1234,
+            "sensor-1",
+            "host",
+            "iid",
+            "1.2.3.4",
+            "oid",
+            "tag");
+    String key = DetectionFilter.key(action);
+
+    Assert.assertTrue(filter.firstSeen(key, 0));
+    Assert.assertFalse(filter.firstSeen(key, 1000));
+    Assert.assertFalse(filter.firstSeen(key, WINDOW - 1));
+    // Another process on the same sensor is another detection
+    Assert.assertTrue(filter.firstSeen(key.replace("1234", "1235"), 1000));
+    Assert.assertTrue(filter.firstSeen(key, 2 * WINDOW));
+    Assert.assertEquals(2, filter.getSuppressedCount());
+  }
+
+  /**
+   * Tests that checking a detection does not remember it, so a response that failed is retried,
+   * and that it is suppressed once its response is recorded
+   */
+  @Test
+  public void testFailedResponseRetried() {
+    DetectionFilter filter = new DetectionFilter(WINDOW, 100, 1000, 0.001, 4);
+    String key = "KillProcess\nsensor-1\n1234";
+
+    // First response fails and is not recorded
+    Assert.assertFalse(filter.contains(key, 0));
+    // Retry is not suppressed, and succeeds
+    Assert.assertFalse(filter.contains(key, 1000));
+    filter.record(key, 1000);
+    Assert.assertTrue(filter.contains(key, 2000));
+    Assert.assertFalse(filter.firstSeen(key, 3000));
+    Assert.assertEquals(2, filter.getSuppressedCount());
+    Assert.assertEquals(1L, (long) filter.getMetrics().get("passed"));
+  }
+
+  /**
+   * Tests that detections evicted from the LRU map are still suppressed by the Bloom filter until
+   * their slices are cleared
+   */
+  @Test
+  public void testEvictedFromLru() {
+    DetectionFilter filter = new DetectionFilter(WINDOW, 10, 1000, 0.001, 4);
+    for (int i = 0; i < 100; i++) {
+      Assert.assertTrue(filter.firstSeen("detection-" + i, i));
+    }
+    Assert.assertFalse(filter.firstSeen("detection-0", 200));
+    Assert.assertEquals(1L, (long) filter.getMetrics().get("suppressed.filtered"));
+    Assert.assertTrue(filter.firstSeen("detection-0", WINDOW + 200));
+  }
+
+  /**
+   * Tests that distinct detections are rarely suppressed, and that the memory used stays the same
+   * however many arrive
+   */
+  @Test
+  public void testFalsePositiveRateAndMemory() {
+    DetectionFilter filter = new DetectionFilter(WINDOW, 100, 10000, 0.01, 4);
+    long bytes = filter.getMetrics().get("filter.bytes");
+
+    int suppressed = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (!filter.firstSeen("sensor-" + (i % 37) + "\n" + i, i)) {
+        suppressed++;
+      }
+    }
+    Assert.assertTrue("suppressed " + suppressed, suppressed <= 200);
+
+    // Many windows of detections later, old slices have been cleared and reused
+    for (int i = 0; i < 100000; i++) {
+      filter.firstSeen("detection-" + i, WINDOW + i * 10L);
+    }
+    Assert.assertEquals(bytes, (long) filter.getMetrics().get("filter.bytes"));
+    Assert.assertEquals(
+        110000L,
+        filter.getMetrics().get("passed")
+            + filter.getMetrics().get("suppressed.exact")
+            + filter.getMetrics().get("suppressed.filtered"));
+  }
+}
@@ -0,0 +1,190 @@
+import static java.lang.Thread.sleep;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for DirectoryCollector class. Sets up testing directory called
+ * "collector_test_dir" with two source directories in the directory the application is running
+ * from, which is deleted at the end of every test.
+ */
+public class DirectoryCollectorTest {
+
+  private File testDir;
+  private File lcDir;
+  private File splunkDir;
+  private HandlerPool pool;
+  private DirectoryCollector collector;
+  private StaticInterpreterStub intStub = new StaticInterpreterStub();
+  // Time to allow threads to start running and for event processing
+  private final int sleepTime = 50;
+
+  // Stub StaticInterpreter class
+  // Replaces entry point method to return an empty ArrayList
+  private class StaticInterpreterStub extends StaticInterpreter {
+
+    public ArrayList<HashMap<String, String>> interpret(String path, String toolFrom) {
+      return new ArrayList<>();
+    }
+  }
+
+  private void deleteDirectory(File file) {
+    File[] entries = file.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        deleteDirectory(entry);
+      }
+    }
+    file.delete();
+  }
+
+  private void write(File file, String text) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.append(text);
+    writer.close();
+  }
+
+  @Before
+  public void setup() throws IOException {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/collector_test_dir");
+    lcDir = new File(testDir, "lc");
+    splunkDir = new File(testDir, "splunk");
+    lcDir.mkdirs();
+    splunkDir.mkdirs();
+    Assert.assertTrue(lcDir.isDirectory());
+    Assert.assertTrue(splunkDir.isDirectory());
+    pool = new HandlerPool("test", 1, 1, 100, HandlerPool.RejectionPolicy.ABORT);
+    collector = new DirectoryCollector(intStub, pool);
+  }
+
+  @After
+  public void cleanup() throws InterruptedException {
+    collector.stopRunning();
+    collector.getThread().join(2000);
+    pool.shutdown();
+    deleteDirectory(testDir);
+  }
+
+  /**
+   * Tests that several sources are watched on the one engine thread, each dispatching only the
+   * files of its own directory that match its pattern
+   */
+  @Test
+  public void testSourcesOnOneThread() throws IOException, InterruptedException {
+    DirectoryCollector.Source lc = collector.addSource(lcDir.getPath(), "limacharlie");
+    DirectoryCollector.Source splunk =
+        collector.addSource(
+            splunkDir.getPath(), "splunk", "*.csv", false, false, null, new DedupCache(1000, 100));
+    sleep(sleepTime);
+
+    write(new File(lcDir, "detections.json"), "{}\n");
+    write(new File(splunkDir, "harmfulFiles.csv"), "header\n");
+    write(new File(splunkDir, "notes.txt"), "ignored\n");
+    sleep(sleepTime * 4);
+
+    Assert.assertEquals(1, lc.getHandlerCount());
+    Assert.assertEquals(1, splunk.getHandlerCount());
+    Assert.assertEquals(2, collector.getSources().size());
+    Assert.assertTrue(collector.getThread().isAlive());
+  }
+
+  /**
+   * Tests that a recursive source watches subdirectories, including ones created while running
+   * together with the files created in them before they were watched
+   */
+  @Test
+  public void testRecursiveSource() throws IOException, InterruptedException {
+    File existing = new File(lcDir, "tenant1");
+    Assert.assertTrue(existing.mkdir());
+    DirectoryCollector.Source lc =
+        collector.addSource(
+            lcDir.getPath(), "limacharlie", null, true, false, null, new DedupCache(1000, 100));
+    sleep(sleepTime);
+
+    write(new File(existing, "detections.json"), "{}\n");
+    sleep(sleepTime * 4);
+    Assert.assertEquals(1, lc.getHandlerCount());
+
+    File created = new File(lcDir, "tenant2");
+    File nested = new File(created, "nested");
+    Assert.assertTrue(nested.mkdirs());
+    write(new File(nested, "detections.json"), "{}\n");
+    sleep(sleepTime * 4);
+    Assert.assertEquals(2, lc.getHandlerCount());
+  }
+
+  /**
+   * Tests that a file renamed into place from a temporary name is handled without waiting for the
+   * quiet period, while a file written in place still waits for it
+   */
+  @Test
+  public void testRenamedFileHandledAtOnce() throws IOException, InterruptedException {
+    DirectoryCollector.Source lc = collector.addSource(lcDir.getPath(), "limacharlie");
+    sleep(sleepTime);
+
+    File temporary = new File(lcDir, "renamed.json.tmp");
+    write(temporary, "{}\n");
+    Assert.assertTrue(temporary.renameTo(new File(lcDir, "renamed.json")));
+    write(new File(lcDir, "written.json"), "{}\n");
+    sleep(sleepTime * 4);
+
+    Assert.assertEquals(2, lc.getHandlerCount());
+    Assert.assertEquals(1, lc.getHandlerRegistry().getCompletedCount("limacharlie"));
+  }
+
+  /**
+   * Tests that a shutdown signal only removes the source it was given in, and that the engine
+   * stops once its last source is removed
+   */
+  @Test
+  public void testShutdownSignalRemovesSource() throws IOException, InterruptedException {
+    collector.addSource(lcDir.getPath(), "limacharlie");
+    DirectoryCollector.Source splunk = collector.addSource(splunkDir.getPath(), "splunk");
+    sleep(sleepTime);
+
+    Assert.assertTrue(new File(lcDir, "SDN").createNewFile());
+    sleep(sleepTime * 2);
+    Assert.assertEquals(1, collector.getSources().size());
+    Assert.assertSame(splunk, collector.getSources().get(0));
+    Assert.assertTrue(collector.getThread().isAlive());
+
+    Assert.assertTrue(new File(splunkDir, "SDN").createNewFile());
+    collector.getThread().join(1000);
+    Assert.assertFalse(collector.getThread().isAlive());
+  }
+
+  /**
+   * Tests that stopRunning() stops the engine without waiting for another event
+   */
+  @Test
+  public void testStopRunningReturnsAtOnce() throws IOException, InterruptedException {
+    collector.addSource(lcDir.getPath(), "limacharlie");
+    sleep(sleepTime);
+
+    long start = System.currentTimeMillis();
+    collector.stopRunning();
+    collector.getThread().join(1000);
+    Assert.assertFalse(collector.getThread().isAlive());
+    Assert.assertTrue(System.currentTimeMillis() - start < 500);
+  }
+
+  /**
+   * Tests that adding a missing directory as source throws exception
+   */
+  @Test(expected = NotDirectoryException.class)
+  public void testInvalidDirException() throws IOException {
+    collector.addSource(new File(testDir, "missing").getPath(), "limacharlie");
+  }
+}
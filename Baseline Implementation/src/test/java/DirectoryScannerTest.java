@@ -0,0 +1,117 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for DirectoryScanner class. Sets up testing directory called
+ * "scanner_test_dir" in the directory the application is running from, which is deleted at the end
+ * of every test.
+ */
+public class DirectoryScannerTest {
+
+  private File testDir;
+  private DirectoryScanner scanner;
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/scanner_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+    scanner = new DirectoryScanner(testDir.toPath());
+  }
+
+  @After
+  public void cleanup() {
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private void append(File file, String text) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+    writer.append(text);
+    writer.close();
+  }
+
+  /**
+   * Tests that files present at the snapshot are not reported, and that a rescan reports exactly
+   * the new and changed files
+   */
+  @Test
+  public void testRescanReportsOnlyNewAndChangedFiles() throws IOException {
+    File unchanged = new File(testDir, "unchanged.json");
+    File changed = new File(testDir, "changed.json");
+    append(unchanged, "{}\n");
+    append(changed, "{}\n");
+    Assert.assertTrue(new File(testDir, "subdir").mkdir());
+    scanner.snapshot();
+
+    append(changed, "{\"more\": 1}\n");
+    File added = new File(testDir, "added.json");
+    append(added, "{}\n");
+
+    ArrayList<String> result = scanner.rescan();
+    Collections.sort(result);
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals("added.json", result.get(0));
+    Assert.assertEquals("changed.json", result.get(1));
+
+    // Nothing changed since the last rescan
+    Assert.assertTrue(scanner.rescan().isEmpty());
+    Assert.assertEquals(2, scanner.getRescanCount());
+    Assert.assertEquals(2, scanner.getRescannedFiles());
+  }
+
+  /**
+   * Tests that files updated from regular events are not reported again, and that forgotten files
+   * are
+   */
+  @Test
+  public void testUpdateAndForget() throws IOException {
+    scanner.snapshot();
+    File handled = new File(testDir, "handled.json");
+    File forgotten = new File(testDir, "forgotten.json");
+    append(handled, "{}\n");
+    append(forgotten, "{}\n");
+
+    scanner.update("handled.json");
+    scanner.update("forgotten.json");
+    scanner.forget("forgotten.json");
+
+    ArrayList<String> result = scanner.rescan();
+    Assert.assertEquals(1, result.size());
+    Assert.assertEquals("forgotten.json", result.get(0));
+  }
+
+  /**
+   * Tests that overflow and rescan duration counters are kept
+   */
+  @Test
+  public void testCounters() throws IOException {
+    for (int i = 0; i < 1000; i++) {
+      append(new File(testDir, "file" + i), "{}\n");
+    }
+    scanner.recordOverflow();
+    scanner.recordOverflow();
+    Assert.assertEquals(1000, scanner.rescan().size());
+
+    Assert.assertEquals(2, scanner.getOverflowCount());
+    Assert.assertEquals(1, scanner.getRescanCount());
+    Assert.assertTrue(scanner.getMaxRescanMillis() >= scanner.getLastRescanMillis());
+    Assert.assertEquals(scanner.getLastRescanMillis(), scanner.getTotalRescanMillis());
+  }
+}
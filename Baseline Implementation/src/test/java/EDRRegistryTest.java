@@ -0,0 +1,114 @@
+import static java.lang.Thread.sleep;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for EDRRegistry class. Sets up testing directory called "edr_registry_test_dir"
+ * in the directory the application is running from, which is deleted at the end of every test.
+ */
+public class EDRRegistryTest {
+
+  private File testDir;
+  private EDRRegistry registry;
+
+  @Before
+  public void setup() throws IOException {
+    testDir = new File("edr_registry_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+    registry =
+        new EDRRegistry(path -> new LimaCharlie(path, LimaCharlie.DEFAULT_SCRIPT_PATH));
+  }
+
+  @After
+  public void cleanup() {
+    registry.close();
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private File writeCredentials(String name, String oid, String apiKey) throws IOException {
+    File file = new File(testDir, name);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.append("{\"OID\": \"" + oid + "\", \"API_KEY\": \"" + apiKey + "\"}");
+    writer.close();
+    return file;
+  }
+
+  private LimaCharlie awaitClient(String tenant, String apiKey) throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      LimaCharlie client = (LimaCharlie) registry.get(tenant);
+      if (client.getAPI_KEY().equals(apiKey)) {
+        return client;
+      }
+      sleep(50);
+    }
+    return (LimaCharlie) registry.get(tenant);
+  }
+
+  /**
+   * Tests that every tenant gets one shared client, that other organisations get the client of
+   * the only tenant, and no client once there are several tenants
+   */
+  @Test
+  public void testTenants() throws IOException {
+    File first = writeCredentials("first.json", "oid-1", "key-1");
+    File second = writeCredentials("second.json", "oid-2", "key-2");
+    EDR client = registry.register("oid-1", first.getPath());
+    Assert.assertSame(client, registry.get("oid-3"));
+    Assert.assertSame(client, registry.get(null));
+
+    registry.register("oid-2", second.getPath());
+    Assert.assertSame(client, registry.get("oid-1"));
+    Assert.assertSame(client, registry.get("oid-1"));
+    Assert.assertEquals("key-2", ((LimaCharlie) registry.get("oid-2")).getAPI_KEY());
+    Assert.assertNull(registry.get("oid-3"));
+    Assert.assertNull(registry.get(null));
+  }
+
+  /**
+   * Tests that invalid credentials are rejected when registered
+   */
+  @Test
+  public void testInvalidCredentials() throws IOException {
+    File invalid = writeCredentials("invalid.json", "oid-1", "");
+    try {
+      registry.register("oid-1", invalid.getPath());
+      Assert.fail();
+    } catch (IOException e) {
+      // Expected
+    }
+    Assert.assertNull(registry.get("oid-1"));
+  }
+
+  /**
+   * Tests that changed credentials replace the client, and that invalid ones keep it
+   */
+  @Test
+  public void testRotation() throws IOException, InterruptedException {
+    File credentials = writeCredentials("credentials.json", "oid-1", "key-1");
+    EDR old = registry.register("oid-1", credentials.getPath());
+    Assert.assertFalse(registry.reload(credentials.getPath()));
+
+    writeCredentials("credentials.json", "oid-1", "key-2");
+    LimaCharlie rotated = awaitClient("oid-1", "key-2");
+    Assert.assertEquals("key-2", rotated.getAPI_KEY());
+    Assert.assertNotSame(old, rotated);
+
+    writeCredentials("credentials.json", "oid-1", "");
+    Assert.assertFalse(registry.reload(credentials.getPath()));
+    Assert.assertSame(rotated, registry.get("oid-1"));
+  }
+}
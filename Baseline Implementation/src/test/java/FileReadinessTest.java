@@ -0,0 +1,208 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for FileReadiness class. Sets up testing directory called
+ * "readiness_test_dir" in the directory the application is running from, which is deleted at the
+ * end of every test.
+ */
+public class FileReadinessTest {
+
+  private File testDir;
+  // Short delays and grace period so tests run quickly
+  private final FileReadiness readiness = new FileReadiness(5, 50, 100, 300, 2000);
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/readiness_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+  }
+
+  @After
+  public void cleanup() {
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private void append(File file, String text) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+    writer.append(text);
+    writer.close();
+  }
+
+  /**
+   * Tests that a complete, newline terminated file is ready once quiet for the quiet period rather
+   * than after a fixed delay
+   */
+  @Test
+  public void testCompleteFileReadyQuickly() throws IOException, InterruptedException {
+    File file = new File(testDir, "complete.json");
+    append(file, "{\"a\": 1}\n");
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    long waited = System.currentTimeMillis() - start;
+    Assert.assertTrue(waited >= 100);
+    Assert.assertTrue(waited < 300);
+  }
+
+  /**
+   * Tests that a writer pausing between two complete lines for less than the quiet period is not
+   * mistaken for the end of the file
+   */
+  @Test
+  public void testWriterPausingBetweenLines() throws IOException, InterruptedException {
+    final File file = new File(testDir, "pausing.json");
+    append(file, "{\"line\": 0}\n");
+
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 1; i < 6; i++) {
+                  Thread.sleep(40);
+                  append(file, "{\"line\": " + i + "}\n");
+                }
+              } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+              }
+            });
+    writer.start();
+
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    long sizeWhenReady = file.length();
+    writer.join();
+
+    Assert.assertEquals(file.length(), sizeWhenReady);
+  }
+
+  /**
+   * Tests that a file whose last line is not terminated is only ready after the grace period
+   */
+  @Test
+  public void testPartialLineWaitsForGrace() throws IOException, InterruptedException {
+    File file = new File(testDir, "partial.json");
+    append(file, "{\"a\": 1}\n{\"b\":");
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+  }
+
+  /**
+   * Tests that a file that is still growing is not ready until the writer stops
+   */
+  @Test
+  public void testGrowingFileWaitsForWriter() throws IOException, InterruptedException {
+    final File file = new File(testDir, "growing.json");
+    append(file, "{\"line\": ");
+
+    // Writes one line in small pieces, only terminating it at the end
+    Thread writer =
+        new Thread(
+            () -> {
+              try {
+                for (int i = 0; i < 10; i++) {
+                  Thread.sleep(20);
+                  append(file, String.valueOf(i));
+                }
+                append(file, "}\n");
+              } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
+              }
+            });
+    writer.start();
+
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    long sizeWhenReady = file.length();
+    writer.join();
+
+    Assert.assertEquals(file.length(), sizeWhenReady);
+  }
+
+  /**
+   * Tests that a ".done" marker makes a file ready immediately, even with an unterminated last
+   * line, and that the marker is removed
+   */
+  @Test
+  public void testDoneMarker() throws IOException, InterruptedException {
+    File file = new File(testDir, "marked.json");
+    File marker = new File(testDir, "marked.json" + FileReadiness.DONE_SUFFIX);
+    append(file, "{\"a\":");
+    Assert.assertTrue(marker.createNewFile());
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    Assert.assertTrue(System.currentTimeMillis() - start < 200);
+    Assert.assertFalse(marker.exists());
+  }
+
+  /**
+   * Tests that a file its writer renamed into place is ready immediately, once
+   */
+  @Test
+  public void testRenamed() throws IOException, InterruptedException {
+    File file = new File(testDir, "renamed.json");
+    append(file, "{\"a\": 1}\n");
+    readiness.markRenamed(file.getPath());
+
+    long start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    Assert.assertTrue(System.currentTimeMillis() - start < 100);
+
+    // Written again in place, it waits for the quiet period
+    start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+
+    readiness.markRenamed(file.getPath());
+    readiness.forget(file.getPath());
+    start = System.currentTimeMillis();
+    Assert.assertTrue(readiness.awaitReady(file.getPath()));
+    Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+  }
+
+  /**
+   * Tests that missing files and files with temporary names are never ready
+   */
+  @Test
+  public void testMissingAndTemporaryFiles() throws IOException, InterruptedException {
+    Assert.assertFalse(readiness.awaitReady(testDir.getPath() + "/missing.json"));
+
+    File temporary = new File(testDir, "upload.json.part");
+    append(temporary, "{\"a\": 1}\n");
+    Assert.assertFalse(readiness.awaitReady(temporary.getPath()));
+
+    Assert.assertTrue(FileReadiness.isTemporary("harmfulFiles.csv.tmp"));
+    Assert.assertFalse(FileReadiness.isTemporary("harmfulFiles.csv"));
+    Assert.assertEquals(
+        "harmfulFiles.csv", FileReadiness.withoutTemporarySuffix("harmfulFiles.csv.part"));
+    Assert.assertNull(FileReadiness.withoutTemporarySuffix("harmfulFiles.csv"));
+    Assert.assertTrue(FileReadiness.isMarker("harmfulFiles.csv.done"));
+  }
+
+  /**
+   * Tests that a file that stays empty is given up on once the timeout expires
+   */
+  @Test
+  public void testEmptyFileTimesOut() throws IOException, InterruptedException {
+    File file = new File(testDir, "empty.json");
+    Assert.assertTrue(file.createNewFile());
+    Assert.assertFalse(readiness.awaitReady(file.getPath()));
+  }
+}
@@ -0,0 +1,153 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for FileTailer class. Sets up testing directory called "tailer_test_dir" in
+ * the directory the application is running from, which is deleted at the end of every test.
+ */
+public class FileTailerTest {
+
+  private File testDir;
+  private File logFile;
+  private FileTailer tailer;
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testDir = new File(curPath.toAbsolutePath().toString() + "/tailer_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+    logFile = new File(testDir, "detections.json");
+    tailer = new FileTailer();
+  }
+
+  @After
+  public void cleanup() {
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private void write(File file, String text, boolean append) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file, append));
+    writer.append(text);
+    writer.close();
+  }
+
+  /**
+   * Reads the segment handed out by the tailer and deletes it
+   *
+   * @return contents of the segment, or null if the tailer had nothing new
+   */
+  private String readSegment() throws IOException {
+    String segmentPath = tailer.readAppended(logFile.getPath());
+    if (segmentPath == null) {
+      return null;
+    }
+    Path segment = Paths.get(segmentPath);
+    String content = new String(Files.readAllBytes(segment), StandardCharsets.UTF_8);
+    Files.delete(segment);
+    return content;
+  }
+
+  /**
+   * Tests that every call only hands out the lines appended since the previous call
+   */
+  @Test
+  public void testOnlyAppendedLines() throws IOException {
+    write(logFile, "line 1\nline 2\n", false);
+    Assert.assertEquals("line 1\nline 2\n", readSegment());
+    Assert.assertEquals(14, tailer.getOffset(logFile.getPath()));
+
+    // Nothing appended
+    Assert.assertNull(readSegment());
+
+    write(logFile, "line 3\n", true);
+    Assert.assertEquals("line 3\n", readSegment());
+  }
+
+  /**
+   * Tests that an unterminated last line is held back until it is completed
+   */
+  @Test
+  public void testPartialLineHeldBack() throws IOException {
+    write(logFile, "line 1\nline", false);
+    Assert.assertEquals("line 1\n", readSegment());
+    Assert.assertNull(readSegment());
+
+    write(logFile, " 2\n", true);
+    Assert.assertEquals("line 2\n", readSegment());
+  }
+
+  /**
+   * Tests that a file rewritten with less content is read again from its start
+   */
+  @Test
+  public void testTruncation() throws IOException {
+    write(logFile, "a long first line\n", false);
+    Assert.assertEquals("a long first line\n", readSegment());
+
+    write(logFile, "short\n", false);
+    Assert.assertEquals("short\n", readSegment());
+  }
+
+  /**
+   * Tests that a file replaced by a new file under the same name is read from its start, even when
+   * the new file is larger than the old offset
+   */
+  @Test
+  public void testRotation() throws IOException {
+    write(logFile, "old 1\n", false);
+    Assert.assertEquals("old 1\n", readSegment());
+
+    File rotated = new File(testDir, "detections.json.1");
+    Assert.assertTrue(logFile.renameTo(rotated));
+    write(logFile, "new 1\nnew 2\n", false);
+
+    Assert.assertEquals("new 1\nnew 2\n", readSegment());
+  }
+
+  /**
+   * Tests that a forgotten file is read from its start again, and keeps its lock
+   */
+  @Test
+  public void testForget() throws IOException {
+    write(logFile, "line 1\n", false);
+    Assert.assertEquals("line 1\n", readSegment());
+
+    Object lock = tailer.lockFor(logFile.getPath());
+    tailer.forget(logFile.getPath());
+    Assert.assertSame(lock, tailer.lockFor(logFile.getPath()));
+    Assert.assertEquals(0, tailer.getOffset(logFile.getPath()));
+    Assert.assertEquals("line 1\n", readSegment());
+  }
+
+  /**
+   * Tests that lines longer than the backwards scan chunk are found and handed out whole
+   */
+  @Test
+  public void testLongLines() throws IOException {
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longLine.append('x');
+    }
+    longLine.append('\n');
+    write(logFile, longLine.toString() + "partial", false);
+
+    Assert.assertEquals(longLine.toString(), readSegment());
+  }
+}
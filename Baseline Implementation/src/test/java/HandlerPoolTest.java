@@ -0,0 +1,360 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit test class for HandlerPool class
+ */
+public class HandlerPoolTest {
+
+  private HandlerPool pool;
+  // Released at the end of each test so blocked tasks can finish
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  // Task that blocks until the test releases it
+  private Runnable blockingTask() {
+    return () -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+
+  // Task that blocks until the test releases it and can be spilled under its name
+  private class NamedTask implements Runnable, HandlerPool.Spillable {
+    private final String taskName;
+    private final List<String> ran;
+
+    NamedTask(String taskName, List<String> ran) {
+      this.taskName = taskName;
+      this.ran = ran;
+    }
+
+    @Override
+    public void run() {
+      blockingTask().run();
+      ran.add(taskName);
+    }
+
+    @Override
+    public String toSpillRecord() {
+      return taskName;
+    }
+  }
+
+  @After
+  public void cleanup() throws InterruptedException {
+    release.countDown();
+    if (pool != null) {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Tests that the constructor rejects sizes that cannot form a valid pool
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSizes() {
+    new HandlerPool("test", 2, 1, 10, HandlerPool.RejectionPolicy.ABORT);
+  }
+
+  /**
+   * Tests that submitted tasks run and are counted as completed for their stage
+   */
+  @Test
+  public void testTasksRunAndComplete() throws InterruptedException {
+    pool = new HandlerPool("test", 2, 2, 10, HandlerPool.RejectionPolicy.ABORT);
+    CountDownLatch done = new CountDownLatch(5);
+    for (int i = 0; i < 5; i++) {
+      pool.submit("limacharlie", done::countDown);
+    }
+    Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+
+    pool.shutdown();
+    Assert.assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+    Assert.assertEquals(5, pool.getCompletedCount("limacharlie"));
+    Assert.assertEquals(0, pool.getCompletedCount("splunk"));
+  }
+
+  /**
+   * Tests that per-stage gauges report running and queued tasks separately for each stage, and
+   * that the number of threads never exceeds the maximum size of the pool
+   */
+  @Test
+  public void testStageGauges() throws InterruptedException {
+    pool = new HandlerPool("test", 2, 2, 10, HandlerPool.RejectionPolicy.ABORT);
+    for (int i = 0; i < 3; i++) {
+      pool.submit("limacharlie", blockingTask());
+    }
+    pool.submit("splunk", blockingTask());
+
+    // Give workers time to pick up tasks
+    Thread.sleep(100);
+
+    Assert.assertEquals(2, pool.getActiveCount());
+    Assert.assertEquals(2, pool.getPoolSize());
+    Assert.assertEquals(2, pool.getQueueDepth());
+    Assert.assertEquals(2, pool.getActiveCount("limacharlie"));
+    Assert.assertEquals(1, pool.getQueueDepth("limacharlie"));
+    Assert.assertEquals(0, pool.getActiveCount("splunk"));
+    Assert.assertEquals(1, pool.getQueueDepth("splunk"));
+  }
+
+  /**
+   * Tests that a saturated pool with the ABORT policy refuses further tasks and counts them
+   */
+  @Test
+  public void testAbortWhenSaturated() throws InterruptedException {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.ABORT);
+    pool.submit("splunk", blockingTask());
+    pool.submit("splunk", blockingTask());
+
+    // Give the worker time to pick up the first task
+    Thread.sleep(100);
+
+    boolean exceptionThrown = false;
+    try {
+      pool.submit("splunk", blockingTask());
+    } catch (RejectedExecutionException expected) {
+      exceptionThrown = true;
+    }
+
+    Assert.assertTrue(exceptionThrown);
+    Assert.assertEquals(1, pool.getRejectedCount());
+    Assert.assertEquals(1, pool.getQueueDepth("splunk"));
+  }
+
+  /**
+   * Tests that a saturated pool with the CALLER_RUNS policy runs the task on the submitting thread
+   */
+  @Test
+  public void testCallerRunsWhenSaturated() {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.CALLER_RUNS);
+    pool.submit("splunk", blockingTask());
+    pool.submit("splunk", blockingTask());
+
+    final Thread caller = Thread.currentThread();
+    final boolean[] ranOnCaller = {false};
+    pool.submit("splunk", () -> ranOnCaller[0] = Thread.currentThread() == caller);
+
+    Assert.assertTrue(ranOnCaller[0]);
+    Assert.assertEquals(1, pool.getRejectedCount());
+  }
+
+  /**
+   * Tests that a saturated pool with the DISCARD_OLDEST policy drops the oldest queued task, counts
+   * only that task as dropped, and runs the new one
+   */
+  @Test
+  public void testDiscardOldestWhenSaturated() throws InterruptedException {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.DISCARD_OLDEST);
+    List<String> ran = Collections.synchronizedList(new ArrayList<>());
+    pool.submit("splunk", new NamedTask("first", ran));
+    // Give the worker time to pick up the first task
+    Thread.sleep(100);
+    pool.submit("splunk", new NamedTask("second", ran));
+    pool.submit("splunk", new NamedTask("third", ran));
+
+    Assert.assertEquals(1, pool.getRejectedCount());
+    Assert.assertEquals(1, pool.getDroppedCount("splunk"));
+    Assert.assertEquals(1, pool.getQueueDepth("splunk"));
+    release.countDown();
+    pool.shutdown();
+    Assert.assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("first", "third"), ran);
+    Assert.assertEquals(2, pool.getCompletedCount("splunk"));
+  }
+
+  /**
+   * Tests that a saturated pool with the BLOCK policy makes the submitter wait for queue space and
+   * records the time it waited
+   */
+  @Test
+  public void testBlockWhenSaturated() throws InterruptedException {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.BLOCK);
+    pool.submit("splunk", blockingTask());
+    pool.submit("splunk", blockingTask());
+
+    new Thread(
+            () -> {
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              release.countDown();
+            })
+        .start();
+    pool.submit("splunk", blockingTask());
+
+    Assert.assertEquals(0, pool.getRejectedCount());
+    Assert.assertEquals(1, pool.getWaitCount());
+    Assert.assertTrue(pool.getMaxWaitMillis() >= 50);
+    Assert.assertEquals(pool.getMaxWaitMillis(), pool.getTotalWaitMillis());
+  }
+
+  /**
+   * Tests that a task a BLOCK submitter queues once the pool has been shut down is taken back and
+   * refused rather than left in a queue no worker will drain
+   */
+  @Test
+  public void testBlockRefusedAfterShutdown() throws InterruptedException {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.BLOCK);
+    CountDownLatch second = new CountDownLatch(1);
+    pool.submit("splunk", blockingTask());
+    // Give the worker time to pick up the first task
+    Thread.sleep(100);
+    pool.submit(
+        "splunk",
+        () -> {
+          try {
+            second.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    final boolean[] refused = {false};
+    final boolean[] ran = {false};
+    Thread submitter =
+        new Thread(
+            () -> {
+              try {
+                pool.submit("splunk", () -> ran[0] = true);
+              } catch (RejectedExecutionException expected) {
+                refused[0] = true;
+              }
+            });
+    submitter.start();
+    Thread.sleep(100);
+    pool.shutdown();
+    // The worker moves on to the second task, which keeps it busy while the submitter queues
+    release.countDown();
+    submitter.join(1000);
+    second.countDown();
+
+    Assert.assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+    Assert.assertTrue(refused[0]);
+    Assert.assertFalse(ran[0]);
+    Assert.assertEquals(1, pool.getRejectedCount());
+    Assert.assertEquals(0, pool.getQueueDepth("splunk"));
+  }
+
+  /**
+   * Tests that a saturated pool with the SHED policy drops tasks of low priority stages only, and
+   * counts the drops per stage
+   */
+  @Test
+  public void testShedLowPriorityWhenSaturated() {
+    pool = new HandlerPool("test", 1, 1, 1, HandlerPool.RejectionPolicy.SHED);
+    pool.setLowPriority("limacharlie");
+    pool.submit("splunk", blockingTask());
+    pool.submit("splunk", blockingTask());
+
+    pool.submit("limacharlie", blockingTask());
+
+    Assert.assertEquals(1, pool.getDroppedCount("limacharlie"));
+    Assert.assertEquals(0, pool.getQueueDepth("limacharlie"));
+    Assert.assertEquals(0, pool.getDroppedCount("splunk"));
+    Assert.assertEquals(Long.valueOf(1), pool.getMetrics().get("limacharlie.dropped"));
+    Assert.assertEquals(Long.valueOf(1), pool.getMetrics().get("rejected"));
+  }
+
+  /**
+   * Tests that a saturated pool with the SPILL policy writes tasks to disk and runs them, in order,
+   * once the queue has drained
+   */
+  @Test
+  public void testSpillWhenSaturated() throws InterruptedException {
+    File spillDir = new File("handler_pool_spill_dir");
+    spillDir.mkdirs();
+    pool = new HandlerPool("test", 1, 1, 2, HandlerPool.RejectionPolicy.SPILL, 2, 1, spillDir);
+    final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    pool.addSpillFactory("splunk", record -> new NamedTask(record, ran));
+    // Second pool of the same name spilling to the same directory, as another process would
+    HandlerPool other =
+        new HandlerPool("test", 1, 1, 2, HandlerPool.RejectionPolicy.SPILL, 2, 1, spillDir);
+    final List<String> otherRan = Collections.synchronizedList(new ArrayList<String>());
+    other.addSpillFactory("splunk", record -> new NamedTask(record, otherRan));
+    try {
+      for (int i = 0; i < 6; i++) {
+        pool.submit("splunk", new NamedTask("task" + i, ran));
+        other.submit("splunk", new NamedTask("other" + i, otherRan));
+      }
+      // One running, two queued, the rest spilled
+      Assert.assertEquals(3, pool.getSpilledCount("splunk"));
+      Assert.assertEquals(5, pool.getBacklog());
+      Assert.assertTrue(pool.isPaused());
+      Assert.assertEquals(2, spillDir.list().length);
+
+      release.countDown();
+      Assert.assertTrue(pool.awaitCapacity(1, TimeUnit.SECONDS));
+      Assert.assertTrue(other.awaitCapacity(1, TimeUnit.SECONDS));
+      pool.shutdown();
+      other.shutdown();
+      Assert.assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+      Assert.assertTrue(other.awaitTermination(1, TimeUnit.SECONDS));
+
+      Assert.assertEquals(0, pool.getSpilledCount("splunk"));
+      Assert.assertEquals(0, pool.getRejectedCount());
+      Assert.assertEquals(6, ran.size());
+      Assert.assertEquals(6, otherRan.size());
+      for (int i = 0; i < 6; i++) {
+        Assert.assertEquals("task" + i, ran.get(i));
+        Assert.assertEquals("other" + i, otherRan.get(i));
+      }
+    } finally {
+      other.shutdown();
+      File[] spillFiles = spillDir.listFiles();
+      if (spillFiles != null) {
+        for (File spillFile : spillFiles) {
+          spillFile.delete();
+        }
+      }
+      spillDir.delete();
+    }
+  }
+
+  /**
+   * Tests that the pool is paused once its backlog reaches the high watermark, and resumes once it
+   * has drained to the low watermark
+   */
+  @Test
+  public void testWatermarksPauseAndResume() throws InterruptedException {
+    pool = new HandlerPool("test", 1, 1, 4, HandlerPool.RejectionPolicy.ABORT, 2, 1);
+    pool.submit("splunk", blockingTask());
+    // Give the worker time to pick up the first task
+    Thread.sleep(100);
+    pool.submit("splunk", blockingTask());
+    Assert.assertFalse(pool.isPaused());
+    Assert.assertTrue(pool.awaitCapacity(10, TimeUnit.MILLISECONDS));
+
+    pool.submit("splunk", blockingTask());
+    Assert.assertTrue(pool.isPaused());
+    Assert.assertFalse(pool.awaitCapacity(50, TimeUnit.MILLISECONDS));
+
+    release.countDown();
+    Assert.assertTrue(pool.awaitCapacity(1, TimeUnit.SECONDS));
+    Assert.assertFalse(pool.isPaused());
+    Assert.assertEquals(1, pool.getPauseCount());
+  }
+
+  /**
+   * Tests that the constructor rejects watermarks that are not ordered
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidWatermarks() {
+    new HandlerPool("test", 1, 1, 10, HandlerPool.RejectionPolicy.BLOCK, 5, 5);
+  }
+}
@@ -0,0 +1,66 @@
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit test class for HandlerRegistry class
+ */
+public class HandlerRegistryTest {
+
+  private StaticInterpreter staticInterpreter = new StaticInterpreter();
+
+  private OutputHandler newHandler(HandlerRegistry registry, String toolFrom) {
+    OutputHandler handler =
+        new OutputHandler(
+            "out.json", toolFrom, staticInterpreter, new HandlerContext(null, null, registry, null));
+    registry.register(handler, toolFrom);
+    return handler;
+  }
+
+  /**
+   * Tests that finished and discarded handlers are no longer in flight and are counted per tool
+   */
+  @Test
+  public void testFinishedHandlersAreEvicted() {
+    HandlerRegistry registry = new HandlerRegistry();
+    OutputHandler done = newHandler(registry, "limacharlie");
+    OutputHandler failed = newHandler(registry, "limacharlie");
+    OutputHandler dropped = newHandler(registry, "splunk");
+    OutputHandler running = newHandler(registry, "splunk");
+    Assert.assertEquals(4, registry.getInFlightCount());
+
+    done.finished(TimeUnit.MILLISECONDS.toNanos(5), false);
+    failed.finished(TimeUnit.MILLISECONDS.toNanos(7), true);
+    dropped.discarded();
+    // Reported twice, counted once
+    dropped.discarded();
+
+    Assert.assertEquals(1, registry.getInFlightCount());
+    Assert.assertSame(running, registry.getInFlight().get(0));
+    Assert.assertEquals(2, registry.getCompletedCount("limacharlie"));
+    Assert.assertEquals(1, registry.getFailureCount("limacharlie"));
+    Assert.assertEquals(0, registry.getCompletedCount("splunk"));
+    Assert.assertEquals(1, registry.getDiscardedCount("splunk"));
+  }
+
+  /**
+   * Tests that duration percentiles are read from the most recent handlers of a tool
+   */
+  @Test
+  public void testDurationPercentiles() {
+    HandlerRegistry registry = new HandlerRegistry();
+    Assert.assertEquals(0, registry.getDurationMillis("splunk", 50));
+    for (int i = 1; i <= 100; i++) {
+      newHandler(registry, "splunk").finished(TimeUnit.MILLISECONDS.toNanos(i), false);
+    }
+
+    Assert.assertEquals(50, registry.getDurationMillis("splunk", 50));
+    Assert.assertEquals(99, registry.getDurationMillis("splunk", 99));
+
+    HashMap<String, Long> metrics = registry.getMetrics();
+    Assert.assertEquals(Long.valueOf(0), metrics.get("inflight"));
+    Assert.assertEquals(Long.valueOf(100), metrics.get("splunk.completed"));
+    Assert.assertEquals(Long.valueOf(99), metrics.get("splunk.p99.millis"));
+  }
+}
@@ -0,0 +1,278 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for LimaCharlieBridge class. Runs the workers against the fake LimaCharlie
+ * module in src/test/python, which logs to a file called "limacharlie_fake.log" in the directory
+ * the application is running from, deleted at the end of every test.
+ */
+public class LimaCharlieBridgeTest {
+
+  private static final String SCRIPT_PATH = "src/main/python/LimaCharlieConstructor.py";
+  private static final List<String> KILLED = Collections.singletonList("Successfully killed");
+
+  private File log;
+  private LimaCharlieBridge bridge;
+
+  @Before
+  public void setup() {
+    log = new File("limacharlie_fake.log");
+    log.delete();
+    bridge = newBridge(2, 5000);
+  }
+
+  @After
+  public void cleanup() {
+    bridge.close();
+    log.delete();
+  }
+
+  private LimaCharlieBridge newBridge(int size, long timeout) {
+    HashMap<String, String> environment = new HashMap<>();
+    environment.put("PYTHONPATH", new File("src/test/python").getAbsolutePath());
+    environment.put("LIMACHARLIE_FAKE_LOG", log.getAbsolutePath());
+    return new LimaCharlieBridge("python", SCRIPT_PATH, "oid", "key", size, timeout, environment);
+  }
+
+  private List<String> logLines(String prefix) throws IOException {
+    ArrayList<String> lines = new ArrayList<>();
+    for (String line : Files.readAllLines(log.toPath(), StandardCharsets.UTF_8)) {
+      if (line.startsWith(prefix)) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private ArrayList<String> kill(String sensorId, String pid) throws IOException {
+    HashMap<String, String> args = new HashMap<>();
+    args.put("pid", pid);
+    return bridge.execute(sensorId, "os_kill_process", args);
+  }
+
+  /**
+   * Tests that commands are answered with what the script prints
+   */
+  @Test
+  public void testCommands() throws IOException {
+    Assert.assertEquals(KILLED, kill("online-sensor", "42"));
+    Assert.assertEquals(
+        Collections.singletonList("sensor is offline"), kill("offline-sensor", "42"));
+
+    HashMap<String, String> args = new HashMap<>();
+    args.put("file_path", "C:\\Users\\a b\\tack.rtf");
+    Assert.assertEquals(
+        Collections.singletonList("Successfully deleted"),
+        bridge.execute("online-sensor", "file_del", args));
+    Assert.assertEquals(
+        Collections.singletonList("task online-sensor file_del \"C:\\Users\\a b\\tack.rtf\""),
+        logLines("task online-sensor file_del"));
+  }
+
+  /**
+   * Tests that many commands from many threads share the workers, each logged in once
+   */
+  @Test
+  public void testWorkersLogInOnce() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ArrayList<Future<ArrayList<String>>> results = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        final String pid = Integer.toString(i);
+        results.add(
+            executor.submit((Callable<ArrayList<String>>) () -> kill("online-sensor", pid)));
+      }
+      for (Future<ArrayList<String>> result : results) {
+        Assert.assertEquals(KILLED, result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Assert.assertEquals(40, logLines("task").size());
+    Assert.assertTrue(logLines("login").size() <= 2);
+    Assert.assertEquals(logLines("login").size(), bridge.getStartedCount());
+    Assert.assertEquals(bridge.getWorkerCount(), bridge.healthCheck());
+  }
+
+  /**
+   * Tests that the sensors are listed once for many commands, that the online state of a sensor
+   * is checked once, and that sensors are found by hostname and IP address
+   */
+  @Test
+  public void testSensorIndex() throws IOException {
+    bridge.close();
+    bridge = newBridge(1, 5000);
+
+    for (int i = 0; i < 5; i++) {
+      Assert.assertEquals(KILLED, kill("online-sensor", Integer.toString(i)));
+      Assert.assertEquals(
+          Collections.singletonList("sensor is offline"), kill("offline-sensor", "42"));
+    }
+    Assert.assertEquals(
+        Collections.singletonList("sensor is offline"), kill("unknown-sensor", "42"));
+    Assert.assertEquals(1, logLines("list").size());
+    Assert.assertEquals(1, logLines("online online-sensor").size());
+    Assert.assertEquals(1, logLines("online offline-sensor").size());
+
+    HashMap<String, String> args = new HashMap<>();
+    args.put("name", "Online-Host");
+    Assert.assertEquals(
+        Collections.singletonList("online-sensor"), bridge.execute(null, "find_sensors", args));
+    args.put("name", "203.0.113.2");
+    Assert.assertEquals(
+        Collections.singletonList("offline-sensor"), bridge.execute(null, "find_sensors", args));
+    args.put("name", "unknown-host");
+    Assert.assertEquals(
+        Collections.emptyList(), bridge.execute(null, "find_sensors", args));
+  }
+
+  /**
+   * Tests that a batch of commands is answered with the output of every command, in order
+   */
+  @Test
+  public void testBatch() throws IOException {
+    ArrayList<LimaCharlieBridge.Task> tasks = new ArrayList<>();
+    for (String sensorId : new String[] {"online-sensor", "offline-sensor", "online-sensor"}) {
+      HashMap<String, String> args = new HashMap<>();
+      args.put("pid", "42");
+      tasks.add(new LimaCharlieBridge.Task(sensorId, "os_kill_process", args));
+    }
+    tasks.add(new LimaCharlieBridge.Task("online-sensor", "os_kill_process", new HashMap<>()));
+
+    List<ArrayList<String>> results = bridge.executeAll(tasks);
+    Assert.assertEquals(4, results.size());
+    Assert.assertEquals(KILLED, results.get(0));
+    Assert.assertEquals(Collections.singletonList("sensor is offline"), results.get(1));
+    Assert.assertEquals(KILLED, results.get(2));
+    Assert.assertEquals(
+        Collections.singletonList("os_kill_process command requires pid"), results.get(3));
+    Assert.assertEquals(2, logLines("task online-sensor").size());
+    Assert.assertEquals(1, bridge.getStartedCount());
+  }
+
+  /**
+   * Tests that a batch stops starting commands once its timeout has passed, failing the commands
+   * left instead of the whole batch
+   */
+  @Test
+  public void testBatchDeadline() throws IOException {
+    bridge.close();
+    bridge = newBridge(1, 1000);
+
+    ArrayList<LimaCharlieBridge.Task> tasks = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      HashMap<String, String> args = new HashMap<>();
+      args.put("pid", Integer.toString(i));
+      tasks.add(new LimaCharlieBridge.Task("slow-sensor", "os_kill_process", args));
+    }
+    List<ArrayList<String>> results = bridge.executeAll(tasks);
+    Assert.assertEquals(8, results.size());
+    Assert.assertEquals(KILLED, results.get(0));
+    Assert.assertNull(results.get(7));
+    Assert.assertTrue(logLines("task slow-sensor").size() < 8);
+    Assert.assertEquals(KILLED, kill("online-sensor", "1"));
+    Assert.assertEquals(1, bridge.getStartedCount());
+  }
+
+  private CompletableFuture<ArrayList<String>> submitKill(String sensorId, long timeout) {
+    HashMap<String, String> args = new HashMap<>();
+    args.put("pid", "42");
+    return bridge.submit(sensorId, "os_kill_process", args, timeout);
+  }
+
+  /**
+   * Tests that many commands submitted from one thread are all answered
+   */
+  @Test
+  public void testSubmit() throws Exception {
+    ArrayList<CompletableFuture<ArrayList<String>>> results = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      results.add(submitKill(i % 4 == 0 ? "offline-sensor" : "online-sensor", 5000));
+    }
+    for (int i = 0; i < 40; i++) {
+      Assert.assertEquals(
+          i % 4 == 0 ? Collections.singletonList("sensor is offline") : KILLED,
+          results.get(i).get(10, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(30, logLines("task").size());
+    Assert.assertTrue(bridge.getStartedCount() <= 2);
+  }
+
+  /**
+   * Tests that a command fails at its deadline, and that a cancelled command is stopped, killing
+   * its worker
+   */
+  @Test
+  public void testDeadlineAndCancel() throws Exception {
+    bridge.close();
+    bridge = newBridge(1, 5000);
+
+    CompletableFuture<ArrayList<String>> hung = submitKill("hang-sensor", 500);
+    try {
+      hung.get(10, TimeUnit.SECONDS);
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    Assert.assertEquals(KILLED, submitKill("online-sensor", 5000).get(10, TimeUnit.SECONDS));
+
+    CompletableFuture<ArrayList<String>> cancelled = submitKill("hang-sensor", 60000);
+    CompletableFuture<ArrayList<String>> queued = submitKill("online-sensor", 60000);
+    for (int i = 0; i < 100 && logLines("task hang-sensor").size() < 2; i++) {
+      Thread.sleep(50);
+    }
+    Assert.assertEquals(2, logLines("task hang-sensor").size());
+    Assert.assertTrue(cancelled.cancel(true));
+    Assert.assertEquals(KILLED, queued.get(10, TimeUnit.SECONDS));
+    Assert.assertEquals(3, bridge.getStartedCount());
+    Assert.assertEquals(1, bridge.getWorkerCount());
+  }
+
+  /**
+   * Tests that a worker that exits or hangs during a command is replaced for the next command
+   */
+  @Test
+  public void testRespawn() throws IOException {
+    bridge.close();
+    bridge = newBridge(1, 1000);
+
+    Assert.assertEquals(KILLED, kill("online-sensor", "1"));
+    try {
+      kill("crash-sensor", "1");
+      Assert.fail();
+    } catch (IOException e) {
+      // Expected
+    }
+    Assert.assertEquals(KILLED, kill("online-sensor", "2"));
+
+    try {
+      kill("hang-sensor", "1");
+      Assert.fail();
+    } catch (IOException e) {
+      // Expected
+    }
+    Assert.assertEquals(KILLED, kill("online-sensor", "3"));
+
+    Assert.assertEquals(3, bridge.getStartedCount());
+    Assert.assertEquals(1, bridge.getWorkerCount());
+  }
+}
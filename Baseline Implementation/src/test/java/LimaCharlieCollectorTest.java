@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -36,9 +37,28 @@ public class LimaCharlieCollectorTest {
     public ArrayList<HashMap<String, String>> interpret(String path, String toolFrom) {
       return new ArrayList<>();
     }
+
+    @Override
+    public ActionIterator iterate(String filePath, String toolFrom) {
+      return ActionIterator.of(new ArrayList<Action>());
+    }
   }
 
 
+  // Stub StaticInterpreter class
+  // Fails to read the first file handed to it, and gives no action for later ones
+  private class FailingOnceStub extends StaticInterpreter {
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public ActionIterator iterate(String filePath, String toolFrom) throws IOException {
+      if (calls.incrementAndGet() == 1) {
+        throw new IOException("Interpreter failure");
+      }
+      return ActionIterator.of(new ArrayList<Action>());
+    }
+  }
+
   /**
    * Recursively deletes directory and contents
    *
@@ -222,8 +242,8 @@ public class LimaCharlieCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Generate FILE_CREATE event
       if (!testFile.createNewFile()) {
@@ -234,8 +254,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -252,8 +272,8 @@ public class LimaCharlieCollectorTest {
 
   /**
    * Tests that LimaCharlieCollector creates and stores an OutputHandler thread on event modification
-   * event. Tests single modification on single file. Only tests that list of OutputHandlers is size
-   * 0 before any modification and size 1 after a single modification event.
+   * event. Tests single modification on single file. Only tests that the number of OutputHandlers
+   * created is 0 before any modification and 1 after a single modification event.
    */
   @Test
   public void testHandlerCreationOnSingleModifySingleFile() {
@@ -268,8 +288,8 @@ public class LimaCharlieCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile()) {
         Assert.fail();
@@ -279,8 +299,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -289,8 +309,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -321,8 +341,8 @@ public class LimaCharlieCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile()) {
         Assert.fail();
@@ -332,8 +352,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -342,8 +362,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Reset cache of file events to ensure second event is not considered a duplicate
       limaCollector.resetCache();
@@ -355,8 +375,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -388,8 +408,8 @@ public class LimaCharlieCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile() || !testFile2.createNewFile()) {
         Assert.fail();
@@ -399,8 +419,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new events
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event on first file
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -409,8 +429,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Create second 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -419,8 +439,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -455,8 +475,8 @@ public class LimaCharlieCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile() || !testFile2.createNewFile()) {
         Assert.fail();
@@ -466,8 +486,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new events
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event on first file
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -476,8 +496,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Create 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -486,8 +506,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
       // Reset cache of files to ensure second event is not considered a duplicate
       limaCollector.resetCache();
@@ -499,8 +519,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(3, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(3, handlerCount);
 
       // Create second 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -509,8 +529,8 @@ public class LimaCharlieCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = limaCollector.getHandlers();
-      Assert.assertEquals(4, handlers.size());
+      handlerCount = limaCollector.getHandlerCount();
+      Assert.assertEquals(4, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -526,4 +546,112 @@ public class LimaCharlieCollectorTest {
 
     Assert.assertFalse(exceptionThrown);
   }
+
+  /**
+   * Tests that with a CheckpointStore, files present before the collector starts are handled on
+   * start, and that after a restart only files that are new or changed since are handled again.
+   */
+  @Test
+  public void testBacklogHandledOnceAcrossRestart() throws IOException, InterruptedException {
+    File handledFile = new File(absPath + "/handled.json");
+    File laterFile = new File(absPath + "/later.json");
+    String journalPath = CheckpointStore.defaultPath(absPath);
+    HandlerPool pool = new HandlerPool("test", 1, 1, 10, HandlerPool.RejectionPolicy.ABORT);
+
+    try {
+      BufferedWriter writer = new BufferedWriter(new FileWriter(handledFile));
+      writer.append("{}\n");
+      writer.close();
+
+      // First run: the file written while no collector was running is handled
+      CheckpointStore store = new CheckpointStore(journalPath);
+      LimaCharlieCollector limaCollector =
+          new LimaCharlieCollector(absPath, intStub, pool, false, store);
+      sleep(sleepTime);
+      Assert.assertEquals(1, limaCollector.getHandlerCount());
+
+      // Stop and wait for the handler to record its checkpoint, once the file has been quiet
+      limaCollector.stopRunning();
+      limaCollector.getThread().join(2000);
+      for (int i = 0;
+          i < 100
+              && (store.get("handled.json") == null
+                  || store.get("handled.json").getStatus() != CheckpointStore.Status.DONE);
+          i++) {
+        sleep(sleepTime);
+      }
+      store.close();
+      Assert.assertEquals(CheckpointStore.Status.DONE, store.get("handled.json").getStatus());
+
+      // File arrives while the orchestrator is down
+      writer = new BufferedWriter(new FileWriter(laterFile));
+      writer.append("{}\n");
+      writer.close();
+
+      // Second run: only the new file is handled
+      store = new CheckpointStore(journalPath);
+      limaCollector = new LimaCharlieCollector(absPath, intStub, pool, false, store);
+      sleep(sleepTime);
+      Assert.assertEquals(1, limaCollector.getHandlerCount());
+      limaCollector.stopRunning();
+      limaCollector.getThread().join(2000);
+      store.close();
+    } finally {
+      pool.shutdown();
+      new File(journalPath).delete();
+    }
+  }
+
+  /**
+   * Tests that a file whose handler failed is not checkpointed as done, and is handled again after
+   * a restart
+   */
+  @Test
+  public void testFailedFileHandledAgainAfterRestart() throws IOException, InterruptedException {
+    File failedFile = new File(absPath + "/failed.json");
+    String journalPath = CheckpointStore.defaultPath(absPath);
+    HandlerPool pool = new HandlerPool("test", 1, 1, 10, HandlerPool.RejectionPolicy.ABORT);
+    FailingOnceStub interpreter = new FailingOnceStub();
+
+    try {
+      BufferedWriter writer = new BufferedWriter(new FileWriter(failedFile));
+      writer.append("{}\n");
+      writer.close();
+
+      // First run: the interpreter fails
+      CheckpointStore store = new CheckpointStore(journalPath);
+      LimaCharlieCollector limaCollector =
+          new LimaCharlieCollector(absPath, interpreter, pool, false, store);
+      for (int i = 0; i < 100 && interpreter.calls.get() < 1; i++) {
+        sleep(sleepTime);
+      }
+      limaCollector.stopRunning();
+      limaCollector.getThread().join(2000);
+      sleep(sleepTime);
+      store.close();
+      Assert.assertEquals(1, interpreter.calls.get());
+      CheckpointStore.Checkpoint checkpoint = store.get("failed.json");
+      Assert.assertTrue(
+          checkpoint == null || checkpoint.getStatus() != CheckpointStore.Status.DONE);
+
+      // Second run: the file is handled again, and done
+      store = new CheckpointStore(journalPath);
+      limaCollector = new LimaCharlieCollector(absPath, interpreter, pool, false, store);
+      for (int i = 0;
+          i < 100
+              && (store.get("failed.json") == null
+                  || store.get("failed.json").getStatus() != CheckpointStore.Status.DONE);
+          i++) {
+        sleep(sleepTime);
+      }
+      limaCollector.stopRunning();
+      limaCollector.getThread().join(2000);
+      store.close();
+      Assert.assertEquals(2, interpreter.calls.get());
+      Assert.assertEquals(CheckpointStore.Status.DONE, store.get("failed.json").getStatus());
+    } finally {
+      pool.shutdown();
+      new File(journalPath).delete();
+    }
+  }
 }
@@ -0,0 +1,149 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * JUnit test class for LimaCharlieScanner class. Writes a file called "scanner_test_file.log" in
+ * the directory the application is running from, which is deleted at the end of every test. Every
+ * file is scanned both sequentially and in parallel in small chunks, which must agree.
+ */
+public class LimaCharlieScannerTest {
+
+  private static final String[] ROUTING_KEYS = {"sid", "event_type"};
+  private static ForkJoinPool pool;
+
+  private File testFile;
+  private LimaCharlieScanner sequential = new LimaCharlieScanner(ROUTING_KEYS);
+  private LimaCharlieScanner parallel;
+
+  @BeforeClass
+  public static void startPool() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void stopPool() {
+    pool.shutdown();
+  }
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testFile = new File(curPath.toAbsolutePath().toString() + "/scanner_test_file.log");
+    parallel = new LimaCharlieScanner(ROUTING_KEYS, 0, 256, pool);
+  }
+
+  @After
+  public void cleanup() {
+    testFile.delete();
+  }
+
+  private String drRecord(String eventType) {
+    return "{\"source\": \"s\", \"detect\": {}, \"detect_id\": \"d\", \"cat\": \"c\", "
+        + "\"routing\": {\"sid\": \"1\", \"event_type\": \"" + eventType + "\"}}\n";
+  }
+
+  private String logRecord() {
+    return "{\"routing\": {\"sid\": \"1\", \"event_type\": \"DNS_REQUEST\"}, \"event\": {}}\n";
+  }
+
+  /**
+   * Writes records to the test file, with records inserted at the given line numbers and
+   * filler records everywhere else
+   */
+  private void write(String filler, int count, Object... inserted) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(testFile));
+    for (int i = 0; i < count; i++) {
+      String record = filler;
+      for (int j = 0; j < inserted.length; j += 2) {
+        if ((Integer) inserted[j] == i) {
+          record = (String) inserted[j + 1];
+        }
+      }
+      writer.append(record);
+      if (i % 10 == 0) {
+        writer.append("\n");
+      }
+    }
+    writer.close();
+  }
+
+  private void assertResult(
+      boolean stopEarly, boolean log, boolean dr, boolean newProcess, boolean fileCreate) {
+    for (LimaCharlieScanner scanner : new LimaCharlieScanner[] {sequential, parallel}) {
+      LimaCharlieScanner.Result result = scanner.scan(testFile.getPath(), stopEarly);
+      Assert.assertEquals(log, result.isLog());
+      Assert.assertEquals(dr, result.isDR());
+      Assert.assertEquals(newProcess, result.isNewProcessFound());
+      Assert.assertEquals(fileCreate, result.isFileCreateFound());
+    }
+  }
+
+  /**
+   * Tests that log data is classified as such, and that a file is split into many chunks
+   */
+  @Test
+  public void testLogData() throws IOException {
+    write(logRecord(), 1000);
+    Assert.assertTrue(parallel.isParallel(testFile.length()));
+    Assert.assertFalse(sequential.isParallel(testFile.length()));
+
+    assertResult(true, true, false, false, false);
+    assertResult(false, true, false, false, false);
+  }
+
+  /**
+   * Tests that event types are found in DR data wherever they are in the file
+   */
+  @Test
+  public void testDRData() throws IOException {
+    write(drRecord("OTHER"), 1000, 900, drRecord("FILE_CREATE"), 10, drRecord("NEW_PROCESS"));
+    assertResult(true, false, true, true, true);
+
+    write(drRecord("OTHER"), 1000, 500, drRecord("NEW_PROCESS"));
+    assertResult(true, false, true, true, false);
+  }
+
+  /**
+   * Tests that a bad record before both event types were found fails, while a bad record after
+   * only fails without stopping early
+   */
+  @Test
+  public void testBadRecord() throws IOException {
+    write(drRecord("OTHER"), 1000, 700, "not json {\n", 800, drRecord("NEW_PROCESS"),
+        100, drRecord("FILE_CREATE"));
+    assertResult(true, false, false, false, true);
+
+    write(drRecord("OTHER"), 1000, 700, "not json {\n", 300, drRecord("NEW_PROCESS"),
+        100, drRecord("FILE_CREATE"));
+    assertResult(true, false, true, true, true);
+    assertResult(false, false, false, true, true);
+  }
+
+  /**
+   * Tests that records mixing log and DR data are neither
+   */
+  @Test
+  public void testMixedData() throws IOException {
+    write(logRecord(), 1000, 600, drRecord("NEW_PROCESS"));
+    assertResult(true, false, false, false, false);
+  }
+
+  /**
+   * Tests that a missing file is neither log nor DR data
+   */
+  @Test
+  public void testMissingFile() {
+    assertResult(true, false, false, false, false);
+  }
+}
@@ -0,0 +1,101 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for MappedLineReader class. Writes a file called "mapped_test_file" in the
+ * directory the application is running from, which is deleted at the end of every test.
+ */
+public class MappedLineReaderTest {
+
+  private File testFile;
+
+  @Before
+  public void setup() {
+    Path curPath = Paths.get("");
+    testFile = new File(curPath.toAbsolutePath().toString() + "/mapped_test_file");
+  }
+
+  @After
+  public void cleanup() {
+    testFile.delete();
+  }
+
+  private void write(String text) throws IOException {
+    FileOutputStream out = new FileOutputStream(testFile);
+    out.write(text.getBytes(StandardCharsets.UTF_8));
+    out.close();
+  }
+
+  private ArrayList<String> readAll(long windowSize) throws IOException {
+    ArrayList<String> result = new ArrayList<>();
+    try (MappedLineReader reader = new MappedLineReader(testFile.toPath(), windowSize)) {
+      ByteBuffer line;
+      while ((line = reader.nextLine()) != null) {
+        result.add(StandardCharsets.UTF_8.decode(line).toString());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Tests that lines are split on '\n' and "\r\n", blank lines are skipped and an unterminated
+   * last line is returned
+   */
+  @Test
+  public void testSplitsLines() throws IOException {
+    write("{\"a\": 1}\r\n\n  \r\n{\"b\": \"é\"}\n\t\n{\"c\": 3}");
+
+    ArrayList<String> lines = readAll(1024);
+    Assert.assertEquals(3, lines.size());
+    Assert.assertEquals("{\"a\": 1}", lines.get(0));
+    Assert.assertEquals("{\"b\": \"é\"}", lines.get(1));
+    Assert.assertEquals("{\"c\": 3}", lines.get(2));
+  }
+
+  /**
+   * Tests that lines crossing the end of the mapped window, and lines longer than the window, are
+   * returned whole
+   */
+  @Test
+  public void testWindowedMapping() throws IOException {
+    StringBuilder text = new StringBuilder();
+    ArrayList<String> expected = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      StringBuilder line = new StringBuilder("line" + i);
+      for (int j = 0; j < i % 23; j++) {
+        line.append('x');
+      }
+      expected.add(line.toString());
+      text.append(line).append('\n');
+    }
+    write(text.toString());
+
+    Assert.assertEquals(expected, readAll(7));
+    Assert.assertEquals(expected, readAll(64));
+  }
+
+  /**
+   * Tests that a line slice can be read as characters
+   */
+  @Test
+  public void testNewReader() throws IOException {
+    write("\n{\"event\": \"é\"}\n");
+    try (MappedLineReader reader = new MappedLineReader(testFile.toPath())) {
+      char[] chars = new char[32];
+      int count = MappedLineReader.newReader(reader.nextLine()).read(chars);
+      Assert.assertEquals("{\"event\": \"é\"}", new String(chars, 0, count));
+      Assert.assertEquals(2, reader.getLineNumber());
+      Assert.assertNull(reader.nextLine());
+    }
+  }
+}
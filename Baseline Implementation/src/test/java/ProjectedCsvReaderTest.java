@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit test class for ProjectedCsvReader class
+ */
+public class ProjectedCsvReaderTest {
+
+  private ProjectedCsvReader open(String csv, String... columns) throws IOException {
+    return new ProjectedCsvReader(new StringReader(csv), columns);
+  }
+
+  /**
+   * Tests that only the projected columns are returned, in the order asked for, and that a
+   * missing column reads as empty
+   */
+  @Test
+  public void testProjection() throws IOException {
+    ProjectedCsvReader csv =
+        open("\"_raw\",a,b,c,d\n\"{\"\"x\"\": 1}\",1,2,3,4\n", "c", "a", "missing");
+
+    Assert.assertTrue(csv.hasColumn("a"));
+    Assert.assertFalse(csv.hasColumn("missing"));
+    Assert.assertArrayEquals(new String[] {"3", "1", ""}, csv.nextRow());
+    Assert.assertNull(csv.nextRow());
+    Assert.assertEquals(1, csv.getRowNumber());
+  }
+
+  /**
+   * Tests that quoted fields may contain separators, newlines and doubled quotes, in projected
+   * columns as well as in skipped ones
+   */
+  @Test
+  public void testQuotedFields() throws IOException {
+    ProjectedCsvReader csv =
+        open(
+            "raw,path,tail\r\n"
+                + "\"line1\nline2, \"\"quoted\"\"\",\"C:\\a,b\nc\",\"x\ny\"\r\n"
+                + "\r\n"
+                + "skip,\"\"\"p\"\"\",z",
+            "path");
+
+    Assert.assertArrayEquals(new String[] {"C:\\a,b\nc"}, csv.nextRow());
+    Assert.assertArrayEquals(new String[] {"\"p\""}, csv.nextRow());
+    Assert.assertNull(csv.nextRow());
+    Assert.assertEquals(2, csv.getRowNumber());
+  }
+
+  /**
+   * Tests that short rows read empty for their missing columns and empty lines are skipped
+   */
+  @Test
+  public void testShortAndEmptyRows() throws IOException {
+    ProjectedCsvReader csv = open("\na,b,c\n\n1\n,,\n\"\"\n", "a", "c");
+
+    Assert.assertArrayEquals(new String[] {"1", ""}, csv.nextRow());
+    Assert.assertArrayEquals(new String[] {"", ""}, csv.nextRow());
+    Assert.assertArrayEquals(new String[] {"", ""}, csv.nextRow());
+    Assert.assertNull(csv.nextRow());
+  }
+
+  /**
+   * Tests that rows longer than the read buffer are read whole
+   */
+  @Test
+  public void testLongFields() throws IOException {
+    StringBuilder raw = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      raw.append("\"\",");
+    }
+    ProjectedCsvReader csv =
+        open("_raw,id\n\"" + raw + "\",1\n\"" + raw + "\",2\n", "id");
+
+    Assert.assertArrayEquals(new String[] {"1"}, csv.nextRow());
+    Assert.assertArrayEquals(new String[] {"2"}, csv.nextRow());
+    Assert.assertNull(csv.nextRow());
+  }
+}
@@ -0,0 +1,214 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for ResponseBatch class and the batch methods of EDR. Sets up testing directory
+ * called "response_batch_test_dir" in the directory the application is running from, which is
+ * deleted at the end of every test.
+ */
+public class ResponseBatchTest {
+
+  /**
+   * EDR recording the commands sent to it, which fail for the sensor "offline", and whose kill of
+   * pid "slow" takes a minute
+   */
+  private static class RecordingEDR implements EDR {
+    private final List<String> commands = new ArrayList<>();
+
+    public boolean isolateNode(String identifier) {
+      commands.add("isolate " + identifier);
+      return !identifier.equals("offline");
+    }
+
+    public boolean rejoinNode(String identifier) {
+      return false;
+    }
+
+    public boolean newDetectionRule(String rule) {
+      return false;
+    }
+
+    public boolean deleteFile(String identifier, String fileName) {
+      commands.add("delete " + identifier + " " + fileName);
+      return !identifier.equals("offline");
+    }
+
+    public File getFile(String identifier, String fileName, String outPutFile) {
+      return null;
+    }
+
+    public String getFileInfo(String identifier, String fileName) {
+      return null;
+    }
+
+    public boolean killProcess(String identifier, String pid) throws IOException {
+      if (pid.equals("bad")) {
+        throw new IOException("bad pid");
+      }
+      if (pid.equals("slow")) {
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          throw new IOException("interrupted");
+        }
+      }
+      commands.add("kill " + identifier + " " + pid);
+      return !identifier.equals("offline");
+    }
+
+    public List<String> getProcesses(String identifier) {
+      return null;
+    }
+  }
+
+  private File testDir;
+  private EDRRegistry registry;
+  private RecordingEDR first;
+  private RecordingEDR second;
+
+  @Before
+  public void setup() throws IOException {
+    testDir = new File("response_batch_test_dir");
+    testDir.mkdirs();
+    Assert.assertTrue(testDir.isDirectory());
+    first = new RecordingEDR();
+    second = new RecordingEDR();
+    registry = new EDRRegistry(path -> path.endsWith("first.json") ? first : second);
+    registry.register("oid-1", writeCredentials("first.json").getPath());
+    registry.register("oid-2", writeCredentials("second.json").getPath());
+  }
+
+  @After
+  public void cleanup() {
+    registry.close();
+    File[] entries = testDir.listFiles();
+    if (entries != null) {
+      for (File entry : entries) {
+        entry.delete();
+      }
+    }
+    testDir.delete();
+  }
+
+  private File writeCredentials(String name) throws IOException {
+    File file = new File(testDir, name);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    writer.append("{}");
+    writer.close();
+    return file;
+  }
+
+  private static Action kill(String oid, String sid, long pid) {
+    return Action.response(
+        Action.Tool.SPLUNK, Action.ActionType.KILL_PROCESS, null, pid, sid, null, null, null, oid,
+        null);
+  }
+
+  private static Action delete(String oid, String sid, String path) {
+    return Action.response(
+        Action.Tool.SPLUNK, Action.ActionType.DELETE_FILE, path, Action.NO_PID, sid, null, null,
+        null, oid, null);
+  }
+
+  /**
+   * Tests that the actions are sent to the client of their organisation grouped per sensor, and
+   * that those that failed or have no client are returned
+   */
+  @Test
+  public void testSend() {
+    ResponseBatch batch = new ResponseBatch();
+    Action offline = kill("oid-1", "offline", 5);
+    batch.add(kill("oid-1", "s1", 1));
+    batch.add(kill("oid-1", "s2", 2));
+    batch.add(delete("oid-1", "s1", "C:\\tack.rtf"));
+    batch.add(kill("oid-2", "s3", 4));
+    batch.add(kill("oid-1", "s1", 3));
+    batch.add(offline);
+    Action unknown = kill("oid-3", "s4", 6);
+    batch.add(unknown);
+    Assert.assertEquals(7, batch.size());
+
+    Assert.assertEquals(Arrays.asList(offline, unknown), batch.send(registry));
+    Assert.assertTrue(batch.isEmpty());
+    Assert.assertEquals(
+        Arrays.asList(
+            "delete s1 C:\\tack.rtf", "kill s1 1", "kill s1 3", "kill s2 2", "kill offline 5"),
+        first.commands);
+    Assert.assertEquals(Collections.singletonList("kill s3 4"), second.commands);
+  }
+
+  /**
+   * Tests that a batch is due once full or once its first action has waited long enough, and how
+   * long it has left to linger
+   */
+  @Test
+  public void testDue() {
+    ResponseBatch batch = new ResponseBatch(2, 60000);
+    Assert.assertFalse(batch.isDue());
+    Assert.assertEquals(0, batch.getNanosUntilDue());
+    batch.add(kill("oid-1", "s1", 1));
+    Assert.assertFalse(batch.isDue());
+    Assert.assertTrue(batch.getNanosUntilDue() > 59000000000L);
+    batch.add(kill("oid-1", "s1", 2));
+    Assert.assertTrue(batch.isDue());
+    Assert.assertEquals(0, batch.getNanosUntilDue());
+
+    batch = new ResponseBatch(100, 0);
+    batch.add(kill("oid-1", "s1", 1));
+    Assert.assertTrue(batch.isDue());
+
+    Assert.assertFalse(ResponseBatch.accepts(Action.reporting("out.csv", "report")));
+    Assert.assertFalse(ResponseBatch.accepts(Action.failed()));
+  }
+
+  /**
+   * Tests that the default batch methods send every item and report each result
+   */
+  @Test
+  public void testDefaultMethods() {
+    Map<String, List<String>> pids = new LinkedHashMap<>();
+    pids.put("s1", Arrays.asList("1", "bad", "2"));
+    pids.put("offline", Collections.singletonList("3"));
+    Map<String, List<Boolean>> results = first.killProcesses(pids);
+    Assert.assertEquals(Arrays.asList(true, false, true), results.get("s1"));
+    Assert.assertEquals(Collections.singletonList(false), results.get("offline"));
+
+    Map<String, Boolean> isolated = first.isolateNodes(Arrays.asList("s1", "offline"));
+    Assert.assertEquals(Boolean.TRUE, isolated.get("s1"));
+    Assert.assertEquals(Boolean.FALSE, isolated.get("offline"));
+  }
+
+  /**
+   * Tests that the default asynchronous methods return before the command is done, and fail it at
+   * its deadline
+   */
+  @Test
+  public void testDefaultAsyncMethods() throws Exception {
+    CompletableFuture<Boolean> slow = first.killProcessAsync("s1", "slow", 200);
+    Assert.assertFalse(slow.isDone());
+    Assert.assertEquals(Boolean.TRUE, first.killProcessAsync("s1", "1", 5000).get());
+    Assert.assertEquals(Boolean.FALSE, first.isolateNodeAsync("offline", 5000).get());
+    try {
+      slow.get(10, TimeUnit.SECONDS);
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof TimeoutException);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit test class for RoutingRules class. Writes a file called "routing_rules_test.json" in the
+ * directory the application is running from, which is deleted at the end of every test.
+ */
+public class RoutingRulesTest {
+
+  private static final List<RoutingRules.Rule> DEFAULTS =
+      Collections.singletonList(
+          RoutingRules.Rule.forFile(
+              "splunk",
+              "harmfulFiles.csv",
+              Action.ActionType.DELETE_FILE,
+              "detect.event.FILE_PATH"));
+
+  private File rulesFile;
+
+  @Before
+  public void setup() {
+    rulesFile = new File("routing_rules_test.json");
+  }
+
+  @After
+  public void cleanup() {
+    rulesFile.delete();
+  }
+
+  private void writeRules(String rules, long modified) throws IOException {
+    FileWriter writer = new FileWriter(rulesFile);
+    writer.write("{\"rules\": [" + rules + "]}");
+    writer.close();
+    Assert.assertTrue(rulesFile.setLastModified(modified));
+  }
+
+  /**
+   * Tests that without a rules file the default rules apply, by tool and exact name
+   */
+  @Test
+  public void testDefaults() {
+    RoutingRules rules = new RoutingRules(rulesFile.getPath(), DEFAULTS, 0);
+
+    RoutingRules.Rule rule = rules.match("splunk", "harmfulFiles.csv");
+    Assert.assertEquals(Action.ActionType.DELETE_FILE, rule.getType());
+    Assert.assertEquals("detect.routing.sid", rule.getColumns()[0]);
+    Assert.assertEquals("detect.event.FILE_PATH", rule.getColumns()[6]);
+    Assert.assertNull(rules.match("splunk", "harmfulFiles.csv.bak"));
+    Assert.assertNull(rules.match("limacharlie", "harmfulFiles.csv"));
+  }
+
+  /**
+   * Tests that exact names win over patterns, earlier patterns over later ones, and that
+   * parameters can be bound to other columns
+   */
+  @Test
+  public void testPriorityAndBindings() throws IOException {
+    writeRules(
+        "{\"file\": \"alert-7.csv\", \"action\": \"file_del\","
+            + " \"columns\": {\"filePath\": \"path\"}},"
+            + "{\"regex\": \"alert-(\\\\d)+\\\\.csv\", \"action\": \"KillProcess\","
+            + " \"columns\": {\"process_id\": \"pid\", \"sid\": \"sensor\"}},"
+            + "{\"glob\": \"alert-?*.csv\", \"action\": \"file_del\","
+            + " \"columns\": {\"filePath\": \"path\"}}",
+        System.currentTimeMillis());
+    RoutingRules rules = new RoutingRules(rulesFile.getPath(), DEFAULTS, 0);
+
+    Assert.assertEquals(
+        Action.ActionType.DELETE_FILE, rules.match("splunk", "alert-7.csv").getType());
+    RoutingRules.Rule rule = rules.match("splunk", "alert-12.csv");
+    Assert.assertEquals(Action.ActionType.KILL_PROCESS, rule.getType());
+    Assert.assertEquals("sensor", rule.getColumns()[0]);
+    Assert.assertEquals("pid", rule.getColumns()[6]);
+    Assert.assertEquals(
+        Action.ActionType.DELETE_FILE, rules.match("splunk", "alert-x.csv").getType());
+    // The rules file replaces the defaults
+    Assert.assertNull(rules.match("splunk", "harmfulFiles.csv"));
+  }
+
+  /**
+   * Tests that hundreds of patterns, some with groups of their own, each match their own files
+   */
+  @Test
+  public void testManyPatterns() throws IOException {
+    StringBuilder many = new StringBuilder();
+    for (int i = 0; i < 300; i++) {
+      if (i > 0) {
+        many.append(',');
+      }
+      String action = i % 2 == 0 ? "KillProcess" : "IsolateNode";
+      many.append("{\"regex\": \"(r)(" + i + ")-(a|b)\\\\.csv\", \"action\": \"" + action + "\","
+          + " \"columns\": {\"process_id\": \"c" + i + "\"}}");
+    }
+    writeRules(many.toString(), System.currentTimeMillis());
+    RoutingRules rules = new RoutingRules(rulesFile.getPath(), DEFAULTS, 0);
+
+    for (int i = 0; i < 300; i++) {
+      RoutingRules.Rule rule = rules.match("splunk", "r" + i + "-b.csv");
+      Assert.assertEquals("c" + i, rule.getColumns()[6]);
+    }
+    Assert.assertNull(rules.match("splunk", "r300-a.csv"));
+  }
+
+  /**
+   * Tests that a changed rules file is reloaded, an invalid one is ignored and a deleted one
+   * returns to the default rules
+   */
+  @Test
+  public void testReload() throws IOException {
+    long modified = System.currentTimeMillis() - 60000;
+    writeRules(
+        "{\"file\": \"worms.csv\", \"action\": \"IsolateNode\","
+            + " \"columns\": {\"process_id\": \"pid\"}}",
+        modified);
+    RoutingRules rules = new RoutingRules(rulesFile.getPath(), DEFAULTS, 0);
+    Assert.assertNotNull(rules.match("splunk", "worms.csv"));
+
+    writeRules(
+        "{\"file\": \"worms2.csv\", \"action\": \"IsolateNode\","
+            + " \"columns\": {\"process_id\": \"pid\"}}",
+        modified + 1000);
+    Assert.assertNull(rules.match("splunk", "worms.csv"));
+    Assert.assertNotNull(rules.match("splunk", "worms2.csv"));
+
+    writeRules("{\"file\": \"x.csv\", \"action\": \"file_delete\"}", modified + 2000);
+    Assert.assertFalse(rules.reloadIfModified());
+    Assert.assertNotNull(rules.match("splunk", "worms2.csv"));
+
+    // Named groups would clash once the patterns are combined
+    writeRules(
+        "{\"regex\": \"(?<day>\\\\d+)a.csv\", \"action\": \"KillProcess\","
+            + " \"columns\": {\"process_id\": \"pid\"}},"
+            + " {\"regex\": \"(?<day>\\\\d+)b.csv\", \"action\": \"KillProcess\","
+            + " \"columns\": {\"process_id\": \"pid\"}}",
+        modified + 3000);
+    Assert.assertNotNull(rules.match("splunk", "worms2.csv"));
+    Assert.assertNull(rules.match("splunk", "1a.csv"));
+
+    Assert.assertTrue(rulesFile.delete());
+    Assert.assertNotNull(rules.match("splunk", "harmfulFiles.csv"));
+    Assert.assertNull(rules.match("splunk", "worms2.csv"));
+  }
+
+  /**
+   * Tests that rules which could not be executed are rejected
+   */
+  @Test
+  public void testInvalidRules() {
+    String[] invalid = {
+      "{\"file\": \"a.csv\", \"action\": \"Log Management\","
+          + " \"columns\": {\"process_id\": \"pid\"}}",
+      "{\"file\": \"a.csv\", \"action\": \"KillProcess\", \"columns\": {\"filePath\": \"p\"}}",
+      "{\"file\": \"a.csv\", \"action\": \"KillProcess\","
+          + " \"columns\": {\"process_id\": \"pid\", \"pid\": \"pid\"}}",
+      "{\"action\": \"KillProcess\", \"columns\": {\"process_id\": \"pid\"}}",
+      "{\"regex\": \"(\", \"action\": \"KillProcess\", \"columns\": {\"process_id\": \"pid\"}}",
+      "{\"regex\": \"(?<day>\\\\d+).csv\", \"action\": \"KillProcess\","
+          + " \"columns\": {\"process_id\": \"pid\"}}"
+    };
+    for (String rule : invalid) {
+      try {
+        RoutingRules.Rule.fromJson(new JsonParser().parse(rule).getAsJsonObject());
+        Assert.fail(rule);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+}
@@ -224,8 +224,8 @@ public class SplunkCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Generate FILE_CREATE event
       if (!testFile.createNewFile()) {
@@ -236,8 +236,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -254,8 +254,8 @@ public class SplunkCollectorTest {
 
   /**
    * Tests that SplunkCollector creates and stores an OutputHandler thread on event modification
-   * event. Tests single modification on single file. Only tests that list of OutputHandlers is size
-   * 0 before any modification and size 1 after a single modification event.
+   * event. Tests single modification on single file. Only tests that the number of OutputHandlers
+   * created is 0 before any modification and 1 after a single modification event.
    */
   @Test
   public void testHandlerCreationOnSingleModifySingleFile() {
@@ -270,8 +270,8 @@ public class SplunkCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile()) {
         Assert.fail();
@@ -281,8 +281,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -291,8 +291,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -324,8 +324,8 @@ public class SplunkCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile()) {
         Assert.fail();
@@ -335,8 +335,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -345,8 +345,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Wait for cache to reset
       sleep(cacheTime);
@@ -358,8 +358,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -391,8 +391,8 @@ public class SplunkCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile() || !testFile2.createNewFile()) {
         Assert.fail();
@@ -402,8 +402,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new events
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event on first file
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -412,8 +412,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Create second 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -422,8 +422,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
@@ -459,8 +459,8 @@ public class SplunkCollectorTest {
       sleep(sleepTime);
       Assert.assertTrue(colThread.isAlive());
 
-      ArrayList<OutputHandler> handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      long handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       if (!testFile.createNewFile() || !testFile2.createNewFile()) {
         Assert.fail();
@@ -470,8 +470,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new events
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(0, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(0, handlerCount);
 
       // Create 'MODIFIED' event on first file
       BufferedWriter writer = new BufferedWriter(new FileWriter(testFile, true));
@@ -480,8 +480,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(1, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(1, handlerCount);
 
       // Create 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -490,8 +490,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(2, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(2, handlerCount);
 
       sleep(cacheTime);
 
@@ -502,8 +502,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(3, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(3, handlerCount);
 
       // Create second 'MODIFIED' event on second file
       writer = new BufferedWriter(new FileWriter(testFile2, true));
@@ -512,8 +512,8 @@ public class SplunkCollectorTest {
       // Give thread time to process new event
       sleep(sleepTime);
 
-      handlers = splunkCol.getHandlers();
-      Assert.assertEquals(4, handlers.size());
+      handlerCount = splunkCol.getHandlerCount();
+      Assert.assertEquals(4, handlerCount);
 
     } catch (InterruptedException | IOException e) {
       e.printStackTrace();
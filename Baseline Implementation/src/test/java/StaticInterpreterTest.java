@@ -1,6 +1,14 @@
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -248,6 +256,87 @@ public class StaticInterpreterTest {
     Assert.assertTrue(processExpectedFound);
   }
 
+  /**
+   * Tests that interpreting LimaCharlieDR Data stops reading once both FILE_CREATE and
+   * NEW_PROCESS events were found, so that the rest of a large file is not parsed, while
+   * isLimaCharlieDR still checks every record
+   */
+  @Test
+  public void interpretLimaCharlieDRDataStopsEarly() throws IOException {
+    File drFile = new File("StaticInterpreterTestDR.log");
+    String record = "{\"source\": \"s\", \"detect\": {}, \"detect_id\": \"d\", \"cat\": \"c\", "
+        + "\"routing\": {\"event_type\": \"%s\"}}\n";
+    BufferedWriter writer = new BufferedWriter(new FileWriter(drFile));
+    writer.append(String.format(record, "FILE_CREATE"));
+    writer.append(String.format(record, "NEW_PROCESS"));
+    writer.append("this is not json {\n");
+    writer.close();
+
+    try {
+      ArrayList<HashMap<String, String>> actual =
+          staticInterpreter.interpret(drFile.getPath(), "limacharlie");
+      Assert.assertEquals(2, actual.size());
+      Assert.assertEquals("harmfulProcesses", actual.get(0).get("reportName"));
+      Assert.assertEquals("harmfulFiles", actual.get(1).get("reportName"));
+      Assert.assertFalse(staticInterpreter.isLimaCharlieDR(drFile.getPath()));
+      Assert.assertFalse(staticInterpreter.isLimaCharlieLog(drFile.getPath()));
+    } finally {
+      Assert.assertTrue(drFile.delete());
+    }
+  }
+
+  /**
+   * Tests that in direct-response mode every DR detection becomes a response on its sensor, once
+   * per process or file, followed by the log management action mirroring the data to Splunk
+   */
+  @Test
+  public void interpretLimaCharlieDRDataDirectResponse() throws IOException {
+    File drFile = new File("StaticInterpreterTestDR.log");
+    String record = "{\"source\": \"s\", \"detect_id\": \"d\", \"cat\": \"c\", "
+        + "\"detect\": {\"routing\": {\"sid\": \"s1\", \"hostname\": \"h\", "
+        + "\"tags\": [\"a\", \"b\"]}, \"event\": {%s}}, "
+        + "\"routing\": {\"event_type\": \"%s\"}}\n";
+    BufferedWriter writer = new BufferedWriter(new FileWriter(drFile));
+    writer.append(String.format(record, "\"PROCESS_ID\": 42", "NEW_PROCESS"));
+    writer.append(String.format(record, "\"FILE_PATH\": \"C:\\\\bad.exe\"", "FILE_CREATE"));
+    writer.append(String.format(record, "\"PROCESS_ID\": 42", "NEW_PROCESS"));
+    writer.append(String.format(record, "", "NEW_PROCESS"));
+    writer.close();
+
+    try {
+      ArrayList<Action> actual =
+          new StaticInterpreter(true).interpretActions(drFile.getPath(), "limacharlie");
+      Assert.assertEquals(3, actual.size());
+
+      Action kill = actual.get(0);
+      Assert.assertEquals(Action.ActionType.KILL_PROCESS, kill.getType());
+      Assert.assertEquals(Action.Tool.LIMACHARLIE, kill.getToolTo());
+      Assert.assertEquals(Action.Tool.LIMACHARLIE, kill.getToolFrom());
+      Assert.assertEquals(42, kill.getPid());
+      Assert.assertEquals("s1", kill.getSid());
+      Assert.assertEquals("h", kill.getHostname());
+      Assert.assertEquals("a\nb", kill.getTags());
+
+      Assert.assertEquals(Action.ActionType.DELETE_FILE, actual.get(1).getType());
+      Assert.assertEquals("C:\\bad.exe", actual.get(1).getFilePath());
+      Assert.assertEquals(Action.logManagement(drFile.getPath()).toMap(), actual.get(2).toMap());
+
+      // Detections are read as the responses are taken
+      ActionIterator responses =
+          new StaticInterpreter(true).iterate(drFile.getPath(), "limacharlie");
+      Assert.assertEquals(kill.toMap(), responses.next().toMap());
+      responses.close();
+      Assert.assertFalse(responses.hasNext());
+
+      // Without direct response, the same data goes through Splunk reports
+      Assert.assertEquals(
+          "harmfulProcesses",
+          staticInterpreter.interpret(drFile.getPath(), "limacharlie").get(0).get("reportName"));
+    } finally {
+      Assert.assertTrue(drFile.delete());
+    }
+  }
+
   /**
    * Test to make sure that the bad lima charlie data does not parse correctly
    */
@@ -303,6 +392,104 @@ public class StaticInterpreterTest {
     }
   }
 
+  /**
+   * Test to make sure Splunk output is handed to a listener row by row, and that the listener can
+   * stop the interpretation of the rest of the file
+   */
+  @Test
+  public void interpretSplunkOutputStreaming() throws IOException {
+    final ArrayList<HashMap<String, String>> streamed = new ArrayList<>();
+    staticInterpreter.interpret(splunkHarmfulFilesPath, "splunk", action -> {
+      streamed.add(action.toMap());
+      return true;
+    });
+    Assert.assertEquals(staticInterpreter.interpretSplunkOutput(splunkHarmfulFilesPath), streamed);
+
+    streamed.clear();
+    staticInterpreter.interpret(splunkHarmfulFilesPath, "splunk", action -> {
+      streamed.add(action.toMap());
+      return false;
+    });
+    Assert.assertEquals(1, streamed.size());
+  }
+
+  /**
+   * Test to make sure the iterator of Splunk output gives the actions of interpretActions() one at
+   * a time, and that closing it early stops the interpretation
+   */
+  @Test
+  public void iterateSplunkOutput() throws IOException {
+    ArrayList<Action> expected =
+        staticInterpreter.interpretActions(splunkHarmfulFilesPath, "splunk");
+    Assert.assertTrue(expected.size() > 1);
+
+    ActionIterator actions = staticInterpreter.iterate(splunkHarmfulFilesPath, "splunk");
+    Assert.assertEquals(expected.get(0).toMap(), actions.next().toMap());
+    Assert.assertTrue(actions.hasNext());
+    actions.close();
+    Assert.assertFalse(actions.hasNext());
+
+    ArrayList<HashMap<String, String>> all = new ArrayList<>();
+    for (Action action : staticInterpreter.iterate(splunkHarmfulFilesPath, "splunk").toList()) {
+      all.add(action.toMap());
+    }
+    Assert.assertEquals(staticInterpreter.interpretSplunkOutput(splunkHarmfulFilesPath), all);
+  }
+
+  /**
+   * Stress test of one StaticInterpreter shared by many threads, as it is by the collectors and
+   * their handlers. Every thread interprets every kind of output many times, starting together,
+   * and must always get the same actions as a single thread does.
+   */
+  @Test
+  public void interpretConcurrently() throws Exception {
+    final String[][] inputs = {
+      {splunkHarmfulFilesPath, "splunk"},
+      {splunkHarmfulProcessesPath, "splunk"},
+      {goodLimaCharlieLogDataPath, "limacharlie"},
+      {lcFileCreateNewProcessPath, "limacharlie"},
+      {badLimaCharlieDRPath, "limacharlie"}
+    };
+    final ArrayList<ArrayList<HashMap<String, String>>> expected = new ArrayList<>();
+    for (String[] input : inputs) {
+      expected.add(staticInterpreter.interpret(input[0], input[1]));
+    }
+
+    int threads = 8;
+    final int rounds = 50;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    ArrayList<Future<Integer>> results = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      results.add(
+          executor.submit(
+              new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                  start.await();
+                  int mismatches = 0;
+                  for (int i = 0; i < rounds; i++) {
+                    // Threads work through the inputs in different orders
+                    int k = (i + offset) % inputs.length;
+                    if (!expected
+                        .get(k)
+                        .equals(staticInterpreter.interpret(inputs[k][0], inputs[k][1]))) {
+                      mismatches++;
+                    }
+                  }
+                  return mismatches;
+                }
+              }));
+    }
+    start.countDown();
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+    for (Future<Integer> result : results) {
+      Assert.assertEquals(Integer.valueOf(0), result.get());
+    }
+  }
+
   /**
    * Test to make sure interpret method correctly interprets Splunk harmfulFiles.csv file. Important
    * to note that interpreting of harmfulFiles.csv assumes the file is named as such.
@@ -388,15 +575,18 @@ public class StaticInterpreterTest {
   }
 
   /**
-   * Test to make sure interpret method correctly interprets returns an empty list if passed an
-   * unsupported filename.
+   * Test to make sure interpret method returns a single HashMap with fail message if passed a
+   * filename matching no routing rule, so the file is kept until a rule matches it
    */
   @Test
   public void failInterpretSplunkBadFileName() {
     try {
       ArrayList<HashMap<String, String>> actual = staticInterpreter
           .interpret(splunkBadFileName, "splunk");
+      HashMap<String, String> failedHash = new HashMap<>();
+      failedHash.put("message", "fail");
       ArrayList<HashMap<String, String>> expected = new ArrayList<>();
+      expected.add(failedHash);
 
       Assert.assertEquals(expected, actual);
     } catch (IOException e) {
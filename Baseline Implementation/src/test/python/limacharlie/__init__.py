@@ -0,0 +1,77 @@
+# Fake of the LimaCharlie Python API, used to test LimaCharlieConstructor.py
+# offline. Put the parent directory on PYTHONPATH to use it.
+#
+# Sensors are given by their sid:
+# "online-sensor" is online and answers every request
+# "offline-sensor" is offline
+# "crash-sensor" kills the process when tasked
+# "hang-sensor" never returns when tasked
+# "slow-sensor" is online and takes half a second to answer when tasked
+# The hostname of a sensor is its sid with "-host" in place of "-sensor", its
+# addresses are 10.0.0.<n> and 203.0.113.<n>, in the order listed.
+#
+# Logins, listings, online checks and tasks are appended to the file named by LIMACHARLIE_FAKE_LOG,
+# one per line, if it is set.
+import os
+import time
+
+from limacharlie import utils
+
+
+def _log(line):
+    path = os.environ.get("LIMACHARLIE_FAKE_LOG")
+    if path:
+        with open(path, "a") as log:
+            log.write(line + "\n")
+
+
+class _Future(object):
+    def __init__(self, command):
+        self.command = command
+
+    def getNewResponses(self, timeout=None):
+        event = {"ERROR": 0}
+        if self.command.startswith("os_processes"):
+            event["PROCESSES"] = [{"PROCESS_ID": 1, "PARENT_PROCESS_ID": 0,
+                                   "COMMAND_LINE": "init"}]
+        elif self.command.startswith("file_info"):
+            event["FILE_PATH"] = self.command.split(" ", 1)[1].strip('"')
+        return [{"event": event}]
+
+
+class Sensor(object):
+    def __init__(self, sid, n=0):
+        self.sid = sid
+        self.hostname = sid.replace("-sensor", "-host")
+        self.int_ip = "10.0.0." + str(n)
+        self.ext_ip = "203.0.113." + str(n)
+
+    def isOnline(self):
+        _log("online " + self.sid)
+        return self.sid != "offline-sensor"
+
+    def task(self, command, inv_id=None):
+        _log("task " + self.sid + " " + command)
+        if self.sid == "crash-sensor":
+            os._exit(1)
+        if self.sid == "hang-sensor":
+            time.sleep(3600)
+        if self.sid == "slow-sensor":
+            time.sleep(0.5)
+
+    def request(self, command):
+        self.task(command)
+        return _Future(command)
+
+
+class Manager(object):
+    def __init__(self, oid, secret_api_key, is_interactive=False,
+                 inv_id=None):
+        _log("login " + oid)
+        self.oid = oid
+
+    def sensors(self):
+        _log("list " + self.oid)
+        return [Sensor(sid, n + 1) for n, sid in
+                enumerate(("online-sensor", "offline-sensor", "crash-sensor",
+                           "hang-sensor", "slow-sensor"))]